@@ -21,28 +21,53 @@ var activeUsers;
 // ];
 
 // **** WEBSOCKET INIT ****
-const urlChat = buildApiUrl(Util.API.WS, Util.IP.LOCAL, 8080, Util.APP_NAME, Util.RES.CHAT);
-const chatWebSocket = new WebSocket(urlChat);
+let chatWebSocket;
+let chatReconnectAttempts = 0;
+// room has moved to another node, reconnect there when the socket is closed
+let chatPendingMigration = false;
+connectChat();
 
 // **** WEBSOCKET **** 
-chatWebSocket.onopen = function (event) {
-    // first message is supposed to contain a token
-    console.log('ChatWebSocket: token sent: ', window.localStorage.getItem(Util.TOKEN_HEADER));
-    chatWebSocket.send(window.localStorage.getItem(Util.TOKEN_HEADER));
-};
-chatWebSocket.onmessage = function (event) {
-    console.log('ChatWebSocket: Message received from the server');
-    console.log(event.data);
-    readChatWebsocketMessage(JSON.parse(event.data));
-};
-chatWebSocket.onclose = function (event) {
-    console.log(`ChatWebSocket: Connection closed, code=${event.code} reason=${event.reason}`);
-    redirectBackToLoginPage();
-};
-chatWebSocket.onerror = function (event) {
-    console.log('ChatWebSocket: WebSocket error observed:', event);
-    redirectBackToLoginPage();
-};
+function connectChat() {
+    const node = nodeAddress();
+    const urlChat = buildApiUrl(Util.API.WS, node.ip, node.port, Util.APP_NAME, Util.RES.CHAT + sessionQuery());
+    // resume token allows to take back the seat after connection has been lost
+    chatWebSocket = new WebSocket(withResumeToken(urlChat, window.sessionStorage.getItem(Util.RESUME_TOKEN_HEADER)));
+
+    chatWebSocket.onopen = function (event) {
+        chatReconnectAttempts = 0;
+        // first message is supposed to contain a token
+        console.log('ChatWebSocket: token sent: ', window.localStorage.getItem(Util.TOKEN_HEADER));
+        chatWebSocket.send(window.localStorage.getItem(Util.TOKEN_HEADER));
+    };
+    chatWebSocket.onmessage = function (event) {
+        console.log('ChatWebSocket: Message received from the server');
+        console.log(event.data);
+        readChatWebsocketMessage(JSON.parse(event.data));
+    };
+    chatWebSocket.onclose = function (event) {
+        console.log(`ChatWebSocket: Connection closed, code=${event.code} reason=${event.reason}`);
+        // room has moved, take the same seat on another node
+        if (chatPendingMigration) {
+            chatPendingMigration = false;
+            connectChat();
+            return;
+        }
+        // connection lost, try to come back to the same seat
+        // server or room is full, try to get in later
+        const isRetryable = event.code === Util.RECONNECT.CLOSED_ABNORMALLY || event.code === Util.RECONNECT.TRY_AGAIN_LATER;
+        if (isRetryable && chatReconnectAttempts < Util.RECONNECT.MAX_ATTEMPTS) {
+            chatReconnectAttempts++;
+            setTimeout(connectChat, Util.RECONNECT.DELAY_MILLIS);
+            return;
+        }
+        redirectBackToLoginPage();
+    };
+    chatWebSocket.onerror = function (event) {
+        // onclose decides whether to reconnect or not
+        console.log('ChatWebSocket: WebSocket error observed:', event);
+    };
+}
 
 // **** EVENTS ****
 messageTextInput.onkeyup = function (event) {
@@ -61,6 +86,11 @@ function readChatWebsocketMessage(msg) {
         console.error('ChatWebSocket: [readChatWebsocketMessage] recieved invalid websocket message');
         return;
     }
+    // spectators receive messages in batches
+    if (Array.isArray(msg)) {
+        msg.forEach(onChat);
+        return;
+    }
     onChat(msg);
 }
 
@@ -136,6 +166,37 @@ function onChat(chatMessage) {
         onScoreboard(d.msgContent);
         return;
     }
+
+    if (d.msgType === MsgType.RESUME_TOKEN) {
+        window.sessionStorage.setItem(Util.RESUME_TOKEN_HEADER, d.msgContent);
+        return;
+    }
+
+    if (d.msgType === MsgType.RECONNECT) {
+        onReconnect(d.msgContent);
+        return;
+    }
+
+    if (d.msgType === MsgType.CHAT_HISTORY) {
+        // latest lines of the room, oldest first; they replace lines shown
+        // so far, so reconnecting does not show them twice
+        messagesTextArea.value = '';
+        JSON.parse(d.msgContent).forEach(line => onChat(line));
+        return;
+    }
+
+    if (d.msgType === MsgType.QUEUE_POSITION) {
+        onMessage(`Pokój jest pełny, jesteś ${d.msgContent}. w kolejce.`);
+        return;
+    }
+
+    if (d.msgType === MsgType.HINT) {
+        // drawing user knows the whole word
+        if (UserInfo.IS_DRAWING === false) {
+            onNewWordToGuess(d.msgContent);
+        }
+        return;
+    }
 }
 
 /**
@@ -158,6 +219,18 @@ function onWordGuessSuccess() {
     cleanCanvasAndGenerateNewWord();
 }
 
+/**
+ * Room has moved to another node, both websockets reconnect there.
+ * @param {string} node host:port of the node
+ */
+function onReconnect(node) {
+    console.log('Room has moved to ' + node);
+    window.sessionStorage.setItem(Util.NODE_HEADER, node);
+    chatPendingMigration = true;
+    drawingPendingMigration = true;
+    drawingWebSocket.close();
+}
+
 function onCleanCanvas() {
     context.clearRect(0, 0, canvas.width, canvas.height);
     imageData = context.getImageData(0, 0, canvas.width, canvas.height);
@@ -16,8 +16,15 @@ var lastEvent;
 var drawing = false;
 
 // **** WEBSOCKET INIT ****
-const urlDraw = buildApiUrl(Util.API.WS, Util.IP.LOCAL, 8080, Util.APP_NAME, Util.RES.DRAW);
-const drawingWebSocket = new WebSocket(urlDraw);
+let drawingWebSocket;
+let drawingReconnectAttempts = 0;
+// room has moved to another node, reconnect there when the socket is closed
+let drawingPendingMigration = false;
+// latency probes are sent when the page is opened with "probe" parameter
+const isProbing = new URLSearchParams(window.location.search).has(Util.PROBE.PARAM);
+let probeCounter = 0;
+let probeInterval = null;
+connectDrawing();
 
 // **** WINDOW ****
 window.onresize = async function () {
@@ -48,27 +55,53 @@ function redirectBackToLoginPage() {
 
 	window.location.href = Util.ROUTE.Game2Login;
 	window.localStorage.removeItem(Util.TOKEN_HEADER);
+	window.sessionStorage.removeItem(Util.RESUME_TOKEN_HEADER);
+	window.sessionStorage.removeItem(Util.NODE_HEADER);
+	window.sessionStorage.removeItem(Util.ROOM_HEADER);
 }
 
 
 // **** WEBSOCKET **** 
-drawingWebSocket.onopen = function (event) {
-	// first message is supposed to contain a token
-	console.log('DrawingWebSocket: token sent: ', window.localStorage.getItem(Util.TOKEN_HEADER));
-	drawingWebSocket.send(window.localStorage.getItem(Util.TOKEN_HEADER));
-};
-drawingWebSocket.onmessage = function (event) {
-	console.log('DrawingWebSocket: Message received from the server');
-	readDrawWebsocketMessage(JSON.parse(event.data));
-};
-drawingWebSocket.onclose = function (event) {
-	console.log(`DrawingWebSocket: Connection closed, code=${event.code} reason=${event.reason}`);
-	redirectBackToLoginPage();
-};
-drawingWebSocket.onerror = function (event) {
-	console.log('DrawingWebSocket: WebSocket error observed:', event);
-	redirectBackToLoginPage();
-};
+function connectDrawing() {
+	const node = nodeAddress();
+	const urlDraw = buildApiUrl(Util.API.WS, node.ip, node.port, Util.APP_NAME, Util.RES.DRAW + sessionQuery());
+	drawingWebSocket = new WebSocket(urlDraw);
+
+	drawingWebSocket.onopen = function (event) {
+		drawingReconnectAttempts = 0;
+		// first message is supposed to contain a token
+		console.log('DrawingWebSocket: token sent: ', window.localStorage.getItem(Util.TOKEN_HEADER));
+		drawingWebSocket.send(window.localStorage.getItem(Util.TOKEN_HEADER));
+		if (isProbing && probeInterval === null) {
+			probeInterval = setInterval(sendProbe, Util.PROBE.INTERVAL_MILLIS);
+		}
+	};
+	drawingWebSocket.onmessage = function (event) {
+		console.log('DrawingWebSocket: Message received from the server');
+		readDrawWebsocketMessage(JSON.parse(event.data));
+	};
+	drawingWebSocket.onclose = function (event) {
+		console.log(`DrawingWebSocket: Connection closed, code=${event.code} reason=${event.reason}`);
+		// room has moved, draw on another node
+		if (drawingPendingMigration) {
+			drawingPendingMigration = false;
+			connectDrawing();
+			return;
+		}
+		// connection lost or server is full, try to reconnect
+		const isRetryable = event.code === Util.RECONNECT.CLOSED_ABNORMALLY || event.code === Util.RECONNECT.TRY_AGAIN_LATER;
+		if (isRetryable && drawingReconnectAttempts < Util.RECONNECT.MAX_ATTEMPTS) {
+			drawingReconnectAttempts++;
+			setTimeout(connectDrawing, Util.RECONNECT.DELAY_MILLIS);
+			return;
+		}
+		redirectBackToLoginPage();
+	};
+	drawingWebSocket.onerror = function (event) {
+		// onclose decides whether to reconnect or not
+		console.log('DrawingWebSocket: WebSocket error observed:', event);
+	};
+}
 
 // **** DRAWING **** 
 
@@ -235,8 +268,42 @@ function readDrawWebsocketMessage(msg) {
 		console.error('DrawingWebSocket: [readDrawWebsocketMessage] recieved invalid websocket message');
 		return;
 	}
+	// spectators receive strokes in batches
+	if (Array.isArray(msg)) {
+		msg.forEach(onDraw);
+		return;
+	}
+	if (msg.probe != null) {
+		acknowledgeProbe(msg);
+		return;
+	}
 	onDraw(msg);
 }
+
+/**
+ * Sends latency probe while the user is drawing, other players acknowledge it.
+ */
+function sendProbe() {
+	if (UserInfo.IS_DRAWING === true && drawingWebSocket.readyState === drawingWebSocket.OPEN) {
+		probeCounter++;
+		drawingWebSocket.send(JSON.stringify({ probe: `${probeCounter}`, clientSent: Date.now() }));
+	}
+}
+
+/**
+ * Acknowledges probe after the next frame has been rendered.
+ * @param {object} probe probe stamped by the server
+ */
+function acknowledgeProbe(probe) {
+	requestAnimationFrame(() => {
+		// server recognizes acknowledgement by its first field
+		const ack = Object.assign({ probeAck: probe.probe }, probe, { rendered: Date.now() });
+		delete ack.probe;
+		if (drawingWebSocket.readyState === drawingWebSocket.OPEN) {
+			drawingWebSocket.send(JSON.stringify(ack));
+		}
+	});
+}
 /**
  * @param {Cartesian} from 
  * @param {Cartesian} to 
@@ -2,7 +2,10 @@
  * @author Piotr Kołodziejski
  */
 
-function login() {
+/**
+ * @param {string} role optional role of the user, e.g. Util.ROLE.SPECTATOR
+ */
+function login(role) {
     const username = document.getElementById('username').value;
     const password = document.getElementById('password').value;
     const credentials = new Credentials(username, password);
@@ -23,7 +26,11 @@ function login() {
         .then(data => {
             if (data != null) {
                 window.localStorage.setItem(Util.TOKEN_HEADER, data);
-                window.location.href = Util.ROUTE.Login2Game;
+                if (role) {
+                    window.location.href = `${Util.ROUTE.Login2Game}?role=${role}`;
+                } else {
+                    quickJoin(data);
+                }
             } else {
                 console.error('Token was null.')
             }
@@ -32,4 +39,32 @@ function login() {
             console.error('Error:', error);
         });
 
+}
+
+/**
+ * Asks the server for a room with a free seat, then enters the game there.
+ * Word pack may be given in page URL, e.g. ?pack=en.
+ * @param {string} token JWT of the user
+ */
+function quickJoin(token) {
+    const pack = new URLSearchParams(window.location.search).get('pack');
+    const url = buildApiUrl(Util.API.REST, Util.IP.LOCAL, 8080, Util.APP_NAME, Util.RES.MATCH);
+    fetch(url, {
+        method: 'POST',
+        headers: {
+            'Content-Type': 'application/json',
+            [Util.TOKEN_HEADER]: token
+        },
+        body: JSON.stringify({ pack: pack })
+    })
+        .then((response) => response.json())
+        .then(match => {
+            window.sessionStorage.setItem(Util.ROOM_HEADER, match.roomId);
+            window.sessionStorage.setItem(Util.NODE_HEADER, match.address);
+            window.sessionStorage.removeItem(Util.RESUME_TOKEN_HEADER);
+            window.location.href = Util.ROUTE.Login2Game;
+        })
+        .catch((error) => {
+            console.error('Error:', error);
+        });
 }
\ No newline at end of file
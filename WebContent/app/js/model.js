@@ -39,7 +39,12 @@ const MsgType = {
     NEXT_WORD: 'NEXT_WORD', // will also clean canvas
     CLEAN_CANVAS: 'CLEAN_CANVAS',
     CLEAN_WORD_TO_GUESS: 'CLEAN_WORD_TO_GUESS',
-    SCOREBOARD: 'SCOREBOARD'
+    SCOREBOARD: 'SCOREBOARD',
+    HINT: 'HINT',
+    RESUME_TOKEN: 'RESUME_TOKEN',
+    RECONNECT: 'RECONNECT',
+    QUEUE_POSITION: 'QUEUE_POSITION',
+    CHAT_HISTORY: 'CHAT_HISTORY'
 }
 class Credentials {
     constructor(username, password) {
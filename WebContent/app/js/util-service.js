@@ -11,7 +11,8 @@ const Util = {
     RES: {
         DRAW: 'draw',
         CHAT: 'chat',
-        LOGIN: 'rest/login'
+        LOGIN: 'rest/login',
+        MATCH: 'rest/match'
     },
     IP: {
         LOCAL: 'localhost'
@@ -20,7 +21,23 @@ const Util = {
         Login2Game: 'app/html/game.html',
         Game2Login: '../../index.html'
     },
-    TOKEN_HEADER: 'X-Token'
+    ROLE: {
+        SPECTATOR: 'spectator'
+    },
+    TOKEN_HEADER: 'X-Token',
+    RESUME_TOKEN_HEADER: 'X-Resume-Token',
+    NODE_HEADER: 'X-Node',
+    ROOM_HEADER: 'X-Room',
+    RECONNECT: {
+        CLOSED_ABNORMALLY: 1006,
+        TRY_AGAIN_LATER: 1013,
+        MAX_ATTEMPTS: 5,
+        DELAY_MILLIS: 2000
+    },
+    PROBE: {
+        PARAM: 'probe',
+        INTERVAL_MILLIS: 2000
+    }
 };
 
 // Current state of a user
@@ -39,4 +56,48 @@ const UserInfo = {
  */
 function buildApiUrl(api, ip, port, app, endpoint) {
     return `${api}://${ip}:${port}/${app}/${endpoint}`;
+}
+
+/**
+ * Appends resume token to websocket URL.
+ * @param {string} url 
+ * @param {string} resumeToken may be null
+ */
+function withResumeToken(url, resumeToken) {
+    if (resumeToken == null) {
+        return url;
+    }
+    return `${url}${url.includes('?') ? '&' : '?'}resume=${encodeURIComponent(resumeToken)}`;
+}
+
+/**
+ * Address of the server node the game is played on. Node changes when the room
+ * moves to another node.
+ * @returns {{ip: string, port: number}}
+ */
+function nodeAddress() {
+    const node = window.sessionStorage.getItem(Util.NODE_HEADER);
+    const colon = node == null ? -1 : node.lastIndexOf(':');
+    if (colon < 0) {
+        return { ip: Util.IP.LOCAL, port: 8080 };
+    }
+    return { ip: node.substring(0, colon), port: Number(node.substring(colon + 1)) };
+}
+
+/**
+ * Passes room chosen by matchmaking (or given in page URL) and role of the user
+ * (e.g. spectator) from page URL to websocket URL.
+ */
+function sessionQuery() {
+    const params = new URLSearchParams(window.location.search);
+    const query = new URLSearchParams();
+    const room = window.sessionStorage.getItem(Util.ROOM_HEADER) || params.get('room');
+    if (room) {
+        query.set('room', room);
+    }
+    if (params.get('role') === Util.ROLE.SPECTATOR) {
+        query.set('role', Util.ROLE.SPECTATOR);
+    }
+    const text = query.toString();
+    return text ? `?${text}` : '';
 }
\ No newline at end of file
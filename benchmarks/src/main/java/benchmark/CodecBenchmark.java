@@ -0,0 +1,105 @@
+package benchmark;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.ChatMessage;
+import model.ChatMessage.MsgType;
+import model.Score;
+
+/**
+ * Serialization of the messages of chat and draw channels. Chat messages and
+ * scoreboards are serialized with JSON-B like in ChatWebsocket, strokes
+ * (DrawingMessage of the client) are read and written with JSON-P like in
+ * DrawWebsocket and ThumbnailRenderer.
+ *
+ * @author Maciej Szabaa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+	static final String STROKE = "{\"from\":{\"x\":120.5,\"y\":88},\"to\":{\"x\":124,\"y\":91.25},"
+			+ "\"size\":{\"x\":800,\"y\":480},\"color\":\"rgba(12,34,56,1)\"}";
+
+	Jsonb jsonb;
+	ChatMessage chatMessage;
+	String chatMessageJson;
+	List<Score> scoreboard;
+	String scoreboardJson;
+
+	@Setup
+	public void createMessages() {
+		jsonb = JsonbBuilder.create();
+		chatMessage = new ChatMessage(MsgType.MESSAGE, "player3: czy to jest hulajnoga?");
+		chatMessageJson = jsonb.toJson(chatMessage);
+		scoreboard = new ArrayList<>();
+		for (int i = 0; i != 8; i++)
+			scoreboard.add(new Score("player" + i, i == 0, i * 3));
+		scoreboardJson = jsonb.toJson(scoreboard);
+	}
+
+	@TearDown
+	public void closeJsonb() throws Exception {
+		jsonb.close();
+	}
+
+	@Benchmark
+	public String encodeChatMessage() {
+		return jsonb.toJson(chatMessage);
+	}
+
+	@Benchmark
+	public ChatMessage decodeChatMessage() {
+		return jsonb.fromJson(chatMessageJson, ChatMessage.class);
+	}
+
+	@Benchmark
+	public String encodeScoreboard() {
+		return jsonb.toJson(scoreboard);
+	}
+
+	@Benchmark
+	public Score[] decodeScoreboard() {
+		return jsonb.fromJson(scoreboardJson, Score[].class);
+	}
+
+	@Benchmark
+	public JsonObject decodeStroke() {
+		try (JsonReader reader = Json.createReader(new StringReader(STROKE))) {
+			return reader.readObject();
+		}
+	}
+
+	@Benchmark
+	public String encodeStroke() {
+		return Json.createObjectBuilder().add("from", Json.createObjectBuilder().add("x", 120.5).add("y", 88))
+				.add("to", Json.createObjectBuilder().add("x", 124).add("y", 91.25))
+				.add("size", Json.createObjectBuilder().add("x", 800).add("y", 480)).add("color", "rgba(12,34,56,1)")
+				.build().toString();
+	}
+}
@@ -0,0 +1,179 @@
+package benchmark;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.websocket.RemoteEndpoint;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.logging.SessionLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import db.AppDictionaryService;
+import db.Database;
+import db.UserService;
+import game.RoomMailboxes;
+import model.ChatMessage;
+import model.ChatMessage.MsgType;
+import rest.LoginRest;
+import service.HandlerExecutors;
+
+/**
+ * Handler work in platform and virtual threads mode (see HandlerExecutors).
+ * Logins go through LoginRest, with its database queries and PBKDF2, into an
+ * in-memory H2 database behind a pool of 10 connections, like the standalone
+ * server; they are started by a pool of 200 threads, like the pool of Jetty.
+ * Chat messages of the rooms are sent from RoomMailboxes to 8 sessions of each
+ * room; sessions are mocks whose sendText blocks for a millisecond, like a
+ * client which reads slowly. Each fork runs one mode, virtual mode needs Java
+ * 21 or newer. Virtual mode stays experimental until its results on Java 21
+ * have been compared with platform mode.
+ *
+ * @author Piotr Koodziejski
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+	static final int SERVER_THREADS = 200;
+	static final int DB_CONNECTIONS = 10;
+	static final int LOGINS = 32;
+	static final int ROOMS = 256;
+	static final int ROOM_PLAYERS = 8;
+	static final long SEND_MILLIS = 1;
+
+	@Param({ "platform", "virtual" })
+	String mode;
+
+	HikariDataSource dataSource;
+	ExecutorService serverThreads;
+	LoginRest loginRest;
+	RoomMailboxes roomMailboxes;
+	Jsonb jsonb;
+	List<RemoteEndpoint.Basic> remotes;
+	AtomicInteger failedLogins = new AtomicInteger();
+
+	@Setup
+	public void startNode() throws Exception {
+		// Mode is chosen when HandlerExecutors is created
+		System.setProperty(HandlerExecutors.MODE_PROPERTY, mode);
+		if (HandlerExecutors.getInstance().isVirtual() != HandlerExecutors.VIRTUAL_MODE.equals(mode))
+			throw new IllegalStateException("Virtual threads mode needs Java 21 or newer.");
+
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:kalambury;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+		config.setUsername("sa");
+		config.setMaximumPoolSize(DB_CONNECTIONS);
+		dataSource = new HikariDataSource(config);
+		Database.useDataSource(dataSource);
+		// Tables are created with the first EntityManager, SQL is not logged
+		Database.getInstance().em().unwrap(JpaEntityManager.class).getServerSession()
+				.setLogLevel(SessionLog.WARNING);
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement insert = connection
+						.prepareStatement("INSERT INTO sownik_aplikacji (idad, klucz, warto) VALUES (?, ?, ?)")) {
+			String[][] values = { { "SECRET", LoginBenchmark.SECRET }, { "OWNERS", LoginBenchmark.OWNERS },
+					{ "EXP_TIME_MILLIS", "86400000" } };
+			for (int i = 0; i != values.length; i++) {
+				insert.setLong(1, i + 1);
+				insert.setString(2, values[i][0]);
+				insert.setString(3, values[i][1]);
+				insert.executeUpdate();
+			}
+		}
+		AppDictionaryService.getInstance().preload();
+		for (int i = 0; i != LOGINS; i++)
+			UserService.getInstance().createNewUser("player" + i, "haslo123");
+		Database.release();
+
+		serverThreads = HandlerExecutors.newPlatformPool("server", SERVER_THREADS);
+		loginRest = new LoginRest();
+		roomMailboxes = RoomMailboxes.getInstance();
+		jsonb = JsonbBuilder.create();
+		remotes = new ArrayList<>();
+		for (int i = 0; i != ROOM_PLAYERS; i++) {
+			remotes.add((RemoteEndpoint.Basic) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { RemoteEndpoint.Basic.class }, (proxy, method, args) -> {
+						if (method.getName().equals("sendText"))
+							Thread.sleep(SEND_MILLIS);
+						return null;
+					}));
+		}
+	}
+
+	@TearDown
+	public void stopNode() throws Exception {
+		if (failedLogins.get() != 0)
+			System.out.println("ExecutionModeBenchmark: " + failedLogins.get() + " logins failed.");
+		serverThreads.shutdown();
+		jsonb.close();
+		dataSource.close();
+	}
+
+	@Benchmark
+	public void login() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(LOGINS);
+		AsyncResponse response = (AsyncResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { AsyncResponse.class }, (proxy, method, args) -> {
+					if (method.getName().equals("resume")) {
+						if (((Response) args[0]).getStatus() != 200)
+							failedLogins.incrementAndGet();
+						done.countDown();
+					}
+					return method.getReturnType() == boolean.class ? true : null;
+				});
+		for (int i = 0; i != LOGINS; i++) {
+			String json = "{\"username\":\"player" + i + "\",\"password\":\"haslo123\"}";
+			serverThreads.execute(() -> loginRest.login(json, response));
+		}
+		done.await();
+	}
+
+	@Benchmark
+	public void broadcastChatMessages() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(ROOMS);
+		for (int i = 0; i != ROOMS; i++) {
+			String roomId = "room" + i;
+			roomMailboxes.execute(roomId, () -> {
+				String messageJson = jsonb.toJson(new ChatMessage(MsgType.MESSAGE, "player3: czy to jest hulajnoga?"));
+				try {
+					for (RemoteEndpoint.Basic remote : remotes)
+						remote.sendText(messageJson);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				done.countDown();
+			});
+		}
+		done.await();
+	}
+}
@@ -0,0 +1,114 @@
+package benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.Session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.ChatMessage;
+import model.ChatMessage.MsgType;
+
+/**
+ * Broadcast of a chat message to the sessions of a node, the way room events
+ * are sent in ChatWebsocket: message is serialized once, then sent to every
+ * session of the room. Sessions are mocks which only count sent characters, so
+ * the benchmark measures the cost of the server side of the fan-out. Rooms
+ * have 8 players, so a quarter of the sessions belongs to the room.
+ *
+ * @author Piotr Koodziejski
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+
+	static final int ROOM_PLAYERS = 8;
+
+	@Param({ "32", "256", "2048" })
+	int sessions;
+
+	Jsonb jsonb;
+	List<Endpoint> endpoints;
+	long sentCharacters;
+
+	/**
+	 * Session of a mocked endpoint with its room.
+	 */
+	static final class Endpoint {
+
+		final String roomId;
+		final Session session;
+
+		Endpoint(String roomId, Session session) {
+			this.roomId = roomId;
+			this.session = session;
+		}
+	}
+
+	@Setup
+	public void openSessions() {
+		jsonb = JsonbBuilder.create();
+		endpoints = new ArrayList<>();
+		RemoteEndpoint.Basic remote = (RemoteEndpoint.Basic) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { RemoteEndpoint.Basic.class }, (proxy, method, args) -> {
+					if (method.getName().equals("sendText"))
+						sentCharacters += ((String) args[0]).length();
+					return null;
+				});
+		for (int i = 0; i != sessions; i++) {
+			String id = String.valueOf(i);
+			Session session = (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { Session.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+						case "getBasicRemote":
+							return remote;
+						case "getId":
+							return id;
+						case "isOpen":
+							return true;
+						default:
+							return null;
+						}
+					});
+			// Every fourth room is the one receiving the message
+			endpoints.add(new Endpoint("room" + (i / ROOM_PLAYERS) % 4, session));
+		}
+	}
+
+	@TearDown
+	public void closeJsonb() throws Exception {
+		jsonb.close();
+	}
+
+	@Benchmark
+	public long broadcastChatMessage() throws Exception {
+		String messageJson = jsonb.toJson(new ChatMessage(MsgType.MESSAGE, "player3: czy to jest hulajnoga?"));
+		for (Endpoint endpoint : endpoints) {
+			if (!endpoint.roomId.equals("room0"))
+				continue;
+			endpoint.session.getBasicRemote().sendText(messageJson);
+		}
+		return sentCharacters;
+	}
+}
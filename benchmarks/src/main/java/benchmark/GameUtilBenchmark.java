@@ -0,0 +1,77 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.ActiveUser;
+import model.Score;
+import model.User;
+import service.GameUtil;
+
+/**
+ * Game logic run for every chat message and every change of the scoreboard.
+ *
+ * @author Piotr Koodziejski
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameUtilBenchmark {
+
+	@Param({ "8", "64" })
+	int players;
+
+	GameUtil gameUtil = GameUtil.getInstance();
+	List<ActiveUser> activeUsers;
+
+	@Setup
+	public void createPlayers() {
+		activeUsers = new ArrayList<>();
+		for (int i = 0; i != players; i++) {
+			User user = new User((long) i);
+			user.setUsername("player" + i);
+			user.setPoints(i * 3);
+			ActiveUser activeUser = new ActiveUser();
+			activeUser.setUser(user);
+			activeUser.setDrawing(i == 0);
+			activeUser.setChatSessionId("session" + i);
+			activeUsers.add(activeUser);
+		}
+	}
+
+	@Benchmark
+	public boolean compareWordsGuessed() {
+		return gameUtil.compareWords("  Hulajnoga ", "hulajnoga");
+	}
+
+	@Benchmark
+	public boolean compareWordsMissed() {
+		return gameUtil.compareWords("czy to jest rower?", "hulajnoga");
+	}
+
+	@Benchmark
+	public List<Score> produceScoreboard() {
+		return gameUtil.produceScoreboard(activeUsers);
+	}
+
+	@Benchmark
+	public String produceHint() {
+		return gameUtil.produceHint("hulajnoga elektryczna", 3);
+	}
+}
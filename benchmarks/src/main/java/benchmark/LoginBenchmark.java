@@ -0,0 +1,61 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import exception.GameIntegrityViolationException;
+import service.LoginUtil;
+
+/**
+ * Authentication: JWT is verified on every websocket connection, created on
+ * every login; PBKDF2 is computed on every login.
+ *
+ * @author Piotr Koodziejski
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginBenchmark {
+
+	static final String SECRET = "2bb80d537b1da3e38bd30361aa855686bde0eacd7162fef6a25fe97bf527a25b";
+	static final String OWNERS = "Piotr Koodziejski, Maciej Szabaa";
+
+	LoginUtil loginUtil = LoginUtil.getInstance();
+	String token;
+	byte[] salt;
+
+	@Setup
+	public void createToken() {
+		token = loginUtil.createJwt("player1", SECRET, 86400000, OWNERS);
+		salt = loginUtil.salt();
+	}
+
+	@Benchmark
+	public String createJwt() {
+		return loginUtil.createJwt("player1", SECRET, 86400000, OWNERS);
+	}
+
+	@Benchmark
+	public boolean verifyJwt() {
+		return loginUtil.verifyJwt(token, SECRET, OWNERS);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public byte[] pbkdf2() throws GameIntegrityViolationException {
+		return loginUtil.pbkdf2("haslo123", salt);
+	}
+}
@@ -0,0 +1,113 @@
+package loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.websocket.ContainerProvider;
+import javax.websocket.WebSocketContainer;
+
+/**
+ * Load test of one node. Fills rooms with simulated players (see Player) who
+ * draw, chat and guess words (see Room), then reports join latency, latency
+ * from guessing the word to the next round, stroke propagation and errors (see
+ * Report). Options are given as name=value arguments, e.g. java -jar
+ * target/loadtest.jar rooms=50 seconds=120. Players are created on the first
+ * run, their names start with the prefix, so the same prefix reuses the
+ * accounts.
+ *
+ * @author Piotr Koodziejski
+ */
+public class LoadTest {
+
+	private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+	static {
+		DEFAULTS.put("url", "http://localhost:8080/KalamburyPro");
+		DEFAULTS.put("rooms", "4");
+		DEFAULTS.put("players", "8");
+		DEFAULTS.put("seconds", "60");
+		DEFAULTS.put("rampSeconds", "10");
+		DEFAULTS.put("strokesPerSecond", "20");
+		DEFAULTS.put("lineMillis", "3000");
+		DEFAULTS.put("guessAfterMillis", "15000");
+		DEFAULTS.put("probeMillis", "2000");
+		DEFAULTS.put("pack", "pl");
+		DEFAULTS.put("prefix", "lt");
+		DEFAULTS.put("password", "loadtest");
+	}
+	private static final int LOGIN_THREADS = 8;
+	private static final long PROGRESS_SECONDS = 10;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0 || !DEFAULTS.containsKey(arg.substring(0, equals))) {
+				System.err.println("Unknown option " + arg + ", options with defaults: " + DEFAULTS);
+				System.exit(2);
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		System.out.println("Load test: " + options);
+
+		String url = options.get("url").replaceAll("/+$", "");
+		int roomCount = Integer.parseInt(options.get("rooms"));
+		int playersPerRoom = Integer.parseInt(options.get("players"));
+		long seconds = Long.parseLong(options.get("seconds"));
+		long rampMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("rampSeconds")));
+		long tickMillis = Math.max(1, 1000 / Integer.parseInt(options.get("strokesPerSecond")));
+		long lineMillis = Long.parseLong(options.get("lineMillis"));
+		long guessAfterMillis = Long.parseLong(options.get("guessAfterMillis"));
+		long probeMillis = Long.parseLong(options.get("probeMillis"));
+
+		Report report = new Report();
+		Jsonb jsonb = JsonbBuilder.create();
+		WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+		List<Room> rooms = new ArrayList<>();
+		List<Player> players = new ArrayList<>();
+		for (int r = 0; r != roomCount; r++) {
+			Room room = new Room(options.get("pack") + "_" + options.get("prefix") + r, tickMillis, guessAfterMillis,
+					lineMillis, probeMillis);
+			for (int p = 0; p != playersPerRoom; p++) {
+				Player player = new Player(url, options.get("prefix") + "r" + r + "p" + p, options.get("password"),
+						room, report, jsonb);
+				room.getPlayers().add(player);
+				players.add(player);
+			}
+			rooms.add(room);
+		}
+
+		ExecutorService logins = Executors.newFixedThreadPool(LOGIN_THREADS);
+		ScheduledExecutorService scheduler = Executors
+				.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+		// Players join evenly during the ramp, rooms fill one after another
+		for (int i = 0; i != players.size(); i++) {
+			Player player = players.get(i);
+			scheduler.schedule(() -> logins.execute(() -> player.join(container)), rampMillis * i / players.size(),
+					TimeUnit.MILLISECONDS);
+		}
+		for (Room room : rooms)
+			scheduler.scheduleAtFixedRate(room::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+		long start = System.nanoTime();
+		scheduler.scheduleAtFixedRate(() -> System.out.println(report.progress(
+				TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), players.size())), PROGRESS_SECONDS,
+				PROGRESS_SECONDS, TimeUnit.SECONDS);
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+		scheduler.shutdownNow();
+		logins.shutdownNow();
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		players.forEach(Player::leave);
+		report.print(System.out, elapsed, players.size());
+		jsonb.close();
+		// Threads of the websocket client keep running
+		System.exit(0);
+	}
+}
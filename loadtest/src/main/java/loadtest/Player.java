@@ -0,0 +1,338 @@
+package loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.bind.Jsonb;
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.DeploymentException;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+
+import model.ChatMessage;
+import model.ChatMessage.MsgType;
+import model.Credentials;
+
+/**
+ * Simulated player. Logs in through the login REST endpoint, then opens chat
+ * and draw sessions of his room and sends the token on both of them, like the
+ * game page does. While he is drawing he sends strokes and probes, otherwise he
+ * chats and acknowledges probes of the drawing user.
+ *
+ * @author Piotr Koodziejski
+ */
+public class Player {
+
+	private static final String PROBE_PREFIX = "{\"probe\":";
+	private static final int CANVAS_WIDTH = 800;
+	private static final int CANVAS_HEIGHT = 480;
+
+	private final String baseUrl;
+	private final String username;
+	private final String password;
+	private final Room room;
+	private final Report report;
+	private final Jsonb jsonb;
+
+	private volatile Session chat;
+	private volatile Session draw;
+	private volatile boolean isSeated;
+	private volatile boolean isDrawing;
+	private volatile boolean isStopping;
+	private volatile long joinStart;
+	/**
+	 * Time the word has been sent at, 0 if the player has not guessed it
+	 */
+	private volatile long guessSent;
+	private long probes;
+	private double x = CANVAS_WIDTH / 2.0;
+	private double y = CANVAS_HEIGHT / 2.0;
+
+	/**
+	 * @param baseUrl  address of the application, e.g.
+	 *                 http://localhost:8080/KalamburyPro
+	 * @param username name of the player
+	 * @param password password of the player, account is created on first login
+	 * @param room     room joined by the player
+	 * @param report   results of the test
+	 * @param jsonb    JSON-B shared by the players
+	 */
+	Player(String baseUrl, String username, String password, Room room, Report report, Jsonb jsonb) {
+		this.baseUrl = baseUrl;
+		this.username = username;
+		this.password = password;
+		this.room = room;
+		this.report = report;
+		this.jsonb = jsonb;
+	}
+
+	boolean isSeated() {
+		return isSeated;
+	}
+
+	boolean isDrawing() {
+		return isDrawing;
+	}
+
+	/**
+	 * Logs in and opens chat and draw sessions. Failures are counted in the
+	 * report.
+	 *
+	 * @param container websocket client
+	 */
+	void join(WebSocketContainer container) {
+		String token;
+		try {
+			token = login();
+		} catch (IOException e) {
+			report.error("login: " + e.getMessage());
+			return;
+		}
+		String query = "?room=" + room.getRoomId();
+		try {
+			joinStart = System.nanoTime();
+			chat = connect(container, "chat" + query, token, this::onChatMessage);
+		} catch (DeploymentException | IOException e) {
+			report.error("chat connect: " + e.getClass().getSimpleName());
+			return;
+		}
+		try {
+			draw = connect(container, "draw" + query, token, this::onDrawMessage);
+		} catch (DeploymentException | IOException e) {
+			report.error("draw connect: " + e.getClass().getSimpleName());
+		}
+	}
+
+	/**
+	 * Closes sessions of the player.
+	 */
+	void leave() {
+		isStopping = true;
+		close(draw);
+		close(chat);
+	}
+
+	/**
+	 * @return token of the player
+	 * @throws IOException request failed or server has answered with an error
+	 */
+	private String login() throws IOException {
+		long start = System.nanoTime();
+		report.operations.increment();
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/rest/login").openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Content-Type", "application/json");
+			connection.setDoOutput(true);
+			Credentials credentials = new Credentials();
+			credentials.setUsername(username);
+			credentials.setPassword(password);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(jsonb.toJson(credentials).getBytes(StandardCharsets.UTF_8));
+			}
+			int status = connection.getResponseCode();
+			if (status != HttpURLConnection.HTTP_OK)
+				throw new IOException("HTTP " + status);
+			String token = read(connection.getInputStream()).trim();
+			report.logins.record(micros(start));
+			return token;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private Session connect(WebSocketContainer container, String path, String token,
+			MessageHandler.Whole<String> handler) throws DeploymentException, IOException {
+		report.operations.increment();
+		URI uri = URI.create(baseUrl.replaceFirst("^http", "ws") + "/" + path);
+		return container.connectToServer(new Endpoint() {
+
+			@Override
+			public void onOpen(Session session, EndpointConfig config) {
+				session.addMessageHandler(String.class, handler);
+				send(session, token);
+			}
+
+			@Override
+			public void onClose(Session session, CloseReason closeReason) {
+				if (!isStopping && closeReason.getCloseCode() != CloseCodes.NORMAL_CLOSURE)
+					report.error(path.substring(0, 4) + " closed: " + closeReason.getCloseCode().getCode() + " "
+							+ closeReason.getReasonPhrase());
+				if (session == chat)
+					isSeated = false;
+			}
+
+			@Override
+			public void onError(Session session, Throwable thr) {
+				if (!isStopping)
+					report.error(path.substring(0, 4) + " error: " + thr.getClass().getSimpleName());
+			}
+		}, uri);
+	}
+
+	/**
+	 * Follows the game: the first scoreboard means the player has got a seat, word
+	 * to guess means he draws in the new round.
+	 *
+	 * @param message serialized ChatMessage
+	 */
+	private void onChatMessage(String message) {
+		ChatMessage msg = jsonb.fromJson(message, ChatMessage.class);
+		String type = msg.getMsgType();
+		if (MsgType.SCOREBOARD.getValue().equals(type)) {
+			if (!isSeated) {
+				isSeated = true;
+				report.seated.increment();
+				report.joins.record(micros(joinStart));
+			}
+		} else if (MsgType.WORD_TO_GUESS.getValue().equals(type)) {
+			// Player who has guessed the word draws in the next round
+			long sent = guessSent;
+			guessSent = 0;
+			if (sent != 0)
+				report.guessToTransition.record(micros(sent));
+			isDrawing = true;
+			room.newRound(msg.getMsgContent());
+		} else if (MsgType.CLEAN_WORD_TO_GUESS.getValue().equals(type)) {
+			isDrawing = false;
+		} else if (MsgType.YOU_GUESSED_IT.getValue().equals(type)) {
+			report.roundsWon.increment();
+		} else if (MsgType.QUEUE_POSITION.getValue().equals(type)) {
+			report.queued.increment();
+		} else if (MsgType.MESSAGE.getValue().equals(type)) {
+			report.linesReceived.increment();
+		}
+	}
+
+	/**
+	 * Counts strokes and acknowledges probes like the game page does after
+	 * drawing them.
+	 *
+	 * @param message stroke, batch of strokes or probe
+	 */
+	private void onDrawMessage(String message) {
+		if (!message.startsWith(PROBE_PREFIX)) {
+			report.strokesReceived.increment();
+			return;
+		}
+		long now = System.currentTimeMillis();
+		try (JsonReader reader = Json.createReader(new StringReader(message))) {
+			JsonObject probe = reader.readObject();
+			long clientSent = probe.getJsonNumber("clientSent").longValue();
+			// Probes are sent by players of this process, so both times come from
+			// the same clock
+			report.strokePropagation.record(TimeUnit.MILLISECONDS.toMicros(now - clientSent));
+			send(draw, Json.createObjectBuilder().add("probeAck", probe.getString("probe"))
+					.add("clientSent", clientSent).add("serverReceived", probe.getJsonNumber("serverReceived"))
+					.add("serverSent", probe.getJsonNumber("serverSent")).add("rendered", now).build().toString());
+		} catch (JsonException | ClassCastException | NullPointerException e) {
+			report.error("malformed probe");
+		}
+	}
+
+	/**
+	 * Sends next piece of a random line drawn on the canvas.
+	 */
+	void sendStroke() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		double fromX = x;
+		double fromY = y;
+		x = Math.max(0, Math.min(CANVAS_WIDTH, x + random.nextDouble(-12, 12)));
+		y = Math.max(0, Math.min(CANVAS_HEIGHT, y + random.nextDouble(-12, 12)));
+		String stroke = Json.createObjectBuilder().add("from", point(fromX, fromY)).add("to", point(x, y))
+				.add("size", Json.createObjectBuilder().add("x", CANVAS_WIDTH).add("y", CANVAS_HEIGHT))
+				.add("color", "rgba(0,0,0,1)").build().toString();
+		if (send(draw, stroke))
+			report.strokesSent.increment();
+	}
+
+	/**
+	 * Sends probe stamped with current time.
+	 */
+	void sendProbe() {
+		send(draw, Json.createObjectBuilder().add("probe", username + "-" + ++probes)
+				.add("clientSent", System.currentTimeMillis()).build().toString());
+	}
+
+	/**
+	 * Sends chat line.
+	 *
+	 * @param line      text of the line
+	 * @param isTheWord true if the line is the word to guess
+	 */
+	void sendLine(String line, boolean isTheWord) {
+		if (isTheWord)
+			guessSent = System.nanoTime();
+		if (send(chat, jsonb.toJson(new ChatMessage(MsgType.MESSAGE, line))))
+			report.linesSent.increment();
+	}
+
+	/**
+	 * @param session session of the player, may be null
+	 * @param text    message
+	 * @return true if the message has been sent
+	 */
+	private boolean send(Session session, String text) {
+		if (session == null || !session.isOpen())
+			return false;
+		report.operations.increment();
+		// Sending on one session is not allowed from many threads at once
+		synchronized (session) {
+			try {
+				session.getBasicRemote().sendText(text);
+				return true;
+			} catch (IOException | IllegalStateException e) {
+				if (!isStopping)
+					report.error("send: " + e.getClass().getSimpleName());
+				return false;
+			}
+		}
+	}
+
+	private static void close(Session session) {
+		if (session == null)
+			return;
+		try {
+			session.close();
+		} catch (IOException e) {
+			// Closed already
+		}
+	}
+
+	private static JsonObjectBuilder point(double x, double y) {
+		return Json.createObjectBuilder().add("x", Math.round(x * 100) / 100.0).add("y", Math.round(y * 100) / 100.0);
+	}
+
+	private static String read(InputStream in) throws IOException {
+		try (InputStream input = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = input.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static long micros(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+	}
+}
@@ -0,0 +1,107 @@
+package loadtest;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import service.Histogram;
+
+/**
+ * Results of the load test collected by all the simulated players. Durations
+ * are recorded in microseconds.
+ *
+ * @author Piotr Koodziejski
+ */
+public class Report {
+
+	/**
+	 * Time of the login request
+	 */
+	final Histogram logins = new Histogram();
+	/**
+	 * Time from opening chat session to receiving the first scoreboard, i.e. to
+	 * getting a seat in the room
+	 */
+	final Histogram joins = new Histogram();
+	/**
+	 * Time from sending the word to receiving the word to draw in the next round
+	 */
+	final Histogram guessToTransition = new Histogram();
+	/**
+	 * Time from sending a probe by the drawing user to receiving it by another
+	 * player
+	 */
+	final Histogram strokePropagation = new Histogram();
+
+	final LongAdder operations = new LongAdder();
+	final LongAdder errors = new LongAdder();
+	final LongAdder seated = new LongAdder();
+	final LongAdder queued = new LongAdder();
+	final LongAdder strokesSent = new LongAdder();
+	final LongAdder strokesReceived = new LongAdder();
+	final LongAdder linesSent = new LongAdder();
+	final LongAdder linesReceived = new LongAdder();
+	final LongAdder roundsWon = new LongAdder();
+	private final Map<String, LongAdder> errorsByKind = new ConcurrentHashMap<>();
+
+	/**
+	 * Counts failed operation or unexpected event.
+	 *
+	 * @param kind kind of the error, e.g. "login" or "close 1011"
+	 */
+	void error(String kind) {
+		errors.increment();
+		errorsByKind.computeIfAbsent(kind, k -> new LongAdder()).increment();
+	}
+
+	/**
+	 * @param elapsedSeconds time from the start of the test
+	 * @param players        number of simulated players
+	 * @return one line summary of the test so far
+	 */
+	String progress(long elapsedSeconds, int players) {
+		return String.format("%4ds seated %d/%d, strokes %d sent %d received, lines %d sent %d received, "
+				+ "rounds won %d, errors %d", elapsedSeconds, seated.sum(), players, strokesSent.sum(),
+				strokesReceived.sum(), linesSent.sum(), linesReceived.sum(), roundsWon.sum(), errors.sum());
+	}
+
+	/**
+	 * Prints final results.
+	 *
+	 * @param out     stream to print to
+	 * @param seconds duration of the test
+	 * @param players number of simulated players
+	 */
+	void print(PrintStream out, double seconds, int players) {
+		out.println();
+		out.println("Players seated:        " + seated.sum() + "/" + players + " (queued " + queued.sum() + ")");
+		out.printf("Strokes:               %d sent, %d received (%.0f/s)%n", strokesSent.sum(), strokesReceived.sum(),
+				strokesReceived.sum() / seconds);
+		out.printf("Chat lines:            %d sent, %d received (%.0f/s)%n", linesSent.sum(), linesReceived.sum(),
+				linesReceived.sum() / seconds);
+		out.println("Rounds won:            " + roundsWon.sum());
+		out.println();
+		out.println("Latency [ms]              count      p50      p90      p99    p99.9");
+		printLatency(out, "login", logins);
+		printLatency(out, "join", joins);
+		printLatency(out, "guess to transition", guessToTransition);
+		printLatency(out, "stroke propagation", strokePropagation);
+		out.println();
+		long errorCount = errors.sum();
+		long operationCount = Math.max(1, operations.sum());
+		out.printf("Errors:                %d of %d operations (%.3f%%)%n", errorCount, operations.sum(),
+				100.0 * errorCount / operationCount);
+		new TreeMap<>(errorsByKind).forEach((kind, count) -> out.println("  " + kind + ": " + count.sum()));
+	}
+
+	private static void printLatency(PrintStream out, String name, Histogram histogram) {
+		out.printf("%-22s %8d %8.1f %8.1f %8.1f %8.1f%n", name, histogram.count(), millis(histogram, 0.5),
+				millis(histogram, 0.9), millis(histogram, 0.99), millis(histogram, 0.999));
+	}
+
+	private static double millis(Histogram histogram, double quantile) {
+		return histogram.percentile(quantile) / 1000.0;
+	}
+}
@@ -0,0 +1,93 @@
+package loadtest;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Room of simulated players. Room is ticked by the scheduler of the test:
+ * drawing user sends a stroke on every tick and a probe from time to time,
+ * other players chat wrong guesses, and after a while one of them sends the
+ * word to guess. Word is taken from the drawing user, players of the test
+ * share it like friends sitting in one room.
+ *
+ * @author Piotr Koodziejski
+ */
+public class Room {
+
+	private final String roomId;
+	private final List<Player> players = new CopyOnWriteArrayList<>();
+	private final long guessAfterNanos;
+	private final double lineProbability;
+	private final int probeTicks;
+
+	private volatile String word;
+	private volatile long roundStart;
+	private long tick;
+
+	/**
+	 * @param roomId              id of the room
+	 * @param tickMillis          time between ticks, i.e. between strokes
+	 * @param guessAfterMillis    time from the start of the round to guessing the
+	 *                            word
+	 * @param lineMillis          average time between wrong guesses of a player
+	 * @param probeIntervalMillis time between probes of the drawing user
+	 */
+	Room(String roomId, long tickMillis, long guessAfterMillis, long lineMillis, long probeIntervalMillis) {
+		this.roomId = roomId;
+		this.guessAfterNanos = TimeUnit.MILLISECONDS.toNanos(guessAfterMillis);
+		this.lineProbability = Math.min(1.0, (double) tickMillis / lineMillis);
+		this.probeTicks = (int) Math.max(1, probeIntervalMillis / tickMillis);
+	}
+
+	String getRoomId() {
+		return roomId;
+	}
+
+	List<Player> getPlayers() {
+		return players;
+	}
+
+	/**
+	 * Starts the round of given word, called when drawing user receives it.
+	 *
+	 * @param word word to draw
+	 */
+	void newRound(String word) {
+		roundStart = System.nanoTime();
+		this.word = word;
+	}
+
+	/**
+	 * Simulates players of the room for one tick. Ticks of a room are never run
+	 * concurrently.
+	 */
+	void tick() {
+		tick++;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		String current = word;
+		boolean isGuessTime = current != null && System.nanoTime() - roundStart >= guessAfterNanos;
+		Player guesser = null;
+		int guessers = 0;
+		for (Player player : players) {
+			if (!player.isSeated())
+				continue;
+			if (player.isDrawing()) {
+				player.sendStroke();
+				if (tick % probeTicks == 0)
+					player.sendProbe();
+				continue;
+			}
+			// Reservoir sampling of the player who guesses the word
+			if (isGuessTime && random.nextInt(++guessers) == 0)
+				guesser = player;
+			if (random.nextDouble() < lineProbability)
+				player.sendLine("czy to " + Long.toString(random.nextLong(), 36) + "?", false);
+		}
+		if (guesser != null) {
+			word = null;
+			guesser.sendLine(current, true);
+		}
+	}
+}
@@ -0,0 +1,7 @@
+set PROJECT="C:\programs\eclipse-workspace-kalambury\KalamburyPro"
+cd %PROJECT%
+call mvn clean install
+cd loadtest
+call mvn clean package
+java -jar target\loadtest.jar
+pause
\ No newline at end of file
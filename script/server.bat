@@ -0,0 +1,7 @@
+set PROJECT="C:\programs\eclipse-workspace-kalambury\KalamburyPro"
+cd %PROJECT%
+call mvn clean install
+cd server
+call mvn clean package
+java -jar target\server.jar
+pause
\ No newline at end of file
@@ -0,0 +1,124 @@
+package server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.DeploymentException;
+import javax.websocket.server.ServerContainer;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.DefaultServlet;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.component.AbstractLifeCycle.AbstractLifeCycleListener;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.websocket.jsr356.server.deploy.WebSocketServerContainerInitializer;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.servlet.ServletContainer;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import db.Database;
+import rest.RootRest;
+import websocket.ChatWebsocket;
+import websocket.DrawWebsocket;
+import websocket.RoomEventsListener;
+
+/**
+ * Runs the app on embedded Jetty instead of GlassFish domain: websocket
+ * endpoints, REST resources of RootRest and listeners are registered the way
+ * the application server discovers them, static files of WebContent are served
+ * from the jar. Database is reached through a pool created here, not through
+ * JNDI jdbc/PostgreSQL. Options are given as name=value arguments, e.g. java
+ * -jar target/server.jar port=8081 dbUrl=jdbc:postgresql://db:5432/kalambury.
+ * Jar built with profile h2 (mvn package -Ph2) also runs on H2 in PostgreSQL
+ * mode, e.g. dbUrl=jdbc:h2:./kalambury;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE
+ * dbUser=sa dbPassword=. Cluster options are JVM options like on GlassFish
+ * (see RoomRouter).
+ *
+ * @author Piotr Koodziejski
+ */
+public class StandaloneServer {
+
+	private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+	static {
+		DEFAULTS.put("port", "8080");
+		DEFAULTS.put("contextPath", "/KalamburyPro");
+		DEFAULTS.put("dbUrl", "jdbc:postgresql://localhost:5432/kalambury");
+		DEFAULTS.put("dbUser", "postgres");
+		DEFAULTS.put("dbPassword", "postgres");
+		DEFAULTS.put("dbPoolSize", "10");
+		// Directory of static files, e.g. WebContent to see changes without
+		// rebuilding the jar; files packed in the jar are served if empty
+		DEFAULTS.put("webContent", "");
+	}
+
+	public static void main(String[] args) throws Exception {
+		long start = System.nanoTime();
+		Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals < 0 || !DEFAULTS.containsKey(arg.substring(0, equals))) {
+				System.err.println("Unknown option " + arg + ", options with defaults: " + DEFAULTS);
+				System.exit(2);
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl(options.get("dbUrl"));
+		config.setUsername(options.get("dbUser"));
+		config.setPassword(options.get("dbPassword"));
+		config.setMaximumPoolSize(Integer.parseInt(options.get("dbPoolSize")));
+		config.setPoolName("kalambury");
+		// Pool is created even when database is down, the app reports errors later
+		config.setInitializationFailTimeout(-1);
+		config.setConnectionTimeout(TimeUnit.SECONDS.toMillis(5));
+		HikariDataSource dataSource = new HikariDataSource(config);
+		Database.useDataSource(dataSource);
+
+		Server server = new Server(Integer.parseInt(options.get("port")));
+		ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+		context.setContextPath(options.get("contextPath"));
+		String webContent = options.get("webContent");
+		context.setBaseResource(webContent.isEmpty() ? Resource.newClassPathResource("/webapp")
+				: Resource.newResource(webContent));
+		context.setWelcomeFiles(new String[] { "index.html" });
+
+		context.addEventListener(new RoomEventsListener());
+
+		// REST resources are found in the package of RootRest
+		ServletHolder rest = new ServletHolder("rest", new ServletContainer(
+				ResourceConfig.forApplicationClass(RootRest.class).packages(RootRest.class.getPackage().getName())));
+		// Login and other resources resume AsyncResponse
+		rest.setAsyncSupported(true);
+		context.addServlet(rest, "/rest/*");
+
+		ServletHolder files = new ServletHolder("files", DefaultServlet.class);
+		files.setInitParameter("dirAllowed", "false");
+		context.addServlet(files, "/");
+
+		WebSocketServerContainerInitializer.configure(context, (servletContext, container) -> addEndpoints(container));
+
+		server.setHandler(context);
+		server.setStopAtShutdown(true);
+		server.addLifeCycleListener(new AbstractLifeCycleListener() {
+			@Override
+			public void lifeCycleStopped(LifeCycle event) {
+				dataSource.close();
+			}
+		});
+		server.start();
+		System.out.println("StandaloneServer: started in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+				+ " ms, http://localhost:" + options.get("port") + options.get("contextPath") + "/");
+		server.join();
+	}
+
+	private static void addEndpoints(ServerContainer container) throws DeploymentException {
+		container.addEndpoint(ChatWebsocket.class);
+		container.addEndpoint(DrawWebsocket.class);
+	}
+}
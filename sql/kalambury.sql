@@ -18,6 +18,10 @@ drop table public.sequence;
 delete from public.użytkownicy_aktywni 
 where idau='2';
 
+-- Aktywni użytkownicy z wygasłą obecnością (usuwani również przy starcie aplikacji)
+select * from public.użytkownicy_aktywni
+where ważne_do is null or ważne_do < extract(epoch from now()) * 1000;
+
 -- Zahaszowane hasła
 select public.użytkownicy.nazwa, encode(public.hasła.hash, 'escape') as hash, encode(public.hasła.sól, 'escape') as sól 
 from public.hasła
@@ -44,4 +48,48 @@ insert into public.słownik_aplikacji (klucz, wartość)
 values ('NUM_OF_RETRY', '5');
 
 insert into public.słownik_aplikacji (klucz, wartość)
-values ('RETRY_FREQ_IN_MILLIS', '1000');
\ No newline at end of file
+values ('RETRY_FREQ_IN_MILLIS', '1000');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('SPECTATOR_TICK_IN_MILLIS', '250');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('ROUND_TIME_IN_MILLIS', '90000');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('IDLE_TIME_IN_MILLIS', '300000');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('RESUME_WINDOW_IN_MILLIS', '15000');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('HEARTBEAT_IN_MILLIS', '10000');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('SNAPSHOT_IN_MILLIS', '5000');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('THUMBNAIL_IN_MILLIS', '3000');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('MAX_SESSIONS', '5000');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('MAX_ROOM_PLAYERS', '8');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('MAX_WAITING_PLAYERS', '20');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('CHAT_LINES_PER_SECOND', '3');
+
+insert into public.słownik_aplikacji (klucz, wartość)
+values ('DRAW_BYTES_PER_SECOND', '32768');
+
+-- Dzienne i tygodniowe rankingi czytane z podsumowań dziennika punktów
+create index if not exists podsumowania_punktów_okres on public.podsumowania_punktów (okres, punkty desc);
+
+-- Ranking bieżącego tygodnia
+select nazwa, punkty from public.podsumowania_punktów
+where okres = 'W' || to_char(now(), 'IYYY-IW')
+order by punkty desc, nazwa;
\ No newline at end of file
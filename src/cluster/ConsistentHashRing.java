@@ -0,0 +1,88 @@
+package cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Assigns keys (room ids) to nodes. Every node is placed on the ring many times
+ * (virtual nodes), key belongs to the first node found clockwise from its hash.
+ * When a node joins or leaves, only keys of its neighbours move. Reads do not
+ * lock, ring is replaced as a whole when nodes change.
+ *
+ * @author Piotr Koodziejski
+ */
+public class ConsistentHashRing {
+
+	private final int virtualNodes;
+	private volatile NavigableMap<Long, String> ring = Collections.unmodifiableNavigableMap(new TreeMap<>());
+
+	/**
+	 * @param virtualNodes number of places of each node on the ring
+	 */
+	public ConsistentHashRing(int virtualNodes) {
+		if (virtualNodes <= 0)
+			throw new IllegalArgumentException("Number of virtual nodes must be greater than 0.");
+		this.virtualNodes = virtualNodes;
+	}
+
+	/**
+	 * @param nodeId node joining the ring
+	 */
+	public synchronized void add(String nodeId) {
+		TreeMap<Long, String> changed = new TreeMap<>(ring);
+		for (int i = 0; i != virtualNodes; i++)
+			changed.put(hash(nodeId + "#" + i), nodeId);
+		ring = Collections.unmodifiableNavigableMap(changed);
+	}
+
+	/**
+	 * @param nodeId node leaving the ring
+	 */
+	public synchronized void remove(String nodeId) {
+		TreeMap<Long, String> changed = new TreeMap<>(ring);
+		changed.values().removeIf(nodeId::equals);
+		ring = Collections.unmodifiableNavigableMap(changed);
+	}
+
+	/**
+	 * @param key e.g. room id
+	 * @return node owning given key, null if ring is empty
+	 */
+	public String owner(String key) {
+		NavigableMap<Long, String> current = ring;
+		if (current.isEmpty())
+			return null;
+		Map.Entry<Long, String> entry = current.ceilingEntry(hash(key));
+		return entry != null ? entry.getValue() : current.firstEntry().getValue();
+	}
+
+	/**
+	 * @return nodes on the ring
+	 */
+	public Set<String> nodes() {
+		return Collections.unmodifiableSet(new TreeSet<>(ring.values()));
+	}
+
+	/**
+	 * @param value hashed value
+	 * @return first 8 bytes of MD5, evenly spread over the ring
+	 */
+	private static long hash(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+			long hash = 0;
+			for (int i = 0; i != 8; i++)
+				hash = (hash << 8) | (digest[i] & 0xff);
+			return hash;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 is not available.", e);
+		}
+	}
+}
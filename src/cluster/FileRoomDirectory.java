@@ -0,0 +1,225 @@
+package cluster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Room directory stored in a file shared by nodes running on one machine, meant
+ * for local tests with several processes. File contains id=host:port,heartbeat
+ * of running nodes. Changes are made under a file lock and the file is
+ * replaced atomically. A background thread renews the heartbeat of this node
+ * and reads the file again every REFRESH_IN_MILLIS, so other processes notice
+ * changes within that time and rooms are looked up without reading the file.
+ * Nodes without heartbeat for the node timeout (e.g. crashed without being
+ * drained) are ignored and removed with the next change.
+ *
+ * @author Piotr Koodziejski
+ */
+public class FileRoomDirectory implements RoomDirectory {
+
+	private static final long REFRESH_IN_MILLIS = 1000;
+	private static final long NODE_TIMEOUT_IN_MILLIS = 5000;
+
+	private final Path file;
+	private final Path lockFile;
+	private final String nodeId;
+	private final int virtualNodes;
+	private final long nodeTimeoutInMillis;
+	private final ScheduledExecutorService refresher;
+
+	private volatile Snapshot snapshot;
+	private String address;
+
+	/**
+	 * @param file         file shared by nodes, created if it does not exist
+	 * @param nodeId       id of this node, its heartbeat is renewed while it is
+	 *                     registered
+	 * @param virtualNodes number of places of each node on the ring
+	 */
+	public FileRoomDirectory(Path file, String nodeId, int virtualNodes) {
+		this(file, nodeId, virtualNodes, NODE_TIMEOUT_IN_MILLIS);
+	}
+
+	/**
+	 * @param file                file shared by nodes, created if it does not
+	 *                            exist
+	 * @param nodeId              id of this node, its heartbeat is renewed while
+	 *                            it is registered
+	 * @param virtualNodes        number of places of each node on the ring
+	 * @param nodeTimeoutInMillis time without heartbeat after which node is
+	 *                            considered dead
+	 */
+	public FileRoomDirectory(Path file, String nodeId, int virtualNodes, long nodeTimeoutInMillis) {
+		this.file = file;
+		this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+		this.nodeId = nodeId;
+		this.virtualNodes = virtualNodes;
+		this.nodeTimeoutInMillis = nodeTimeoutInMillis;
+		this.snapshot = new Snapshot(new HashMap<>(), System.currentTimeMillis(), nodeTimeoutInMillis, virtualNodes);
+		refresh();
+		refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "room-directory-" + nodeId);
+			t.setDaemon(true);
+			return t;
+		});
+		refresher.scheduleWithFixedDelay(this::renew, REFRESH_IN_MILLIS, REFRESH_IN_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void register(String nodeId, String address) {
+		update(nodes -> nodes.put(nodeId, address + "," + System.currentTimeMillis()));
+		if (this.nodeId.equals(nodeId))
+			setAddress(address);
+	}
+
+	@Override
+	public void unregister(String nodeId) {
+		if (this.nodeId.equals(nodeId))
+			setAddress(null);
+		update(nodes -> nodes.remove(nodeId));
+	}
+
+	@Override
+	public Map<String, String> nodes() {
+		return snapshot.nodes;
+	}
+
+	@Override
+	public String ownerOf(String roomId) {
+		return snapshot.ring.owner(roomId);
+	}
+
+	private synchronized void setAddress(String address) {
+		this.address = address;
+	}
+
+	/**
+	 * Renews heartbeat of this node if it is registered, otherwise reads nodes
+	 * again. Runs on the background thread.
+	 */
+	private void renew() {
+		try {
+			synchronized (this) {
+				if (address != null)
+					update(nodes -> nodes.put(nodeId, address + "," + System.currentTimeMillis()));
+				else
+					refresh();
+			}
+		} catch (RuntimeException e) {
+			System.out.println("FileRoomDirectory: unable to update " + file + ", using previous nodes.");
+		}
+	}
+
+	/**
+	 * Reads nodes from the file, keeps previous ones when it cannot be read.
+	 */
+	private synchronized void refresh() {
+		try {
+			snapshot = new Snapshot(read(), System.currentTimeMillis(), nodeTimeoutInMillis, virtualNodes);
+		} catch (IOException e) {
+			System.out.println("FileRoomDirectory: unable to read " + file + ", using previous nodes.");
+		}
+	}
+
+	/**
+	 * Changes nodes under file lock, so changes of other processes are not lost.
+	 * Dead nodes are removed.
+	 *
+	 * @param change change of nodes read from the file
+	 */
+	private synchronized void update(Consumer<Map<String, String>> change) {
+		try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			// Released when the channel is closed
+			channel.lock();
+			long now = System.currentTimeMillis();
+			Map<String, String> nodes = read();
+			nodes.values().removeIf(value -> now - heartbeat(value) > nodeTimeoutInMillis);
+			change.accept(nodes);
+			write(nodes);
+			snapshot = new Snapshot(nodes, now, nodeTimeoutInMillis, virtualNodes);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to update room directory " + file, e);
+		}
+	}
+
+	private Map<String, String> read() throws IOException {
+		Map<String, String> nodes = new HashMap<>();
+		if (!Files.exists(file))
+			return nodes;
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+		for (String nodeId : properties.stringPropertyNames())
+			nodes.put(nodeId, properties.getProperty(nodeId));
+		return nodes;
+	}
+
+	private void write(Map<String, String> nodes) throws IOException {
+		Properties properties = new Properties();
+		properties.putAll(nodes);
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			properties.store(out, "Running nodes of KalamburyPro: id=host:port,heartbeat");
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @param value host:port,heartbeat
+	 * @return time of the last heartbeat, 0 if it is missing
+	 */
+	private static long heartbeat(String value) {
+		int comma = value.lastIndexOf(',');
+		try {
+			return comma < 0 ? 0 : Long.parseLong(value.substring(comma + 1));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @param value host:port,heartbeat
+	 * @return host:port
+	 */
+	private static String nodeAddress(String value) {
+		int comma = value.lastIndexOf(',');
+		return comma < 0 ? value : value.substring(0, comma);
+	}
+
+	/**
+	 * Live nodes read from the file at once, together with their ring.
+	 */
+	private static final class Snapshot {
+
+		private final Map<String, String> nodes;
+		private final ConsistentHashRing ring;
+
+		private Snapshot(Map<String, String> values, long readAt, long nodeTimeoutInMillis, int virtualNodes) {
+			Map<String, String> live = new HashMap<>();
+			for (Map.Entry<String, String> entry : values.entrySet()) {
+				if (readAt - heartbeat(entry.getValue()) <= nodeTimeoutInMillis)
+					live.put(entry.getKey(), nodeAddress(entry.getValue()));
+			}
+			this.nodes = Collections.unmodifiableMap(live);
+			this.ring = new ConsistentHashRing(virtualNodes);
+			for (String nodeId : live.keySet())
+				ring.add(nodeId);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package cluster;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bus connecting nodes running in the same JVM. Events are delivered on the
+ * calling thread. Single node server uses it with a network of one node.
+ *
+ * @author Piotr Koodziejski
+ */
+public class InJvmRoomBus implements RoomBus {
+
+	/**
+	 * Nodes which can reach each other.
+	 */
+	public static class Network {
+
+		private final Map<String, InJvmRoomBus> nodes = new ConcurrentHashMap<>();
+	}
+
+	private final String nodeId;
+	private final Network network;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param nodeId  id of this node
+	 * @param network nodes which can reach each other
+	 */
+	public InJvmRoomBus(String nodeId, Network network) {
+		this.nodeId = nodeId;
+		this.network = network;
+		if (network.nodes.putIfAbsent(nodeId, this) != null)
+			throw new IllegalArgumentException("Node " + nodeId + " is already connected.");
+	}
+
+	@Override
+	public String nodeId() {
+		return nodeId;
+	}
+
+	@Override
+	public Set<String> nodes() {
+		return network.nodes.keySet();
+	}
+
+	@Override
+	public void subscribe(Listener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void publish(RoomEvent event) {
+		for (InJvmRoomBus node : network.nodes.values())
+			node.deliver(event);
+	}
+
+	@Override
+	public void send(String nodeId, RoomEvent event) {
+		InJvmRoomBus node = network.nodes.get(nodeId);
+		if (node == null) {
+			System.out.println("InJvmRoomBus: " + event + " dropped, unknown node " + nodeId);
+			return;
+		}
+		node.deliver(event);
+	}
+
+	@Override
+	public void close() {
+		network.nodes.remove(nodeId, this);
+	}
+
+	private void deliver(RoomEvent event) {
+		for (Listener listener : listeners) {
+			try {
+				listener.onEvent(event);
+			} catch (RuntimeException e) {
+				System.err.println("InJvmRoomBus: " + nodeId + ": listener failed for " + event);
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package cluster;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Room directory kept in memory of one node. Nodes learn about each other from
+ * events of the room bus (see RoomRouter).
+ *
+ * @author Piotr Koodziejski
+ */
+public class InMemoryRoomDirectory implements RoomDirectory {
+
+	private final ConsistentHashRing ring;
+	private final Map<String, String> addresses = new ConcurrentHashMap<>();
+
+	/**
+	 * @param virtualNodes number of places of each node on the ring
+	 */
+	public InMemoryRoomDirectory(int virtualNodes) {
+		ring = new ConsistentHashRing(virtualNodes);
+	}
+
+	@Override
+	public synchronized void register(String nodeId, String address) {
+		if (addresses.put(nodeId, address) == null)
+			ring.add(nodeId);
+	}
+
+	@Override
+	public synchronized void unregister(String nodeId) {
+		if (addresses.remove(nodeId) != null)
+			ring.remove(nodeId);
+	}
+
+	@Override
+	public Map<String, String> nodes() {
+		return Collections.unmodifiableMap(new HashMap<>(addresses));
+	}
+
+	@Override
+	public String ownerOf(String roomId) {
+		return ring.owner(roomId);
+	}
+}
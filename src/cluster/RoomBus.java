@@ -0,0 +1,59 @@
+package cluster;
+
+import java.util.Set;
+
+/**
+ * Passes room events between nodes running the game. Events sent from one node
+ * to another are delivered in the order they were sent.
+ *
+ * @author Piotr Koodziejski
+ */
+public interface RoomBus extends AutoCloseable {
+
+	/**
+	 * Receives events delivered to this node.
+	 */
+	interface Listener {
+
+		/**
+		 * @param event delivered event
+		 */
+		void onEvent(RoomEvent event);
+	}
+
+	/**
+	 * @return id of this node
+	 */
+	String nodeId();
+
+	/**
+	 * @return ids of all the nodes connected by the bus, including this one
+	 */
+	Set<String> nodes();
+
+	/**
+	 * @param listener receives events delivered to this node
+	 */
+	void subscribe(Listener listener);
+
+	/**
+	 * Delivers event to all the nodes, including this one.
+	 *
+	 * @param event event
+	 */
+	void publish(RoomEvent event);
+
+	/**
+	 * Delivers event to one node.
+	 *
+	 * @param nodeId id of the node, may be this node
+	 * @param event  event
+	 */
+	void send(String nodeId, RoomEvent event);
+
+	/**
+	 * Disconnects this node from the bus.
+	 */
+	@Override
+	void close();
+}
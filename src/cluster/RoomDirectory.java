@@ -0,0 +1,48 @@
+package cluster;
+
+import java.util.Map;
+
+/**
+ * Knows which nodes are running and which of them owns which room. Rooms are
+ * assigned to nodes by consistent hashing with virtual nodes, so when a node
+ * joins or leaves only some rooms change their owner.
+ *
+ * @author Piotr Koodziejski
+ */
+public interface RoomDirectory {
+
+	/**
+	 * Adds running node. Registering node again updates its address.
+	 *
+	 * @param nodeId  id of the node
+	 * @param address host:port players use to connect to the node
+	 */
+	void register(String nodeId, String address);
+
+	/**
+	 * Removes node, its rooms are taken over by other nodes.
+	 *
+	 * @param nodeId id of the node
+	 */
+	void unregister(String nodeId);
+
+	/**
+	 * @return addresses of running nodes by their ids
+	 */
+	Map<String, String> nodes();
+
+	/**
+	 * @param roomId room
+	 * @return id of the node owning the room, null if no node is running
+	 */
+	String ownerOf(String roomId);
+
+	/**
+	 * @param nodeId id of the node
+	 * @return host:port players use to connect to the node, null if node is not
+	 *         running
+	 */
+	default String addressOf(String nodeId) {
+		return nodes().get(nodeId);
+	}
+}
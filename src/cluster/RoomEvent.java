@@ -0,0 +1,200 @@
+package cluster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Event of a room passed between nodes by RoomBus. Events delivered to players
+ * carry serialized ChatMessage (or stroke) as payload; events handled by the
+ * owner of the room carry input of a player.
+ *
+ * @author Piotr Koodziejski
+ */
+public class RoomEvent {
+
+	/**
+	 * Type of the event decides who handles it.
+	 */
+	public enum Type {
+		/**
+		 * Message for all the players except seatId
+		 */
+		PLAYERS,
+		/**
+		 * Chat message for all the players except seatId and for spectators
+		 */
+		CHAT,
+		/**
+		 * Chat line for all the players except seatId and for spectators, kept in
+		 * the chat history of the room
+		 */
+		CHAT_LINE,
+		/**
+		 * Scoreboard for all the players
+		 */
+		SCOREBOARD,
+		/**
+		 * Scoreboard after round change, for players and spectators
+		 */
+		ROUND_SCOREBOARD,
+		/**
+		 * Message for the player with seatId only
+		 */
+		DIRECT,
+		/**
+		 * Canvas has been cleaned, for all the players and spectators
+		 */
+		CANVAS_CLEANED,
+		/**
+		 * Stroke for all the drawing boards except the one of seatId
+		 */
+		STROKE,
+		/**
+		 * Message of a player, handled by the owner of the room
+		 */
+		PLAYER_MESSAGE,
+		/**
+		 * Player has taken a seat, handled by the owner of the room
+		 */
+		PLAYER_JOINED,
+		/**
+		 * Player has left, payload tells if he was drawing; handled by the owner of
+		 * the room
+		 */
+		PLAYER_LEFT,
+		/**
+		 * Node has started, payload contains its address
+		 */
+		NODE_JOINED,
+		/**
+		 * Answer to NODE_JOINED, payload contains address of the node
+		 */
+		NODE_PRESENT,
+		/**
+		 * Node has been drained and stopped
+		 */
+		NODE_LEFT,
+		/**
+		 * State of the room for its new owner
+		 */
+		ROOM_HANDOFF,
+		/**
+		 * Seats to be held by the new owner for players who are going to reconnect
+		 */
+		SEAT_HANDOFF,
+		/**
+		 * Summary of the room for the lobby, published by its owner
+		 */
+		ROOM_SUMMARY
+	}
+
+	private final Type type;
+	private final String roomId;
+	private final String origin;
+	private final String seatId;
+	private final String username;
+	private final String payload;
+
+	/**
+	 * @param type     type of the event
+	 * @param roomId   room
+	 * @param origin   id of the node which has created the event
+	 * @param seatId   seat the event is about, may be null
+	 * @param username player the event is about, may be null
+	 * @param payload  content of the event, may be null
+	 */
+	public RoomEvent(Type type, String roomId, String origin, String seatId, String username, String payload) {
+		this.type = type;
+		this.roomId = roomId;
+		this.origin = origin;
+		this.seatId = seatId;
+		this.username = username;
+		this.payload = payload;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getRoomId() {
+		return roomId;
+	}
+
+	public String getOrigin() {
+		return origin;
+	}
+
+	public String getSeatId() {
+		return seatId;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPayload() {
+		return payload;
+	}
+
+	/**
+	 * Writes event as a frame of binary stream.
+	 *
+	 * @param out stream
+	 * @throws IOException writing error
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeUTF(type.name());
+		out.writeUTF(roomId);
+		out.writeUTF(origin);
+		writeNullable(out, seatId);
+		writeNullable(out, username);
+		// Payload (e.g. stroke) may not fit into modified UTF-8 limit of 64 kB
+		if (payload == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads event written by writeTo.
+	 *
+	 * @param in stream
+	 * @return event
+	 * @throws IOException reading error or end of stream
+	 */
+	public static RoomEvent readFrom(DataInputStream in) throws IOException {
+		Type type = Type.valueOf(in.readUTF());
+		String roomId = in.readUTF();
+		String origin = in.readUTF();
+		String seatId = readNullable(in);
+		String username = readNullable(in);
+		int length = in.readInt();
+		String payload = null;
+		if (length >= 0) {
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			payload = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return new RoomEvent(type, roomId, origin, seatId, username, payload);
+	}
+
+	private static void writeNullable(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	@Override
+	public String toString() {
+		return type + "@" + roomId + " from " + origin;
+	}
+}
@@ -0,0 +1,371 @@
+package cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import cluster.RoomEvent.Type;
+
+/**
+ * Routes room events of this node. Every room is owned by one node, chosen by
+ * consistent hashing of the room id. Game logic of the room runs on its owner:
+ * input of players is forwarded to the owner, while messages for players are
+ * published to all the nodes, because players of one room may be connected to
+ * different nodes. Nodes are configured with JVM options, e.g.
+ * -Dkalambury.node=a -Dkalambury.peers=a=127.0.0.1:7101,b=127.0.0.1:7102;
+ * without peers the server is a single node and events do not leave the JVM.
+ * Running nodes are kept in a room directory, shared file given with
+ * -Dkalambury.directory or memory of this node. When a node joins, rooms it
+ * owns now are handed to it. When a node is stopped, it hands its rooms to
+ * other nodes and tells its players to reconnect there. It is a singleton and
+ * is meant to be injected as a field i.e. private RoomRouter roomRouter =
+ * RoomRouter.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class RoomRouter {
+
+	/**
+	 * JVM option containing id of this node
+	 */
+	public static final String NODE_PROPERTY = "kalambury.node";
+	/**
+	 * JVM option containing comma separated id=host:port of all the nodes
+	 */
+	public static final String PEERS_PROPERTY = "kalambury.peers";
+	/**
+	 * JVM option containing host:port players use to connect to this node
+	 */
+	public static final String ADDRESS_PROPERTY = "kalambury.address";
+	/**
+	 * JVM option containing path to the room directory file shared by the nodes
+	 */
+	public static final String DIRECTORY_PROPERTY = "kalambury.directory";
+
+	/**
+	 * Moves rooms of this node to other nodes.
+	 */
+	public interface Migrator {
+
+		/**
+		 * Sends state of the room to its new owner and stops game logic of the room
+		 * on this node.
+		 *
+		 * @param roomId       room
+		 * @param targetNodeId new owner of the room
+		 * @return completed when the state has been sent
+		 */
+		CompletableFuture<Void> handOff(String roomId, String targetNodeId);
+
+		/**
+		 * Tells players connected to this node to reconnect to owners of their rooms.
+		 *
+		 * @return completed when the players have been told
+		 */
+		CompletableFuture<Void> reconnectClients();
+	}
+
+	private static final String DEFAULT_NODE_ID = "local";
+	private static final String DEFAULT_ADDRESS = "localhost:8080";
+	// Events about nodes do not concern any room
+	private static final String NO_ROOM = "";
+	private static final int VIRTUAL_NODES = 128;
+	private static final long DRAIN_TIMEOUT_IN_MILLIS = 5000;
+
+	private String nodeId;
+	private String address;
+	private RoomBus bus;
+	private RoomDirectory directory;
+	private Map<Type, RoomBus.Listener> handlers = new ConcurrentHashMap<>();
+	private Set<String> runningRooms = ConcurrentHashMap.newKeySet();
+	private volatile Migrator migrator;
+
+	private static volatile RoomRouter instance;
+
+	private RoomRouter() {
+		nodeId = System.getProperty(NODE_PROPERTY, DEFAULT_NODE_ID);
+		address = System.getProperty(ADDRESS_PROPERTY, DEFAULT_ADDRESS);
+		Map<String, InetSocketAddress> peers = parsePeers(System.getProperty(PEERS_PROPERTY, ""));
+		if (!peers.isEmpty()) {
+			try {
+				bus = new TcpRoomBus(nodeId, peers);
+			} catch (IOException | IllegalArgumentException e) {
+				System.err.println("RoomRouter: unable to join nodes " + peers.keySet() + ", running as single node.");
+				e.printStackTrace();
+			}
+		}
+		if (bus == null)
+			bus = new InJvmRoomBus(nodeId, new InJvmRoomBus.Network());
+
+		String directoryFile = System.getProperty(DIRECTORY_PROPERTY, "");
+		directory = directoryFile.isEmpty() ? new InMemoryRoomDirectory(VIRTUAL_NODES)
+				: new FileRoomDirectory(Paths.get(directoryFile), nodeId, VIRTUAL_NODES);
+		setHandler(Type.NODE_JOINED, this::onNodeJoined);
+		setHandler(Type.NODE_PRESENT, e -> directory.register(e.getOrigin(), e.getPayload()));
+		setHandler(Type.NODE_LEFT, e -> directory.unregister(e.getOrigin()));
+		bus.subscribe(this::dispatch);
+		System.out.println("RoomRouter: node " + nodeId + " of " + bus.nodes());
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates RoomRouter object.
+	 *
+	 * @return instance of RoomRouter
+	 */
+	public static RoomRouter getInstance() {
+		if (instance == null) {
+			synchronized (RoomRouter.class) {
+				if (instance == null)
+					instance = new RoomRouter();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return id of this node
+	 */
+	public String nodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * @param roomId room
+	 * @return id of the node owning the room, this node before it has joined
+	 */
+	public String ownerOf(String roomId) {
+		String owner = directory.ownerOf(roomId);
+		return owner == null ? nodeId : owner;
+	}
+
+	/**
+	 * @return ids of running nodes, this node only before it has joined
+	 */
+	public Set<String> nodes() {
+		Set<String> nodes = new HashSet<>(directory.nodes().keySet());
+		if (nodes.isEmpty())
+			nodes.add(nodeId);
+		return nodes;
+	}
+
+	/**
+	 * @param nodeId id of the node
+	 * @return host:port players use to connect to the node, address of this node
+	 *         if the node is unknown
+	 */
+	public String addressOf(String nodeId) {
+		String nodeAddress = directory.addressOf(nodeId);
+		return nodeAddress == null ? address : nodeAddress;
+	}
+
+	/**
+	 * Sets the object moving rooms of this node to other nodes.
+	 *
+	 * @param migrator migrator, replaces previous one
+	 */
+	public void setMigrator(Migrator migrator) {
+		this.migrator = migrator;
+	}
+
+	/**
+	 * Marks room as running its game logic on this node, so it is handed off when
+	 * it gets another owner.
+	 *
+	 * @param roomId room
+	 */
+	public void markRunning(String roomId) {
+		runningRooms.add(roomId);
+	}
+
+	/**
+	 * Forgets room which is not running its game logic on this node anymore, e.g.
+	 * when the last player has left.
+	 *
+	 * @param roomId room
+	 */
+	public void unmarkRunning(String roomId) {
+		runningRooms.remove(roomId);
+	}
+
+	/**
+	 * @return rooms running their game logic on this node
+	 */
+	public Set<String> runningRooms() {
+		return new HashSet<>(runningRooms);
+	}
+
+	/**
+	 * Registers this node in the room directory and tells other nodes about it.
+	 * Should be called when handlers of room events have been set.
+	 */
+	public void join() {
+		directory.register(nodeId, address);
+		bus.publish(new RoomEvent(Type.NODE_JOINED, NO_ROOM, nodeId, null, null, address));
+	}
+
+	/**
+	 * Hands rooms running on this node to other nodes and tells players to
+	 * reconnect there. Waits at most DRAIN_TIMEOUT_IN_MILLIS. Does nothing when
+	 * this is the only node.
+	 */
+	public void drain() {
+		Migrator m = migrator;
+		if (m == null || directory.nodes().size() <= 1)
+			return;
+
+		directory.unregister(nodeId);
+		bus.publish(new RoomEvent(Type.NODE_LEFT, NO_ROOM, nodeId, null, null, null));
+		List<CompletableFuture<Void>> pending = handOffRooms(m);
+		pending.add(m.reconnectClients());
+		try {
+			CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get(DRAIN_TIMEOUT_IN_MILLIS,
+					TimeUnit.MILLISECONDS);
+			System.out.println("RoomRouter: node " + nodeId + " has been drained.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			System.err.println("RoomRouter: node " + nodeId + " has not been drained in time.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param roomId room
+	 * @return true if this node runs game logic of the room
+	 */
+	public boolean isOwner(String roomId) {
+		return nodeId.equals(ownerOf(roomId));
+	}
+
+	/**
+	 * Sets handler of events of given type delivered to this node.
+	 *
+	 * @param type    type of events
+	 * @param handler handler, replaces previous one
+	 */
+	public void setHandler(Type type, RoomBus.Listener handler) {
+		handlers.put(type, handler);
+	}
+
+	/**
+	 * Delivers event to all the nodes, including this one.
+	 *
+	 * @param type     type of the event
+	 * @param roomId   room
+	 * @param seatId   seat the event is about, may be null
+	 * @param username player the event is about, may be null
+	 * @param payload  content of the event
+	 */
+	public void publish(Type type, String roomId, String seatId, String username, String payload) {
+		bus.publish(new RoomEvent(type, roomId, nodeId, seatId, username, payload));
+	}
+
+	/**
+	 * Delivers event to the owner of the room, which may be this node.
+	 *
+	 * @param type     type of the event
+	 * @param roomId   room
+	 * @param seatId   seat the event is about, may be null
+	 * @param username player the event is about, may be null
+	 * @param payload  content of the event
+	 */
+	public void toOwner(Type type, String roomId, String seatId, String username, String payload) {
+		bus.send(ownerOf(roomId), new RoomEvent(type, roomId, nodeId, seatId, username, payload));
+	}
+
+	/**
+	 * Delivers event to given node, which may be this node.
+	 *
+	 * @param targetNodeId id of the node
+	 * @param type         type of the event
+	 * @param roomId       room
+	 * @param seatId       seat the event is about, may be null
+	 * @param username     player the event is about, may be null
+	 * @param payload      content of the event
+	 */
+	public void send(String targetNodeId, Type type, String roomId, String seatId, String username, String payload) {
+		bus.send(targetNodeId, new RoomEvent(type, roomId, nodeId, seatId, username, payload));
+	}
+
+	/**
+	 * Disconnects this node from other nodes.
+	 */
+	public void close() {
+		bus.close();
+	}
+
+	private void onNodeJoined(RoomEvent event) {
+		if (nodeId.equals(event.getOrigin()))
+			return;
+		directory.register(event.getOrigin(), event.getPayload());
+		bus.send(event.getOrigin(), new RoomEvent(Type.NODE_PRESENT, NO_ROOM, nodeId, null, null, address));
+		Migrator m = migrator;
+		if (m != null)
+			handOffRooms(m);
+	}
+
+	/**
+	 * Hands off running rooms which are not owned by this node anymore.
+	 *
+	 * @param m migrator
+	 * @return handoffs in progress
+	 */
+	private List<CompletableFuture<Void>> handOffRooms(Migrator m) {
+		List<CompletableFuture<Void>> pending = new ArrayList<>();
+		for (String roomId : runningRooms) {
+			String owner = ownerOf(roomId);
+			if (nodeId.equals(owner) || !runningRooms.remove(roomId))
+				continue;
+			System.out.println("RoomRouter: handing room " + roomId + " to node " + owner + ".");
+			pending.add(m.handOff(roomId, owner));
+		}
+		return pending;
+	}
+
+	private void dispatch(RoomEvent event) {
+		RoomBus.Listener handler = handlers.get(event.getType());
+		if (handler == null) {
+			System.out.println("RoomRouter: no handler for " + event);
+			return;
+		}
+		handler.onEvent(event);
+	}
+
+	/**
+	 * @param peers comma separated id=host:port
+	 * @return addresses of the nodes by their ids, empty if there are no peers
+	 */
+	private static Map<String, InetSocketAddress> parsePeers(String peers) {
+		Map<String, InetSocketAddress> addresses = new LinkedHashMap<>();
+		for (String peer : peers.split(",")) {
+			if (peer.trim().isEmpty())
+				continue;
+			String[] idAndAddress = peer.trim().split("=");
+			int colon = idAndAddress.length == 2 ? idAndAddress[1].lastIndexOf(':') : -1;
+			if (colon < 0) {
+				System.err.println("RoomRouter: invalid peer " + peer + ", expected id=host:port.");
+				continue;
+			}
+			String host = idAndAddress[1].substring(0, colon);
+			try {
+				int port = Integer.parseInt(idAndAddress[1].substring(colon + 1));
+				addresses.put(idAndAddress[0], new InetSocketAddress(host, port));
+			} catch (IllegalArgumentException e) {
+				// Port is not a number or is out of range
+				System.err.println("RoomRouter: invalid peer " + peer + ", expected id=host:port.");
+			}
+		}
+		return addresses;
+	}
+}
@@ -0,0 +1,301 @@
+package cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bus connecting nodes running in separate processes over TCP, meant for
+ * running several nodes on one machine (loopback addresses). Every node listens
+ * on its own address and opens one connection to each other node on first
+ * send, so events sent from one node to another keep their order. Sending only
+ * queues the event, every connection is written by its own thread, so a slow or
+ * dead node never stops the sender. Events which cannot be sent (node is down,
+ * or MAX_QUEUED_EVENTS are waiting for it) are dropped, connection is opened
+ * again with the next event after RECONNECT_IN_MILLIS.
+ *
+ * @author Piotr Koodziejski
+ */
+public class TcpRoomBus implements RoomBus {
+
+	private static final int CONNECT_TIMEOUT_IN_MILLIS = 1000;
+	private static final long RECONNECT_IN_MILLIS = 1000;
+	private static final int MAX_QUEUED_EVENTS = 10000;
+	private static final long CLOSE_TIMEOUT_IN_MILLIS = 3000;
+
+	private final String nodeId;
+	private final Map<String, Peer> peers = new HashMap<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private final ServerSocket serverSocket;
+	private final List<Socket> accepted = new CopyOnWriteArrayList<>();
+	private volatile boolean isClosed;
+
+	/**
+	 * Starts listening on the address of this node.
+	 *
+	 * @param nodeId    id of this node
+	 * @param addresses addresses of all the nodes, including this one
+	 * @throws IOException unable to listen on the address of this node
+	 */
+	public TcpRoomBus(String nodeId, Map<String, InetSocketAddress> addresses) throws IOException {
+		if (!addresses.containsKey(nodeId))
+			throw new IllegalArgumentException("Address of node " + nodeId + " is missing.");
+
+		this.nodeId = nodeId;
+		for (Map.Entry<String, InetSocketAddress> entry : addresses.entrySet()) {
+			if (!entry.getKey().equals(nodeId))
+				peers.put(entry.getKey(), new Peer(entry.getKey(), entry.getValue()));
+		}
+
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(addresses.get(nodeId));
+		Thread acceptor = new Thread(this::accept, "room-bus-accept-" + nodeId);
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	@Override
+	public String nodeId() {
+		return nodeId;
+	}
+
+	@Override
+	public Set<String> nodes() {
+		Set<String> nodes = new HashSet<>(peers.keySet());
+		nodes.add(nodeId);
+		return Collections.unmodifiableSet(nodes);
+	}
+
+	@Override
+	public void subscribe(Listener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void publish(RoomEvent event) {
+		for (Peer peer : peers.values())
+			peer.send(event);
+		deliver(event);
+	}
+
+	@Override
+	public void send(String nodeId, RoomEvent event) {
+		if (this.nodeId.equals(nodeId)) {
+			deliver(event);
+			return;
+		}
+		Peer peer = peers.get(nodeId);
+		if (peer == null) {
+			System.out.println("TcpRoomBus: " + event + " dropped, unknown node " + nodeId);
+			return;
+		}
+		peer.send(event);
+	}
+
+	@Override
+	public void close() {
+		isClosed = true;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			System.out.println("TcpRoomBus: " + nodeId + ": cannot close server socket.");
+		}
+		for (Socket socket : accepted)
+			closeQuietly(socket);
+		for (Peer peer : peers.values())
+			peer.disconnect();
+		// Events queued before closing (e.g. handoffs of drained rooms) are still sent
+		long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_IN_MILLIS;
+		try {
+			for (Peer peer : peers.values())
+				peer.writer.join(Math.max(1, deadline - System.currentTimeMillis()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Accepts connections of other nodes, each of them is read by its own thread.
+	 */
+	private void accept() {
+		while (!isClosed) {
+			try {
+				Socket socket = serverSocket.accept();
+				accepted.add(socket);
+				Thread reader = new Thread(() -> read(socket), "room-bus-read-" + nodeId);
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				if (!isClosed)
+					System.out.println("TcpRoomBus: " + nodeId + ": accept error.");
+			}
+		}
+	}
+
+	/**
+	 * Reads events from connection of other node until it is closed.
+	 *
+	 * @param socket accepted connection
+	 */
+	private void read(Socket socket) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+			while (!isClosed)
+				deliver(RoomEvent.readFrom(in));
+		} catch (EOFException e) {
+			// Other node has closed the connection
+		} catch (IOException e) {
+			if (!isClosed)
+				System.out.println("TcpRoomBus: " + nodeId + ": connection lost.");
+		} finally {
+			accepted.remove(socket);
+			closeQuietly(socket);
+		}
+	}
+
+	private void deliver(RoomEvent event) {
+		for (Listener listener : listeners) {
+			try {
+				listener.onEvent(event);
+			} catch (RuntimeException e) {
+				System.err.println("TcpRoomBus: " + nodeId + ": listener failed for " + event);
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Nothing more can be done
+		}
+	}
+
+	/**
+	 * Outgoing connection to other node, written by its own thread.
+	 */
+	private final class Peer {
+
+		private final String peerId;
+		private final InetSocketAddress address;
+		private final BlockingQueue<RoomEvent> queue = new ArrayBlockingQueue<>(MAX_QUEUED_EVENTS);
+		private final Thread writer;
+		// Used by the writer thread only
+		private Socket socket;
+		private DataOutputStream out;
+		private long reconnectAt;
+		private volatile boolean isOverflowing;
+
+		private Peer(String peerId, InetSocketAddress address) {
+			this.peerId = peerId;
+			this.address = address;
+			writer = new Thread(this::write, "room-bus-write-" + nodeId + "-" + peerId);
+			writer.setDaemon(true);
+			writer.start();
+		}
+
+		/**
+		 * Queues the event, never waits for the other node.
+		 *
+		 * @param event event to be sent
+		 */
+		private void send(RoomEvent event) {
+			if (isClosed)
+				return;
+			if (queue.offer(event)) {
+				isOverflowing = false;
+			} else if (!isOverflowing) {
+				// Printed once per overflow, not for every dropped event
+				isOverflowing = true;
+				System.out.println("TcpRoomBus: events dropped, node " + peerId + " is not keeping up.");
+			}
+		}
+
+		/**
+		 * Writes queued events until the bus is closed and nothing is queued,
+		 * everything queued at once is flushed together.
+		 */
+		private void write() {
+			List<RoomEvent> batch = new ArrayList<>();
+			while (true) {
+				RoomEvent first;
+				try {
+					first = isClosed ? queue.poll() : queue.take();
+				} catch (InterruptedException e) {
+					// Interrupted by closing the bus
+					first = queue.poll();
+				}
+				if (first == null)
+					break;
+				batch.add(first);
+				queue.drainTo(batch);
+				try {
+					if (socket == null)
+						connect();
+					for (RoomEvent event : batch)
+						event.writeTo(out);
+					out.flush();
+				} catch (IOException e) {
+					System.out.println("TcpRoomBus: " + batch.size() + " events dropped, node " + peerId
+							+ " is unreachable.");
+					closeSocket();
+				}
+				batch.clear();
+			}
+			closeSocket();
+		}
+
+		/**
+		 * @throws IOException node is unreachable, or it has been unreachable less
+		 *                     than RECONNECT_IN_MILLIS ago
+		 */
+		private void connect() throws IOException {
+			if (System.currentTimeMillis() < reconnectAt)
+				throw new IOException("Waiting before reconnecting.");
+			reconnectAt = System.currentTimeMillis() + RECONNECT_IN_MILLIS;
+			Socket connecting = new Socket();
+			try {
+				connecting.setTcpNoDelay(true);
+				connecting.connect(address, CONNECT_TIMEOUT_IN_MILLIS);
+				out = new DataOutputStream(new BufferedOutputStream(connecting.getOutputStream()));
+			} catch (IOException e) {
+				closeQuietly(connecting);
+				throw e;
+			}
+			socket = connecting;
+			reconnectAt = 0;
+		}
+
+		private void closeSocket() {
+			if (socket != null)
+				closeQuietly(socket);
+			socket = null;
+			out = null;
+		}
+
+		/**
+		 * Stops the writer thread once queued events are sent, then it closes the
+		 * connection.
+		 */
+		private void disconnect() {
+			writer.interrupt();
+		}
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Communication between nodes running the game: room events bus and ownership
+ * of rooms.
+ */
+package cluster;
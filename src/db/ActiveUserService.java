@@ -1,11 +1,14 @@
 package db;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
 import javax.persistence.EntityExistsException;
+import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
+import javax.persistence.Query;
 
 import exception.GameIntegrityViolationException;
 import exception.InvalidWordException;
@@ -26,8 +29,9 @@ public class ActiveUserService implements AutoCloseable {
 	private Database db = Database.getInstance();
 	private UserService userService = UserService.getInstance();
 	private GameUtil gameUtil = GameUtil.getInstance();
+	private PointsLedgerService pointsLedger = PointsLedgerService.getInstance();
 
-	private static ActiveUserService instance;
+	private static volatile ActiveUserService instance;
 
 	private ActiveUserService() {
 		this.db = Database.getInstance();
@@ -39,8 +43,12 @@ public class ActiveUserService implements AutoCloseable {
 	 * @return instance of ActiveUserService
 	 */
 	public static ActiveUserService getInstance() {
-		if (instance == null)
-			instance = new ActiveUserService();
+		if (instance == null) {
+			synchronized (ActiveUserService.class) {
+				if (instance == null)
+					instance = new ActiveUserService();
+			}
+		}
 		return instance;
 	}
 
@@ -70,11 +78,15 @@ public class ActiveUserService implements AutoCloseable {
 	/**
 	 * Saves active user in database.
 	 * 
+	 * @param roomId        room the user joins
 	 * @param username      User to be set as active
 	 * @param chatSessionId User's session id
+	 * @param leaseExpiry   time in milliseconds since epoch until which user is
+	 *                      present unless his lease is renewed
 	 * @throws GameIntegrityViolationException user does not exist or is not unique
 	 */
-	public void addActiveUser(String username, String chatSessionId) throws GameIntegrityViolationException {
+	public void addActiveUser(String roomId, String username, String chatSessionId, long leaseExpiry)
+			throws GameIntegrityViolationException {
 		User user = userService.getUserByUsername(username);
 
 		try {
@@ -86,6 +98,8 @@ public class ActiveUserService implements AutoCloseable {
 			activeUser.setChatSessionId(chatSessionId);
 			activeUser.setUser(user);
 			activeUser.setWord(null);
+			activeUser.setLeaseExpiry(leaseExpiry);
+			activeUser.setRoomId(roomId);
 
 			db.em().persist(activeUser);
 
@@ -100,41 +114,130 @@ public class ActiveUserService implements AutoCloseable {
 	 * Removes user with given session id from active users table in db.
 	 * 
 	 * @param sessionId User's session id
+	 * @return true if removed user was drawing, false otherwise or if user has
+	 *         already been removed
 	 */
-	public void removeActiveUser(String sessionId) {
+	public boolean removeActiveUser(String sessionId) {
 		ActiveUser user = null;
 		try {
 			user = getActiveUserBySessionId(sessionId);
 		} catch (GameIntegrityViolationException e) {
 			System.out.println("ActiveUserService: removeActiveUser: user already removed");
-			return;
+			return false;
 		}
 		System.out.println("ActiveUserService: removing user " + user.getUser().getUsername());
+		boolean wasDrawing = user.isDrawing();
 		db.em().getTransaction().begin();
 		db.em().remove(user);
 		db.em().getTransaction().commit();
+		return wasDrawing;
+	}
+
+	/**
+	 * Extends presence of users with given session ids. All the leases are renewed
+	 * with a single update, run by an EntityManager of its own, so it may be
+	 * called outside of the mailboxes of the rooms.
+	 *
+	 * @param sessionIds  session ids of present users
+	 * @param leaseExpiry new time in milliseconds since epoch until which users
+	 *                    are present
+	 */
+	public void renewLeases(Collection<String> sessionIds, long leaseExpiry) {
+		if (sessionIds.isEmpty())
+			return;
+
+		EntityManager em = db.newEntityManager();
+		try {
+			em.getTransaction().begin();
+			em.createQuery("UPDATE ActiveUser au SET au.leaseExpiry = :leaseExpiry WHERE au.chatSessionId IN :sessionIds")
+					.setParameter("leaseExpiry", leaseExpiry).setParameter("sessionIds", sessionIds).executeUpdate();
+			em.getTransaction().commit();
+		} finally {
+			if (em.getTransaction().isActive())
+				em.getTransaction().rollback();
+			em.close();
+		}
+	}
+
+	/**
+	 * Removes users whose lease has expired (e.g. server crashed or closing of the
+	 * session has never been noticed) with a single delete. Users without lease
+	 * are treated as expired.
+	 *
+	 * @param now current time in milliseconds since epoch
+	 * @return number of removed users
+	 */
+	public int removeExpiredLeases(long now) {
+		return deleteExpiredLeases(
+				"DELETE FROM ActiveUser au WHERE au.leaseExpiry IS NULL OR au.leaseExpiry < :now", null, now);
 	}
 
 	/**
-	 * Produces scoreboard for given list or users.
+	 * Removes users of given room whose lease has expired with a single delete.
+	 * Users without lease are treated as expired.
+	 *
+	 * @param roomId room to clean up
+	 * @param now    current time in milliseconds since epoch
+	 * @return number of removed users
+	 */
+	public int removeExpiredLeases(String roomId, long now) {
+		return deleteExpiredLeases(
+				"DELETE FROM ActiveUser au WHERE au.roomId = :roomId AND (au.leaseExpiry IS NULL OR au.leaseExpiry < :now)",
+				roomId, now);
+	}
+
+	/**
+	 * Runs bulk delete of expired leases with an EntityManager of its own. Bulk
+	 * delete bypasses persistence context, so it is closed afterwards instead of
+	 * clearing the one used by game logic.
+	 *
+	 * @param query  delete statement with :now and optional :roomId parameters
+	 * @param roomId room, null if query has no :roomId parameter
+	 * @param now    current time in milliseconds since epoch
+	 * @return number of removed users
+	 */
+	private int deleteExpiredLeases(String query, String roomId, long now) {
+		EntityManager em = db.newEntityManager();
+		try {
+			em.getTransaction().begin();
+			Query delete = em.createQuery(query).setParameter("now", now);
+			if (roomId != null)
+				delete.setParameter("roomId", roomId);
+			int removed = delete.executeUpdate();
+			em.getTransaction().commit();
+			return removed;
+		} finally {
+			if (em.getTransaction().isActive())
+				em.getTransaction().rollback();
+			em.close();
+		}
+	}
+
+	/**
+	 * Produces scoreboard for active users of given room.
 	 * 
+	 * @param roomId room
 	 * @return list of active users and their points
 	 */
-	public List<Score> produceScoreboardForActiveUsers() {
-		return gameUtil.produceScoreboard(getActiveUsers());
+	public List<Score> produceScoreboardForActiveUsers(String roomId) {
+		List<Score> scores = gameUtil.produceScoreboard(getActiveUsers(roomId));
+		// Points waiting for the next batch of the ledger are not in database yet
+		scores.forEach(score -> score.setPoints(score.getPoints() + pointsLedger.pendingPoints(score.getUsername())));
+		return scores;
 	}
 
 	/**
-	 * Checks if there is a drawing user among active users in db.
+	 * Checks if there is a drawing user among active users of given room in db.
 	 * 
+	 * @param roomId room
 	 * @return true is drawing user exists, false otherwise
 	 * @throws GameIntegrityViolationException if there is more than one drawing
 	 *                                         user
 	 */
-	public boolean doesDrawingUserExist() throws GameIntegrityViolationException {
+	public boolean doesDrawingUserExist(String roomId) throws GameIntegrityViolationException {
 		try {
-			db.em().createQuery("SELECT au FROM ActiveUser au WHERE au.isDrawing = true", ActiveUser.class)
-					.getSingleResult();
+			db.em().createQuery("SELECT au FROM ActiveUser au WHERE au.roomId = :roomId AND au.isDrawing = true",
+					ActiveUser.class).setParameter("roomId", roomId).getSingleResult();
 			return true;
 		} catch (NoResultException e) {
 			return false;
@@ -144,19 +247,21 @@ public class ActiveUserService implements AutoCloseable {
 	}
 
 	/**
-	 * Compares given word to the current word to guess stored in a db.
+	 * Compares given word to the current word to guess in given room stored in a
+	 * db.
 	 * 
-	 * @param word to be compared with current word to guess
+	 * @param roomId room
+	 * @param word   to be compared with current word to guess
 	 * @return true if words are equal after trim and to upper case, false otherwise
 	 * @throws GameIntegrityViolationException when there is zero or more than one
 	 *                                         drawing user
 	 */
-	public boolean hasWordBeenGuessed(String word) throws GameIntegrityViolationException {
+	public boolean hasWordBeenGuessed(String roomId, String word) throws GameIntegrityViolationException {
 
 		if (gameUtil.isWordInvalid(word))
 			return false;
 
-		String currentWord = getActiveDrawingUser().getWord();
+		String currentWord = getActiveDrawingUser(roomId).getWord();
 
 		try {
 			return gameUtil.compareWords(word, currentWord);
@@ -167,16 +272,19 @@ public class ActiveUserService implements AutoCloseable {
 	}
 
 	/**
-	 * Selects currently drawing user from db.
+	 * Selects currently drawing user of given room from db.
 	 * 
+	 * @param roomId room
 	 * @return active drawing user
 	 * @throws GameIntegrityViolationException when there is zero or more than one
 	 *                                         drawing user
 	 */
-	public ActiveUser getActiveDrawingUser() throws GameIntegrityViolationException {
+	public ActiveUser getActiveDrawingUser(String roomId) throws GameIntegrityViolationException {
 		try {
-			return db.em().createQuery("SELECT au FROM ActiveUser au WHERE au.isDrawing = true", ActiveUser.class)
-					.getSingleResult();
+			return db.em()
+					.createQuery("SELECT au FROM ActiveUser au WHERE au.roomId = :roomId AND au.isDrawing = true",
+							ActiveUser.class)
+					.setParameter("roomId", roomId).getSingleResult();
 		} catch (NoResultException e) {
 			throw new GameIntegrityViolationException("There is no drawing user!", e);
 		} catch (NonUniqueResultException e) {
@@ -185,16 +293,20 @@ public class ActiveUserService implements AutoCloseable {
 	}
 
 	/**
-	 * Selects all the active users from db.
+	 * Selects all the active users of given room from db.
 	 * 
-	 * @return all active users
+	 * @param roomId room
+	 * @return all active users of the room
 	 */
-	public List<ActiveUser> getActiveUsers() {
-		return db.em().createQuery("SELECT au FROM ActiveUser au", ActiveUser.class).getResultList();
+	public List<ActiveUser> getActiveUsers(String roomId) {
+		return db.em().createQuery("SELECT au FROM ActiveUser au WHERE au.roomId = :roomId", ActiveUser.class)
+				.setParameter("roomId", roomId).getResultList();
 	}
 
 	/**
-	 * Adds given number of points to the active user with given session id.
+	 * Adds given number of points to the active user with given session id. Points
+	 * are appended to the points ledger, which writes them to database in batches
+	 * (see PointsLedgerService).
 	 * 
 	 * @param chatSessionId user session id to which add points
 	 * @param points        number of points to be added
@@ -223,33 +335,32 @@ public class ActiveUserService implements AutoCloseable {
 		if (user == null)
 			return;
 
-		db.em().getTransaction().begin();
-		// Update user with incremented points
-		Integer currPoints = user.getUser().getPoints();
-		user.getUser().setPoints(currPoints + points);
-		db.em().merge(user);
-
-		db.em().getTransaction().commit();
+		pointsLedger.append(user.getUser().getUsername(), points);
 	}
 
 	/**
-	 * Selects random active user from db.
+	 * Selects random active user of given room from db.
 	 * 
+	 * @param roomId room
 	 * @return random active user
 	 */
-	public ActiveUser getRandomActiveUser() {
-		List<ActiveUser> users = getActiveUsers();
+	public ActiveUser getRandomActiveUser(String roomId) {
+		List<ActiveUser> users = getActiveUsers(roomId);
 		int rand = new Random().nextInt(users.size());
 		return users.get(rand);
 	}
 
 	/**
-	 * Reset drawing state for all to false. Also reset previous words to guess.
+	 * Reset drawing state for all users of given room to false. Also reset previous
+	 * words to guess.
+	 *
+	 * @param roomId room
 	 */
-	public void unsetDrawingStateForAllAndUnsetWords() {
+	public void unsetDrawingStateForAllAndUnsetWords(String roomId) {
 		List<ActiveUser> drawingUsers = db.em()
-				.createQuery("SELECT au FROM ActiveUser au WHERE au.isDrawing = true", ActiveUser.class)
-				.getResultList();
+				.createQuery("SELECT au FROM ActiveUser au WHERE au.roomId = :roomId AND au.isDrawing = true",
+						ActiveUser.class)
+				.setParameter("roomId", roomId).getResultList();
 
 		db.em().getTransaction().begin();
 
@@ -263,7 +374,8 @@ public class ActiveUserService implements AutoCloseable {
 	}
 
 	/**
-	 * At first it resets state of all active users to not drawing. It also resets
+	 * At first it resets state of all active users of the user's room to not
+	 * drawing. It also resets
 	 * all the words to null. After that this method sets new drawing user and new
 	 * word to guess.
 	 * 
@@ -281,7 +393,7 @@ public class ActiveUserService implements AutoCloseable {
 
 		// Before setting new drawing user and new word
 		// unset all users to not drawing state and unset previous words to guess.
-		unsetDrawingStateForAllAndUnsetWords();
+		unsetDrawingStateForAllAndUnsetWords(user.getRoomId());
 
 		db.em().getTransaction().begin();
 
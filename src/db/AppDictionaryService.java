@@ -1,5 +1,11 @@
 package db;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 
@@ -7,15 +13,20 @@ import exception.GameIntegrityViolationException;
 
 /**
  * This class is responsible for interacting with table containing app
- * constances in database.
+ * constances in database. Values are read once and kept in memory, the
+ * dictionary is read in one query at startup (see preload()), so checking a
+ * token does not query the database for the secret and the owners. Values
+ * changed in the database are seen after restart. Values are read with an
+ * EntityManager of their own, they may be asked for on any thread.
  * 
  * @author Piotr Koodziejski
  */
 public class AppDictionaryService implements AutoCloseable {
 
 	private Database db = Database.getInstance();
+	private Map<String, String> values = new ConcurrentHashMap<>();
 
-	private static AppDictionaryService instance;
+	private static volatile AppDictionaryService instance;
 
 	private AppDictionaryService() {
 	}
@@ -26,8 +37,12 @@ public class AppDictionaryService implements AutoCloseable {
 	 * @return instance of AppDictionaryService
 	 */
 	public static AppDictionaryService getInstance() {
-		if (instance == null)
-			instance = new AppDictionaryService();
+		if (instance == null) {
+			synchronized (AppDictionaryService.class) {
+				if (instance == null)
+					instance = new AppDictionaryService();
+			}
+		}
 		return instance;
 	}
 
@@ -84,6 +99,197 @@ public class AppDictionaryService implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * @return how often spectators receive batched strokes and chat messages, in
+	 *         milliseconds
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not an integer
+	 */
+	public int getSpectatorTick() throws GameIntegrityViolationException {
+		try {
+			return Integer.parseInt(getValueForKey("SPECTATOR_TICK_IN_MILLIS"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Spectator tick is not an integer. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return time to guess the word in milliseconds
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not of type long
+	 */
+	public long getRoundTime() throws GameIntegrityViolationException {
+		try {
+			return Long.parseLong(getValueForKey("ROUND_TIME_IN_MILLIS"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Round time is not of type long. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return time without any message after which the game is paused, in
+	 *         milliseconds
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not of type long
+	 */
+	public long getIdleTime() throws GameIntegrityViolationException {
+		try {
+			return Long.parseLong(getValueForKey("IDLE_TIME_IN_MILLIS"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Idle time is not of type long. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return how long the seat of disconnected player is held for him, in
+	 *         milliseconds
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not of type long
+	 */
+	public long getResumeWindow() throws GameIntegrityViolationException {
+		try {
+			return Long.parseLong(getValueForKey("RESUME_WINDOW_IN_MILLIS"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Resume window is not of type long. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return how often websocket sessions are pinged, in milliseconds
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not of type long
+	 */
+	public long getHeartbeat() throws GameIntegrityViolationException {
+		try {
+			return Long.parseLong(getValueForKey("HEARTBEAT_IN_MILLIS"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Heartbeat is not of type long. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return how often snapshots of live rooms are written to disk, in
+	 *         milliseconds
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not of type long
+	 */
+	public long getSnapshotInterval() throws GameIntegrityViolationException {
+		try {
+			return Long.parseLong(getValueForKey("SNAPSHOT_IN_MILLIS"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Snapshot interval is not of type long. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return how often thumbnails of the rooms are rendered, in milliseconds
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not of type long
+	 */
+	public long getThumbnailInterval() throws GameIntegrityViolationException {
+		try {
+			return Long.parseLong(getValueForKey("THUMBNAIL_IN_MILLIS"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Thumbnail interval is not of type long. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return maximum number of websocket sessions of a node
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not an integer
+	 */
+	public int getMaxSessions() throws GameIntegrityViolationException {
+		try {
+			return Integer.parseInt(getValueForKey("MAX_SESSIONS"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Max sessions is not an integer. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return number of seats in a room
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not an integer
+	 */
+	public int getMaxRoomPlayers() throws GameIntegrityViolationException {
+		try {
+			return Integer.parseInt(getValueForKey("MAX_ROOM_PLAYERS"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Max room players is not an integer. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return maximum number of players waiting for a seat in a full room
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not an integer
+	 */
+	public int getMaxWaitingPlayers() throws GameIntegrityViolationException {
+		try {
+			return Integer.parseInt(getValueForKey("MAX_WAITING_PLAYERS"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Max waiting players is not an integer. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return number of chat lines a session may send per second
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not an integer
+	 */
+	public int getChatLinesPerSecond() throws GameIntegrityViolationException {
+		try {
+			return Integer.parseInt(getValueForKey("CHAT_LINES_PER_SECOND"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Chat lines per second is not an integer. Error in db.", e);
+		}
+	}
+
+	/**
+	 * @return number of bytes of strokes a session may send per second
+	 * @throws GameIntegrityViolationException key does not exist or is not unique,
+	 *                                         also when value is not an integer
+	 */
+	public int getDrawBytesPerSecond() throws GameIntegrityViolationException {
+		try {
+			return Integer.parseInt(getValueForKey("DRAW_BYTES_PER_SECOND"));
+		} catch (NumberFormatException e) {
+			throw new GameIntegrityViolationException("Draw bytes per second is not an integer. Error in db.", e);
+		}
+	}
+
+	/**
+	 * Reads the whole dictionary into memory. Keys which are not unique are not
+	 * kept, so reading them still fails.
+	 *
+	 * @return number of values read
+	 */
+	public int preload() {
+		List<Object[]> rows;
+		EntityManager em = db.newEntityManager();
+		try {
+			rows = em.createQuery("SELECT dic.key, dic.value FROM AppDictionary dic", Object[].class).getResultList();
+		} finally {
+			em.close();
+		}
+		Map<String, String> read = new HashMap<>();
+		Map<String, Integer> occurrences = new HashMap<>();
+		for (Object[] row : rows) {
+			String key = (String) row[0];
+			if (key == null || row[1] == null)
+				continue;
+			read.put(key, (String) row[1]);
+			occurrences.merge(key, 1, Integer::sum);
+		}
+		occurrences.forEach((key, count) -> {
+			if (count > 1)
+				read.remove(key);
+		});
+		values.putAll(read);
+		return read.size();
+	}
+
 	/**
 	 * 
 	 * @param key key in dictionary table
@@ -91,13 +297,22 @@ public class AppDictionaryService implements AutoCloseable {
 	 * @throws GameIntegrityViolationException key does not exist or is not unique
 	 */
 	private String getValueForKey(String key) throws GameIntegrityViolationException {
+		String value = values.get(key);
+		if (value != null)
+			return value;
+		EntityManager em = db.newEntityManager();
 		try {
-			return db.em().createQuery("SELECT dic.value FROM AppDictionary dic WHERE dic.key = :key", String.class)
+			value = em.createQuery("SELECT dic.value FROM AppDictionary dic WHERE dic.key = :key", String.class)
 					.setParameter("key", key).getSingleResult();
+			if (value != null)
+				values.put(key, value);
+			return value;
 		} catch (NoResultException e) {
 			throw new GameIntegrityViolationException("Key does not exist in the dictionary!", e);
 		} catch (NonUniqueResultException e) {
 			throw new GameIntegrityViolationException("Key is not unique in the dictionary!", e);
+		} finally {
+			em.close();
 		}
 	}
 
@@ -1,12 +1,22 @@
 package db;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import javax.sql.DataSource;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
 
 /**
  * This is a singleton class initializing EntityManager. It is meant to be
- * injected whenever interaction with database is needed.
+ * injected whenever interaction with database is needed. EntityManager is not
+ * thread-safe, so every thread gets its own one (see em()). Rooms run their
+ * game logic in parallel, each task of a room mailbox closes its EntityManager
+ * when it is done (see release()), so the next task reads current state of the
+ * database.
  * 
  * @author Maciej Szabaa
  *
@@ -14,34 +24,55 @@ import javax.persistence.Persistence;
 public class Database implements AutoCloseable {
 
 	private EntityManagerFactory emf;
-	private EntityManager em;
 
-	private static Database instance;
+	private static volatile Database instance;
+	private static final ThreadLocal<EntityManager> entityManagers = new ThreadLocal<>();
+	private static DataSource dataSource;
 
 	private Database() {
 	}
 
 	/**
 	 * Implementation of the singleton pattern. Creates Database object, then
-	 * initializes persistence layer.
+	 * initializes persistence layer. Instance is published only after
+	 * persistence layer has been initialized, so concurrent first calls neither
+	 * create another EntityManagerFactory nor see a half-initialized one.
 	 * 
 	 * @return instance of Database
 	 */
 	public static Database getInstance() {
 		if (instance == null) {
-			instance = new Database();
-			instance.initPersistence();
+			synchronized (Database.class) {
+				if (instance == null) {
+					Database database = new Database();
+					database.initPersistence();
+					instance = database;
+				}
+			}
 		}
 		return instance;
 	}
 
 	/**
-	 * Initializes persistence layer, creates EntityManager instance.
+	 * Replaces data source of persistence.xml (JNDI jdbc/PostgreSQL of the
+	 * application server), e.g. when the app is run by the standalone server.
+	 * Must be called before the first getInstance().
+	 *
+	 * @param ds data source of the database
+	 */
+	public static void useDataSource(DataSource ds) {
+		dataSource = ds;
+	}
+
+	/**
+	 * Initializes persistence layer, creates EntityManagerFactory instance.
 	 */
 	private void initPersistence() {
 		try {
-			emf = Persistence.createEntityManagerFactory("postgres");
-			em = emf.createEntityManager();
+			Map<String, Object> properties = new HashMap<>();
+			if (dataSource != null)
+				properties.put(PersistenceUnitProperties.NON_JTA_DATASOURCE, dataSource);
+			emf = Persistence.createEntityManagerFactory("postgres", properties);
 		} catch (Exception e) {
 			System.err.println("Database init Entity Manager failed.");
 			e.printStackTrace();
@@ -49,19 +80,56 @@ public class Database implements AutoCloseable {
 	}
 
 	/**
-	 * @return instance of Entity Manager
+	 * @return instance of Entity Manager of the current thread, it is created
+	 *         with the first call and kept until release(); null if persistence
+	 *         layer has not been initialized
 	 */
 	public EntityManager em() {
+		EntityManager em = entityManagers.get();
+		if (em == null && emf != null) {
+			em = emf.createEntityManager();
+			entityManagers.set(em);
+		}
 		return em;
 	}
 
+	/**
+	 * Creates Entity Manager which is not bound to any thread, e.g. for work done
+	 * in the background at the same time as game logic. Caller must close it.
+	 *
+	 * @return new instance of Entity Manager
+	 */
+	public EntityManager newEntityManager() {
+		return emf.createEntityManager();
+	}
+
+	/**
+	 * Closes Entity Manager of the current thread, if it has been created.
+	 * Transaction left active by a failed task is rolled back. Next em() on this
+	 * thread creates a new Entity Manager.
+	 */
+	public static void release() {
+		EntityManager em = entityManagers.get();
+		if (em == null)
+			return;
+		entityManagers.remove();
+		try {
+			if (em.getTransaction().isActive())
+				em.getTransaction().rollback();
+			em.close();
+		} catch (Exception e) {
+			System.err.println("Database release of Entity Manager failed.");
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * On Database close closes all objects used by Database.
 	 */
 	@Override
 	public void close() {
 		try {
-			em.close();
+			release();
 			emf.close();
 		} catch (Exception e) {
 			System.err.println("Database close failed.");
@@ -16,7 +16,7 @@ import model.Password;
 public class PasswordService implements AutoCloseable {
 	private Database db;
 
-	private static PasswordService instance;
+	private static volatile PasswordService instance;
 
 	private PasswordService() {
 		this.db = Database.getInstance();
@@ -28,8 +28,12 @@ public class PasswordService implements AutoCloseable {
 	 * @return instance of PasswordService
 	 */
 	public static PasswordService getInstance() {
-		if (instance == null)
-			instance = new PasswordService();
+		if (instance == null) {
+			synchronized (PasswordService.class) {
+				if (instance == null)
+					instance = new PasswordService();
+			}
+		}
 		return instance;
 	}
 
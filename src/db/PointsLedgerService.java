@@ -0,0 +1,265 @@
+package db;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+
+import model.ScoreEvent;
+import model.ScoreRollup;
+import model.User;
+import service.ScorePeriods;
+
+/**
+ * This class is responsible for interacting with the points ledger and its
+ * rollups in database. Awarded points are not written one by one, they wait in
+ * memory and are appended to the ledger in batches, every FLUSH_IN_MILLIS or
+ * when BATCH_SIZE events are waiting. The same transaction adds them to the day
+ * and week rollups and to all-time points of the users, so every user is
+ * updated once per batch. Periodic leaderboards are read from the rollups.
+ * Batches are written and rollups are read with EntityManagers of their own, as
+ * game logic uses the database at the same time. It is a singleton and is meant
+ * to be injected as a field i.e. private PointsLedgerService ledger =
+ * PointsLedgerService.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class PointsLedgerService implements AutoCloseable {
+
+	/**
+	 * Notified about every appended point.
+	 */
+	public interface Listener {
+
+		/**
+		 * Points have been appended. Called while no other points are appended.
+		 *
+		 * @param username user
+		 * @param points   number of points awarded
+		 */
+		void onAppended(String username, int points);
+	}
+
+	private static final long FLUSH_IN_MILLIS = 1000;
+	private static final int BATCH_SIZE = 500;
+
+	private Database db = Database.getInstance();
+	private ZoneId zone = ZoneId.systemDefault();
+	private List<ScoreEvent> pending = new ArrayList<>();
+	private Map<String, Integer> pendingPoints = new HashMap<>();
+	private ScheduledExecutorService scheduler;
+	private volatile Listener listener;
+	private final Object flushLock = new Object();
+
+	private static volatile PointsLedgerService instance;
+
+	private PointsLedgerService() {
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates PointsLedgerService object.
+	 *
+	 * @return instance of PointsLedgerService
+	 */
+	public static PointsLedgerService getInstance() {
+		if (instance == null) {
+			synchronized (PointsLedgerService.class) {
+				if (instance == null)
+					instance = new PointsLedgerService();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Appends points to the ledger. They are written to database with the next
+	 * batch.
+	 *
+	 * @param username user
+	 * @param points   number of points awarded
+	 */
+	public synchronized void append(String username, int points) {
+		pending.add(new ScoreEvent(username, points, System.currentTimeMillis()));
+		pendingPoints.merge(username, points, Integer::sum);
+		if (listener != null)
+			listener.onAppended(username, points);
+		startFlushing();
+		if (pending.size() == BATCH_SIZE)
+			scheduler.execute(this::flush);
+	}
+
+	/**
+	 * @param listener notified about every appended point, replaces the previous
+	 *                 one
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Reads all-time points of all the users. No batch is written in the
+	 * meantime, and no points are appended while points waiting for the next
+	 * batch are read. So every point is counted exactly once, either here or by
+	 * the listener (see setListener).
+	 *
+	 * @param committed receives points written to database, username to points
+	 * @param pending   receives points waiting for the next batch right after,
+	 *                  username to points
+	 */
+	public void readAllPoints(Consumer<Map<String, Integer>> committed, Consumer<Map<String, Integer>> pending) {
+		synchronized (flushLock) {
+			Map<String, Integer> points = new HashMap<>();
+			EntityManager em = db.newEntityManager();
+			try {
+				// Only names and points are read, no user is managed by the EntityManager
+				for (Object[] row : em.createQuery("SELECT u.username, u.points FROM User u", Object[].class)
+						.getResultList())
+					points.put((String) row[0], row[1] == null ? 0 : (Integer) row[1]);
+			} finally {
+				em.close();
+			}
+			committed.accept(points);
+
+			synchronized (this) {
+				pending.accept(new HashMap<>(pendingPoints));
+			}
+		}
+	}
+
+	/**
+	 * @param username user
+	 * @return points awarded to the user which have not been written to database
+	 *         yet
+	 */
+	public synchronized int pendingPoints(String username) {
+		return pendingPoints.getOrDefault(username, 0);
+	}
+
+	/**
+	 * Writes waiting points to database. When writing fails, points are kept and
+	 * written with the next batch.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			List<ScoreEvent> batch;
+			synchronized (this) {
+				if (pending.isEmpty())
+					return;
+				batch = pending;
+				pending = new ArrayList<>();
+			}
+			Map<String, Integer> batchPoints = new HashMap<>();
+			for (ScoreEvent event : batch)
+				batchPoints.merge(event.getUsername(), event.getPoints(), Integer::sum);
+
+			EntityManager em = db.newEntityManager();
+			try {
+				em.getTransaction().begin();
+				for (ScoreEvent event : batch)
+					em.persist(event);
+
+				for (ScoreRollup summed : ScorePeriods.rollup(batch, zone).values()) {
+					ScoreRollup rollup = em.find(ScoreRollup.class, summed.getKey());
+					if (rollup == null)
+						em.persist(summed);
+					else
+						rollup.setPoints(rollup.getPoints() + summed.getPoints());
+				}
+
+				List<User> users = em.createQuery("SELECT u FROM User u WHERE u.username IN :usernames", User.class)
+						.setParameter("usernames", new ArrayList<>(batchPoints.keySet())).getResultList();
+				for (User user : users)
+					user.setPoints(user.getPoints() + batchPoints.get(user.getUsername()));
+
+				// Points are either pending or committed, never both
+				synchronized (this) {
+					em.getTransaction().commit();
+					batchPoints.forEach((username, points) -> pendingPoints.computeIfPresent(username,
+							(key, value) -> value.intValue() == points ? null : value - points));
+				}
+			} catch (Exception e) {
+				System.err.println("PointsLedgerService: unable to write " + batch.size() + " events, retrying later.");
+				e.printStackTrace();
+				if (em.getTransaction().isActive())
+					em.getTransaction().rollback();
+				synchronized (this) {
+					batch.addAll(pending);
+					pending = batch;
+				}
+			} finally {
+				em.close();
+			}
+		}
+	}
+
+	/**
+	 * @param period period, see service.ScorePeriods
+	 * @param offset number of best users to skip
+	 * @param limit  maximum number of users to return
+	 * @return rollups of the period ordered by points descending, then by name
+	 */
+	public List<ScoreRollup> getRollups(String period, int offset, int limit) {
+		EntityManager em = db.newEntityManager();
+		try {
+			return em.createQuery(
+					"SELECT r FROM ScoreRollup r WHERE r.period = :period ORDER BY r.points DESC, r.username",
+					ScoreRollup.class).setParameter("period", period).setFirstResult(offset).setMaxResults(limit)
+					.getResultList();
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * @param period period, see service.ScorePeriods
+	 * @param points points
+	 * @return number of users who have got more points in the period
+	 */
+	public long countRollupsAbove(String period, int points) {
+		EntityManager em = db.newEntityManager();
+		try {
+			return em
+					.createQuery("SELECT COUNT(r) FROM ScoreRollup r WHERE r.period = :period AND r.points > :points",
+							Long.class)
+					.setParameter("period", period).setParameter("points", points).getSingleResult();
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * @param type type of the period, ScorePeriods.DAY or ScorePeriods.WEEK
+	 * @return period of the current time, null if type is unknown
+	 */
+	public String currentPeriod(String type) {
+		return ScorePeriods.of(type, System.currentTimeMillis(), zone);
+	}
+
+	/**
+	 * Starts periodic flushing if it has not been started yet.
+	 */
+	private void startFlushing() {
+		if (scheduler != null)
+			return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "points-ledger");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleWithFixedDelay(this::flush, FLUSH_IN_MILLIS, FLUSH_IN_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void close() throws Exception {
+		flush();
+		db.close();
+	}
+}
@@ -0,0 +1,65 @@
+package db;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+import service.Histogram;
+import service.Metrics;
+
+/**
+ * Times queries and commits of all the services. It is registered in
+ * persistence.xml as a session event listener of EclipseLink, which notifies it
+ * before and after every query and commit on the thread running them. Queries
+ * are counted by entity and kind (read or write).
+ *
+ * @author Maciej Szabaa
+ */
+public class QueryMetrics extends SessionEventAdapter {
+
+	private static final int MAX_RUNNING_QUERIES = 64;
+
+	private Metrics metrics = Metrics.getInstance();
+	private Histogram commits = metrics.histogram("kalambury_db_commit_seconds", "Time of committing transactions.",
+			Metrics.NANOS);
+	// Queries may be nested, e.g. loading of relations
+	private ThreadLocal<Map<DatabaseQuery, Long>> queryStarts = ThreadLocal.withInitial(IdentityHashMap::new);
+	private ThreadLocal<Long> commitStart = new ThreadLocal<>();
+
+	@Override
+	public void preExecuteQuery(SessionEvent event) {
+		Map<DatabaseQuery, Long> starts = queryStarts.get();
+		// Queries which failed are never finished
+		if (starts.size() == MAX_RUNNING_QUERIES)
+			starts.clear();
+		starts.put(event.getQuery(), System.nanoTime());
+	}
+
+	@Override
+	public void postExecuteQuery(SessionEvent event) {
+		DatabaseQuery query = event.getQuery();
+		Long start = queryStarts.get().remove(query);
+		if (start == null)
+			return;
+		Class<?> entity = query.getReferenceClass();
+		metrics.histogram("kalambury_db_query_seconds", "Time of database queries.", Metrics.NANOS, "entity",
+				entity == null ? "none" : entity.getSimpleName(), "kind", query.isReadQuery() ? "read" : "write")
+				.record(System.nanoTime() - start);
+	}
+
+	@Override
+	public void preCommitUnitOfWork(SessionEvent event) {
+		commitStart.set(System.nanoTime());
+	}
+
+	@Override
+	public void postCommitUnitOfWork(SessionEvent event) {
+		Long start = commitStart.get();
+		commitStart.remove();
+		if (start != null)
+			commits.record(System.nanoTime() - start);
+	}
+}
@@ -6,6 +6,7 @@ import javax.persistence.NonUniqueResultException;
 import exception.GameIntegrityViolationException;
 import model.Password;
 import model.User;
+import service.HandlerExecutors;
 import service.LoginUtil;
 
 /**
@@ -18,9 +19,10 @@ import service.LoginUtil;
 public class UserService implements AutoCloseable {
 
 	private LoginUtil loginUtil = LoginUtil.getInstance();
+	private HandlerExecutors handlerExecutors = HandlerExecutors.getInstance();
 	private Database db;
 
-	private static UserService instance;
+	private static volatile UserService instance;
 
 	private UserService() {
 		this.db = Database.getInstance();
@@ -32,8 +34,12 @@ public class UserService implements AutoCloseable {
 	 * @return instance of UserService
 	 */
 	public static UserService getInstance() {
-		if (instance == null)
-			instance = new UserService();
+		if (instance == null) {
+			synchronized (UserService.class) {
+				if (instance == null)
+					instance = new UserService();
+			}
+		}
 		return instance;
 	}
 
@@ -81,7 +87,15 @@ public class UserService implements AutoCloseable {
 	 */
 	public void createNewUser(String username, String password) throws GameIntegrityViolationException {
 		byte[] salt = loginUtil.salt();
-		byte[] hash = loginUtil.pbkdf2(password, salt);
+		byte[] hash;
+		try {
+			// PBKDF2 is CPU heavy, do not compute it on virtual thread
+			hash = handlerExecutors.compute(() -> loginUtil.pbkdf2(password, salt));
+		} catch (GameIntegrityViolationException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new GameIntegrityViolationException("Unable to hash password!", e);
+		}
 
 		db.em().getTransaction().begin();
 
@@ -1,22 +1,39 @@
 package db;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import exception.GameIntegrityViolationException;
 import model.Word;
 
 /**
  * This class is responsible for interacting with table containing words to
- * guess in database.
+ * guess in database. Words are read into memory at startup (see preload()),
+ * then new words are drawn without querying the database. Until the words are
+ * read, they are drawn from the database.
  * 
  * @author Maciej Szabaa
  *
  */
 public class WordService implements AutoCloseable {
 
+	/**
+	 * Pack of the words without a pack
+	 */
+	public static final String DEFAULT_PACK = "pl";
+
 	private Database db = Database.getInstance();
+	/**
+	 * Words by pack, default pack contains the words without a pack; null until
+	 * preloaded
+	 */
+	private volatile Map<String, List<String>> words;
 
-	private static WordService instance;
+	private static volatile WordService instance;
 
 	private WordService() {
 		this.db = Database.getInstance();
@@ -28,42 +45,110 @@ public class WordService implements AutoCloseable {
 	 * @return instance of WordService
 	 */
 	public static WordService getInstance() {
-		if (instance == null)
-			instance = new WordService();
+		if (instance == null) {
+			synchronized (WordService.class) {
+				if (instance == null)
+					instance = new WordService();
+			}
+		}
 		return instance;
 	}
 
 	/**
 	 * 
-	 * @return random word from database
+	 * @return random word of the default pack
 	 * @throws GameIntegrityViolationException in case of error during word
 	 *                                         generation
 	 */
 	public String getRandomWord() throws GameIntegrityViolationException {
+		Map<String, List<String>> loaded = words;
+		if (loaded != null) {
+			if (!loaded.containsKey(DEFAULT_PACK))
+				throw new GameIntegrityViolationException("Was not able to get new word to guess!");
+			return randomOf(loaded.get(DEFAULT_PACK));
+		}
 		try {
-			// Min ID
-			Long minId = db.em().createQuery("SELECT MIN(w.id) FROM Word w", Long.class).getSingleResult();
-			// Max ID
-			Long maxId = db.em().createQuery("SELECT MAX(w.id) FROM Word w", Long.class).getSingleResult();
+			long count = db.em()
+					.createQuery("SELECT COUNT(w) FROM Word w WHERE w.pack IS NULL OR w.pack = :default", Long.class)
+					.setParameter("default", DEFAULT_PACK).getSingleResult();
+			if (count == 0)
+				throw new GameIntegrityViolationException("Was not able to get new word to guess!");
+			return db.em()
+					.createQuery("SELECT w.word FROM Word w WHERE w.pack IS NULL OR w.pack = :default ORDER BY w.id",
+							String.class)
+					.setParameter("default", DEFAULT_PACK).setFirstResult(new Random().nextInt((int) count))
+					.setMaxResults(1).getSingleResult();
+		} catch (GameIntegrityViolationException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new GameIntegrityViolationException("WordService error during next word generation.", e);
+		}
+	}
 
-			Word word = null;
-			int failCounter = 0;
-			int maxFailes = 10;
-			while (word == null && failCounter < maxFailes) {
-				Long randId = (long) (new Random().nextDouble() * (maxId - minId + 1)) + minId;
-				word = db.em().find(Word.class, randId);
-				System.out.println("[" + failCounter + "] next word...");
-				failCounter++;
+	/**
+	 * Words of the default pack are the ones without a pack.
+	 *
+	 * @param pack word pack, e.g. language; null or DEFAULT_PACK for the default
+	 *             pack
+	 * @return random word of given pack, random word of the default pack if given
+	 *         pack is empty
+	 * @throws GameIntegrityViolationException in case of error during word
+	 *                                         generation
+	 */
+	public String getRandomWord(String pack) throws GameIntegrityViolationException {
+		if (pack == null || pack.equals(DEFAULT_PACK))
+			return getRandomWord();
+		Map<String, List<String>> loaded = words;
+		if (loaded != null) {
+			if (loaded.containsKey(pack))
+				return randomOf(loaded.get(pack));
+			System.out.println("WordService: pack " + pack + " is empty, using default pack.");
+			return getRandomWord();
+		}
+		try {
+			long count = db.em().createQuery("SELECT COUNT(w) FROM Word w WHERE w.pack = :pack", Long.class)
+					.setParameter("pack", pack).getSingleResult();
+			if (count == 0) {
+				System.out.println("WordService: pack " + pack + " is empty, using default pack.");
+				return getRandomWord();
 			}
-			if (word == null) {
-				throw new GameIntegrityViolationException("Was not able to get new word to guess!");
+			return db.em().createQuery("SELECT w.word FROM Word w WHERE w.pack = :pack ORDER BY w.id", String.class)
+					.setParameter("pack", pack).setFirstResult(new Random().nextInt((int) count)).setMaxResults(1)
+					.getSingleResult();
+		} catch (GameIntegrityViolationException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new GameIntegrityViolationException("WordService error during next word generation.", e);
+		}
+	}
+
+	/**
+	 * Reads all the words into memory in one query, replacing words read before.
+	 *
+	 * @return number of words read
+	 * @throws GameIntegrityViolationException words cannot be read
+	 */
+	public int preload() throws GameIntegrityViolationException {
+		try {
+			List<Word> all = db.em().createQuery("SELECT w FROM Word w ORDER BY w.id", Word.class).getResultList();
+			Map<String, List<String>> loaded = new HashMap<>();
+			for (Word word : all) {
+				if (word.getWord() == null)
+					continue;
+				String pack = word.getPack() == null ? DEFAULT_PACK : word.getPack();
+				loaded.computeIfAbsent(pack, p -> new ArrayList<>()).add(word.getWord());
 			}
-			return word.getWord();
+			words = loaded;
+			return all.size();
 		} catch (Exception e) {
-			throw new GameIntegrityViolationException("WordService error during next word generation.");
+			throw new GameIntegrityViolationException("WordService error during reading words.", e);
 		}
 	}
 
+	private static String randomOf(List<String> pack) {
+		return pack.get(ThreadLocalRandom.current().nextInt(pack.size()));
+	}
+
 	@Override
 	public void close() throws Exception {
 		db.close();
@@ -0,0 +1,280 @@
+package game;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.websocket.Session;
+
+import db.AppDictionaryService;
+import exception.GameIntegrityViolationException;
+import service.Metrics;
+
+/**
+ * Admission control of the node. Number of websocket sessions (chat and draw,
+ * players and spectators) is limited by MAX_SESSIONS, sessions above the limit
+ * are rejected as soon as they are opened, before token is verified or
+ * database is touched. Number of seats of a room is limited by
+ * MAX_ROOM_PLAYERS. Players are placed into rooms on their owner nodes (see
+ * Matchmaker), so seats are counted in memory of the node: players seated on
+ * this node and seats held for players who have lost connection. Player who
+ * comes to a full room waits in the line of the room (at most
+ * MAX_WAITING_PLAYERS) and takes the first seat freed. It is a singleton and is
+ * meant to be injected as a field i.e. private Admission admission =
+ * Admission.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class Admission {
+
+	private static final int DEFAULT_MAX_SESSIONS = 5000;
+	private static final int DEFAULT_MAX_ROOM_PLAYERS = 8;
+	private static final int DEFAULT_MAX_WAITING_PLAYERS = 20;
+
+	private AppDictionaryService dictService = AppDictionaryService.getInstance();
+
+	private final AtomicInteger sessions = new AtomicInteger();
+	private final Map<String, AtomicInteger> seated = new ConcurrentHashMap<>();
+	private final Map<String, Line> lines = new ConcurrentHashMap<>();
+	private int maxSessions;
+	private int maxRoomPlayers;
+	private int maxWaitingPlayers;
+
+	private static volatile Admission instance;
+
+	private Admission() {
+		maxSessions = DEFAULT_MAX_SESSIONS;
+		try {
+			maxSessions = dictService.getMaxSessions();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("Admission: max sessions not set, using default " + maxSessions + ".");
+		}
+		maxRoomPlayers = DEFAULT_MAX_ROOM_PLAYERS;
+		try {
+			maxRoomPlayers = dictService.getMaxRoomPlayers();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("Admission: max room players not set, using default " + maxRoomPlayers + ".");
+		}
+		maxWaitingPlayers = DEFAULT_MAX_WAITING_PLAYERS;
+		try {
+			maxWaitingPlayers = dictService.getMaxWaitingPlayers();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("Admission: max waiting players not set, using default " + maxWaitingPlayers + ".");
+		}
+		Metrics.getInstance().gauge("kalambury_sessions", "Open websocket sessions of the node.", this::sessions);
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates Admission object.
+	 *
+	 * @return instance of Admission
+	 */
+	public static Admission getInstance() {
+		if (instance == null) {
+			synchronized (Admission.class) {
+				if (instance == null)
+					instance = new Admission();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return number of seats in a room
+	 */
+	public int getMaxRoomPlayers() {
+		return maxRoomPlayers;
+	}
+
+	/**
+	 * Counts new websocket session, unless the node is full.
+	 *
+	 * @return true if session is admitted, it must be released with
+	 *         releaseSession when closed
+	 */
+	public boolean tryOpenSession() {
+		if (sessions.incrementAndGet() <= maxSessions)
+			return true;
+		sessions.decrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Releases session admitted by tryOpenSession.
+	 */
+	public void releaseSession() {
+		sessions.decrementAndGet();
+	}
+
+	/**
+	 * @return number of open websocket sessions of this node
+	 */
+	public int sessions() {
+		return sessions.get();
+	}
+
+	/**
+	 * Fast check done when session is opened, before any work is done for it.
+	 *
+	 * @param roomId    room
+	 * @param heldSeats number of seats of the room held for players who have lost
+	 *                  connection
+	 * @return true if there is neither free seat nor place in the line of the
+	 *         room
+	 */
+	public boolean isRoomClosed(String roomId, int heldSeats) {
+		return !hasFreeSeat(roomId, heldSeats) && waiting(roomId) >= maxWaitingPlayers;
+	}
+
+	/**
+	 * @param roomId    room
+	 * @param heldSeats number of seats of the room held for players who have lost
+	 *                  connection
+	 * @return true if a player may take a seat in the room
+	 */
+	public boolean hasFreeSeat(String roomId, int heldSeats) {
+		return seated(roomId) + heldSeats < maxRoomPlayers;
+	}
+
+	/**
+	 * @param roomId room
+	 * @return number of players seated in the room on this node
+	 */
+	public int seated(String roomId) {
+		AtomicInteger count = seated.get(roomId);
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * Counts player taking a seat in the room.
+	 *
+	 * @param roomId room
+	 */
+	public void takeSeat(String roomId) {
+		seated.computeIfAbsent(roomId, id -> new AtomicInteger()).incrementAndGet();
+	}
+
+	/**
+	 * Counts player leaving his seat in the room.
+	 *
+	 * @param roomId room
+	 */
+	public void leaveSeat(String roomId) {
+		seated.computeIfPresent(roomId, (id, count) -> count.decrementAndGet() <= 0 ? null : count);
+	}
+
+	/**
+	 * Puts player at the end of the line of the room.
+	 *
+	 * @param roomId     room
+	 * @param s          chat websocket session of the player
+	 * @param onAdmitted run when the player gets the seat
+	 * @return false if the line is full
+	 */
+	public boolean enqueue(String roomId, Session s, Runnable onAdmitted) {
+		Line line = lines.computeIfAbsent(roomId, id -> new Line());
+		synchronized (line) {
+			if (line.waiting.size() >= maxWaitingPlayers)
+				return false;
+			line.waiting.addLast(new Waiting(s, onAdmitted));
+			return true;
+		}
+	}
+
+	/**
+	 * Removes player from the line, e.g. when he has closed the session.
+	 *
+	 * @param roomId room
+	 * @param s      chat websocket session of the player
+	 * @return true if the player has been waiting
+	 */
+	public boolean leaveQueue(String roomId, Session s) {
+		Line line = lines.get(roomId);
+		if (line == null)
+			return false;
+		synchronized (line) {
+			return line.waiting.removeIf(w -> w.session.equals(s));
+		}
+	}
+
+	/**
+	 * Admits players from the head of the line while there are free seats.
+	 * Players whose sessions have been closed are skipped.
+	 *
+	 * @param roomId    room
+	 * @param heldSeats number of seats of the room held for players who have lost
+	 *                  connection
+	 * @return number of admitted players
+	 */
+	public int admitWaiting(String roomId, int heldSeats) {
+		Line line = lines.get(roomId);
+		if (line == null)
+			return 0;
+		int admitted = 0;
+		while (hasFreeSeat(roomId, heldSeats)) {
+			Waiting next;
+			synchronized (line) {
+				next = line.waiting.pollFirst();
+			}
+			if (next == null)
+				break;
+			if (!next.session.isOpen())
+				continue;
+			next.onAdmitted.run();
+			admitted++;
+		}
+		return admitted;
+	}
+
+	/**
+	 * @param roomId room
+	 * @return sessions of players waiting for a seat in the room, first in the
+	 *         line first
+	 */
+	public List<Session> waitingSessions(String roomId) {
+		List<Session> sessions = new ArrayList<>();
+		Line line = lines.get(roomId);
+		if (line == null)
+			return sessions;
+		synchronized (line) {
+			for (Waiting w : line.waiting)
+				sessions.add(w.session);
+		}
+		return sessions;
+	}
+
+	/**
+	 * @param roomId room
+	 * @return number of players waiting for a seat in the room
+	 */
+	public int waiting(String roomId) {
+		Line line = lines.get(roomId);
+		if (line == null)
+			return 0;
+		synchronized (line) {
+			return line.waiting.size();
+		}
+	}
+
+	/**
+	 * Players waiting for seats of a room, guarded by the object itself.
+	 */
+	private static final class Line {
+
+		private final ArrayDeque<Waiting> waiting = new ArrayDeque<>();
+	}
+
+	private static final class Waiting {
+
+		private final Session session;
+		private final Runnable onAdmitted;
+
+		private Waiting(Session session, Runnable onAdmitted) {
+			this.session = session;
+			this.onAdmitted = onAdmitted;
+		}
+	}
+}
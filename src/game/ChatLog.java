@@ -0,0 +1,99 @@
+package game;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest chat lines of each room (see ChatRing). Lines are written on every
+ * node, so players joining or coming back receive them in one batch instead of
+ * replaying single messages, and the history can be paged over REST. Only
+ * MAX_LINES latest lines of a room are kept. It is a singleton and is meant to
+ * be injected as a field i.e. private ChatLog chatLog = ChatLog.getInstance();
+ *
+ * @author Maciej Szabaa
+ */
+public class ChatLog {
+
+	private static final int MAX_LINES = 200;
+
+	private Map<String, ChatRing> rooms = new ConcurrentHashMap<>();
+
+	private static volatile ChatLog instance;
+
+	private ChatLog() {
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates ChatLog object.
+	 *
+	 * @return instance of ChatLog
+	 */
+	public static ChatLog getInstance() {
+		if (instance == null) {
+			synchronized (ChatLog.class) {
+				if (instance == null)
+					instance = new ChatLog();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @param roomId      room
+	 * @param messageJson serialized ChatMessage
+	 */
+	public void append(String roomId, String messageJson) {
+		rooms.computeIfAbsent(roomId, id -> new ChatRing(MAX_LINES)).append(messageJson);
+	}
+
+	/**
+	 * Forgets chat history of the room, e.g. when the last player has left.
+	 *
+	 * @param roomId room
+	 */
+	public void removeRoom(String roomId) {
+		rooms.remove(roomId);
+	}
+
+	/**
+	 * @param roomId room
+	 * @return latest lines as JSON array of ChatMessages, null if nothing has been
+	 *         written
+	 */
+	public String batch(String roomId) {
+		ChatRing ring = rooms.get(roomId);
+		return ring == null ? null : ring.batch();
+	}
+
+	/**
+	 * Page of the history as JSON object with "lines" (sequence number and
+	 * message, oldest first) and "next" (cursor of the previous page, null when
+	 * there are no older lines).
+	 *
+	 * @param roomId room
+	 * @param before cursor, only older lines are returned, null for the latest
+	 *               lines
+	 * @param limit  maximum number of lines
+	 * @return page of the history, null if nothing has been written in the room
+	 */
+	public String page(String roomId, Long before, int limit) {
+		ChatRing ring = rooms.get(roomId);
+		if (ring == null)
+			return null;
+		List<ChatRing.Line> lines = ring.before(before == null ? Long.MAX_VALUE : before, limit);
+		StringBuilder page = new StringBuilder("{\"lines\":[");
+		for (int i = 0; i != lines.size(); i++) {
+			if (i > 0)
+				page.append(',');
+			page.append("{\"seq\":").append(lines.get(i).getSeq()).append(",\"message\":")
+					.append(lines.get(i).getPayload()).append('}');
+		}
+		page.append("],\"next\":");
+		if (!lines.isEmpty() && lines.get(0).getSeq() > ring.first())
+			page.append(lines.get(0).getSeq());
+		else
+			page.append("null");
+		return page.append('}').toString();
+	}
+}
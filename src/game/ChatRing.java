@@ -0,0 +1,108 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size ring of the latest chat lines of a room. Lines are numbered with
+ * increasing sequence numbers, which are used as cursors of pages. Arrays are
+ * allocated once, appending a line only overwrites the oldest one. Ring is
+ * thread-safe.
+ *
+ * @author Maciej Szabaa
+ */
+public class ChatRing {
+
+	/**
+	 * Chat line with its sequence number.
+	 */
+	public static final class Line {
+
+		private final long seq;
+		private final String payload;
+
+		private Line(long seq, String payload) {
+			this.seq = seq;
+			this.payload = payload;
+		}
+
+		/**
+		 * @return sequence number, first line of the room has number 1
+		 */
+		public long getSeq() {
+			return seq;
+		}
+
+		/**
+		 * @return serialized ChatMessage
+		 */
+		public String getPayload() {
+			return payload;
+		}
+	}
+
+	private final String[] payloads;
+	// Sequence number of the latest line, line n is kept at n % capacity
+	private long last;
+
+	/**
+	 * @param capacity number of lines kept
+	 */
+	public ChatRing(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be greater than 0.");
+		this.payloads = new String[capacity];
+	}
+
+	/**
+	 * @param payload serialized ChatMessage
+	 * @return sequence number of the line
+	 */
+	public synchronized long append(String payload) {
+		last++;
+		payloads[(int) (last % payloads.length)] = payload;
+		return last;
+	}
+
+	/**
+	 * @return sequence number of the latest line, 0 if nothing has been written
+	 */
+	public synchronized long last() {
+		return last;
+	}
+
+	/**
+	 * @return sequence number of the oldest line kept, last() + 1 if nothing has
+	 *         been written
+	 */
+	public synchronized long first() {
+		return Math.max(1, last - payloads.length + 1);
+	}
+
+	/**
+	 * @param before sequence number, only older lines are returned
+	 * @param limit  maximum number of lines
+	 * @return latest lines older than given one, oldest first
+	 */
+	public synchronized List<Line> before(long before, int limit) {
+		long to = Math.min(before - 1, last);
+		long from = Math.max(first(), to - limit + 1);
+		List<Line> lines = new ArrayList<>();
+		for (long seq = from; seq <= to; seq++)
+			lines.add(new Line(seq, payloads[(int) (seq % payloads.length)]));
+		return lines;
+	}
+
+	/**
+	 * @return all the lines kept as JSON array of ChatMessages, oldest first
+	 */
+	public synchronized String batch() {
+		StringBuilder batch = new StringBuilder("[");
+		for (long seq = first(); seq <= last; seq++) {
+			if (batch.length() > 1)
+				batch.append(',');
+			batch.append(payloads[(int) (seq % payloads.length)]);
+		}
+		return batch.append(']').toString();
+	}
+}
@@ -0,0 +1,246 @@
+package game;
+
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.spi.JsonProvider;
+
+import service.Metrics;
+
+/**
+ * Measures how long strokes take from the drawing user to other players. Client
+ * opened with "probe" page parameter sends probe frames on the draw channel
+ * from time to time, stamped with its clock. Probe is stamped when it is
+ * received, published like a stroke, stamped again when it is sent to each
+ * drawing board, and every player acknowledges it when it has been rendered.
+ * Acknowledgement is measured on the node of the player. Durations measured
+ * with server clocks only (fanout, downlink and propagation, which is time from
+ * receiving the probe to receiving its acknowledgement) are exact as long as
+ * clocks of the nodes are synchronized; uplink and end_to_end compare clocks of
+ * the clients with each other and with the server, so they include the
+ * difference of the clocks. Probes are never drawn, logged nor recorded. Node
+ * accepts acknowledgements only of the probes it has sent lately, to the room
+ * of the player, and takes server stamps from its own records, so clients
+ * cannot skew the latencies. Propagation is also measured by room, for at most
+ * MAX_ROOM_SERIES rooms at once; series of the room is removed when its last
+ * drawing board on this node is closed. It is a singleton and is meant to be
+ * injected as a field i.e. private DrawProbes drawProbes =
+ * DrawProbes.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class DrawProbes {
+
+	private static final String PROBE_PREFIX = "{\"probe\":";
+	private static final String ACK_PREFIX = "{\"probeAck\":";
+	private static final int MAX_ID_LENGTH = 64;
+	private static final String PROBE_SECONDS = "kalambury_draw_probe_seconds";
+	private static final String PROBE_HELP = "Latency of draw probes by stage, measured on this node.";
+	private static final String PROPAGATION_SECONDS = "kalambury_draw_propagation_seconds";
+	private static final String PROPAGATION_HELP = "Time from receiving draw probe to receiving its acknowledgement, by room.";
+	private static final int MAX_SENT_PROBES = 1024;
+	private static final long SENT_PROBE_TTL_IN_MILLIS = 30000;
+	private static final int MAX_ROOM_SERIES = 64;
+	/** Provider of probes and acks, looked up once. */
+	private static final JsonProvider JSON = JsonProvider.provider();
+
+	private Metrics metrics = Metrics.getInstance();
+	/**
+	 * Probes sent to drawing boards of this node by id, the oldest ones are
+	 * forgotten first
+	 */
+	private final Map<String, SentProbe> sentProbes = new LinkedHashMap<String, SentProbe>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SentProbe> eldest) {
+			return size() > MAX_SENT_PROBES;
+		}
+	};
+	/**
+	 * Rooms having propagation series, guarded by itself
+	 */
+	private final Set<String> roomSeries = new HashSet<>();
+
+	private static volatile DrawProbes instance;
+
+	private DrawProbes() {
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates DrawProbes object.
+	 *
+	 * @return instance of DrawProbes
+	 */
+	public static DrawProbes getInstance() {
+		if (instance == null) {
+			synchronized (DrawProbes.class) {
+				if (instance == null)
+					instance = new DrawProbes();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @param message message of the draw channel
+	 * @return true if the message is a probe
+	 */
+	public static boolean isProbe(String message) {
+		return message.startsWith(PROBE_PREFIX);
+	}
+
+	/**
+	 * @param message message of the draw channel
+	 * @return true if the message is an acknowledgement of a probe
+	 */
+	public static boolean isAck(String message) {
+		return message.startsWith(ACK_PREFIX);
+	}
+
+	/**
+	 * Stamps probe received from the drawing user.
+	 *
+	 * @param message probe with "probe" id and "clientSent" time
+	 * @return probe to be published, null if the probe is malformed
+	 */
+	public String received(String message) {
+		long now = System.currentTimeMillis();
+		try (JsonReader reader = JSON.createReader(new StringReader(message))) {
+			JsonObject probe = reader.readObject();
+			String id = probe.getString("probe");
+			long clientSent = probe.getJsonNumber("clientSent").longValue();
+			if (id.length() > MAX_ID_LENGTH)
+				return null;
+			record("uplink", now - clientSent);
+			return JSON.createObjectBuilder().add("probe", id).add("clientSent", clientSent)
+					.add("serverReceived", now).build().toString();
+		} catch (JsonException | ClassCastException | NullPointerException e) {
+			System.out.println("DrawProbes: dropping malformed probe.");
+			return null;
+		}
+	}
+
+	/**
+	 * Stamps probe sent to a drawing board.
+	 *
+	 * @param probe probe returned by received(String)
+	 * @return probe with "serverSent" time
+	 */
+	public static String sent(String probe) {
+		return probe.substring(0, probe.length() - 1) + ",\"serverSent\":" + System.currentTimeMillis() + "}";
+	}
+
+	/**
+	 * Remembers probe which is about to be sent to the drawing boards of the room
+	 * on this node, so their acknowledgements are accepted. Must be called before
+	 * the probe is stamped with sent(String).
+	 *
+	 * @param roomId room
+	 * @param probe  probe returned by received(String)
+	 */
+	public void fanningOut(String roomId, String probe) {
+		long now = System.currentTimeMillis();
+		try (JsonReader reader = JSON.createReader(new StringReader(probe))) {
+			JsonObject stamped = reader.readObject();
+			SentProbe sent = new SentProbe(roomId, stamped.getJsonNumber("clientSent").longValue(),
+					stamped.getJsonNumber("serverReceived").longValue(), now);
+			synchronized (sentProbes) {
+				sentProbes.put(stamped.getString("probe"), sent);
+			}
+		} catch (JsonException | ClassCastException | NullPointerException e) {
+			System.out.println("DrawProbes: not sending malformed probe.");
+		}
+	}
+
+	/**
+	 * Records latency of the probe acknowledged by a player. Acknowledgement of a
+	 * probe which has not been sent lately to the room of the player is dropped.
+	 *
+	 * @param roomId room of the player
+	 * @param ack    probe with all the stamps and "rendered" time
+	 */
+	public void acknowledged(String roomId, String ack) {
+		long now = System.currentTimeMillis();
+		try (JsonReader reader = JSON.createReader(new StringReader(ack))) {
+			JsonObject probe = reader.readObject();
+			String id = probe.getString("probeAck");
+			long serverSent = probe.getJsonNumber("serverSent").longValue();
+			long rendered = probe.getJsonNumber("rendered").longValue();
+			SentProbe sent;
+			synchronized (sentProbes) {
+				sent = sentProbes.get(id);
+			}
+			// Stamp of the player's drawing board is taken after fanning out has begun
+			if (sent == null || !sent.roomId.equals(roomId) || now - sent.fannedOut > SENT_PROBE_TTL_IN_MILLIS
+					|| serverSent < sent.fannedOut || serverSent > now) {
+				System.out.println("DrawProbes: dropping acknowledgement of unknown probe.");
+				return;
+			}
+			record("fanout", serverSent - sent.serverReceived);
+			record("downlink", now - serverSent);
+			record("propagation", now - sent.serverReceived);
+			record("end_to_end", rendered - sent.clientSent);
+			recordRoom(roomId, now - sent.serverReceived);
+		} catch (JsonException | ClassCastException | NullPointerException e) {
+			System.out.println("DrawProbes: dropping malformed acknowledgement.");
+		}
+	}
+
+	/**
+	 * Removes propagation series of the room, e.g. when nobody draws in it on
+	 * this node anymore.
+	 *
+	 * @param roomId room
+	 */
+	public void removeRoom(String roomId) {
+		synchronized (roomSeries) {
+			if (roomSeries.remove(roomId))
+				metrics.remove(PROPAGATION_SECONDS, "room", roomId);
+		}
+	}
+
+	/**
+	 * Records propagation of the room, unless there are MAX_ROOM_SERIES series of
+	 * other rooms already.
+	 *
+	 * @param roomId room
+	 * @param millis propagation
+	 */
+	private void recordRoom(String roomId, long millis) {
+		synchronized (roomSeries) {
+			if (roomSeries.size() < MAX_ROOM_SERIES)
+				roomSeries.add(roomId);
+			if (roomSeries.contains(roomId))
+				metrics.histogram(PROPAGATION_SECONDS, PROPAGATION_HELP, Metrics.MILLIS, "room", roomId).record(millis);
+		}
+	}
+
+	private void record(String stage, long millis) {
+		metrics.histogram(PROBE_SECONDS, PROBE_HELP, Metrics.MILLIS, "stage", stage).record(millis);
+	}
+
+	/**
+	 * Stamps of the probe sent to drawing boards of this node.
+	 */
+	private static final class SentProbe {
+
+		private final String roomId;
+		private final long clientSent;
+		private final long serverReceived;
+		private final long fannedOut;
+
+		private SentProbe(String roomId, long clientSent, long serverReceived, long fannedOut) {
+			this.roomId = roomId;
+			this.clientSent = clientSent;
+			this.serverReceived = serverReceived;
+			this.fannedOut = fannedOut;
+		}
+	}
+}
@@ -0,0 +1,421 @@
+package game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of room events with snapshots, kept in a local directory.
+ * Every event gets next sequence number of its room and is written as a frame
+ * (length, CRC32, type, sequence number, payload) to the current segment of the
+ * room. Writes go to the page cache, sync forces them to disk in batches.
+ * Taking a snapshot starts a new segment, so segments older than a durable
+ * snapshot can be deleted. Reading stops at the first torn or corrupted frame,
+ * which is what a crash in the middle of a write leaves behind.
+ *
+ * @author Piotr Koodziejski
+ */
+public class EventJournal {
+
+	/**
+	 * Event read back from the journal.
+	 */
+	public static final class Record {
+
+		private final byte type;
+		private final long seq;
+		private final String payload;
+
+		private Record(byte type, long seq, String payload) {
+			this.type = type;
+			this.seq = seq;
+			this.payload = payload;
+		}
+
+		public byte getType() {
+			return type;
+		}
+
+		public long getSeq() {
+			return seq;
+		}
+
+		public String getPayload() {
+			return payload;
+		}
+	}
+
+	/**
+	 * Last snapshot of the room followed by events written after it.
+	 */
+	public static final class Recovered {
+
+		private final String snapshot;
+		private final List<Record> records;
+
+		private Recovered(String snapshot, List<Record> records) {
+			this.snapshot = snapshot;
+			this.records = records;
+		}
+
+		/**
+		 * @return last durable snapshot, null if there is none
+		 */
+		public String getSnapshot() {
+			return snapshot;
+		}
+
+		/**
+		 * @return events written after the snapshot, in order
+		 */
+		public List<Record> getRecords() {
+			return records;
+		}
+	}
+
+	private static final String SEGMENT_SUFFIX = ".journal";
+	private static final String SNAPSHOT_SUFFIX = ".snapshot";
+	// length + CRC32 of the frame body
+	private static final int FRAME_HEADER = 8;
+	// type + sequence number
+	private static final int BODY_HEADER = 9;
+	private static final int MAX_FRAME = 16 * 1024 * 1024;
+
+	private final Path directory;
+	private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+
+	/**
+	 * @param directory directory of the journal, created if it does not exist
+	 * @throws IOException directory cannot be created
+	 */
+	public EventJournal(Path directory) throws IOException {
+		this.directory = Files.createDirectories(directory);
+	}
+
+	/**
+	 * Writes event to the current segment of the room. Event is durable after
+	 * next sync.
+	 *
+	 * @param roomId  room
+	 * @param type    type of the event, meaning is up to the caller
+	 * @param payload content of the event
+	 * @return sequence number of the event
+	 */
+	public long append(String roomId, byte type, String payload) {
+		byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+		Room room = room(roomId);
+		synchronized (room) {
+			long seq = room.seq + 1;
+			ByteBuffer body = ByteBuffer.allocate(BODY_HEADER + bytes.length);
+			body.put(type).putLong(seq).put(bytes).flip();
+			CRC32 crc = new CRC32();
+			crc.update(body.array(), 0, body.limit());
+			ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + body.limit());
+			frame.putInt(body.limit()).putInt((int) crc.getValue()).put(body).flip();
+			try {
+				while (frame.hasRemaining())
+					room.channel.write(frame);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to write event of room " + roomId, e);
+			}
+			room.seq = seq;
+			room.isDirty = true;
+			return seq;
+		}
+	}
+
+	/**
+	 * Forces events written since the last sync to disk.
+	 */
+	public void sync() {
+		for (Map.Entry<String, Room> entry : rooms.entrySet()) {
+			Room room = entry.getValue();
+			synchronized (room) {
+				if (!room.isDirty || !room.channel.isOpen())
+					continue;
+				try {
+					room.channel.force(false);
+					room.isDirty = false;
+				} catch (IOException e) {
+					System.err.println("EventJournal: unable to sync events of room " + entry.getKey());
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts new segment of the room. Events up to the returned sequence number
+	 * are in older segments, so state captured after this call contains them.
+	 *
+	 * @param roomId room
+	 * @return sequence number of the last event in older segments
+	 */
+	public long rotate(String roomId) {
+		Room room = room(roomId);
+		synchronized (room) {
+			try {
+				room.channel.force(false);
+				room.channel.close();
+				room.channel = openSegment(roomId, room.seq + 1);
+				room.isDirty = false;
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to start new segment of room " + roomId, e);
+			}
+			return room.seq;
+		}
+	}
+
+	/**
+	 * Durably replaces snapshot of the room and deletes segments it covers.
+	 *
+	 * @param roomId   room
+	 * @param seq      sequence number returned by rotate before state was captured
+	 * @param snapshot state of the room
+	 */
+	public void writeSnapshot(String roomId, long seq, String snapshot) {
+		byte[] bytes = snapshot.getBytes(StandardCharsets.UTF_8);
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		ByteBuffer buffer = ByteBuffer.allocate(16 + bytes.length);
+		buffer.putLong(seq).putInt((int) crc.getValue()).putInt(bytes.length).put(bytes).flip();
+
+		Path file = snapshotFile(roomId);
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				channel.force(true);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			for (Map.Entry<Long, Path> segment : segments(roomId).entrySet()) {
+				if (segment.getKey() <= seq)
+					Files.deleteIfExists(segment.getValue());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write snapshot of room " + roomId, e);
+		}
+	}
+
+	/**
+	 * Reads last snapshot of the room and events written after it.
+	 *
+	 * @param roomId room
+	 * @return recovered state, snapshot is null and records are empty when
+	 *         nothing has been written
+	 */
+	public Recovered read(String roomId) {
+		try {
+			long[] snapshotSeq = new long[1];
+			String snapshot = readSnapshot(roomId, snapshotSeq);
+			List<Record> records = new ArrayList<>();
+			for (Path segment : segments(roomId).values()) {
+				for (Record record : readSegment(segment)) {
+					if (record.seq > snapshotSeq[0])
+						records.add(record);
+				}
+			}
+			return new Recovered(snapshot, records);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to read journal of room " + roomId, e);
+		}
+	}
+
+	/**
+	 * @return ids of the rooms which have a snapshot or events on disk, with
+	 *         characters unsafe for file names replaced
+	 */
+	public Set<String> roomIds() {
+		Set<String> roomIds = new TreeSet<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(SNAPSHOT_SUFFIX))
+					roomIds.add(name.substring(0, name.length() - SNAPSHOT_SUFFIX.length()));
+				else if (name.endsWith(SEGMENT_SUFFIX) && name.lastIndexOf('-') > 0)
+					roomIds.add(name.substring(0, name.lastIndexOf('-')));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to list rooms of the journal", e);
+		}
+		return roomIds;
+	}
+
+	/**
+	 * Deletes snapshot and events of the room, e.g. when it has moved to another
+	 * node.
+	 *
+	 * @param roomId room
+	 */
+	public void remove(String roomId) {
+		Room room = rooms.remove(roomId);
+		try {
+			if (room != null) {
+				synchronized (room) {
+					room.channel.close();
+				}
+			}
+			for (Path segment : segments(roomId).values())
+				Files.deleteIfExists(segment);
+			Files.deleteIfExists(snapshotFile(roomId));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to remove journal of room " + roomId, e);
+		}
+	}
+
+	/**
+	 * Syncs and closes all the segments.
+	 */
+	public void close() {
+		sync();
+		for (Room room : rooms.values()) {
+			synchronized (room) {
+				try {
+					room.channel.close();
+				} catch (IOException e) {
+					System.err.println("EventJournal: unable to close segment.");
+				}
+			}
+		}
+		rooms.clear();
+	}
+
+	/**
+	 * @param roomId room
+	 * @return room opened for writing; new segment starts after the last event
+	 *         found on disk, so a torn tail of previous segment is never appended
+	 *         to
+	 */
+	private Room room(String roomId) {
+		return rooms.computeIfAbsent(roomId, id -> {
+			try {
+				long[] seq = new long[1];
+				readSnapshot(id, seq);
+				for (Path segment : segments(id).values()) {
+					for (Record record : readSegment(segment))
+						seq[0] = Math.max(seq[0], record.seq);
+				}
+				return new Room(openSegment(id, seq[0] + 1), seq[0]);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to open journal of room " + id, e);
+			}
+		});
+	}
+
+	private FileChannel openSegment(String roomId, long start) throws IOException {
+		return FileChannel.open(directory.resolve(fileName(roomId) + "-" + start + SEGMENT_SUFFIX),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * @param roomId room
+	 * @return segments of the room by sequence number of their first event
+	 */
+	private TreeMap<Long, Path> segments(String roomId) throws IOException {
+		TreeMap<Long, Path> segments = new TreeMap<>();
+		String prefix = fileName(roomId) + "-";
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				String start = name.substring(prefix.length(), name.length() - SEGMENT_SUFFIX.length());
+				try {
+					segments.put(Long.parseLong(start), file);
+				} catch (NumberFormatException e) {
+					System.out.println("EventJournal: skipping unknown file " + file);
+				}
+			}
+		}
+		return segments;
+	}
+
+	private List<Record> readSegment(Path segment) throws IOException {
+		List<Record> records = new ArrayList<>();
+		ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+		while (data.remaining() >= FRAME_HEADER) {
+			int length = data.getInt();
+			int checksum = data.getInt();
+			if (length < BODY_HEADER || length > MAX_FRAME || length > data.remaining())
+				break;
+			CRC32 crc = new CRC32();
+			crc.update(data.array(), data.position(), length);
+			if ((int) crc.getValue() != checksum)
+				break;
+			byte type = data.get();
+			long seq = data.getLong();
+			String payload = new String(data.array(), data.position(), length - BODY_HEADER, StandardCharsets.UTF_8);
+			data.position(data.position() + length - BODY_HEADER);
+			records.add(new Record(type, seq, payload));
+		}
+		return records;
+	}
+
+	/**
+	 * @param roomId room
+	 * @param seq    receives sequence number of the snapshot, 0 if there is none
+	 * @return snapshot, null if there is none or it is corrupted
+	 */
+	private String readSnapshot(String roomId, long[] seq) throws IOException {
+		seq[0] = 0;
+		Path file = snapshotFile(roomId);
+		if (!Files.exists(file))
+			return null;
+		ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+		if (data.remaining() < 16)
+			return null;
+		long snapshotSeq = data.getLong();
+		int checksum = data.getInt();
+		int length = data.getInt();
+		if (length < 0 || length > data.remaining())
+			return null;
+		CRC32 crc = new CRC32();
+		crc.update(data.array(), data.position(), length);
+		if ((int) crc.getValue() != checksum)
+			return null;
+		seq[0] = snapshotSeq;
+		return new String(data.array(), data.position(), length, StandardCharsets.UTF_8);
+	}
+
+	private Path snapshotFile(String roomId) {
+		return directory.resolve(fileName(roomId) + SNAPSHOT_SUFFIX);
+	}
+
+	/**
+	 * @param roomId room
+	 * @return room id safe to be used in file names
+	 */
+	private static String fileName(String roomId) {
+		return roomId.replaceAll("[^A-Za-z0-9_]", "_");
+	}
+
+	/**
+	 * Current segment of the room.
+	 */
+	private static final class Room {
+
+		private FileChannel channel;
+		private long seq;
+		private boolean isDirty;
+
+		private Room(FileChannel channel, long seq) {
+			this.channel = channel;
+			this.seq = seq;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package game;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import db.AppDictionaryService;
+import exception.GameIntegrityViolationException;
+import service.Metrics;
+import service.TokenBucket;
+
+/**
+ * Flood control of websocket sessions. Every session has its own limiter: chat
+ * session may send CHAT_LINES_PER_SECOND lines, draw session may send
+ * DRAW_BYTES_PER_SECOND bytes of strokes, with bursts of BURST_SECONDS worth of
+ * them. Frames above the limit are dropped before they are parsed or passed to
+ * other players. Every dropped frame is a strike, session which collects more
+ * than MAX_STRIKES strikes (strikes are forgiven at
+ * STRIKES_FORGIVEN_PER_SECOND) is disconnected. Dropped frames and disconnected
+ * sessions are counted (see Metrics). It is a singleton and is meant to be
+ * injected as a field i.e. private FloodControl floodControl =
+ * FloodControl.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class FloodControl {
+
+	/**
+	 * Decision about a frame.
+	 */
+	public enum Verdict {
+		/**
+		 * Frame is within the limit
+		 */
+		PASS,
+		/**
+		 * Frame is above the limit and should be dropped
+		 */
+		DROP,
+		/**
+		 * Frame should be dropped and the session closed
+		 */
+		DISCONNECT
+	}
+
+	private static final int DEFAULT_CHAT_LINES_PER_SECOND = 3;
+	private static final int DEFAULT_DRAW_BYTES_PER_SECOND = 32 * 1024;
+	private static final int BURST_SECONDS = 2;
+	private static final int MAX_STRIKES = 30;
+	private static final int STRIKES_FORGIVEN_PER_SECOND = 1;
+
+	private AppDictionaryService dictService = AppDictionaryService.getInstance();
+
+	private final LongAdder droppedChatLines = new LongAdder();
+	private final LongAdder droppedDrawBytes = new LongAdder();
+	private final LongAdder mergedStrokes = new LongAdder();
+	private final LongAdder disconnectedSessions = new LongAdder();
+	private int chatLinesPerSecond;
+	private int drawBytesPerSecond;
+
+	private static volatile FloodControl instance;
+
+	private FloodControl() {
+		chatLinesPerSecond = DEFAULT_CHAT_LINES_PER_SECOND;
+		try {
+			chatLinesPerSecond = dictService.getChatLinesPerSecond();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("FloodControl: chat limit not set, using default " + chatLinesPerSecond + " lines/s.");
+		}
+		drawBytesPerSecond = DEFAULT_DRAW_BYTES_PER_SECOND;
+		try {
+			drawBytesPerSecond = dictService.getDrawBytesPerSecond();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("FloodControl: draw limit not set, using default " + drawBytesPerSecond + " B/s.");
+		}
+		Metrics metrics = Metrics.getInstance();
+		metrics.counter("kalambury_flood_dropped_chat_lines_total", "Chat lines dropped by flood control.",
+				droppedChatLines::sum);
+		metrics.counter("kalambury_flood_dropped_draw_bytes_total", "Bytes of strokes dropped by flood control.",
+				droppedDrawBytes::sum);
+		metrics.counter("kalambury_flood_merged_strokes_total", "Dropped strokes sent as merged strokes.",
+				mergedStrokes::sum);
+		metrics.counter("kalambury_flood_disconnected_sessions_total", "Sessions disconnected for flooding.",
+				disconnectedSessions::sum);
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates FloodControl object.
+	 *
+	 * @return instance of FloodControl
+	 */
+	public static FloodControl getInstance() {
+		if (instance == null) {
+			synchronized (FloodControl.class) {
+				if (instance == null)
+					instance = new FloodControl();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return limiter of a chat session, cost of a frame is 1 line
+	 */
+	public Limiter newChatLimiter() {
+		return new Limiter(chatLinesPerSecond, droppedChatLines);
+	}
+
+	/**
+	 * @return limiter of a draw session, cost of a frame is its length
+	 */
+	public Limiter newDrawLimiter() {
+		return new Limiter(drawBytesPerSecond, droppedDrawBytes);
+	}
+
+	/**
+	 * Counts strokes dropped by the limiter and sent as one merged stroke.
+	 *
+	 * @param strokes number of merged strokes
+	 */
+	public void countMergedStrokes(int strokes) {
+		mergedStrokes.add(strokes);
+	}
+
+	/**
+	 * @return number of chat lines dropped since start
+	 */
+	public long getDroppedChatLines() {
+		return droppedChatLines.sum();
+	}
+
+	/**
+	 * @return number of bytes of strokes dropped since start
+	 */
+	public long getDroppedDrawBytes() {
+		return droppedDrawBytes.sum();
+	}
+
+	/**
+	 * @return number of dropped strokes sent as merged strokes since start
+	 */
+	public long getMergedStrokes() {
+		return mergedStrokes.sum();
+	}
+
+	/**
+	 * @return number of sessions disconnected for flooding since start
+	 */
+	public long getDisconnectedSessions() {
+		return disconnectedSessions.sum();
+	}
+
+	/**
+	 * Limiter of one session. Not thread-safe, messages of a session are
+	 * delivered one at a time.
+	 */
+	public final class Limiter {
+
+		private final TokenBucket frames;
+		private final TokenBucket strikes;
+		private final LongAdder dropped;
+
+		private Limiter(int perSecond, LongAdder dropped) {
+			long now = System.nanoTime();
+			this.frames = new TokenBucket((long) perSecond * BURST_SECONDS, perSecond, now);
+			this.strikes = new TokenBucket(MAX_STRIKES, STRIKES_FORGIVEN_PER_SECOND, now);
+			this.dropped = dropped;
+		}
+
+		/**
+		 * @param cost cost of the frame, lines or bytes
+		 * @return decision about the frame
+		 */
+		public Verdict admit(int cost) {
+			long now = System.nanoTime();
+			if (frames.tryTake(cost, now))
+				return Verdict.PASS;
+			dropped.add(cost);
+			if (strikes.tryTake(1, now))
+				return Verdict.DROP;
+			disconnectedSessions.increment();
+			return Verdict.DISCONNECT;
+		}
+	}
+}
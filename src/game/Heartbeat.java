@@ -0,0 +1,245 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.Session;
+
+import db.AppDictionaryService;
+import exception.GameIntegrityViolationException;
+
+/**
+ * Detects dead websocket sessions. Every HEARTBEAT_IN_MILLIS each registered
+ * session receives ping, browsers answer with pong on their own. Session which
+ * has not answered for one beat is not alive anymore, so nothing is sent to it.
+ * Session which has not answered for MAX_MISSED_BEATS beats is closed and
+ * marked as lost connection. After each beat listeners are notified, so they
+ * can renew leases of active users (see ActiveUserService). Containers do not
+ * allow concurrent sends to one session, so pings and all the other sends hold
+ * the send lock of the session (see sendLock()). It is a singleton
+ * and is meant to be injected as a field i.e. private Heartbeat heartbeat =
+ * Heartbeat.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class Heartbeat {
+
+	/**
+	 * Notified after every beat.
+	 */
+	public interface Listener {
+
+		/**
+		 * Beat has been sent and dead sessions have been closed.
+		 */
+		void onBeat();
+	}
+
+	private static final long DEFAULT_HEARTBEAT_IN_MILLIS = 10000;
+	private static final int MAX_MISSED_BEATS = 3;
+	private static final String LAST_PONG_PROPERTY = "heartbeat.lastPong";
+	private static final String CONNECTION_LOST_PROPERTY = "heartbeat.connectionLost";
+	private static final String SEND_LOCK_PROPERTY = "heartbeat.sendLock";
+	private static final ByteBuffer PING = ByteBuffer.wrap(new byte[] { 'k' });
+
+	private AppDictionaryService dictService = AppDictionaryService.getInstance();
+
+	private Set<Session> sessions = ConcurrentHashMap.newKeySet();
+	private Set<Listener> listeners = new CopyOnWriteArraySet<>();
+	private ScheduledExecutorService scheduler;
+	private long interval;
+
+	private static volatile Heartbeat instance;
+
+	private Heartbeat() {
+		interval = DEFAULT_HEARTBEAT_IN_MILLIS;
+		try {
+			interval = dictService.getHeartbeat();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("Heartbeat: heartbeat not set, using default " + interval + " ms.");
+		}
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates Heartbeat object.
+	 *
+	 * @return instance of Heartbeat
+	 */
+	public static Heartbeat getInstance() {
+		if (instance == null) {
+			synchronized (Heartbeat.class) {
+				if (instance == null)
+					instance = new Heartbeat();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @param s websocket session
+	 * @return true if session has been closed by heartbeat, i.e. connection has
+	 *         been lost
+	 */
+	public static boolean isConnectionLost(Session s) {
+		return Boolean.TRUE.equals(s.getUserProperties().get(CONNECTION_LOST_PROPERTY));
+	}
+
+	/**
+	 * @param s websocket session
+	 * @return lock which must be held while sending anything to the session
+	 */
+	public static Lock sendLock(Session s) {
+		Lock lock = (Lock) s.getUserProperties().get(SEND_LOCK_PROPERTY);
+		if (lock == null) {
+			// Created when the session is opened, before it is shared
+			lock = new ReentrantLock();
+			s.getUserProperties().put(SEND_LOCK_PROPERTY, lock);
+		}
+		return lock;
+	}
+
+	/**
+	 * Starts sending pings to given session.
+	 *
+	 * @param s websocket session
+	 */
+	public void register(Session s) {
+		sendLock(s);
+		s.getUserProperties().put(LAST_PONG_PROPERTY, System.currentTimeMillis());
+		sessions.add(s);
+		startBeating();
+	}
+
+	/**
+	 * @param s websocket session
+	 */
+	public void unregister(Session s) {
+		sessions.remove(s);
+	}
+
+	/**
+	 * Records answer to the ping.
+	 *
+	 * @param s websocket session which received pong
+	 */
+	public void onPong(Session s) {
+		s.getUserProperties().put(LAST_PONG_PROPERTY, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param s websocket session
+	 * @return true if session is open and has answered the last ping, sessions not
+	 *         registered in heartbeat are alive while open
+	 */
+	public boolean isAlive(Session s) {
+		if (!s.isOpen())
+			return false;
+		Object lastPong = s.getUserProperties().get(LAST_PONG_PROPERTY);
+		return lastPong == null || System.currentTimeMillis() - (Long) lastPong <= 2 * interval;
+	}
+
+	/**
+	 * Adds listener. Adding the same listener again has no effect.
+	 *
+	 * @param listener notified after every beat
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+		startBeating();
+	}
+
+	/**
+	 * @return how long presence of the user is valid without renewal, in
+	 *         milliseconds; it outlives closing of a dead session
+	 */
+	public long getLeaseTime() {
+		return (MAX_MISSED_BEATS + 1) * interval;
+	}
+
+	/**
+	 * Starts periodic beats if they have not been started yet.
+	 */
+	private synchronized void startBeating() {
+		if (scheduler != null)
+			return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "heartbeat");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleAtFixedRate(this::beat, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Closes dead sessions, pings the rest of them and notifies listeners.
+	 */
+	private void beat() {
+		try {
+			long now = System.currentTimeMillis();
+			for (Session s : sessions) {
+				if (!s.isOpen()) {
+					sessions.remove(s);
+				} else if (now - (Long) s.getUserProperties().get(LAST_PONG_PROPERTY) > MAX_MISSED_BEATS * interval) {
+					sessions.remove(s);
+					closeDead(s);
+				} else {
+					ping(s);
+				}
+			}
+
+			for (Listener listener : listeners)
+				listener.onBeat();
+		} catch (Exception e) {
+			// Exception would cancel periodic task
+			System.out.println("Heartbeat: beat error.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Sends ping under the send lock of the session. Session which is being sent
+	 * something right now is not waited for, so one slow session does not delay
+	 * the beat; it is pinged with the next beat.
+	 *
+	 * @param s websocket session
+	 */
+	private void ping(Session s) {
+		Lock lock = sendLock(s);
+		if (!lock.tryLock())
+			return;
+		try {
+			s.getBasicRemote().sendPing(PING.duplicate());
+		} catch (IOException | IllegalStateException e) {
+			System.out.println("Heartbeat: sending ping error.");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes session which has not answered pings. Closing handshake will not
+	 * complete, so session is marked as lost connection before.
+	 *
+	 * @param s websocket session
+	 */
+	private void closeDead(Session s) {
+		System.out.println("Heartbeat: session " + s.getId() + " is dead. Closing...");
+		s.getUserProperties().put(CONNECTION_LOST_PROPERTY, true);
+		try {
+			s.close(new CloseReason(CloseCodes.GOING_AWAY, "Heartbeat timeout."));
+		} catch (IOException e) {
+			System.out.println("Heartbeat: cannot close dead session.");
+		}
+	}
+}
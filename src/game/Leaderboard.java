@@ -0,0 +1,123 @@
+package game;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import db.PointsLedgerService;
+import model.LeaderboardEntry;
+
+/**
+ * Global leaderboard of all signed up players, served from memory (see
+ * RankIndex). Index is built from the database at startup and updated every
+ * time points are appended to the ledger of this node. Points awarded in rooms
+ * owned by other nodes are picked up when the index is rebuilt from the
+ * database every RELOAD_IN_MILLIS, together with points still waiting in the
+ * ledger (see PointsLedgerService). It is a singleton and is meant to be
+ * injected as a field i.e. private Leaderboard leaderboard =
+ * Leaderboard.getInstance();
+ *
+ * @author Maciej Szabaa
+ */
+public class Leaderboard {
+
+	private static final long RELOAD_IN_MILLIS = 60000;
+
+	private PointsLedgerService pointsLedger = PointsLedgerService.getInstance();
+	private volatile RankIndex index = new RankIndex();
+	private ScheduledExecutorService scheduler;
+
+	private static volatile Leaderboard instance;
+
+	private Leaderboard() {
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates Leaderboard object.
+	 *
+	 * @return instance of Leaderboard
+	 */
+	public static Leaderboard getInstance() {
+		if (instance == null) {
+			synchronized (Leaderboard.class) {
+				if (instance == null)
+					instance = new Leaderboard();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Builds the index from the database and starts periodic rebuilding, if it has
+	 * not been started yet.
+	 */
+	public synchronized void start() {
+		if (scheduler != null)
+			return;
+
+		pointsLedger.setListener(this::addPoints);
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "leaderboard");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleWithFixedDelay(this::reload, 0, RELOAD_IN_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Called by the points ledger for every appended point.
+	 *
+	 * @param username player
+	 * @param points   points added
+	 */
+	public void addPoints(String username, int points) {
+		index.add(username, points);
+	}
+
+	/**
+	 * Should be called after new player has been signed up.
+	 *
+	 * @param username player
+	 */
+	public void addPlayer(String username) {
+		index.add(username, 0);
+	}
+
+	/**
+	 * @param offset number of best players to skip
+	 * @param limit  maximum number of players to return
+	 * @return players ordered by points descending
+	 */
+	public List<LeaderboardEntry> page(int offset, int limit) {
+		return index.page(offset, limit);
+	}
+
+	/**
+	 * @param username player
+	 * @return rank and points of the player, null if he has not signed up
+	 */
+	public LeaderboardEntry entry(String username) {
+		return index.entry(username);
+	}
+
+	/**
+	 * Replaces the index with a new one built from the database and the ledger.
+	 * Index is replaced while no points are appended, so points appended during
+	 * the reload are neither lost nor counted twice.
+	 */
+	private void reload() {
+		try {
+			RankIndex rebuilt = new RankIndex();
+			pointsLedger.readAllPoints(committed -> committed.forEach(rebuilt::put), pending -> {
+				pending.forEach(rebuilt::add);
+				index = rebuilt;
+			});
+			System.out.println("Leaderboard: indexed " + rebuilt.size() + " players.");
+		} catch (Exception e) {
+			// Exception would cancel periodic task
+			System.out.println("Leaderboard: reloading error.");
+			e.printStackTrace();
+		}
+	}
+}
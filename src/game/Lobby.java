@@ -0,0 +1,176 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import model.RoomSummary;
+
+/**
+ * Rooms listed in the lobby. Every LOBBY_IN_MILLIS listeners are asked to
+ * report summaries of their rooms, and summaries reported since the previous
+ * tick are published as a new immutable snapshot, already serialized to JSON.
+ * Readers only read the current snapshot, so polling the lobby never touches
+ * game threads nor the database. Rooms not reported for MAX_MISSED_TICKS ticks
+ * are dropped. It is a singleton and is meant to be injected as a field i.e.
+ * private Lobby lobby = Lobby.getInstance();
+ *
+ * @author Maciej Szabaa
+ */
+public class Lobby {
+
+	/**
+	 * Notified when summaries of the rooms should be reported.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called on the lobby thread, should pass the work to the mailbox of the
+		 * room.
+		 */
+		void onLobbyDue();
+	}
+
+	private static final long LOBBY_IN_MILLIS = 1000;
+	private static final int MAX_MISSED_TICKS = 3;
+
+	private Jsonb jsonb = JsonbBuilder.create();
+	private Map<String, RoomSummary> reported = new ConcurrentHashMap<>();
+	private Set<Listener> listeners = new CopyOnWriteArraySet<>();
+	private ScheduledExecutorService scheduler;
+	private volatile Snapshot snapshot;
+
+	private static volatile Lobby instance;
+
+	private Lobby() {
+		snapshot = new Snapshot(Collections.emptyList(), jsonb);
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates Lobby object.
+	 *
+	 * @return instance of Lobby
+	 */
+	public static Lobby getInstance() {
+		if (instance == null) {
+			synchronized (Lobby.class) {
+				if (instance == null)
+					instance = new Lobby();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Adds listener. Adding the same listener again has no effect.
+	 *
+	 * @param listener notified every LOBBY_IN_MILLIS
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+		startTicking();
+	}
+
+	/**
+	 * Reports current summary of the room, it is published with the next tick.
+	 *
+	 * @param summary summary of the room, must not be modified afterwards
+	 */
+	public void update(RoomSummary summary) {
+		reported.put(summary.getRoomId(), summary);
+	}
+
+	/**
+	 * @return JSON array of summaries of all the rooms
+	 */
+	public String roomsJson() {
+		return snapshot.roomsJson;
+	}
+
+	/**
+	 * @param roomId room
+	 * @return JSON summary of the room, null if the room is not listed
+	 */
+	public String roomJson(String roomId) {
+		return snapshot.roomJson.get(roomId);
+	}
+
+	/**
+	 * @return summaries of all the rooms from the current snapshot, must not be
+	 *         modified
+	 */
+	public Map<String, RoomSummary> rooms() {
+		return snapshot.rooms;
+	}
+
+	/**
+	 * Starts periodic publishing if it has not been started yet.
+	 */
+	private synchronized void startTicking() {
+		if (scheduler != null)
+			return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "lobby");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleAtFixedRate(this::tick, 0, LOBBY_IN_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Publishes summaries reported since the previous tick, then asks listeners
+	 * for new ones.
+	 */
+	private void tick() {
+		try {
+			long staleBefore = System.currentTimeMillis() - MAX_MISSED_TICKS * LOBBY_IN_MILLIS;
+			reported.values().removeIf(summary -> summary.getUpdatedAt() < staleBefore);
+			List<RoomSummary> rooms = new ArrayList<>(reported.values());
+			rooms.sort(Comparator.comparing(RoomSummary::getRoomId));
+
+			snapshot = new Snapshot(rooms, jsonb);
+
+			for (Listener listener : listeners)
+				listener.onLobbyDue();
+		} catch (Exception e) {
+			// Exception would cancel periodic task
+			System.out.println("Lobby: publishing error.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Rooms published at once.
+	 */
+	private static final class Snapshot {
+
+		private final String roomsJson;
+		private final Map<String, String> roomJson;
+		private final Map<String, RoomSummary> rooms;
+
+		private Snapshot(List<RoomSummary> rooms, Jsonb jsonb) {
+			Map<String, String> roomJson = new HashMap<>();
+			Map<String, RoomSummary> summaries = new HashMap<>();
+			for (RoomSummary summary : rooms) {
+				roomJson.put(summary.getRoomId(), jsonb.toJson(summary));
+				summaries.put(summary.getRoomId(), summary);
+			}
+			this.roomsJson = jsonb.toJson(rooms);
+			this.roomJson = Collections.unmodifiableMap(roomJson);
+			this.rooms = Collections.unmodifiableMap(summaries);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package game;
+
+import cluster.RoomRouter;
+import model.Match;
+
+/**
+ * Quick join. Places players into rooms with free seats of their word pack,
+ * preferring the least loaded node, and creates rooms on demand (see
+ * RoomPlacement). Load is counted in memory from the lobby snapshot and
+ * placements made by this node, database is never asked, so bursts of players
+ * are placed quickly. It is a singleton and is meant to be injected as a field
+ * i.e. private Matchmaker matchmaker = Matchmaker.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class Matchmaker {
+
+	/**
+	 * How long placed player is counted before he shows up in the lobby
+	 */
+	private static final long PLACEMENT_TTL_IN_MILLIS = 5000;
+
+	private Lobby lobby = Lobby.getInstance();
+	private RoomRouter roomRouter = RoomRouter.getInstance();
+
+	private RoomPlacement placement = new RoomPlacement(Admission.getInstance().getMaxRoomPlayers(),
+			PLACEMENT_TTL_IN_MILLIS);
+
+	private static volatile Matchmaker instance;
+
+	private Matchmaker() {
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates Matchmaker object.
+	 *
+	 * @return instance of Matchmaker
+	 */
+	public static Matchmaker getInstance() {
+		if (instance == null) {
+			synchronized (Matchmaker.class) {
+				if (instance == null)
+					instance = new Matchmaker();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Chooses the room for a player.
+	 *
+	 * @param pack word pack asked by the player, default pack if null or invalid
+	 * @return room and address of the node the player should connect to
+	 */
+	public Match match(String pack) {
+		long now = System.currentTimeMillis();
+		placement.refresh(lobby.rooms(), roomRouter::ownerOf, now);
+		RoomPlacement.Placement placed = placement.place(pack, roomRouter.nodes(), roomRouter::ownerOf, now);
+		if (placed.isNew())
+			System.out.println("Matchmaker: new room " + placed.getRoomId() + " on " + placed.getNodeId());
+
+		Match match = new Match();
+		match.setPack(RoomPlacement.packOf(placed.getRoomId()));
+		match.setRoomId(placed.getRoomId());
+		match.setAddress(roomRouter.addressOf(placed.getNodeId()));
+		return match;
+	}
+}
@@ -0,0 +1,172 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import model.LeaderboardEntry;
+
+/**
+ * Order-statistic index of players by points. Number of players with given
+ * points is kept in a Fenwick tree over point buckets, so rank of a player and
+ * position of the n-th player are found in O(log max points), players of the
+ * same bucket are kept sorted by name. Changing points of a player is
+ * O(log max points + log players), the tree grows when points exceed its size.
+ * Players with the same points have the same rank (1 + number of players with
+ * more points), pages list them by name. Index is thread-safe.
+ *
+ * @author Maciej Szabaa
+ */
+public class RankIndex {
+
+	private static final int INITIAL_SIZE = 1024;
+
+	private final Map<String, Integer> points = new HashMap<>();
+	private final NavigableMap<Integer, TreeSet<String>> buckets = new TreeMap<>();
+	// Fenwick tree, tree[i] counts players in buckets (i - lowbit(i), i], bucket
+	// of p points is at index p + 1
+	private int[] tree = new int[INITIAL_SIZE + 1];
+
+	/**
+	 * Sets points of the player, adds the player if he is not indexed yet.
+	 *
+	 * @param username player
+	 * @param newPoints points of the player, negative points are treated as 0
+	 */
+	public synchronized void put(String username, int newPoints) {
+		int p = Math.max(0, newPoints);
+		Integer old = points.put(username, p);
+		if (old != null) {
+			if (old == p)
+				return;
+			TreeSet<String> bucket = buckets.get(old);
+			bucket.remove(username);
+			if (bucket.isEmpty())
+				buckets.remove(old);
+			update(old, -1);
+		}
+		// Tree is counted before the player is added to the bucket, it may be
+		// rebuilt from the buckets when it grows
+		update(p, 1);
+		buckets.computeIfAbsent(p, k -> new TreeSet<>()).add(username);
+	}
+
+	/**
+	 * Adds points to the player, adds the player if he is not indexed yet.
+	 *
+	 * @param username player
+	 * @param delta    points to add
+	 */
+	public synchronized void add(String username, int delta) {
+		put(username, points.getOrDefault(username, 0) + delta);
+	}
+
+	/**
+	 * @return number of indexed players
+	 */
+	public synchronized int size() {
+		return points.size();
+	}
+
+	/**
+	 * @param username player
+	 * @return rank and points of the player, null if he is not indexed
+	 */
+	public synchronized LeaderboardEntry entry(String username) {
+		Integer p = points.get(username);
+		if (p == null)
+			return null;
+		return new LeaderboardEntry(username, p, rank(p));
+	}
+
+	/**
+	 * @param offset number of best players to skip
+	 * @param limit  maximum number of players to return
+	 * @return players ordered by points descending, then by name
+	 */
+	public synchronized List<LeaderboardEntry> page(int offset, int limit) {
+		List<LeaderboardEntry> page = new ArrayList<>();
+		int total = points.size();
+		if (offset < 0 || limit <= 0 || offset >= total)
+			return page;
+
+		// Bucket of the (offset + 1)-th best player is the bucket of the
+		// (total - offset)-th worst one
+		int first = find(total - offset);
+		int skip = offset - (total - prefix(first));
+		for (Map.Entry<Integer, TreeSet<String>> bucket : buckets.headMap(first, true).descendingMap().entrySet()) {
+			int rank = rank(bucket.getKey());
+			Iterator<String> names = bucket.getValue().iterator();
+			for (; skip > 0 && names.hasNext(); skip--)
+				names.next();
+			while (names.hasNext() && page.size() < limit)
+				page.add(new LeaderboardEntry(names.next(), bucket.getKey(), rank));
+			if (page.size() == limit)
+				break;
+		}
+		return page;
+	}
+
+	/**
+	 * @param p points
+	 * @return 1 + number of players with more points
+	 */
+	private int rank(int p) {
+		return points.size() - prefix(p) + 1;
+	}
+
+	/**
+	 * @param p points
+	 * @return number of players with at most p points
+	 */
+	private int prefix(int p) {
+		int i = Math.min(p + 1, tree.length - 1);
+		int sum = 0;
+		for (; i > 0; i -= i & -i)
+			sum += tree[i];
+		return sum;
+	}
+
+	/**
+	 * @param k position counted from the worst player, starting from 1
+	 * @return points of the k-th worst player
+	 */
+	private int find(int k) {
+		int pos = 0;
+		for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+			if (pos + step < tree.length && tree[pos + step] < k) {
+				pos += step;
+				k -= tree[pos];
+			}
+		}
+		// pos is the last index with less than k players, bucket is at pos + 1
+		return pos;
+	}
+
+	private void update(int p, int delta) {
+		if (p + 1 >= tree.length)
+			grow(p + 1);
+		for (int i = p + 1; i < tree.length; i += i & -i)
+			tree[i] += delta;
+	}
+
+	/**
+	 * Rebuilds the tree big enough to hold given index.
+	 */
+	private void grow(int index) {
+		int size = tree.length - 1;
+		while (size < index + 1)
+			size <<= 1;
+		tree = new int[size + 1];
+		for (Map.Entry<Integer, TreeSet<String>> bucket : buckets.entrySet()) {
+			int count = bucket.getValue().size();
+			for (int i = bucket.getKey() + 1; i < tree.length; i += i & -i)
+				tree[i] += count;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only store of recorded rounds. Recordings are appended to data
+ * segments of at most segmentSize bytes (a recording bigger than that gets a
+ * segment of its own). Per-round index file contains fixed size entries
+ * (segment, offset, length, end of the round), so round id is the number of
+ * its entry and a round is found without reading any recording. Recording is
+ * forced to disk before its index entry, so a crash never leaves an entry
+ * pointing to missing data; a torn entry at the end of the index is dropped.
+ * Recordings are streamed straight from the segment with
+ * FileChannel.transferTo.
+ *
+ * @author Maciej Szabaa
+ */
+public class ReplayArchive {
+
+	/**
+	 * Position of a recording in data segments.
+	 */
+	public static final class Entry {
+
+		private final int segment;
+		private final long offset;
+		private final int length;
+		private final long endedAt;
+
+		private Entry(int segment, long offset, int length, long endedAt) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.endedAt = endedAt;
+		}
+
+		public int getSegment() {
+			return segment;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * @return time the round ended, in milliseconds since epoch
+		 */
+		public long getEndedAt() {
+			return endedAt;
+		}
+	}
+
+	private static final String INDEX_FILE = "rounds.idx";
+	// segment + offset + length + end of the round
+	private static final int ENTRY_SIZE = 4 + 8 + 4 + 8;
+
+	private final Path directory;
+	private final long segmentSize;
+	private final FileChannel index;
+	private FileChannel data;
+	private int segment;
+	private long rounds;
+
+	/**
+	 * @param directory   directory of the archive, created if it does not exist
+	 * @param segmentSize size after which next data segment is started
+	 * @throws IOException archive cannot be opened
+	 */
+	public ReplayArchive(Path directory, long segmentSize) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+		index = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		rounds = index.size() / ENTRY_SIZE;
+		index.truncate(rounds * ENTRY_SIZE);
+		segment = rounds == 0 ? 0 : entry(rounds - 1).segment;
+		data = openSegment(segment);
+	}
+
+	/**
+	 * Appends recording of a round.
+	 *
+	 * @param endedAt   time the round ended, in milliseconds since epoch
+	 * @param recording recording of the round
+	 * @return id of the round
+	 */
+	public synchronized long append(long endedAt, byte[] recording) {
+		try {
+			long offset = data.size();
+			if (offset > 0 && offset + recording.length > segmentSize) {
+				data.close();
+				data = openSegment(++segment);
+				offset = data.size();
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(recording);
+			while (buffer.hasRemaining())
+				data.write(buffer, offset + buffer.position());
+			data.force(false);
+
+			ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+			entry.putInt(segment).putLong(offset).putInt(recording.length).putLong(endedAt).flip();
+			while (entry.hasRemaining())
+				index.write(entry, rounds * ENTRY_SIZE + entry.position());
+			index.force(false);
+			return rounds++;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to archive round", e);
+		}
+	}
+
+	/**
+	 * @return number of archived rounds, ids of rounds are smaller than that
+	 */
+	public synchronized long size() {
+		return rounds;
+	}
+
+	/**
+	 * @param roundId id of the round
+	 * @return position of the recording, null if there is no such round
+	 */
+	public Entry find(long roundId) {
+		if (roundId < 0 || roundId >= size())
+			return null;
+		try {
+			return entry(roundId);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to read index of round " + roundId, e);
+		}
+	}
+
+	/**
+	 * Writes recording of the round to the target without loading it into heap.
+	 *
+	 * @param entry  position of the recording
+	 * @param target channel receiving the recording
+	 * @throws IOException reading or writing error
+	 */
+	public void transferTo(Entry entry, WritableByteChannel target) throws IOException {
+		try (FileChannel channel = FileChannel.open(segmentFile(entry.segment), StandardOpenOption.READ)) {
+			long position = entry.offset;
+			long end = entry.offset + entry.length;
+			while (position < end)
+				position += channel.transferTo(position, end - position, target);
+		}
+	}
+
+	/**
+	 * Closes files of the archive.
+	 */
+	public synchronized void close() {
+		try {
+			data.close();
+			index.close();
+		} catch (IOException e) {
+			System.err.println("ReplayArchive: unable to close archive.");
+		}
+	}
+
+	private Entry entry(long roundId) throws IOException {
+		ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+		while (entry.hasRemaining()) {
+			if (index.read(entry, roundId * ENTRY_SIZE + entry.position()) < 0)
+				throw new IOException("Index of round " + roundId + " is incomplete.");
+		}
+		entry.flip();
+		return new Entry(entry.getInt(), entry.getLong(), entry.getInt(), entry.getLong());
+	}
+
+	private FileChannel openSegment(int number) throws IOException {
+		return FileChannel.open(segmentFile(number), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+	}
+
+	private Path segmentFile(int number) {
+		return directory.resolve(String.format("rounds-%06d.dat", number));
+	}
+}
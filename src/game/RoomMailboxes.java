@@ -0,0 +1,145 @@
+package game;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import db.Database;
+import service.HandlerExecutors;
+import service.Histogram;
+import service.Metrics;
+
+/**
+ * Runs game logic of each room on its own mailbox. Tasks of one room (messages,
+ * joins, leaves, timed events) are run one after another in the order they
+ * were added, so they do not need any locks. Mailboxes do not own threads, they
+ * are multiplexed over a small fixed pool, so many rooms progress in parallel.
+ * In virtual threads mode (see HandlerExecutors) each run of a mailbox gets its
+ * own virtual thread, so a room waiting for database does not stop other rooms.
+ * Rooms running at the same time must not share an EntityManager, every task
+ * uses its own one, closed when the task is done (see Database).
+ * Mailbox of a room is removed when it has nothing to do. Depth of the mailboxes
+ * and time of the tasks are measured (see Metrics). It is a singleton and
+ * is meant to be injected as a field i.e. private RoomMailboxes roomMailboxes =
+ * RoomMailboxes.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class RoomMailboxes {
+
+	/**
+	 * Number of tasks run at once before the thread is given to other rooms
+	 */
+	private static final int MAX_TASKS_PER_RUN = 64;
+
+	private ExecutorService pool;
+	private Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+	private Histogram depths = Metrics.getInstance().histogram("kalambury_room_mailbox_depth",
+			"Tasks waiting in the mailbox of the room when a task is added.", Metrics.UNITS);
+	private Histogram runTimes = Metrics.getInstance().histogram("kalambury_room_task_seconds",
+			"Time of running tasks of the rooms.", Metrics.NANOS);
+
+	private static volatile RoomMailboxes instance;
+
+	private RoomMailboxes() {
+		pool = HandlerExecutors.getInstance().newBlockingPool("room-mailbox",
+				Runtime.getRuntime().availableProcessors());
+		Metrics.getInstance().gauge("kalambury_room_mailboxes", "Rooms which have tasks to run.", this::activeRooms);
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates RoomMailboxes object.
+	 *
+	 * @return instance of RoomMailboxes
+	 */
+	public static RoomMailboxes getInstance() {
+		if (instance == null) {
+			synchronized (RoomMailboxes.class) {
+				if (instance == null)
+					instance = new RoomMailboxes();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Adds task to the mailbox of the room. Task is run after all the tasks added
+	 * to this room before, never at the same time as any other task of the room.
+	 *
+	 * @param roomId room
+	 * @param task   game logic to be run
+	 */
+	public void execute(String roomId, Runnable task) {
+		// Adding inside compute, so idle mailbox cannot be removed in the meantime
+		mailboxes.compute(roomId, (id, mailbox) -> {
+			if (mailbox == null)
+				mailbox = new Mailbox(id);
+			mailbox.add(task);
+			return mailbox;
+		});
+	}
+
+	/**
+	 * @return number of rooms which have tasks to run
+	 */
+	public int activeRooms() {
+		return mailboxes.size();
+	}
+
+	/**
+	 * Queue of tasks of one room.
+	 */
+	private final class Mailbox implements Runnable {
+
+		private final String roomId;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		// Size of ConcurrentLinkedQueue is not a constant-time operation
+		private final AtomicInteger depth = new AtomicInteger();
+		private final AtomicBoolean isScheduled = new AtomicBoolean();
+
+		private Mailbox(String roomId) {
+			this.roomId = roomId;
+		}
+
+		private void add(Runnable task) {
+			depths.record(depth.getAndIncrement());
+			tasks.add(task);
+			if (isScheduled.compareAndSet(false, true))
+				pool.execute(this);
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i != MAX_TASKS_PER_RUN; i++) {
+				Runnable task = tasks.poll();
+				if (task == null)
+					break;
+				depth.decrementAndGet();
+				long start = System.nanoTime();
+				try {
+					task.run();
+				} catch (Exception e) {
+					// One failed task must not stop the room
+					System.err.println("RoomMailboxes: task of room " + roomId + " failed.");
+					e.printStackTrace();
+				} finally {
+					Database.release();
+				}
+				runTimes.record(System.nanoTime() - start);
+			}
+
+			isScheduled.set(false);
+			if (!tasks.isEmpty()) {
+				if (isScheduled.compareAndSet(false, true))
+					pool.execute(this);
+			} else {
+				mailboxes.computeIfPresent(roomId,
+						(id, mailbox) -> mailbox == this && !isScheduled.get() && tasks.isEmpty() ? null : mailbox);
+			}
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package game;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import db.WordService;
+import model.RoomSummary;
+
+/**
+ * Places players into rooms using load counters kept in memory. Number of
+ * players of each room is taken from summaries of the rooms (see Lobby), placed
+ * players are counted as pending placements until their placement expires.
+ * Player who has already shown up in the summary may be counted twice for a
+ * while, which only makes the room look fuller than it is. Load of a node is
+ * the sum of players and pending placements of the rooms it owns. Player is
+ * placed into a room of his word pack with a free seat on the least loaded
+ * node, the fullest room first. When there is no such room, new room is created
+ * on the least loaded node. Rooms of a pack are named pack_number, so pack of
+ * the room is known from its id.
+ *
+ * @author Piotr Koodziejski
+ */
+public class RoomPlacement {
+
+	/**
+	 * Place of a player chosen by the placement.
+	 */
+	public static final class Placement {
+
+		private final String roomId;
+		private final String nodeId;
+		private final boolean isNew;
+
+		private Placement(String roomId, String nodeId, boolean isNew) {
+			this.roomId = roomId;
+			this.nodeId = nodeId;
+			this.isNew = isNew;
+		}
+
+		public String getRoomId() {
+			return roomId;
+		}
+
+		public String getNodeId() {
+			return nodeId;
+		}
+
+		/**
+		 * @return true if the room has been created for this placement
+		 */
+		public boolean isNew() {
+			return isNew;
+		}
+	}
+
+	private static final Pattern ROOM_ID = Pattern.compile("[a-z0-9_]{1,32}");
+	private static final Pattern PACK = Pattern.compile("[a-z]{2,8}");
+	/**
+	 * Number of room ids tried when looking for a new room on given node
+	 */
+	private static final int MAX_NEW_ROOM_CANDIDATES = 256;
+
+	private final int capacity;
+	private final long placementTtl;
+
+	private final Map<String, RoomLoad> rooms = new ConcurrentHashMap<>();
+	private final Map<String, AtomicInteger> nodeLoads = new ConcurrentHashMap<>();
+	private volatile Map<String, List<RoomLoad>> byPack = new HashMap<>();
+	private Object refreshedFrom;
+
+	/**
+	 * @param capacity     number of seats in a room
+	 * @param placementTtl time in milliseconds a placed player is counted as
+	 *                     pending, should be longer than the delay of the room
+	 *                     summaries
+	 */
+	public RoomPlacement(int capacity, long placementTtl) {
+		this.capacity = capacity;
+		this.placementTtl = placementTtl;
+	}
+
+	/**
+	 * @param roomId id of a room
+	 * @return true if room id may be used by players
+	 */
+	public static boolean isValidRoomId(String roomId) {
+		return roomId != null && ROOM_ID.matcher(roomId).matches();
+	}
+
+	/**
+	 * @param pack word pack asked by a player
+	 * @return given pack if it is a valid pack name, default pack otherwise
+	 */
+	public static String normalizePack(String pack) {
+		return pack != null && PACK.matcher(pack).matches() ? pack : WordService.DEFAULT_PACK;
+	}
+
+	/**
+	 * @param roomId id of a room
+	 * @return word pack of the room, default pack for rooms not named
+	 *         pack_number
+	 */
+	public static String packOf(String roomId) {
+		int separator = roomId.indexOf('_');
+		return separator > 0 ? normalizePack(roomId.substring(0, separator)) : WordService.DEFAULT_PACK;
+	}
+
+	/**
+	 * Takes numbers of players from new summaries of the rooms. Summaries are
+	 * merged only once, calls with the same map do nothing, so it may be called
+	 * before every placement.
+	 *
+	 * @param summaries summaries of all the rooms by their ids, must not be
+	 *                  modified
+	 * @param ownerOf   owner node of a room
+	 * @param now       current time in milliseconds
+	 */
+	public synchronized void refresh(Map<String, RoomSummary> summaries, Function<String, String> ownerOf,
+			long now) {
+		if (summaries == refreshedFrom)
+			return;
+		refreshedFrom = summaries;
+
+		Map<String, RoomLoad> reported = new HashMap<>();
+		for (RoomSummary summary : summaries.values()) {
+			RoomLoad room = rooms.computeIfAbsent(summary.getRoomId(), RoomLoad::new);
+			room.update(summary.getPlayers() == null ? 0 : summary.getPlayers(), ownerOf.apply(room.roomId));
+			reported.put(room.roomId, room);
+		}
+		// Rooms created here but not reported yet live as long as their placements
+		rooms.values().removeIf(room -> !reported.containsKey(room.roomId) && room.pending(now) == 0);
+
+		Map<String, List<RoomLoad>> packs = new HashMap<>();
+		Map<String, Integer> loads = new HashMap<>();
+		for (RoomLoad room : rooms.values()) {
+			room.update(room.players, ownerOf.apply(room.roomId));
+			packs.computeIfAbsent(packOf(room.roomId), pack -> new ArrayList<>()).add(room);
+			loads.merge(room.nodeId, room.load(now), Integer::sum);
+		}
+		nodeLoads.keySet().retainAll(loads.keySet());
+		loads.forEach((nodeId, load) -> nodeLoads.computeIfAbsent(nodeId, id -> new AtomicInteger()).set(load));
+		byPack = packs;
+	}
+
+	/**
+	 * Chooses the room for a player and counts him as pending placement there.
+	 *
+	 * @param pack    word pack asked by the player
+	 * @param nodes   ids of running nodes
+	 * @param ownerOf owner node of a room
+	 * @param now     current time in milliseconds
+	 * @return chosen room with its owner
+	 */
+	public Placement place(String pack, Collection<String> nodes, Function<String, String> ownerOf, long now) {
+		pack = normalizePack(pack);
+		String leastLoaded = leastLoaded(nodes);
+
+		// Existing rooms, least loaded node first, then the fullest room
+		List<RoomLoad> candidates = new ArrayList<>(byPack.getOrDefault(pack, new ArrayList<>()));
+		candidates.sort((a, b) -> {
+			int byNode = Integer.compare(nodeLoad(a.nodeId), nodeLoad(b.nodeId));
+			return byNode != 0 ? byNode : Integer.compare(b.load(now), a.load(now));
+		});
+		for (RoomLoad room : candidates) {
+			if (room.tryPlace(capacity, now + placementTtl, now)) {
+				nodeLoads.computeIfAbsent(room.nodeId, id -> new AtomicInteger()).incrementAndGet();
+				return new Placement(room.roomId, room.nodeId, false);
+			}
+		}
+
+		// No free seat, create new room, preferably on the least loaded node
+		String fallback = null;
+		for (int i = 1; i <= MAX_NEW_ROOM_CANDIDATES; i++) {
+			String roomId = pack + "_" + i;
+			if (rooms.containsKey(roomId))
+				continue;
+			if (fallback == null)
+				fallback = roomId;
+			if (leastLoaded == null || leastLoaded.equals(ownerOf.apply(roomId))) {
+				fallback = roomId;
+				break;
+			}
+		}
+		if (fallback == null) {
+			// Every candidate exists, squeeze the player into the emptiest room
+			String roomId = candidates.stream().min((a, b) -> Integer.compare(a.load(now), b.load(now)))
+					.map(room -> room.roomId).orElse(pack + "_1");
+			return new Placement(roomId, ownerOf.apply(roomId), false);
+		}
+
+		String nodeId = ownerOf.apply(fallback);
+		RoomLoad created = new RoomLoad(fallback);
+		created.update(0, nodeId);
+		RoomLoad room = rooms.putIfAbsent(fallback, created);
+		if (room == null) {
+			room = created;
+			synchronized (this) {
+				Map<String, List<RoomLoad>> packs = new HashMap<>(byPack);
+				List<RoomLoad> packRooms = new ArrayList<>(packs.getOrDefault(pack, new ArrayList<>()));
+				packRooms.add(room);
+				packs.put(pack, packRooms);
+				byPack = packs;
+			}
+		}
+		// Room created by another placement at the same time may be full already
+		if (!room.tryPlace(capacity, now + placementTtl, now))
+			return place(pack, nodes, ownerOf, now);
+		nodeLoads.computeIfAbsent(nodeId, id -> new AtomicInteger()).incrementAndGet();
+		return new Placement(fallback, nodeId, room == created);
+	}
+
+	/**
+	 * @param nodeId id of a node
+	 * @return players and pending placements of the rooms owned by the node
+	 */
+	public int nodeLoad(String nodeId) {
+		AtomicInteger load = nodeLoads.get(nodeId);
+		return load == null ? 0 : load.get();
+	}
+
+	/**
+	 * @param roomId id of a room
+	 * @param now    current time in milliseconds
+	 * @return players and pending placements of the room
+	 */
+	public int roomLoad(String roomId, long now) {
+		RoomLoad room = rooms.get(roomId);
+		return room == null ? 0 : room.load(now);
+	}
+
+	private String leastLoaded(Collection<String> nodes) {
+		String leastLoaded = null;
+		for (String nodeId : nodes) {
+			if (leastLoaded == null || nodeLoad(nodeId) < nodeLoad(leastLoaded))
+				leastLoaded = nodeId;
+		}
+		return leastLoaded;
+	}
+
+	/**
+	 * Players of a room and expiries of pending placements, guarded by the
+	 * object itself.
+	 */
+	private static final class RoomLoad {
+
+		private final String roomId;
+		private final ArrayDeque<Long> pending = new ArrayDeque<>();
+		private volatile int players;
+		private volatile String nodeId;
+
+		private RoomLoad(String roomId) {
+			this.roomId = roomId;
+		}
+
+		private void update(int players, String nodeId) {
+			this.players = players;
+			this.nodeId = nodeId;
+		}
+
+		private synchronized int pending(long now) {
+			Iterator<Long> expiries = pending.iterator();
+			while (expiries.hasNext() && expiries.next() <= now)
+				expiries.remove();
+			return pending.size();
+		}
+
+		private int load(long now) {
+			return players + pending(now);
+		}
+
+		private synchronized boolean tryPlace(int capacity, long expiry, long now) {
+			if (load(now) >= capacity)
+				return false;
+			pending.addLast(expiry);
+			return true;
+		}
+	}
+}
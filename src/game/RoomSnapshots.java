@@ -0,0 +1,260 @@
+package game;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import cluster.RoomRouter;
+import db.AppDictionaryService;
+import exception.GameIntegrityViolationException;
+
+/**
+ * Keeps live state of the rooms on local disk, so rooms can be restored after
+ * the JVM has died. Strokes and cleaning of the canvas are written to the
+ * EventJournal as they happen and forced to disk every FSYNC_IN_MILLIS. Every
+ * SNAPSHOT_IN_MILLIS listeners are asked to take snapshots of their rooms; a
+ * snapshot replaces the events it covers. Restored state is the last snapshot
+ * with events written after it replayed. Journal is kept in the directory given
+ * with -Dkalambury.journal, by default in the temporary directory, separate for
+ * every node, so nodes running on one machine do not touch each other's rooms.
+ * It is a singleton and is meant to be injected as a field i.e. private
+ * RoomSnapshots roomSnapshots = RoomSnapshots.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class RoomSnapshots {
+
+	/**
+	 * JVM option containing directory of the journal
+	 */
+	public static final String JOURNAL_PROPERTY = "kalambury.journal";
+
+	/**
+	 * Notified when snapshots should be taken.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called on the snapshot thread, should pass the work to the mailbox of the
+		 * room.
+		 */
+		void onSnapshotDue();
+	}
+
+	private static final byte STROKE = 1;
+	private static final byte CANVAS_CLEANED = 2;
+	private static final long DEFAULT_SNAPSHOT_IN_MILLIS = 5000;
+	private static final long FSYNC_IN_MILLIS = 100;
+
+	private AppDictionaryService dictService = AppDictionaryService.getInstance();
+
+	private EventJournal journal;
+	private Jsonb jsonb = JsonbBuilder.create();
+	private Set<Listener> listeners = new CopyOnWriteArraySet<>();
+	private ScheduledExecutorService scheduler;
+
+	private static volatile RoomSnapshots instance;
+
+	private RoomSnapshots() {
+		Path directory = Paths.get(System.getProperty(JOURNAL_PROPERTY,
+				Paths.get(System.getProperty("java.io.tmpdir"), "kalambury-journal-" + RoomRouter.getInstance().nodeId())
+						.toString()));
+		try {
+			journal = new EventJournal(directory);
+			System.out.println("RoomSnapshots: journal in " + directory);
+		} catch (IOException e) {
+			System.err.println("RoomSnapshots: unable to create journal in " + directory + ", rooms will not be restored.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates RoomSnapshots object.
+	 *
+	 * @return instance of RoomSnapshots
+	 */
+	public static RoomSnapshots getInstance() {
+		if (instance == null) {
+			synchronized (RoomSnapshots.class) {
+				if (instance == null)
+					instance = new RoomSnapshots();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Adds listener. Adding the same listener again has no effect.
+	 *
+	 * @param listener notified every SNAPSHOT_IN_MILLIS
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+		startTicking();
+	}
+
+	/**
+	 * @param roomId     room
+	 * @param strokeJson stroke as received from drawing user
+	 */
+	public void recordStroke(String roomId, String strokeJson) {
+		record(roomId, STROKE, strokeJson);
+	}
+
+	/**
+	 * @param roomId room
+	 */
+	public void recordCleanCanvas(String roomId) {
+		record(roomId, CANVAS_CLEANED, "");
+	}
+
+	/**
+	 * Takes snapshot of the room. Must be run on the mailbox of the room, so the
+	 * state does not change in the meantime. Strokes journaled while the state is
+	 * captured may be both in the snapshot and after it, drawing a stroke twice
+	 * does not change the picture.
+	 *
+	 * @param roomId  room
+	 * @param capture captures current state of the room
+	 */
+	public void snapshot(String roomId, Supplier<RoomState> capture) {
+		if (journal == null)
+			return;
+		try {
+			long seq = journal.rotate(roomId);
+			journal.writeSnapshot(roomId, seq, jsonb.toJson(capture.get()));
+		} catch (RuntimeException e) {
+			System.err.println("RoomSnapshots: unable to take snapshot of room " + roomId);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param roomId room
+	 * @return state of the room from the last snapshot with events written after
+	 *         it, null if nothing has been recorded
+	 */
+	public RoomState restore(String roomId) {
+		if (journal == null)
+			return null;
+		try {
+			EventJournal.Recovered recovered = journal.read(roomId);
+			if (recovered.getSnapshot() == null && recovered.getRecords().isEmpty())
+				return null;
+
+			RoomState state = recovered.getSnapshot() != null ? jsonb.fromJson(recovered.getSnapshot(), RoomState.class)
+					: new RoomState(roomId);
+			for (EventJournal.Record record : recovered.getRecords()) {
+				if (record.getType() == STROKE)
+					state.getStrokes().add(record.getPayload());
+				else if (record.getType() == CANVAS_CLEANED)
+					state.getStrokes().clear();
+			}
+			System.out.println("RoomSnapshots: restored room " + roomId + " with " + recovered.getRecords().size()
+					+ " events after snapshot.");
+			return state;
+		} catch (RuntimeException e) {
+			System.err.println("RoomSnapshots: unable to restore room " + roomId);
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return ids of the rooms which can be restored
+	 */
+	public Set<String> roomIds() {
+		if (journal == null)
+			return new HashSet<>();
+		try {
+			return journal.roomIds();
+		} catch (RuntimeException e) {
+			System.err.println("RoomSnapshots: unable to list rooms.");
+			e.printStackTrace();
+			return new HashSet<>();
+		}
+	}
+
+	/**
+	 * Deletes snapshot and events of the room, e.g. when it has moved to another
+	 * node.
+	 *
+	 * @param roomId room
+	 */
+	public void forget(String roomId) {
+		if (journal == null)
+			return;
+		try {
+			journal.remove(roomId);
+		} catch (RuntimeException e) {
+			System.err.println("RoomSnapshots: unable to forget room " + roomId);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Forces pending events to disk and stops taking snapshots.
+	 */
+	public synchronized void close() {
+		if (scheduler != null)
+			scheduler.shutdownNow();
+		scheduler = null;
+		if (journal != null)
+			journal.close();
+	}
+
+	private void record(String roomId, byte type, String payload) {
+		if (journal == null)
+			return;
+		try {
+			journal.append(roomId, type, payload);
+		} catch (RuntimeException e) {
+			System.err.println("RoomSnapshots: unable to record event of room " + roomId);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Starts periodic syncs and snapshots if they have not been started yet.
+	 */
+	private synchronized void startTicking() {
+		if (scheduler != null || journal == null)
+			return;
+
+		long interval = DEFAULT_SNAPSHOT_IN_MILLIS;
+		try {
+			interval = dictService.getSnapshotInterval();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("RoomSnapshots: snapshot interval not set, using default " + interval + " ms.");
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "room-snapshots");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleWithFixedDelay(journal::sync, FSYNC_IN_MILLIS, FSYNC_IN_MILLIS, TimeUnit.MILLISECONDS);
+		scheduler.scheduleAtFixedRate(this::notifyListeners, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	private void notifyListeners() {
+		try {
+			for (Listener listener : listeners)
+				listener.onSnapshotDue();
+		} catch (Exception e) {
+			// Exception would cancel periodic task
+			System.out.println("RoomSnapshots: snapshot error.");
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of a room handed from one node to another when the room moves: players
+ * with their scores, drawing user, word to guess and strokes drawn since the
+ * canvas was cleaned. Seats of players who are going to reconnect to the new
+ * owner carry their resume tokens.
+ *
+ * @author Piotr Koodziejski
+ */
+public class RoomState {
+
+	/**
+	 * Player of the room.
+	 */
+	public static class Seat {
+
+		private String seatId;
+		private String username;
+		private int points;
+		private boolean isDrawing;
+		private String resumeToken;
+
+		public Seat() {
+		}
+
+		public Seat(String seatId, String username, int points, boolean isDrawing, String resumeToken) {
+			this.seatId = seatId;
+			this.username = username;
+			this.points = points;
+			this.isDrawing = isDrawing;
+			this.resumeToken = resumeToken;
+		}
+
+		public String getSeatId() {
+			return seatId;
+		}
+
+		public void setSeatId(String seatId) {
+			this.seatId = seatId;
+		}
+
+		public String getUsername() {
+			return username;
+		}
+
+		public void setUsername(String username) {
+			this.username = username;
+		}
+
+		public int getPoints() {
+			return points;
+		}
+
+		public void setPoints(int points) {
+			this.points = points;
+		}
+
+		public boolean isDrawing() {
+			return isDrawing;
+		}
+
+		public void setDrawing(boolean isDrawing) {
+			this.isDrawing = isDrawing;
+		}
+
+		public String getResumeToken() {
+			return resumeToken;
+		}
+
+		public void setResumeToken(String resumeToken) {
+			this.resumeToken = resumeToken;
+		}
+	}
+
+	private String roomId;
+	private String word;
+	private long round;
+	private List<Seat> seats = new ArrayList<>();
+	private List<String> strokes = new ArrayList<>();
+
+	public RoomState() {
+	}
+
+	public RoomState(String roomId) {
+		this.roomId = roomId;
+	}
+
+	/**
+	 * @return seat of drawing user, null if nobody is drawing
+	 */
+	public Seat drawer() {
+		return seats.stream().filter(Seat::isDrawing).findFirst().orElse(null);
+	}
+
+	public String getRoomId() {
+		return roomId;
+	}
+
+	public void setRoomId(String roomId) {
+		this.roomId = roomId;
+	}
+
+	public String getWord() {
+		return word;
+	}
+
+	public void setWord(String word) {
+		this.word = word;
+	}
+
+	/**
+	 * @return number of rounds played in the room
+	 */
+	public long getRound() {
+		return round;
+	}
+
+	public void setRound(long round) {
+		this.round = round;
+	}
+
+	public List<Seat> getSeats() {
+		return seats;
+	}
+
+	public void setSeats(List<Seat> seats) {
+		this.seats = seats;
+	}
+
+	public List<String> getStrokes() {
+		return strokes;
+	}
+
+	public void setStrokes(List<String> strokes) {
+		this.strokes = strokes;
+	}
+}
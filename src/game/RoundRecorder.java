@@ -0,0 +1,236 @@
+package game;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.spi.JsonProvider;
+import javax.json.stream.JsonGenerator;
+
+import cluster.RoomRouter;
+
+/**
+ * Records strokes of every round together with the time they were drawn, the
+ * word and the winner, and archives the round when it ends (see ReplayArchive).
+ * Recording is a JSON object
+ * {"roomId","word","winner","startedAt","endedAt","strokes":[{"at","stroke"}]},
+ * where "at" is milliseconds since the start of the round. Strokes are recorded
+ * only if they are well-formed and only with the fields of DrawingMessage, so
+ * recordings stay valid JSON whatever the drawing user sends. Only MAX_STROKES
+ * first strokes of a round are recorded. Ended rounds are archived on a thread
+ * of the recorder, so the room does not wait for the archive to reach the disk.
+ * Archive is kept in the directory given with -Dkalambury.replays, by default
+ * in the temporary directory, separate for every node. It is a singleton and is
+ * meant to be injected as a field i.e. private RoundRecorder roundRecorder =
+ * RoundRecorder.getInstance();
+ *
+ * @author Maciej Szabaa
+ */
+public class RoundRecorder {
+
+	/**
+	 * JVM option containing directory of the archive
+	 */
+	public static final String REPLAYS_PROPERTY = "kalambury.replays";
+
+	private static final int MAX_STROKES = 10000;
+	private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+	private static final long CLOSE_TIMEOUT_IN_MILLIS = 5000;
+	/** Looked up once, Json.createReader() looks the provider up on every call. */
+	private static final JsonProvider JSON = JsonProvider.provider();
+
+	private ReplayArchive archive;
+	private Map<String, Recording> recordings = new ConcurrentHashMap<>();
+	private ExecutorService archiver = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "round-recorder");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private static volatile RoundRecorder instance;
+
+	private RoundRecorder() {
+		Path directory = Paths.get(System.getProperty(REPLAYS_PROPERTY,
+				Paths.get(System.getProperty("java.io.tmpdir"), "kalambury-replays-" + RoomRouter.getInstance().nodeId())
+						.toString()));
+		try {
+			archive = new ReplayArchive(directory, SEGMENT_SIZE);
+			System.out.println("RoundRecorder: archive in " + directory + " with " + archive.size() + " rounds.");
+		} catch (IOException e) {
+			System.err.println("RoundRecorder: unable to open archive in " + directory + ", rounds will not be recorded.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates RoundRecorder object.
+	 *
+	 * @return instance of RoundRecorder
+	 */
+	public static RoundRecorder getInstance() {
+		if (instance == null) {
+			synchronized (RoundRecorder.class) {
+				if (instance == null)
+					instance = new RoundRecorder();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return archive of recorded rounds, null if it cannot be opened
+	 */
+	public ReplayArchive archive() {
+		return archive;
+	}
+
+	/**
+	 * Starts recording new round. Round which has not ended yet is archived
+	 * without winner.
+	 *
+	 * @param roomId room
+	 * @param word   word to guess
+	 */
+	public void startRound(String roomId, String word) {
+		if (archive == null)
+			return;
+		Recording previous = recordings.put(roomId, new Recording(word));
+		if (previous != null)
+			archive(roomId, previous, null);
+	}
+
+	/**
+	 * Records stroke of the current round, does nothing when no round is
+	 * recorded or the stroke is malformed.
+	 *
+	 * @param roomId     room
+	 * @param strokeJson stroke as received from drawing user
+	 */
+	public void record(String roomId, String strokeJson) {
+		Recording recording = recordings.get(roomId);
+		if (recording == null)
+			return;
+		JsonObject stroke = parseStroke(strokeJson);
+		if (stroke == null) {
+			System.out.println("RoundRecorder: dropping malformed stroke of room " + roomId);
+			return;
+		}
+		synchronized (recording) {
+			if (recording.strokes.size() < MAX_STROKES) {
+				recording.times.add(System.currentTimeMillis() - recording.startedAt);
+				recording.strokes.add(stroke);
+			}
+		}
+	}
+
+	/**
+	 * Archives the current round, does nothing when no round is recorded.
+	 *
+	 * @param roomId room
+	 * @param winner name of the player who guessed the word, null if nobody did
+	 */
+	public void endRound(String roomId, String winner) {
+		Recording recording = recordings.remove(roomId);
+		if (recording != null)
+			archive(roomId, recording, winner);
+	}
+
+	/**
+	 * Waits until ended rounds are archived, at most CLOSE_TIMEOUT_IN_MILLIS, and
+	 * closes the archive.
+	 */
+	public void close() {
+		archiver.shutdown();
+		try {
+			if (!archiver.awaitTermination(CLOSE_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS))
+				System.err.println("RoundRecorder: rounds have not been archived in time.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (archive != null)
+			archive.close();
+	}
+
+	/**
+	 * @param strokeJson stroke of DrawingMessage format
+	 * @return stroke with the fields of DrawingMessage only, null when it is
+	 *         malformed
+	 */
+	private static JsonObject parseStroke(String strokeJson) {
+		try (JsonReader reader = JSON.createReader(new StringReader(strokeJson))) {
+			JsonObject d = reader.readObject();
+			return JSON.createObjectBuilder().add("from", point(d.getJsonObject("from")))
+					.add("to", point(d.getJsonObject("to"))).add("size", point(d.getJsonObject("size")))
+					.add("color", d.getString("color")).build();
+		} catch (JsonException | ClassCastException | NullPointerException e) {
+			return null;
+		}
+	}
+
+	private static JsonObject point(JsonObject p) {
+		return JSON.createObjectBuilder().add("x", p.getJsonNumber("x")).add("y", p.getJsonNumber("y")).build();
+	}
+
+	private void archive(String roomId, Recording recording, String winner) {
+		long endedAt = System.currentTimeMillis();
+		try {
+			archiver.execute(() -> store(roomId, recording, winner, endedAt));
+		} catch (RejectedExecutionException e) {
+			System.err.println("RoundRecorder: round of room " + roomId + " ended after closing, not archived.");
+		}
+	}
+
+	private void store(String roomId, Recording recording, String winner, long endedAt) {
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+		try (JsonGenerator generator = JSON.createGenerator(json)) {
+			generator.writeStartObject().write("roomId", roomId).write("word", recording.word);
+			if (winner == null)
+				generator.writeNull("winner");
+			else
+				generator.write("winner", winner);
+			generator.write("startedAt", recording.startedAt).write("endedAt", endedAt).writeStartArray("strokes");
+			synchronized (recording) {
+				for (int i = 0; i != recording.strokes.size(); i++)
+					generator.writeStartObject().write("at", recording.times.get(i))
+							.write("stroke", recording.strokes.get(i)).writeEnd();
+			}
+			generator.writeEnd().writeEnd();
+		}
+
+		try {
+			long roundId = archive.append(endedAt, json.toByteArray());
+			System.out.println("RoundRecorder: round " + roundId + " of room " + roomId + " has been archived.");
+		} catch (RuntimeException e) {
+			System.err.println("RoundRecorder: unable to archive round of room " + roomId);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Round being recorded.
+	 */
+	private static class Recording {
+
+		private final String word;
+		private final long startedAt = System.currentTimeMillis();
+		private final List<Long> times = new ArrayList<>();
+		private final List<JsonObject> strokes = new ArrayList<>();
+
+		private Recording(String word) {
+			this.word = word;
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import db.AppDictionaryService;
+import exception.GameIntegrityViolationException;
+import service.GameUtil;
+import service.HashedWheelTimer;
+import service.HashedWheelTimer.Timeout;
+
+/**
+ * Drives timed events of the game: round deadlines, hints revealing letters of
+ * the word to guess, expiry of idle rooms and delayed tasks of the game (e.g.
+ * choosing next drawing user after the drawing one has left). All rooms share
+ * one HashedWheelTimer, so scheduling and cancelling events is O(1) and does
+ * not need a thread per room. Listener is called from a small pool of threads,
+ * never from the thread of the wheel. It is a singleton and is meant to be
+ * injected as a field i.e. private RoundTimer roundTimer =
+ * RoundTimer.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class RoundTimer {
+
+	/**
+	 * Receives timed events of a room.
+	 */
+	public interface Listener {
+
+		/**
+		 * @param roomId room
+		 * @param round  round of the game the hint belongs to
+		 * @param hint   word to guess with some of the letters revealed
+		 */
+		void onHint(String roomId, long round, String hint);
+
+		/**
+		 * Nobody guessed the word before round deadline.
+		 *
+		 * @param roomId room
+		 * @param round  round of the game which has reached its deadline
+		 */
+		void onRoundDeadline(String roomId, long round);
+
+		/**
+		 * Nobody has sent any message for a long time.
+		 *
+		 * @param roomId room
+		 */
+		void onRoomIdle(String roomId);
+	}
+
+	private static final long DEFAULT_ROUND_TIME_IN_MILLIS = 90000;
+	private static final long DEFAULT_IDLE_TIME_IN_MILLIS = 300000;
+	private static final int MAX_HINTS = 3;
+	private static final long TICK_IN_MILLIS = 100;
+	private static final int TICKS_PER_WHEEL = 1024;
+	private static final int CALLBACK_THREADS = 2;
+
+	private AppDictionaryService dictService = AppDictionaryService.getInstance();
+	private GameUtil gameUtil = GameUtil.getInstance();
+
+	private HashedWheelTimer timer;
+	private long roundTime;
+	private long idleTime;
+	private Map<String, RoomTimeouts> rooms = new ConcurrentHashMap<>();
+
+	private static volatile RoundTimer instance;
+
+	private RoundTimer() {
+		AtomicInteger threadCounter = new AtomicInteger();
+		ExecutorService callbacks = Executors.newFixedThreadPool(CALLBACK_THREADS, r -> {
+			Thread t = new Thread(r, "round-timer-callback-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		timer = new HashedWheelTimer("round-timer", TICK_IN_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL,
+				callbacks);
+
+		roundTime = DEFAULT_ROUND_TIME_IN_MILLIS;
+		idleTime = DEFAULT_IDLE_TIME_IN_MILLIS;
+		try {
+			roundTime = dictService.getRoundTime();
+			idleTime = dictService.getIdleTime();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("RoundTimer: round or idle time not set, using defaults.");
+		}
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates RoundTimer object.
+	 *
+	 * @return instance of RoundTimer
+	 */
+	public static RoundTimer getInstance() {
+		if (instance == null) {
+			synchronized (RoundTimer.class) {
+				if (instance == null)
+					instance = new RoundTimer();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Schedules deadline of a new round and hints for its word. Events of previous
+	 * round of the room are cancelled. Events are passed the round of the game, a
+	 * listener handling them later (e.g. on the mailbox of the room) must drop the
+	 * ones of a round which has ended in the meantime.
+	 *
+	 * @param roomId    room
+	 * @param gameRound round of the game
+	 * @param word      word to guess
+	 * @param listener  receives events of the round
+	 */
+	public void startRound(String roomId, long gameRound, String word, Listener listener) {
+		RoomTimeouts room = rooms.computeIfAbsent(roomId, id -> new RoomTimeouts());
+		synchronized (room) {
+			room.cancelRound();
+			int round = ++room.round;
+
+			int letters = word.replaceAll("\\s", "").length();
+			int hints = Math.min(MAX_HINTS, letters / 2);
+			for (int i = 1; i <= hints; i++) {
+				String hint = gameUtil.produceHint(word, i);
+				room.roundTimeouts.add(timer.newTimeout(() -> {
+					if (room.isCurrentRound(round))
+						listener.onHint(roomId, gameRound, hint);
+				}, roundTime * i / (hints + 1), TimeUnit.MILLISECONDS));
+			}
+
+			room.roundTimeouts.add(timer.newTimeout(() -> {
+				if (room.isCurrentRound(round))
+					listener.onRoundDeadline(roomId, gameRound);
+			}, roundTime, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	/**
+	 * Cancels deadline and hints of current round of the room.
+	 *
+	 * @param roomId room
+	 */
+	public void cancelRound(String roomId) {
+		RoomTimeouts room = rooms.get(roomId);
+		if (room == null)
+			return;
+		synchronized (room) {
+			room.cancelRound();
+		}
+	}
+
+	/**
+	 * Postpones expiry of an idle room, to be called on activity in the room.
+	 *
+	 * @param roomId   room
+	 * @param listener notified when room becomes idle
+	 * @return true if room has been idle before this call, i.e. the game in the
+	 *         room needs to be resumed
+	 */
+	public boolean touch(String roomId, Listener listener) {
+		RoomTimeouts room = rooms.computeIfAbsent(roomId, id -> new RoomTimeouts());
+		synchronized (room) {
+			boolean wasIdle = room.isIdle;
+			room.isIdle = false;
+			if (room.idleTimeout != null)
+				room.idleTimeout.cancel();
+			room.idleTimeout = timer.newTimeout(() -> {
+				synchronized (room) {
+					if (room.isIdle || rooms.get(roomId) != room)
+						return;
+					room.isIdle = true;
+					room.cancelRound();
+				}
+				listener.onRoomIdle(roomId);
+			}, idleTime, TimeUnit.MILLISECONDS);
+			return wasIdle;
+		}
+	}
+
+	/**
+	 * Runs task once after given delay, without blocking the calling thread. Task
+	 * is cancelled when the room is removed.
+	 *
+	 * @param roomId        room
+	 * @param task          task to be run
+	 * @param delayInMillis delay in milliseconds
+	 * @return handle which allows to cancel the task
+	 */
+	public Timeout schedule(String roomId, Runnable task, long delayInMillis) {
+		RoomTimeouts room = rooms.computeIfAbsent(roomId, id -> new RoomTimeouts());
+		synchronized (room) {
+			Timeout[] timeout = new Timeout[1];
+			timeout[0] = timer.newTimeout(() -> {
+				synchronized (room) {
+					room.tasks.remove(timeout[0]);
+				}
+				task.run();
+			}, delayInMillis, TimeUnit.MILLISECONDS);
+			room.tasks.add(timeout[0]);
+			return timeout[0];
+		}
+	}
+
+	/**
+	 * Cancels round and idle expiry of the room, e.g. when the room has moved to
+	 * another node. Tasks scheduled with schedule are kept.
+	 *
+	 * @param roomId room
+	 */
+	public void releaseRoom(String roomId) {
+		RoomTimeouts room = rooms.get(roomId);
+		if (room == null)
+			return;
+		synchronized (room) {
+			room.cancelRound();
+			if (room.idleTimeout != null)
+				room.idleTimeout.cancel();
+			room.idleTimeout = null;
+			room.isIdle = false;
+		}
+	}
+
+	/**
+	 * Cancels all the events of the room, e.g. when the last player has left.
+	 *
+	 * @param roomId room
+	 */
+	public void removeRoom(String roomId) {
+		RoomTimeouts room = rooms.remove(roomId);
+		if (room == null)
+			return;
+		synchronized (room) {
+			room.cancelRound();
+			if (room.idleTimeout != null)
+				room.idleTimeout.cancel();
+			room.tasks.forEach(Timeout::cancel);
+			room.tasks.clear();
+		}
+	}
+
+	/**
+	 * @return number of scheduled events in all the rooms
+	 */
+	public int pendingEvents() {
+		return timer.pendingTimeouts();
+	}
+
+	/**
+	 * Scheduled events of one room. Guarded by its own monitor.
+	 */
+	private static class RoomTimeouts {
+
+		private List<Timeout> roundTimeouts = new ArrayList<>();
+		private Set<Timeout> tasks = new HashSet<>();
+		private Timeout idleTimeout;
+		private boolean isIdle;
+		private int round;
+
+		private void cancelRound() {
+			roundTimeouts.forEach(Timeout::cancel);
+			roundTimeouts.clear();
+			round++;
+		}
+
+		private synchronized boolean isCurrentRound(int r) {
+			return round == r;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import db.AppDictionaryService;
+import exception.GameIntegrityViolationException;
+import service.HashedWheelTimer.Timeout;
+
+/**
+ * Holds seats of players who have lost connection. Seat (active user in
+ * database together with his points and drawing state) is kept untouched for
+ * RESUME_WINDOW_IN_MILLIS. Player who reconnects with his resume token takes
+ * the same seat back, without any changes in database. When the window passes,
+ * the player leaves the game. It is a singleton and is meant to be injected as
+ * a field i.e. private SeatReservations seatReservations =
+ * SeatReservations.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class SeatReservations {
+
+	private static final long DEFAULT_RESUME_WINDOW_IN_MILLIS = 15000;
+
+	private AppDictionaryService dictService = AppDictionaryService.getInstance();
+	private RoundTimer roundTimer = RoundTimer.getInstance();
+
+	private Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+	private long resumeWindow;
+
+	private static volatile SeatReservations instance;
+
+	private SeatReservations() {
+		resumeWindow = DEFAULT_RESUME_WINDOW_IN_MILLIS;
+		try {
+			resumeWindow = dictService.getResumeWindow();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("SeatReservations: resume window not set, using default " + resumeWindow + " ms.");
+		}
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates SeatReservations object.
+	 *
+	 * @return instance of SeatReservations
+	 */
+	public static SeatReservations getInstance() {
+		if (instance == null) {
+			synchronized (SeatReservations.class) {
+				if (instance == null)
+					instance = new SeatReservations();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return new random resume token, to be given to the player when he takes a
+	 *         seat
+	 */
+	public String newToken() {
+		return UUID.randomUUID().toString();
+	}
+
+	/**
+	 * Holds the seat of disconnected player.
+	 *
+	 * @param roomId   room of the player
+	 * @param token    resume token given to the player
+	 * @param username name of the player
+	 * @param seatId   session id under which player is stored as active user
+	 * @param onExpiry run when the player has not come back in time
+	 * @return true if the seat is held, false if resuming is disabled
+	 */
+	public boolean reserve(String roomId, String token, String username, String seatId, Runnable onExpiry) {
+		if (resumeWindow <= 0 || token == null)
+			return false;
+
+		Reservation reservation = new Reservation(roomId, username, seatId);
+		reservation.timeout = roundTimer.schedule(roomId, () -> {
+			if (reservations.remove(token, reservation)) {
+				System.out.println("SeatReservations: " + username + " has not come back.");
+				onExpiry.run();
+			}
+		}, resumeWindow);
+		reservations.put(token, reservation);
+		System.out.println("SeatReservations: holding seat of " + username + " for " + resumeWindow + " ms.");
+		return true;
+	}
+
+	/**
+	 * Takes held seat back.
+	 *
+	 * @param roomId   room the player comes back to
+	 * @param token    resume token given to the player
+	 * @param username name of the player taken from his JWT
+	 * @return session id under which player is stored as active user, null if
+	 *         there is no seat held for given token and user in given room
+	 */
+	public String claim(String roomId, String token, String username) {
+		if (token == null)
+			return null;
+
+		Reservation reservation = reservations.get(token);
+		if (reservation == null || !reservation.username.equals(username) || !reservation.roomId.equals(roomId))
+			return null;
+		// Whoever removes the reservation first, this call or its expiry, wins
+		if (!reservations.remove(token, reservation))
+			return null;
+		reservation.timeout.cancel();
+		return reservation.seatId;
+	}
+
+	/**
+	 * @return session ids under which players with held seats are stored as active
+	 *         users
+	 */
+	public List<String> heldSeatIds() {
+		return reservations.values().stream().map(r -> r.seatId).collect(Collectors.toList());
+	}
+
+	/**
+	 * @param roomId room
+	 * @return resume tokens of the held seats of the room by session ids under
+	 *         which their players are stored as active users
+	 */
+	public Map<String, String> tokensBySeat(String roomId) {
+		Map<String, String> tokens = new HashMap<>();
+		reservations.forEach((token, reservation) -> {
+			if (reservation.roomId.equals(roomId))
+				tokens.put(reservation.seatId, token);
+		});
+		return tokens;
+	}
+
+	/**
+	 * Stops holding all the seats of the room, e.g. when they are handed to
+	 * another node. Players who have not come back do not leave the game here.
+	 *
+	 * @param roomId room
+	 * @return released seats with their resume tokens
+	 */
+	public List<RoomState.Seat> releaseAll(String roomId) {
+		List<RoomState.Seat> seats = new ArrayList<>();
+		for (String token : reservations.keySet()) {
+			Reservation reservation = reservations.get(token);
+			if (reservation == null || !reservation.roomId.equals(roomId))
+				continue;
+			// Whoever removes the reservation first, this call or its expiry, wins
+			if (!reservations.remove(token, reservation))
+				continue;
+			reservation.timeout.cancel();
+			seats.add(new RoomState.Seat(reservation.seatId, reservation.username, 0, false, token));
+		}
+		return seats;
+	}
+
+	/**
+	 * @return rooms with held seats
+	 */
+	public Set<String> roomIds() {
+		return reservations.values().stream().map(r -> r.roomId).collect(Collectors.toSet());
+	}
+
+	/**
+	 * @return number of held seats
+	 */
+	public int size() {
+		return reservations.size();
+	}
+
+	/**
+	 * @param roomId room
+	 * @return number of held seats of the room
+	 */
+	public int size(String roomId) {
+		return (int) reservations.values().stream().filter(r -> r.roomId.equals(roomId)).count();
+	}
+
+	/**
+	 * Seat of disconnected player.
+	 */
+	private static class Reservation {
+
+		private final String roomId;
+		private final String username;
+		private final String seatId;
+		private volatile Timeout timeout;
+
+		private Reservation(String roomId, String username, String seatId) {
+			this.roomId = roomId;
+			this.username = username;
+			this.seatId = seatId;
+		}
+	}
+}
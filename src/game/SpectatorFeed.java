@@ -0,0 +1,398 @@
+package game;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.websocket.Session;
+
+import db.AppDictionaryService;
+import exception.GameIntegrityViolationException;
+
+/**
+ * Feed for spectators, i.e. users who only watch the game. Spectators are not
+ * stored as active users in database. Instead of receiving every stroke and
+ * every chat message at once, they receive batches of them (JSON arrays) once
+ * per tick. Scoreboard is sent to spectators only when round changes. Every
+ * room has its own spectators and batches, the room is forgotten when its last
+ * spectator leaves. It is a singleton and is meant to
+ * be injected as a field i.e. private SpectatorFeed spectatorFeed =
+ * SpectatorFeed.getInstance();
+ *
+ * @author Maciej Szabaa
+ */
+public class SpectatorFeed {
+
+	/**
+	 * Value of "role" request parameter marking websocket session as a spectator
+	 */
+	public static final String SPECTATOR_ROLE = "spectator";
+
+	private static final int DEFAULT_TICK_IN_MILLIS = 250;
+	private static final int MAX_CHAT_MESSAGES_PER_TICK = 20;
+	private static final String SENDING_PROPERTY = "spectator.sending";
+	private static final String UNSENT_STROKES_PROPERTY = "spectator.unsentStrokes";
+	private static final String ROOM_PROPERTY = "spectator.room";
+
+	private AppDictionaryService dictService = AppDictionaryService.getInstance();
+	private Heartbeat heartbeat = Heartbeat.getInstance();
+
+	private Map<String, Channel> channels = new ConcurrentHashMap<>();
+	private ScheduledExecutorService scheduler;
+
+	private static volatile SpectatorFeed instance;
+
+	private SpectatorFeed() {
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates SpectatorFeed object.
+	 *
+	 * @return instance of SpectatorFeed
+	 */
+	public static SpectatorFeed getInstance() {
+		if (instance == null) {
+			synchronized (SpectatorFeed.class) {
+				if (instance == null)
+					instance = new SpectatorFeed();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @param s websocket session
+	 * @return true if session was opened with "role=spectator" request parameter
+	 */
+	public static boolean isSpectatorRequest(Session s) {
+		Map<String, List<String>> params = s.getRequestParameterMap();
+		return params != null && params.containsKey("role") && params.get("role").contains(SPECTATOR_ROLE);
+	}
+
+	/**
+	 * @param s chat websocket session
+	 * @return true if given session watches the game
+	 */
+	public boolean isChatSpectator(Session s) {
+		Channel channel = channelOf(s);
+		return channel != null && channel.chatSpectators.contains(s);
+	}
+
+	/**
+	 * @param roomId room
+	 * @return chat websocket sessions of spectators of the room
+	 */
+	public Set<Session> chatSpectators(String roomId) {
+		Channel channel = channels.get(roomId);
+		return channel == null ? new HashSet<>() : new HashSet<>(channel.chatSpectators);
+	}
+
+	/**
+	 * @return rooms watched on this node
+	 */
+	public Set<String> roomIds() {
+		return new HashSet<>(channels.keySet());
+	}
+
+	/**
+	 * Registers chat websocket session of a spectator.
+	 *
+	 * @param roomId room watched by the spectator
+	 * @param s      chat websocket session
+	 */
+	public void addChatSpectator(String roomId, Session s) {
+		Channel channel = register(roomId, s, true);
+		System.out.println("SpectatorFeed: new chat spectator of " + roomId + " (all: " + channel.chatSpectators.size()
+				+ ")");
+	}
+
+	/**
+	 * Registers draw websocket session of a spectator.
+	 *
+	 * @param roomId room watched by the spectator
+	 * @param s      draw websocket session
+	 */
+	public void addDrawSpectator(String roomId, Session s) {
+		Channel channel = register(roomId, s, false);
+		System.out.println("SpectatorFeed: new draw spectator of " + roomId + " (all: " + channel.drawSpectators.size()
+				+ ")");
+	}
+
+	/**
+	 * @param s chat websocket session
+	 */
+	public void removeChatSpectator(Session s) {
+		Object roomId = s.getUserProperties().get(ROOM_PROPERTY);
+		if (roomId == null)
+			return;
+		channels.computeIfPresent((String) roomId, (id, channel) -> {
+			channel.chatSpectators.remove(s);
+			return channel.isEmpty() ? null : channel;
+		});
+	}
+
+	/**
+	 * @param s draw websocket session
+	 */
+	public void removeDrawSpectator(Session s) {
+		Object roomId = s.getUserProperties().get(ROOM_PROPERTY);
+		if (roomId == null)
+			return;
+		channels.computeIfPresent((String) roomId, (id, channel) -> {
+			channel.drawSpectators.remove(s);
+			return channel.isEmpty() ? null : channel;
+		});
+	}
+
+	/**
+	 * Queues stroke to be sent with the next batch. Strokes are dropped when
+	 * nobody watches.
+	 *
+	 * @param roomId     room
+	 * @param strokeJson stroke as received from drawing user
+	 */
+	public void enqueueStroke(String roomId, String strokeJson) {
+		Channel channel = channels.get(roomId);
+		if (channel != null && !channel.drawSpectators.isEmpty())
+			channel.pendingStrokes.add(strokeJson);
+	}
+
+	/**
+	 * Queues chat message to be sent with the next batch. When there are too many
+	 * messages waiting, the oldest ones are dropped.
+	 *
+	 * @param roomId          room
+	 * @param chatMessageJson serialized ChatMessage
+	 */
+	public void enqueueChatMessage(String roomId, String chatMessageJson) {
+		Channel channel = channels.get(roomId);
+		if (channel == null || channel.chatSpectators.isEmpty())
+			return;
+		channel.pendingChat.add(chatMessageJson);
+		if (channel.pendingChatSize.incrementAndGet() > MAX_CHAT_MESSAGES_PER_TICK
+				&& channel.pendingChat.poll() != null)
+			channel.pendingChatSize.decrementAndGet();
+	}
+
+	/**
+	 * Publishes scoreboard after round change. Only the latest scoreboard is sent
+	 * with the next batch.
+	 *
+	 * @param roomId         room
+	 * @param scoreboardJson serialized ChatMessage of type SCOREBOARD
+	 */
+	public void publishScoreboard(String roomId, String scoreboardJson) {
+		Channel channel = channels.get(roomId);
+		if (channel != null && !channel.chatSpectators.isEmpty())
+			channel.pendingScoreboard.set(scoreboardJson);
+	}
+
+	/**
+	 * Prepares session of a spectator and adds it to the channel of the room.
+	 *
+	 * @param roomId room watched by the spectator
+	 * @param s      websocket session
+	 * @param isChat true for chat websocket session, false for draw one
+	 * @return channel of the room
+	 */
+	private Channel register(String roomId, Session s, boolean isChat) {
+		s.getUserProperties().put(SENDING_PROPERTY, new AtomicBoolean());
+		s.getUserProperties().put(UNSENT_STROKES_PROPERTY, new StringBuilder());
+		s.getUserProperties().put(ROOM_PROPERTY, roomId);
+		startTicking();
+		// Added inside compute, so the channel cannot be removed in the meantime
+		return channels.compute(roomId, (id, channel) -> {
+			if (channel == null)
+				channel = new Channel();
+			(isChat ? channel.chatSpectators : channel.drawSpectators).add(s);
+			return channel;
+		});
+	}
+
+	/**
+	 * @param s websocket session
+	 * @return channel of the room watched by given session, null if it is not a
+	 *         spectator
+	 */
+	private Channel channelOf(Session s) {
+		Object roomId = s.getUserProperties().get(ROOM_PROPERTY);
+		return roomId == null ? null : channels.get(roomId);
+	}
+
+	/**
+	 * Starts periodic sending of batches if it has not been started yet.
+	 */
+	private synchronized void startTicking() {
+		if (scheduler != null)
+			return;
+
+		int tick = DEFAULT_TICK_IN_MILLIS;
+		try {
+			tick = dictService.getSpectatorTick();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("SpectatorFeed: spectator tick not set, using default " + tick + " ms.");
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "spectator-feed");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleAtFixedRate(this::flush, tick, tick, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sends pending strokes to draw spectators and pending chat messages (followed
+	 * by scoreboard) to chat spectators of every room. Each batch is sent as a
+	 * single frame. Channels whose spectators have all gone are removed.
+	 */
+	private void flush() {
+		try {
+			for (Map.Entry<String, Channel> entry : channels.entrySet()) {
+				Channel channel = entry.getValue();
+				sendStrokes(channel.drawSpectators, drain(channel.pendingStrokes, null, null));
+
+				String chat = drain(channel.pendingChat, channel.pendingChatSize,
+						channel.pendingScoreboard.getAndSet(null));
+				if (chat != null)
+					sendToAll(channel.chatSpectators, chat);
+
+				if (channel.isEmpty())
+					channels.computeIfPresent(entry.getKey(), (id, c) -> c.isEmpty() ? null : c);
+			}
+		} catch (Exception e) {
+			// Exception would cancel periodic task
+			System.out.println("SpectatorFeed: flush error.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param queue queue of serialized JSON objects
+	 * @param size  counter of objects in the queue, may be null
+	 * @param last  serialized JSON object to append at the end, may be null
+	 * @return JSON array of all objects taken from the queue or null if there was
+	 *         nothing to send
+	 */
+	private String drain(Queue<String> queue, AtomicInteger size, String last) {
+		StringBuilder batch = new StringBuilder("[");
+		String json;
+		while ((json = queue.poll()) != null) {
+			if (size != null)
+				size.decrementAndGet();
+			if (batch.length() > 1)
+				batch.append(',');
+			batch.append(json);
+		}
+		if (last != null) {
+			if (batch.length() > 1)
+				batch.append(',');
+			batch.append(last);
+		}
+		if (batch.length() == 1)
+			return null;
+		return batch.append(']').toString();
+	}
+
+	/**
+	 * Sends strokes asynchronously, so one slow spectator cannot delay others.
+	 * Strokes must not be lost, or the picture of the spectator would stay wrong,
+	 * so strokes of a spectator whose previous batch has not been sent yet are
+	 * kept and sent with the next batch the spectator can take.
+	 *
+	 * @param sessions draw spectators sessions
+	 * @param strokes  JSON array of strokes drained from the room, may be null
+	 */
+	private void sendStrokes(Set<Session> sessions, String strokes) {
+		for (Session s : sessions) {
+			if (!s.isOpen()) {
+				sessions.remove(s);
+				continue;
+			}
+			// Only the thread of the feed uses unsent strokes
+			StringBuilder unsent = (StringBuilder) s.getUserProperties().get(UNSENT_STROKES_PROPERTY);
+			if (strokes != null) {
+				if (unsent.length() > 0)
+					unsent.append(',');
+				unsent.append(strokes, 1, strokes.length() - 1);
+			}
+			if (unsent.length() == 0 || !heartbeat.isAlive(s))
+				continue;
+			AtomicBoolean sending = (AtomicBoolean) s.getUserProperties().get(SENDING_PROPERTY);
+			if (!sending.compareAndSet(false, true))
+				continue;
+			String batch = "[" + unsent + "]";
+			unsent.setLength(0);
+			send(s, sending, batch);
+		}
+	}
+
+	/**
+	 * Sends batch asynchronously, so one slow spectator cannot delay others.
+	 * Spectator whose previous batch has not been sent yet skips current one, so
+	 * chat messages may be lost.
+	 *
+	 * @param sessions spectators sessions
+	 * @param batch    JSON array to be sent
+	 */
+	private void sendToAll(Set<Session> sessions, String batch) {
+		for (Session s : sessions) {
+			if (!s.isOpen()) {
+				sessions.remove(s);
+				continue;
+			}
+			// Do not waste sends on spectators who do not answer heartbeat
+			if (!heartbeat.isAlive(s))
+				continue;
+			AtomicBoolean sending = (AtomicBoolean) s.getUserProperties().get(SENDING_PROPERTY);
+			if (sending.compareAndSet(false, true))
+				send(s, sending, batch);
+		}
+	}
+
+	/**
+	 * @param s       websocket session
+	 * @param sending flag of the session, set until the batch is sent
+	 * @param batch   JSON array to be sent
+	 */
+	private static void send(Session s, AtomicBoolean sending, String batch) {
+		try {
+			s.getAsyncRemote().sendText(batch, result -> {
+				sending.set(false);
+				if (!result.isOK())
+					System.out.println("SpectatorFeed: sending batch error.");
+			});
+		} catch (IllegalStateException e) {
+			sending.set(false);
+			System.out.println("SpectatorFeed: sending batch error.");
+		}
+	}
+
+	/**
+	 * Spectators of a room and batches waiting for them.
+	 */
+	private static class Channel {
+
+		private final Set<Session> chatSpectators = new CopyOnWriteArraySet<>();
+		private final Set<Session> drawSpectators = new CopyOnWriteArraySet<>();
+		private final Queue<String> pendingStrokes = new ConcurrentLinkedQueue<>();
+		private final Queue<String> pendingChat = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger pendingChatSize = new AtomicInteger();
+		private final AtomicReference<String> pendingScoreboard = new AtomicReference<>();
+
+		private boolean isEmpty() {
+			return chatSpectators.isEmpty() && drawSpectators.isEmpty();
+		}
+	}
+}
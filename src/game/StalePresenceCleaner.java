@@ -0,0 +1,32 @@
+package game;
+
+import db.ActiveUserService;
+
+/**
+ * Removes active users left in database by previous run of the app (e.g. after
+ * server crash). Their leases are not renewed anymore, so all of them are
+ * removed at startup with a single delete, before anybody joins the game.
+ * Rooms restored from their snapshots take seats of their players back
+ * afterwards (see RoomSnapshots), so it is run by RoomEventsListener before
+ * them, not as a listener of its own started in any order.
+ *
+ * @author Piotr Koodziejski
+ */
+public class StalePresenceCleaner {
+
+	private StalePresenceCleaner() {
+	}
+
+	/**
+	 * Removes active users whose leases have expired.
+	 */
+	public static void run() {
+		try {
+			int removed = ActiveUserService.getInstance().removeExpiredLeases(System.currentTimeMillis());
+			System.out.println("StalePresenceCleaner: removed " + removed + " stale active users.");
+		} catch (Exception e) {
+			System.err.println("StalePresenceCleaner: unable to remove stale active users.");
+			e.printStackTrace();
+		}
+	}
+}
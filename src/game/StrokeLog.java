@@ -0,0 +1,130 @@
+package game;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Strokes drawn in each room since the canvas was cleaned. Players joining or
+ * coming back receive them, so they see the whole picture, and they are handed
+ * to the new owner when the room moves. Only MAX_STROKES latest strokes are
+ * kept. Every change of the strokes of a room increases its version, so readers
+ * can skip rooms which have not changed. It is a singleton and is meant to be
+ * injected as a field i.e. private StrokeLog strokeLog =
+ * StrokeLog.getInstance();
+ *
+ * @author Maciej Szabaa
+ */
+public class StrokeLog {
+
+	private static final int MAX_STROKES = 10000;
+
+	private Map<String, Deque<String>> rooms = new ConcurrentHashMap<>();
+	private Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+	private static volatile StrokeLog instance;
+
+	private StrokeLog() {
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates StrokeLog object.
+	 *
+	 * @return instance of StrokeLog
+	 */
+	public static StrokeLog getInstance() {
+		if (instance == null) {
+			synchronized (StrokeLog.class) {
+				if (instance == null)
+					instance = new StrokeLog();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @param roomId     room
+	 * @param strokeJson stroke as received from drawing user
+	 */
+	public void append(String roomId, String strokeJson) {
+		Deque<String> strokes = rooms.computeIfAbsent(roomId, id -> new ArrayDeque<>());
+		synchronized (strokes) {
+			strokes.addLast(strokeJson);
+			if (strokes.size() > MAX_STROKES)
+				strokes.removeFirst();
+		}
+		changed(roomId);
+	}
+
+	/**
+	 * Canvas has been cleaned.
+	 *
+	 * @param roomId room
+	 */
+	public void clear(String roomId) {
+		rooms.remove(roomId);
+		changed(roomId);
+	}
+
+	/**
+	 * @param roomId room
+	 * @return version of the strokes of the room, 0 if nothing has been drawn yet
+	 */
+	public long version(String roomId) {
+		AtomicLong version = versions.get(roomId);
+		return version == null ? 0 : version.get();
+	}
+
+	/**
+	 * @return rooms which have been drawn in, including cleaned ones
+	 */
+	public Set<String> roomIds() {
+		return new HashSet<>(versions.keySet());
+	}
+
+	/**
+	 * @param roomId room
+	 * @return strokes in the order they were drawn
+	 */
+	public List<String> strokes(String roomId) {
+		Deque<String> strokes = rooms.get(roomId);
+		if (strokes == null)
+			return new ArrayList<>();
+		synchronized (strokes) {
+			return new ArrayList<>(strokes);
+		}
+	}
+
+	/**
+	 * @param roomId room
+	 * @return strokes as JSON array, null if nothing has been drawn
+	 */
+	public String strokesBatch(String roomId) {
+		List<String> strokes = strokes(roomId);
+		return strokes.isEmpty() ? null : "[" + String.join(",", strokes) + "]";
+	}
+
+	/**
+	 * Replaces strokes of the room, e.g. with strokes handed by previous owner.
+	 *
+	 * @param roomId  room
+	 * @param strokes strokes in the order they were drawn
+	 */
+	public void replace(String roomId, List<String> strokes) {
+		Deque<String> replaced = new ArrayDeque<>(strokes);
+		while (replaced.size() > MAX_STROKES)
+			replaced.removeFirst();
+		rooms.put(roomId, replaced);
+		changed(roomId);
+	}
+
+	private void changed(String roomId) {
+		versions.computeIfAbsent(roomId, id -> new AtomicLong()).incrementAndGet();
+	}
+}
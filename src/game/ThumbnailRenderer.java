@@ -0,0 +1,252 @@
+package game;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.spi.JsonProvider;
+
+import db.AppDictionaryService;
+import exception.GameIntegrityViolationException;
+
+/**
+ * Renders small previews of what is drawn in the rooms, for the lobby. Every
+ * THUMBNAIL_IN_MILLIS the background thread replays strokes of the rooms (see
+ * StrokeLog) into PNG images of THUMBNAIL_WIDTH x THUMBNAIL_HEIGHT. Rooms whose
+ * strokes have not changed since the last rendering are skipped, and at most
+ * MAX_RENDERS_PER_TICK rooms are rendered per tick, the longest waiting first.
+ * Game threads never render. It is a singleton and is meant to be injected as a
+ * field i.e. private ThumbnailRenderer thumbnailRenderer =
+ * ThumbnailRenderer.getInstance();
+ *
+ * @author Maciej Szabaa
+ */
+public class ThumbnailRenderer {
+
+	/**
+	 * Rendered preview of a room.
+	 */
+	public static final class Thumbnail {
+
+		private final byte[] png;
+		private final String etag;
+		private final long version;
+		private final long renderedAt;
+
+		private Thumbnail(byte[] png, String etag, long version, long renderedAt) {
+			this.png = png;
+			this.etag = etag;
+			this.version = version;
+			this.renderedAt = renderedAt;
+		}
+
+		/**
+		 * @return image in PNG format, must not be modified
+		 */
+		public byte[] getPng() {
+			return png;
+		}
+
+		/**
+		 * @return entity tag computed from the content of the image, without
+		 *         quotes
+		 */
+		public String getEtag() {
+			return etag;
+		}
+	}
+
+	public static final int THUMBNAIL_WIDTH = 200;
+	public static final int THUMBNAIL_HEIGHT = 120;
+
+	private static final long DEFAULT_THUMBNAIL_IN_MILLIS = 3000;
+	private static final int MAX_RENDERS_PER_TICK = 8;
+	/** Provider of the rendered strokes, looked up once. */
+	private static final JsonProvider JSON = JsonProvider.provider();
+
+	private AppDictionaryService dictService = AppDictionaryService.getInstance();
+	private StrokeLog strokeLog = StrokeLog.getInstance();
+
+	private Map<String, Thumbnail> thumbnails = new ConcurrentHashMap<>();
+	private ScheduledExecutorService scheduler;
+	private long interval;
+
+	private static volatile ThumbnailRenderer instance;
+
+	private ThumbnailRenderer() {
+		// Server has no display
+		if (System.getProperty("java.awt.headless") == null)
+			System.setProperty("java.awt.headless", "true");
+		interval = DEFAULT_THUMBNAIL_IN_MILLIS;
+		try {
+			interval = dictService.getThumbnailInterval();
+		} catch (GameIntegrityViolationException e) {
+			System.out.println("ThumbnailRenderer: thumbnail interval not set, using default " + interval + " ms.");
+		}
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates ThumbnailRenderer object.
+	 *
+	 * @return instance of ThumbnailRenderer
+	 */
+	public static ThumbnailRenderer getInstance() {
+		if (instance == null) {
+			synchronized (ThumbnailRenderer.class) {
+				if (instance == null)
+					instance = new ThumbnailRenderer();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @param roomId room
+	 * @return last rendered preview of the room, null if it has not been rendered
+	 *         yet
+	 */
+	public Thumbnail thumbnail(String roomId) {
+		start();
+		return thumbnails.get(roomId);
+	}
+
+	/**
+	 * @return how often thumbnails are rendered, in milliseconds
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Starts periodic rendering if it has not been started yet.
+	 */
+	public synchronized void start() {
+		if (scheduler != null)
+			return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "thumbnail-renderer");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+		scheduler.scheduleWithFixedDelay(this::renderChanged, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Renders rooms whose strokes have changed, at most MAX_RENDERS_PER_TICK of
+	 * them.
+	 */
+	private void renderChanged() {
+		try {
+			List<String> changed = new ArrayList<>();
+			for (String roomId : strokeLog.roomIds()) {
+				Thumbnail thumbnail = thumbnails.get(roomId);
+				if (thumbnail == null || thumbnail.version != strokeLog.version(roomId))
+					changed.add(roomId);
+			}
+			changed.sort(Comparator.comparingLong(roomId -> {
+				Thumbnail thumbnail = thumbnails.get(roomId);
+				return thumbnail == null ? 0 : thumbnail.renderedAt;
+			}));
+
+			for (String roomId : changed.subList(0, Math.min(changed.size(), MAX_RENDERS_PER_TICK))) {
+				// Version is read before strokes, so changes made meanwhile are rendered next time
+				long version = strokeLog.version(roomId);
+				byte[] png = render(strokeLog.strokes(roomId));
+				CRC32 crc = new CRC32();
+				crc.update(png);
+				thumbnails.put(roomId, new Thumbnail(png, Long.toHexString(crc.getValue()), version,
+						System.currentTimeMillis()));
+			}
+		} catch (Exception e) {
+			// Exception would cancel periodic task
+			System.out.println("ThumbnailRenderer: rendering error.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param strokes strokes of DrawingMessage format, scaled from the size of
+	 *                canvas they were drawn on
+	 * @return image in PNG format
+	 * @throws IOException encoding error
+	 */
+	private static byte[] render(List<String> strokes) throws IOException {
+		BufferedImage image = new BufferedImage(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+			g.setStroke(new BasicStroke(1f));
+			for (String stroke : strokes)
+				drawStroke(g, stroke);
+		} finally {
+			g.dispose();
+		}
+
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", png);
+		return png.toByteArray();
+	}
+
+	/**
+	 * Draws single stroke, malformed strokes are skipped.
+	 *
+	 * @param g      graphics of the thumbnail
+	 * @param stroke stroke of DrawingMessage format
+	 */
+	private static void drawStroke(Graphics2D g, String stroke) {
+		try (JsonReader reader = JSON.createReader(new StringReader(stroke))) {
+			JsonObject d = reader.readObject();
+			JsonObject from = d.getJsonObject("from");
+			JsonObject to = d.getJsonObject("to");
+			JsonObject size = d.getJsonObject("size");
+			double scaleX = THUMBNAIL_WIDTH / size.getJsonNumber("x").doubleValue();
+			double scaleY = THUMBNAIL_HEIGHT / size.getJsonNumber("y").doubleValue();
+			g.setColor(parseColor(d.getString("color")));
+			g.drawLine((int) (from.getJsonNumber("x").doubleValue() * scaleX),
+					(int) (from.getJsonNumber("y").doubleValue() * scaleY),
+					(int) (to.getJsonNumber("x").doubleValue() * scaleX),
+					(int) (to.getJsonNumber("y").doubleValue() * scaleY));
+		} catch (JsonException | ClassCastException | NullPointerException | IllegalArgumentException e) {
+			System.out.println("ThumbnailRenderer: skipping malformed stroke.");
+		}
+	}
+
+	/**
+	 * @param color color of rgba(r,g,b,a) format
+	 * @return color, black if it cannot be parsed
+	 */
+	private static Color parseColor(String color) {
+		int open = color.indexOf('(');
+		int close = color.indexOf(')');
+		if (open < 0 || close < open)
+			return Color.BLACK;
+		String[] parts = color.substring(open + 1, close).split(",");
+		if (parts.length < 3)
+			return Color.BLACK;
+		int alpha = parts.length > 3 ? Math.round(Float.parseFloat(parts[3].trim()) * 255) : 255;
+		return new Color(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+				Integer.parseInt(parts[2].trim()), Math.max(0, Math.min(255, alpha)));
+	}
+}
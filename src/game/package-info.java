@@ -0,0 +1,5 @@
+
+/**
+ * In-memory state of running games which is not stored in database.
+ */
+package game;
\ No newline at end of file
@@ -31,6 +31,19 @@ public class ActiveUser {
 	@Column(name = "id_sesji")
 	private String chatSessionId;
 
+	/**
+	 * Time in milliseconds since epoch until which user is present, renewed by
+	 * heartbeat
+	 */
+	@Column(name = "wane_do")
+	private Long leaseExpiry;
+
+	/**
+	 * Room the user plays in
+	 */
+	@Column(name = "pokj")
+	private String roomId;
+
 	@OneToOne
 	@JoinColumn(name = "idu")
 	private User user;
@@ -78,4 +91,20 @@ public class ActiveUser {
 	public void setWord(String word) {
 		this.word = word;
 	}
+
+	public Long getLeaseExpiry() {
+		return leaseExpiry;
+	}
+
+	public void setLeaseExpiry(Long leaseExpiry) {
+		this.leaseExpiry = leaseExpiry;
+	}
+
+	public String getRoomId() {
+		return roomId;
+	}
+
+	public void setRoomId(String roomId) {
+		this.roomId = roomId;
+	}
 }
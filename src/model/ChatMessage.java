@@ -20,7 +20,9 @@ public class ChatMessage {
 
 	public enum MsgType {
 		WORD_TO_GUESS("WORD_TO_GUESS"), MESSAGE("MESSAGE"), YOU_GUESSED_IT("YOU_GUESSED_IT"), NEXT_WORD("NEXT_WORD"),
-		CLEAN_CANVAS("CLEAN_CANVAS"), CLEAN_WORD_TO_GUESS("CLEAN_WORD_TO_GUESS"), SCOREBOARD("SCOREBOARD");
+		CLEAN_CANVAS("CLEAN_CANVAS"), CLEAN_WORD_TO_GUESS("CLEAN_WORD_TO_GUESS"), SCOREBOARD("SCOREBOARD"),
+		HINT("HINT"), RESUME_TOKEN("RESUME_TOKEN"), RECONNECT("RECONNECT"),
+		QUEUE_POSITION("QUEUE_POSITION"), CHAT_HISTORY("CHAT_HISTORY");
 
 		private String value;
 
@@ -0,0 +1,49 @@
+package model;
+
+/**
+ * Position of a player in the leaderboard
+ *
+ * @author Maciej Szabaa
+ *
+ */
+public class LeaderboardEntry {
+
+	private String username;
+	private int points;
+	private int rank;
+
+	public LeaderboardEntry() {
+
+	}
+
+	public LeaderboardEntry(String username, int points, int rank) {
+		this.username = username;
+		this.points = points;
+		this.rank = rank;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public int getPoints() {
+		return points;
+	}
+
+	public void setPoints(int points) {
+		this.points = points;
+	}
+
+	public int getRank() {
+		return rank;
+	}
+
+	public void setRank(int rank) {
+		this.rank = rank;
+	}
+
+}
@@ -0,0 +1,41 @@
+package model;
+
+/**
+ * Quick join request (word pack asked by the player) and its result (room and
+ * address of the node the player should connect to).
+ * 
+ * @author Piotr Koodziejski
+ */
+public class Match {
+	private String pack;
+	private String roomId;
+	private String address;
+
+	public Match() {
+
+	}
+
+	public String getPack() {
+		return pack;
+	}
+
+	public void setPack(String pack) {
+		this.pack = pack;
+	}
+
+	public String getRoomId() {
+		return roomId;
+	}
+
+	public void setRoomId(String roomId) {
+		this.roomId = roomId;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public void setAddress(String address) {
+		this.address = address;
+	}
+}
@@ -0,0 +1,78 @@
+package model;
+
+/**
+ * Room as listed in the lobby.
+ * 
+ * @author Maciej Szabaa
+ */
+public class RoomSummary {
+
+	private String roomId;
+	private Integer players;
+	private String drawer;
+	private Long round;
+	private String thumbnailUrl;
+	private Long updatedAt;
+
+	public RoomSummary() {
+
+	}
+
+	public RoomSummary(String roomId, Integer players, String drawer, Long round, String thumbnailUrl,
+			Long updatedAt) {
+		this.roomId = roomId;
+		this.players = players;
+		this.drawer = drawer;
+		this.round = round;
+		this.thumbnailUrl = thumbnailUrl;
+		this.updatedAt = updatedAt;
+	}
+
+	public String getRoomId() {
+		return roomId;
+	}
+
+	public void setRoomId(String roomId) {
+		this.roomId = roomId;
+	}
+
+	public Integer getPlayers() {
+		return players;
+	}
+
+	public void setPlayers(Integer players) {
+		this.players = players;
+	}
+
+	public String getDrawer() {
+		return drawer;
+	}
+
+	public void setDrawer(String drawer) {
+		this.drawer = drawer;
+	}
+
+	public Long getRound() {
+		return round;
+	}
+
+	public void setRound(Long round) {
+		this.round = round;
+	}
+
+	public String getThumbnailUrl() {
+		return thumbnailUrl;
+	}
+
+	public void setThumbnailUrl(String thumbnailUrl) {
+		this.thumbnailUrl = thumbnailUrl;
+	}
+
+	public Long getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void setUpdatedAt(Long updatedAt) {
+		this.updatedAt = updatedAt;
+	}
+}
@@ -0,0 +1,78 @@
+package model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Points awarded to the user, entry of the append-only points ledger
+ *
+ * @author Piotr Koodziejski
+ */
+@Entity
+@Table(name = "dziennik_punktw")
+public class ScoreEvent {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "idz")
+	private Long id;
+
+	@Column(name = "nazwa")
+	private String username;
+
+	@Column(name = "punkty")
+	private Integer points;
+
+	/**
+	 * Time in milliseconds since epoch when points were awarded
+	 */
+	@Column(name = "czas")
+	private Long awardedAt;
+
+	public ScoreEvent() {
+
+	}
+
+	public ScoreEvent(String username, Integer points, Long awardedAt) {
+		this.username = username;
+		this.points = points;
+		this.awardedAt = awardedAt;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public Integer getPoints() {
+		return points;
+	}
+
+	public void setPoints(Integer points) {
+		this.points = points;
+	}
+
+	public Long getAwardedAt() {
+		return awardedAt;
+	}
+
+	public void setAwardedAt(Long awardedAt) {
+		this.awardedAt = awardedAt;
+	}
+
+}
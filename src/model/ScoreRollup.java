@@ -0,0 +1,85 @@
+package model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Points of the user summed over a period (day or week) of the points ledger
+ *
+ * @author Piotr Koodziejski
+ */
+@Entity
+@Table(name = "podsumowania_punktw")
+public class ScoreRollup {
+
+	/**
+	 * Period and username, see key(String, String)
+	 */
+	@Id
+	@Column(name = "klucz")
+	private String key;
+
+	@Column(name = "okres")
+	private String period;
+
+	@Column(name = "nazwa")
+	private String username;
+
+	@Column(name = "punkty")
+	private Integer points;
+
+	public ScoreRollup() {
+
+	}
+
+	public ScoreRollup(String period, String username) {
+		this.key = key(period, username);
+		this.period = period;
+		this.username = username;
+		this.points = 0;
+	}
+
+	/**
+	 * @param period   period, see service.ScorePeriods
+	 * @param username user
+	 * @return primary key of the rollup
+	 */
+	public static String key(String period, String username) {
+		return period + "|" + username;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public void setKey(String key) {
+		this.key = key;
+	}
+
+	public String getPeriod() {
+		return period;
+	}
+
+	public void setPeriod(String period) {
+		this.period = period;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public Integer getPoints() {
+		return points;
+	}
+
+	public void setPoints(Integer points) {
+		this.points = points;
+	}
+
+}
@@ -28,6 +28,12 @@ public class Word {
 	@NotNull
 	private String word;
 
+	/**
+	 * Word pack (e.g. language) the word belongs to, null for the default pack
+	 */
+	@Column(name = "pakiet")
+	private String pack;
+
 	public Word() {
 	}
 
@@ -51,4 +57,12 @@ public class Word {
 		this.word = word;
 	}
 
+	public String getPack() {
+		return pack;
+	}
+
+	public void setPack(String pack) {
+		this.pack = pack;
+	}
+
 }
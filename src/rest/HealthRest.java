@@ -0,0 +1,36 @@
+package rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import websocket.WarmUp;
+
+/**
+ * Health of the node for load balancers. Node is ready when its warm-up has
+ * succeeded (see WarmUp).
+ *
+ * @author Piotr Koodziejski
+ */
+@Path("/health")
+public class HealthRest {
+
+	private WarmUp warmUp = WarmUp.getInstance();
+
+	/**
+	 * @return 200 when the node is ready for players, 503 with the reason
+	 *         otherwise
+	 */
+	@GET
+	@Path("/ready")
+	@Produces(MediaType.TEXT_PLAIN)
+	public Response ready() {
+		if (warmUp.isReady())
+			return Response.ok("ready").build();
+		String failure = warmUp.getFailure();
+		return Response.status(Status.SERVICE_UNAVAILABLE).entity(failure == null ? "warming up" : failure).build();
+	}
+}
@@ -0,0 +1,108 @@
+package rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import db.PointsLedgerService;
+import game.Leaderboard;
+import model.LeaderboardEntry;
+import model.ScoreRollup;
+
+/**
+ * Global leaderboard REST endpoint. All-time pages and ranks are read from the
+ * index kept in memory by Leaderboard, so the database is not queried. Daily
+ * and weekly pages ("period" parameter) are read from the rollups of the
+ * points ledger (see PointsLedgerService).
+ *
+ * @author Maciej Szabaa
+ */
+@Path("/leaderboard")
+public class LeaderboardRest {
+
+	private static final int MAX_LIMIT = 100;
+
+	private Leaderboard leaderboard = Leaderboard.getInstance();
+	private PointsLedgerService pointsLedger = PointsLedgerService.getInstance();
+
+	/**
+	 * @param offset number of best players to skip
+	 * @param limit  number of players, at most MAX_LIMIT
+	 * @param period "day" or "week" for points of the current day or week, all
+	 *               points when not given
+	 * @return players ordered by points descending, 400 if offset or limit is
+	 *         negative or period is unknown
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response page(@QueryParam("offset") @DefaultValue("0") int offset,
+			@QueryParam("limit") @DefaultValue("20") int limit, @QueryParam("period") String period) {
+		if (offset < 0 || limit < 0)
+			return Response.status(Status.BAD_REQUEST).build();
+		try (Jsonb jsonb = JsonbBuilder.create()) {
+			if (period != null) {
+				String current = pointsLedger.currentPeriod(period);
+				if (current == null)
+					return Response.status(Status.BAD_REQUEST).build();
+				return Response.ok(jsonb.toJson(periodPage(current, offset, Math.min(limit, MAX_LIMIT)))).build();
+			}
+			return Response.ok(jsonb.toJson(leaderboard.page(offset, Math.min(limit, MAX_LIMIT)))).build();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return Response.serverError().build();
+		}
+	}
+
+	/**
+	 * @param username player
+	 * @return rank and points of the player, 404 if he has not signed up
+	 */
+	@GET
+	@Path("/{username}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response player(@PathParam("username") String username) {
+		LeaderboardEntry entry = leaderboard.entry(username);
+		if (entry == null)
+			return Response.status(Status.NOT_FOUND).build();
+		try (Jsonb jsonb = JsonbBuilder.create()) {
+			return Response.ok(jsonb.toJson(entry)).build();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return Response.serverError().build();
+		}
+	}
+
+	/**
+	 * Ranks players of the page, players with the same points have the same rank.
+	 *
+	 * @param period period, see service.ScorePeriods
+	 * @param offset number of best players to skip
+	 * @param limit  maximum number of players
+	 * @return players ordered by points of the period descending
+	 */
+	private List<LeaderboardEntry> periodPage(String period, int offset, int limit) {
+		List<LeaderboardEntry> page = new ArrayList<>();
+		int rank = 0;
+		Integer previous = null;
+		for (ScoreRollup rollup : pointsLedger.getRollups(period, offset, limit)) {
+			if (previous == null)
+				rank = (int) pointsLedger.countRollupsAbove(period, rollup.getPoints()) + 1;
+			else if (rollup.getPoints() < previous)
+				rank = offset + page.size() + 1;
+			previous = rollup.getPoints();
+			page.add(new LeaderboardEntry(rollup.getUsername(), rollup.getPoints(), rank));
+		}
+		return page;
+	}
+}
@@ -6,19 +6,25 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 
 import db.AppDictionaryService;
+import db.Database;
 import db.PasswordService;
 import db.UserService;
+import game.Leaderboard;
 import model.Credentials;
 import model.Password;
+import service.HandlerExecutors;
 import service.LoginUtil;
 
 /**
- * Login REST endpoint
+ * Login REST endpoint. Login waits for database and computes PBKDF2, so in
+ * virtual threads mode it is run on a virtual thread (see HandlerExecutors).
  * 
  * @author Piotr Koodziejski
  */
@@ -29,11 +35,20 @@ public class LoginRest {
 	private UserService userService = UserService.getInstance();
 	private PasswordService passwordService = PasswordService.getInstance();
 	private AppDictionaryService dictService = AppDictionaryService.getInstance();
+	private HandlerExecutors handlerExecutors = HandlerExecutors.getInstance();
 
 	@POST
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response login(String json) {
+	public void login(String json, @Suspended AsyncResponse asyncResponse) {
+		handlerExecutors.handlers().execute(() -> asyncResponse.resume(processLogin(json)));
+	}
+
+	/**
+	 * @param json credentials of the user
+	 * @return response containing token or server error
+	 */
+	private Response processLogin(String json) {
 		System.out.println("Login: " + json);
 		String token = null;
 		try {
@@ -52,13 +67,14 @@ public class LoginRest {
 
 			if (userService.userExistsInDb(user.getUsername())) {
 				Password pass = passwordService.getPasswordForUser(user.getUsername());
-				if (!loginUtil.isUserAuthenticated(user.getUsername(), pass.getHash(), pass.getSalt(),
-						user.getPassword())) {
+				if (!handlerExecutors.compute(() -> loginUtil.isUserAuthenticated(user.getUsername(), pass.getHash(),
+						pass.getSalt(), user.getPassword()))) {
 					throw new Exception("Password invalid");
 				}
 			} else {
 				System.out.println("Creating new user account.");
 				userService.createNewUser(user.getUsername(), user.getPassword());
+				Leaderboard.getInstance().addPlayer(user.getUsername());
 			}
 
 			token = loginUtil.createJwt(user.getUsername(), dictService.getSecret(), dictService.getExpirationTime(),
@@ -66,6 +82,9 @@ public class LoginRest {
 		} catch (Exception e) {
 			e.printStackTrace();
 			return Response.serverError().build();
+		} finally {
+			// Handler thread serves other requests, do not keep their entities
+			Database.release();
 		}
 		ResponseBuilder rb = Response.ok();
 		rb = loginUtil.defaultHeaders(rb);
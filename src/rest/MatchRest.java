@@ -0,0 +1,73 @@
+package rest;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import db.AppDictionaryService;
+import exception.GameIntegrityViolationException;
+import game.Matchmaker;
+import model.Match;
+import service.LoginUtil;
+
+/**
+ * Quick join REST endpoint. Player sends his JWT in X-Token header and word
+ * pack he would like to play with, and receives the room and the node to
+ * connect to (see Matchmaker). Secret used to verify tokens is read from
+ * database once, so placing players does not touch database at all.
+ *
+ * @author Piotr Koodziejski
+ */
+@Path("/match")
+public class MatchRest {
+
+	private LoginUtil loginUtil = LoginUtil.getInstance();
+	private Matchmaker matchmaker = Matchmaker.getInstance();
+
+	private static volatile String secret;
+	private static volatile String owners;
+
+	/**
+	 * @param token JWT of the player
+	 * @param json  serialized Match with word pack, may be empty
+	 * @return serialized Match with room and address of the node, 401 when token
+	 *         is invalid
+	 */
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response match(@HeaderParam("X-Token") String token, String json) {
+		try (Jsonb jsonb = JsonbBuilder.create()) {
+			if (token == null || !loginUtil.verifyJwt(token, secret(), owners()))
+				return Response.status(Status.UNAUTHORIZED).build();
+
+			Match request = json == null || json.trim().isEmpty() ? new Match() : jsonb.fromJson(json, Match.class);
+			return Response.ok(jsonb.toJson(matchmaker.match(request.getPack()))).build();
+		} catch (GameIntegrityViolationException e) {
+			e.printStackTrace();
+			return Response.status(Status.SERVICE_UNAVAILABLE).build();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return Response.status(Status.BAD_REQUEST).build();
+		}
+	}
+
+	private static String secret() throws GameIntegrityViolationException {
+		if (secret == null)
+			secret = AppDictionaryService.getInstance().getSecret();
+		return secret;
+	}
+
+	private static String owners() throws GameIntegrityViolationException {
+		if (owners == null)
+			owners = AppDictionaryService.getInstance().getOwners();
+		return owners;
+	}
+}
@@ -0,0 +1,28 @@
+package rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+import service.Metrics;
+
+/**
+ * Metrics of the node in Prometheus text format (see Metrics).
+ *
+ * @author Piotr Koodziejski
+ */
+@Path("/metrics")
+public class MetricsRest {
+
+	private Metrics metrics = Metrics.getInstance();
+
+	/**
+	 * @return all the metrics of the node
+	 */
+	@GET
+	@Produces("text/plain; version=0.0.4")
+	public Response metrics() {
+		return Response.ok(metrics.scrape()).build();
+	}
+}
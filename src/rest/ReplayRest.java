@@ -0,0 +1,110 @@
+package rest;
+
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import game.ReplayArchive;
+import game.RoundRecorder;
+
+/**
+ * Replays of past rounds (see RoundRecorder). Recording is streamed from the
+ * archive file to the response, it is never loaded into heap as a whole.
+ *
+ * @author Maciej Szabaa
+ */
+@Path("/replays")
+public class ReplayRest {
+
+	private static final int MAX_ROUNDS = 100;
+
+	private RoundRecorder roundRecorder = RoundRecorder.getInstance();
+
+	/**
+	 * @param limit maximum number of rounds, at most MAX_ROUNDS
+	 * @return ids and end times of latest rounds, latest first
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response latestRounds(@QueryParam("limit") @DefaultValue("20") int limit) {
+		ReplayArchive archive = roundRecorder.archive();
+		if (archive == null)
+			return Response.status(Status.SERVICE_UNAVAILABLE).build();
+
+		List<Round> rounds = new ArrayList<>();
+		long size = archive.size();
+		for (long roundId = size - 1; roundId >= Math.max(0, size - Math.min(limit, MAX_ROUNDS)); roundId--)
+			rounds.add(new Round(roundId, archive.find(roundId).getEndedAt()));
+		try (Jsonb jsonb = JsonbBuilder.create()) {
+			return Response.ok(jsonb.toJson(rounds)).build();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return Response.serverError().build();
+		}
+	}
+
+	/**
+	 * @param roundId id of the round
+	 * @return recording of the round, 404 if there is no such round
+	 */
+	@GET
+	@Path("/{roundId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response replay(@PathParam("roundId") long roundId) {
+		ReplayArchive archive = roundRecorder.archive();
+		if (archive == null)
+			return Response.status(Status.SERVICE_UNAVAILABLE).build();
+		ReplayArchive.Entry entry = archive.find(roundId);
+		if (entry == null)
+			return Response.status(Status.NOT_FOUND).build();
+
+		StreamingOutput recording = out -> archive.transferTo(entry, Channels.newChannel(out));
+		return Response.ok(recording).header("Content-Length", entry.getLength()).build();
+	}
+
+	/**
+	 * Archived round in the list of rounds.
+	 */
+	public static class Round {
+
+		private long roundId;
+		private long endedAt;
+
+		public Round() {
+		}
+
+		public Round(long roundId, long endedAt) {
+			this.roundId = roundId;
+			this.endedAt = endedAt;
+		}
+
+		public long getRoundId() {
+			return roundId;
+		}
+
+		public void setRoundId(long roundId) {
+			this.roundId = roundId;
+		}
+
+		public long getEndedAt() {
+			return endedAt;
+		}
+
+		public void setEndedAt(long endedAt) {
+			this.endedAt = endedAt;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package rest;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import game.ChatLog;
+import game.Lobby;
+
+/**
+ * Lobby REST endpoint, lists running rooms. Responses are taken from the
+ * snapshot published by Lobby, already serialized. Chat history of the room is
+ * paged from ChatLog, "next" of the page is the cursor of the older page.
+ *
+ * @author Maciej Szabaa
+ */
+@Path("/rooms")
+public class RoomsRest {
+
+	private static final int MAX_CHAT_LIMIT = 200;
+
+	private Lobby lobby = Lobby.getInstance();
+	private ChatLog chatLog = ChatLog.getInstance();
+
+	/**
+	 * @return summaries of all the rooms
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response rooms() {
+		return Response.ok(lobby.roomsJson()).build();
+	}
+
+	/**
+	 * @param roomId room
+	 * @return summary of the room, 404 if the room is not running
+	 */
+	@GET
+	@Path("/{roomId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response room(@PathParam("roomId") String roomId) {
+		String room = lobby.roomJson(roomId);
+		if (room == null)
+			return Response.status(Status.NOT_FOUND).build();
+		return Response.ok(room).build();
+	}
+
+	/**
+	 * @param roomId room
+	 * @param before cursor, only older lines are returned; latest lines when not
+	 *               given
+	 * @param limit  number of lines, at most MAX_CHAT_LIMIT
+	 * @return page of chat history of the room, 404 if nothing has been written
+	 *         in the room, 400 if limit is negative
+	 */
+	@GET
+	@Path("/{roomId}/chat")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response chat(@PathParam("roomId") String roomId, @QueryParam("before") Long before,
+			@QueryParam("limit") @DefaultValue("50") int limit) {
+		if (limit < 0)
+			return Response.status(Status.BAD_REQUEST).build();
+		String page = chatLog.page(roomId, before, Math.min(limit, MAX_CHAT_LIMIT));
+		if (page == null)
+			return Response.status(Status.NOT_FOUND).build();
+		return Response.ok(page).build();
+	}
+}
@@ -0,0 +1,52 @@
+package rest;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
+
+import game.ThumbnailRenderer;
+
+/**
+ * Previews of the rooms for the lobby (see ThumbnailRenderer). Clients are
+ * expected to poll with If-None-Match, unchanged preview is answered with 304
+ * Not Modified.
+ *
+ * @author Maciej Szabaa
+ */
+@Path("/rooms/{roomId}/thumbnail")
+public class ThumbnailRest {
+
+	private ThumbnailRenderer thumbnailRenderer = ThumbnailRenderer.getInstance();
+
+	/**
+	 * @param roomId  room
+	 * @param request request with its preconditions
+	 * @return PNG preview of the room, 404 if nothing has been drawn in the room
+	 */
+	@GET
+	@Produces("image/png")
+	public Response thumbnail(@PathParam("roomId") String roomId, @Context Request request) {
+		ThumbnailRenderer.Thumbnail thumbnail = thumbnailRenderer.thumbnail(roomId);
+		if (thumbnail == null)
+			return Response.status(Status.NOT_FOUND).build();
+
+		EntityTag etag = new EntityTag(thumbnail.getEtag());
+		CacheControl cacheControl = new CacheControl();
+		cacheControl.setMaxAge((int) TimeUnit.MILLISECONDS.toSeconds(thumbnailRenderer.getInterval()));
+
+		ResponseBuilder notModified = request.evaluatePreconditions(etag);
+		if (notModified != null)
+			return notModified.cacheControl(cacheControl).build();
+		return Response.ok(thumbnail.getPng()).tag(etag).cacheControl(cacheControl).build();
+	}
+}
@@ -1,6 +1,11 @@
 package service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import exception.InvalidWordException;
@@ -14,7 +19,7 @@ import model.Score;
  */
 public class GameUtil {
 
-	private static GameUtil instance;
+	private static volatile GameUtil instance;
 
 	private GameUtil() {
 	}
@@ -25,8 +30,12 @@ public class GameUtil {
 	 * @return instance of GameUtil
 	 */
 	public static GameUtil getInstance() {
-		if (instance == null)
-			instance = new GameUtil();
+		if (instance == null) {
+			synchronized (GameUtil.class) {
+				if (instance == null)
+					instance = new GameUtil();
+			}
+		}
 		return instance;
 	}
 
@@ -67,4 +76,38 @@ public class GameUtil {
 				.map((au) -> new Score(au.getUser().getUsername(), au.isDrawing(), au.getUser().getPoints()))
 				.collect(Collectors.toList());
 	}
+
+	/**
+	 * Produces hint for the word to guess. Letters are replaced with underscores
+	 * except given number of revealed letters. Letters are revealed in the same
+	 * pseudo-random order for the same word, so every next hint contains letters
+	 * from previous hints. The whole word is never revealed.
+	 *
+	 * @param word     word to guess
+	 * @param revealed number of letters to reveal
+	 * @return masked word, characters are separated with spaces
+	 * @throws InvalidWordException word is null or blank
+	 */
+	public String produceHint(String word, int revealed) throws InvalidWordException {
+		if (isWordInvalid(word))
+			throw new InvalidWordException("Word to produce hint for is null empty or blank.");
+
+		String trimmed = word.trim();
+		List<Integer> letters = new ArrayList<>();
+		for (int i = 0; i != trimmed.length(); i++) {
+			if (!Character.isWhitespace(trimmed.charAt(i)))
+				letters.add(i);
+		}
+		Collections.shuffle(letters, new Random(trimmed.toUpperCase().hashCode()));
+		Set<Integer> visible = new HashSet<>(letters.subList(0, Math.max(0, Math.min(revealed, letters.size() - 1))));
+
+		StringBuilder hint = new StringBuilder();
+		for (int i = 0; i != trimmed.length(); i++) {
+			if (i > 0)
+				hint.append(' ');
+			char c = trimmed.charAt(i);
+			hint.append(Character.isWhitespace(c) || visible.contains(i) ? c : '_');
+		}
+		return hint.toString();
+	}
 }
@@ -0,0 +1,158 @@
+package service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses threads for blocking work of websocket and REST handlers (database
+ * access, sending messages). By default work runs on platform threads, like
+ * before. Virtual threads mode is experimental and off by default: it has not
+ * been measured on Java 21 yet (see ExecutionModeBenchmark of the benchmarks
+ * module), so it must not be used to tune production nodes. With JVM option
+ * -Dkalambury.threads=virtual on Java 21 or newer, blocking work runs on
+ * virtual threads, so waiting for database does not hold any thread of the
+ * server pool. The app is still compiled for Java 8, virtual threads are
+ * looked up when the mode is chosen; on older JVM the option is ignored. CPU
+ * heavy work (PBKDF2) is always handed off to a pool of platform threads sized
+ * to the number of cores. It is a singleton and is meant to be injected as a
+ * field i.e. private HandlerExecutors handlerExecutors =
+ * HandlerExecutors.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class HandlerExecutors {
+
+	/**
+	 * JVM option choosing execution mode
+	 */
+	public static final String MODE_PROPERTY = "kalambury.threads";
+	/**
+	 * Value of JVM option turning experimental virtual threads mode on
+	 */
+	public static final String VIRTUAL_MODE = "virtual";
+
+	private boolean isVirtual;
+	private ExecutorService handlers;
+	private ExecutorService cpu;
+
+	private static volatile HandlerExecutors instance;
+
+	private HandlerExecutors() {
+		isVirtual = VIRTUAL_MODE.equals(System.getProperty(MODE_PROPERTY));
+		if (isVirtual && !areVirtualThreadsSupported()) {
+			System.out.println("HandlerExecutors: virtual threads need Java 21, using platform threads.");
+			isVirtual = false;
+		}
+		if (isVirtual) {
+			System.out.println("HandlerExecutors: virtual threads mode is experimental and has not been measured.");
+			handlers = newVirtualThreadPerTaskExecutor();
+		}
+		cpu = newPlatformPool("handler-cpu", Runtime.getRuntime().availableProcessors());
+		System.out.println("HandlerExecutors: " + (isVirtual ? "virtual" : "platform") + " threads mode.");
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates HandlerExecutors object.
+	 *
+	 * @return instance of HandlerExecutors
+	 */
+	public static HandlerExecutors getInstance() {
+		if (instance == null) {
+			synchronized (HandlerExecutors.class) {
+				if (instance == null)
+					instance = new HandlerExecutors();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return true if blocking work runs on virtual threads
+	 */
+	public boolean isVirtual() {
+		return isVirtual;
+	}
+
+	/**
+	 * @return executor for blocking work of a handler; in platform mode work is run
+	 *         by the calling thread, in virtual mode each task gets its own virtual
+	 *         thread
+	 */
+	public Executor handlers() {
+		return isVirtual ? handlers : Runnable::run;
+	}
+
+	/**
+	 * Creates pool for tasks which block. In virtual mode each task gets its own
+	 * virtual thread and number of threads is not limited.
+	 *
+	 * @param name    prefix of names of platform threads
+	 * @param threads number of platform threads
+	 * @return new executor
+	 */
+	public ExecutorService newBlockingPool(String name, int threads) {
+		return isVirtual ? newVirtualThreadPerTaskExecutor() : newPlatformPool(name, threads);
+	}
+
+	/**
+	 * Runs CPU heavy task. In virtual mode task is handed off to the pool of
+	 * platform threads and virtual thread waits for the result, so CPU work does
+	 * not pin carriers of virtual threads. In platform mode task is run by the
+	 * calling thread.
+	 *
+	 * @param task CPU heavy task
+	 * @return result of the task
+	 * @throws Exception thrown by the task
+	 */
+	public <T> T compute(Callable<T> task) throws Exception {
+		if (!isVirtual)
+			return task.call();
+		try {
+			return cpu.submit(task).get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * @return true if JVM provides virtual threads
+	 */
+	public static boolean areVirtualThreadsSupported() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return executor starting new virtual thread for each task
+	 * @throws IllegalStateException JVM does not provide virtual threads
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Virtual threads are not supported by this JVM.", e);
+		}
+	}
+
+	/**
+	 * @param name    prefix of names of threads
+	 * @param threads number of threads
+	 * @return fixed pool of daemon platform threads
+	 */
+	public static ExecutorService newPlatformPool(String name, int threads) {
+		AtomicInteger threadCounter = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, name + "-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+}
@@ -0,0 +1,315 @@
+package service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timer optimized for a big number of short tasks which are often cancelled
+ * before they expire (e.g. round deadlines). Timeouts are kept in a circular
+ * wheel of buckets, one bucket per tick. Scheduling and cancelling a timeout is
+ * O(1), a single worker thread moves the wheel once per tick and hands expired
+ * tasks to the executor. Timeouts are not precise, they expire within one tick
+ * after their deadline.
+ *
+ * @author Piotr Koodziejski
+ */
+public class HashedWheelTimer {
+
+	/**
+	 * Handle of a scheduled task.
+	 */
+	public interface Timeout {
+
+		/**
+		 * Cancels the task if it has not expired yet.
+		 *
+		 * @return true if the task has been cancelled by this call
+		 */
+		boolean cancel();
+
+		/**
+		 * @return true if the task has been handed to the executor
+		 */
+		boolean isExpired();
+
+		/**
+		 * @return true if the task has been cancelled
+		 */
+		boolean isCancelled();
+	}
+
+	private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+	private final String name;
+	private final long tickDuration;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final Executor executor;
+	private final Queue<WheelTimeout> newTimeouts = new ConcurrentLinkedQueue<>();
+	private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private volatile Thread worker;
+	private volatile boolean isStopped;
+	private volatile long startTime;
+	private long tick;
+
+	/**
+	 * @param name          name of the worker thread
+	 * @param tickDuration  duration of one tick
+	 * @param unit          unit of tickDuration
+	 * @param ticksPerWheel number of buckets, rounded up to the power of two
+	 * @param executor      executor running expired tasks, tasks should not block
+	 *                      the worker thread
+	 */
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel, Executor executor) {
+		if (tickDuration <= 0)
+			throw new IllegalArgumentException("Tick duration must be greater than 0.");
+		if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30))
+			throw new IllegalArgumentException("Ticks per wheel must be between 1 and 2^30.");
+
+		int size = 1;
+		while (size < ticksPerWheel)
+			size <<= 1;
+
+		this.name = name;
+		this.tickDuration = unit.toNanos(tickDuration);
+		this.wheel = new Bucket[size];
+		for (int i = 0; i != size; i++)
+			wheel[i] = new Bucket();
+		this.mask = size - 1;
+		this.executor = executor;
+	}
+
+	/**
+	 * Schedules task to be run once after given delay.
+	 *
+	 * @param task  task to be run
+	 * @param delay delay
+	 * @param unit  unit of delay
+	 * @return handle which allows to cancel the task
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+		if (isStopped)
+			throw new IllegalStateException("Timer " + name + " has been stopped.");
+		start();
+
+		long deadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0)) - startTime;
+		WheelTimeout timeout = new WheelTimeout(task, deadline);
+		pending.incrementAndGet();
+		newTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * @return number of scheduled tasks which have neither expired nor been
+	 *         cancelled
+	 */
+	public int pendingTimeouts() {
+		return pending.get();
+	}
+
+	/**
+	 * Stops the worker thread. Tasks which have not expired yet are never run.
+	 */
+	public void stop() {
+		isStopped = true;
+		Thread t = worker;
+		if (t != null)
+			t.interrupt();
+	}
+
+	/**
+	 * Starts the worker thread on first use.
+	 */
+	private void start() {
+		if (worker != null)
+			return;
+		synchronized (this) {
+			if (worker != null)
+				return;
+			startTime = System.nanoTime();
+			Thread t = new Thread(this::run, name);
+			t.setDaemon(true);
+			worker = t;
+			t.start();
+		}
+	}
+
+	/**
+	 * Main loop of the worker thread.
+	 */
+	private void run() {
+		while (!isStopped) {
+			long deadline = waitForNextTick();
+			if (deadline < 0)
+				break;
+
+			removeCancelled();
+			transferNewTimeouts();
+			wheel[(int) (tick & mask)].expire(deadline);
+			tick++;
+		}
+	}
+
+	/**
+	 * Sleeps until the end of current tick.
+	 *
+	 * @return time of the end of current tick relative to start time, -1 when
+	 *         timer has been stopped
+	 */
+	private long waitForNextTick() {
+		long deadline = tickDuration * (tick + 1);
+		while (true) {
+			long current = System.nanoTime() - startTime;
+			long sleepMillis = (deadline - current + 999999) / 1000000;
+			if (sleepMillis <= 0)
+				return current;
+			try {
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				if (isStopped)
+					return -1;
+			}
+		}
+	}
+
+	private void removeCancelled() {
+		WheelTimeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null)
+				timeout.bucket.remove(timeout);
+		}
+	}
+
+	private void transferNewTimeouts() {
+		for (int i = 0; i != MAX_TRANSFERS_PER_TICK; i++) {
+			WheelTimeout timeout = newTimeouts.poll();
+			if (timeout == null)
+				break;
+			if (timeout.isCancelled())
+				continue;
+
+			long calculated = timeout.deadline / tickDuration;
+			timeout.remainingRounds = (calculated - tick) / wheel.length;
+			// Deadline from the past goes to the current bucket
+			long ticks = Math.max(calculated, tick);
+			wheel[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	/**
+	 * Scheduled task. Fields used for linking are accessed by the worker thread
+	 * only.
+	 */
+	private final class WheelTimeout implements Timeout {
+
+		private static final int INIT = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(INIT);
+
+		private long remainingRounds;
+		private Bucket bucket;
+		private WheelTimeout prev;
+		private WheelTimeout next;
+
+		private WheelTimeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public boolean cancel() {
+			if (!state.compareAndSet(INIT, CANCELLED))
+				return false;
+			pending.decrementAndGet();
+			cancelledTimeouts.add(this);
+			return true;
+		}
+
+		@Override
+		public boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(INIT, EXPIRED))
+				return;
+			pending.decrementAndGet();
+			try {
+				executor.execute(task);
+			} catch (RuntimeException e) {
+				System.err.println("HashedWheelTimer: " + name + ": task has been rejected.");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Doubly linked list of timeouts, which allows to remove cancelled timeout in
+	 * O(1).
+	 */
+	private final class Bucket {
+
+		private WheelTimeout head;
+		private WheelTimeout tail;
+
+		private void add(WheelTimeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		private void remove(WheelTimeout timeout) {
+			if (timeout.prev != null)
+				timeout.prev.next = timeout.next;
+			if (timeout.next != null)
+				timeout.next.prev = timeout.prev;
+			if (timeout == head)
+				head = timeout.next;
+			if (timeout == tail)
+				tail = timeout.prev;
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		/**
+		 * Expires timeouts from this bucket which reached their last round.
+		 *
+		 * @param deadline end of current tick
+		 */
+		private void expire(long deadline) {
+			WheelTimeout timeout = head;
+			while (timeout != null) {
+				WheelTimeout next = timeout.next;
+				if (timeout.isCancelled()) {
+					remove(timeout);
+				} else if (timeout.remainingRounds <= 0) {
+					remove(timeout);
+					timeout.expire();
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values (e.g. durations in nanoseconds).
+ * Like HdrHistogram, values are counted in log-linear buckets: every power of
+ * two is split into SUB_BUCKETS buckets, so percentiles are precise to 1 /
+ * SUB_BUCKETS of the value, whatever its magnitude. Recording a value is a
+ * single atomic increment, the buckets are allocated once.
+ *
+ * @author Piotr Koodziejski
+ */
+public class Histogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * @param value value to be counted, negative values are counted as 0
+	 */
+	public void record(long value) {
+		long v = Math.max(0, value);
+		counts.incrementAndGet(index(v));
+		count.increment();
+		sum.add(v);
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long count() {
+		return count.sum();
+	}
+
+	/**
+	 * @return sum of recorded values
+	 */
+	public long sum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Values recorded while the percentile is computed may or may not be taken
+	 * into account.
+	 *
+	 * @param quantile quantile between 0 and 1, e.g. 0.99
+	 * @return highest value of the bucket containing given quantile, 0 if nothing
+	 *         has been recorded
+	 */
+	public long percentile(double quantile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i != BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i != BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank)
+				return highestValue(i);
+		}
+		return highestValue(BUCKETS - 1);
+	}
+
+	/**
+	 * @param value non-negative value
+	 * @return bucket of the value
+	 */
+	private static int index(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BITS;
+		int sub = (int) (value >>> shift) - SUB_BUCKETS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @param index bucket
+	 * @return highest value counted in the bucket
+	 */
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		long lowest = (long) (SUB_BUCKETS + sub) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -28,7 +28,35 @@ import exception.GameIntegrityViolationException;
  */
 public class LoginUtil {
 
-	private static LoginUtil instance;
+	private Histogram jwtVerifications = Metrics.getInstance().histogram("kalambury_login_verify_jwt_seconds",
+			"Time of verifying JWT.", Metrics.NANOS);
+	private Histogram hashings = Metrics.getInstance().histogram("kalambury_login_pbkdf2_seconds",
+			"Time of hashing passwords with PBKDF2.", Metrics.NANOS);
+
+	/**
+	 * Algorithm and verifier of the secret used last, built once instead of for
+	 * every token
+	 */
+	private volatile Signer signer;
+
+	private static volatile LoginUtil instance;
+
+	/**
+	 * Algorithm and verifier of a secret. Both are immutable, so they are shared
+	 * by all the threads.
+	 */
+	private static final class Signer {
+
+		private final String secret;
+		private final Algorithm algorithm;
+		private final JWTVerifier verifier;
+
+		private Signer(String secret) {
+			this.secret = secret;
+			this.algorithm = Algorithm.HMAC256(secret);
+			this.verifier = JWT.require(algorithm).withIssuer("auth0").build();
+		}
+	}
 
 	private LoginUtil() {
 	}
@@ -39,8 +67,12 @@ public class LoginUtil {
 	 * @return instance of LoginUtil
 	 */
 	public static LoginUtil getInstance() {
-		if (instance == null)
-			instance = new LoginUtil();
+		if (instance == null) {
+			synchronized (LoginUtil.class) {
+				if (instance == null)
+					instance = new LoginUtil();
+			}
+		}
 		return instance;
 	}
 
@@ -55,7 +87,7 @@ public class LoginUtil {
 	 * @return signed token
 	 */
 	public String createJwt(String username, String secret, long expTime, String owners) {
-		Algorithm algorithm = Algorithm.HMAC256(secret);
+		Algorithm algorithm = signer(secret).algorithm;
 		try {
 			return JWT.create().withIssuer("auth0").withClaim("username", username)
 					.withExpiresAt(new Date(System.currentTimeMillis() + expTime)).withClaim("owner", owners)
@@ -75,17 +107,42 @@ public class LoginUtil {
 	 * @return true if token is valid, false otherwise
 	 */
 	public boolean verifyJwt(String jwtToken, String secret, String owners) {
+		long start = System.nanoTime();
 		try {
-			Algorithm algorithm = Algorithm.HMAC256(secret);
-			JWTVerifier verifier = JWT.require(algorithm).withIssuer("auth0").build();
-			DecodedJWT jwt = verifier.verify(jwtToken);
+			DecodedJWT jwt = signer(secret).verifier.verify(jwtToken);
 			if (!jwt.getClaim("owner").asString().equals(owners))
 				throw new JWTVerificationException("Owner of a token is invalid.");
 			return true;
 		} catch (JWTVerificationException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			jwtVerifications.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Builds verifier of given secret and verifies a token with it, so the first
+	 * player is verified as fast as next ones.
+	 *
+	 * @param secret secret key
+	 * @param owners owners of an app
+	 */
+	public void preload(String secret, String owners) {
+		signer(secret).verifier.verify(createJwt("warm-up", secret, 60000, owners));
+	}
+
+	/**
+	 * @param secret secret key
+	 * @return algorithm and verifier of given secret
+	 */
+	private Signer signer(String secret) {
+		Signer s = signer;
+		if (s == null || !s.secret.equals(secret)) {
+			s = new Signer(secret);
+			signer = s;
 		}
+		return s;
 	}
 
 	/**
@@ -127,12 +184,15 @@ public class LoginUtil {
 	 *                                         incorrectly
 	 */
 	public byte[] pbkdf2(String password, byte[] salt) throws GameIntegrityViolationException {
+		long start = System.nanoTime();
 		try {
 			KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, 65536, 128);
 			SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
 			return factory.generateSecret(spec).getEncoded();
 		} catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
 			throw new GameIntegrityViolationException("Authentication internal error!", e);
+		} finally {
+			hashings.record(System.nanoTime() - start);
 		}
 	}
 
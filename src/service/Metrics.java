@@ -0,0 +1,202 @@
+package service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of metrics of the node, exported in Prometheus text format. Counters
+ * are LongAdders and histograms are lock-free (see Histogram), so hot paths
+ * only pay for an atomic increment. Metrics are identified by name and labels,
+ * registering the same metric again returns the one registered before, so
+ * metrics may be looked up on the hot path or kept in fields. Histograms are
+ * exported as summaries with QUANTILES. It is a singleton and is meant to be
+ * injected as a field i.e. private Metrics metrics = Metrics.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class Metrics {
+
+	/**
+	 * Scale of histograms of durations recorded in nanoseconds and exported in
+	 * seconds
+	 */
+	public static final double NANOS = 1e-9;
+	/**
+	 * Scale of histograms of durations recorded in milliseconds and exported in
+	 * seconds
+	 */
+	public static final double MILLIS = 1e-3;
+	/**
+	 * Scale of histograms exported as recorded
+	 */
+	public static final double UNITS = 1;
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+	private static volatile Metrics instance;
+
+	private Metrics() {
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates Metrics object.
+	 *
+	 * @return instance of Metrics
+	 */
+	public static Metrics getInstance() {
+		if (instance == null) {
+			synchronized (Metrics.class) {
+				if (instance == null)
+					instance = new Metrics();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @param name   name of the counter, should end with _total
+	 * @param help   description
+	 * @param labels label names and values, one after another
+	 * @return counter to be incremented
+	 */
+	public LongAdder counter(String name, String help, String... labels) {
+		return (LongAdder) family(name, help, "counter").series.computeIfAbsent(labels(labels),
+				key -> new LongAdder());
+	}
+
+	/**
+	 * Registers counter counted elsewhere.
+	 *
+	 * @param name   name of the counter, should end with _total
+	 * @param help   description
+	 * @param value  current value of the counter
+	 * @param labels label names and values, one after another
+	 */
+	public void counter(String name, String help, LongSupplier value, String... labels) {
+		family(name, help, "counter").series.put(labels(labels), value);
+	}
+
+	/**
+	 * @param name   name of the gauge
+	 * @param help   description
+	 * @param value  current value of the gauge
+	 * @param labels label names and values, one after another
+	 */
+	public void gauge(String name, String help, LongSupplier value, String... labels) {
+		family(name, help, "gauge").series.put(labels(labels), value);
+	}
+
+	/**
+	 * @param name   name of the histogram, should end with the unit e.g. _seconds
+	 * @param help   description
+	 * @param scale  multiplier of recorded values when exported, NANOS or UNITS
+	 * @param labels label names and values, one after another
+	 * @return histogram to record values in
+	 */
+	public Histogram histogram(String name, String help, double scale, String... labels) {
+		Family family = family(name, help, "summary");
+		family.scale = scale;
+		return (Histogram) family.series.computeIfAbsent(labels(labels), key -> new Histogram());
+	}
+
+	/**
+	 * Removes series of the metric, e.g. when the room it has been measured for
+	 * is closed.
+	 *
+	 * @param name   name of the metric
+	 * @param labels label names and values, one after another
+	 */
+	public void remove(String name, String... labels) {
+		Family family = families.get(name);
+		if (family != null)
+			family.series.remove(labels(labels));
+	}
+
+	/**
+	 * @return all the metrics in Prometheus text format
+	 */
+	public String scrape() {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, Family> entry : new TreeMap<>(families).entrySet()) {
+			String name = entry.getKey();
+			Family family = entry.getValue();
+			text.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+			text.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+			for (Map.Entry<String, Object> series : new TreeMap<>(family.series).entrySet()) {
+				String labels = series.getKey();
+				Object metric = series.getValue();
+				if (metric instanceof Histogram) {
+					Histogram histogram = (Histogram) metric;
+					for (double quantile : QUANTILES)
+						sample(text, name, withLabel(labels, "quantile", String.valueOf(quantile)),
+								histogram.percentile(quantile) * family.scale);
+					sample(text, name + "_sum", labels, histogram.sum() * family.scale);
+					sample(text, name + "_count", labels, histogram.count());
+				} else if (metric instanceof LongAdder) {
+					sample(text, name, labels, ((LongAdder) metric).sum());
+				} else {
+					sample(text, name, labels, ((LongSupplier) metric).getAsLong());
+				}
+			}
+		}
+		return text.toString();
+	}
+
+	private Family family(String name, String help, String type) {
+		Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+		if (!family.type.equals(type))
+			throw new IllegalArgumentException("Metric " + name + " has been registered as " + family.type + ".");
+		return family;
+	}
+
+	private static void sample(StringBuilder text, String name, String labels, double value) {
+		text.append(name).append(labels).append(' ');
+		if (value == Math.rint(value) && Math.abs(value) < 1e15)
+			text.append((long) value);
+		else
+			text.append(value);
+		text.append('\n');
+	}
+
+	/**
+	 * @param labels label names and values, one after another
+	 * @return labels in Prometheus format, empty string if there are no labels
+	 */
+	private static String labels(String... labels) {
+		if (labels.length % 2 != 0)
+			throw new IllegalArgumentException("Every label needs a value.");
+		String formatted = "";
+		for (int i = 0; i != labels.length; i += 2)
+			formatted = withLabel(formatted, labels[i], labels[i + 1]);
+		return formatted;
+	}
+
+	private static String withLabel(String labels, String name, String value) {
+		String label = name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+		if (labels.isEmpty())
+			return "{" + label + "}";
+		return labels.substring(0, labels.length() - 1) + "," + label + "}";
+	}
+
+	/**
+	 * Metrics of the same name, by labels.
+	 */
+	private static final class Family {
+
+		private final String help;
+		private final String type;
+		private final ConcurrentMap<String, Object> series = new ConcurrentHashMap<>();
+		private volatile double scale = UNITS;
+
+		private Family(String help, String type) {
+			this.help = help;
+			this.type = type;
+		}
+	}
+}
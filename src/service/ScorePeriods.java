@@ -0,0 +1,92 @@
+package service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.IsoFields;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.ScoreEvent;
+import model.ScoreRollup;
+
+/**
+ * Periods of periodic leaderboards. Day period is named "D" followed by the
+ * date (e.g. D2026-10-19), week period is named "W" followed by ISO week-based
+ * year and week number (e.g. W2026-42), dates are taken in the given time zone.
+ *
+ * @author Piotr Koodziejski
+ */
+public class ScorePeriods {
+
+	/**
+	 * Daily leaderboard
+	 */
+	public static final String DAY = "day";
+	/**
+	 * Weekly leaderboard
+	 */
+	public static final String WEEK = "week";
+
+	private ScorePeriods() {
+	}
+
+	/**
+	 * @param type   DAY or WEEK
+	 * @param millis time in milliseconds since epoch
+	 * @param zone   time zone
+	 * @return period of given type containing given time, null if type is unknown
+	 */
+	public static String of(String type, long millis, ZoneId zone) {
+		if (DAY.equals(type))
+			return day(millis, zone);
+		if (WEEK.equals(type))
+			return week(millis, zone);
+		return null;
+	}
+
+	/**
+	 * @param millis time in milliseconds since epoch
+	 * @param zone   time zone
+	 * @return day containing given time
+	 */
+	public static String day(long millis, ZoneId zone) {
+		return "D" + date(millis, zone);
+	}
+
+	/**
+	 * @param millis time in milliseconds since epoch
+	 * @param zone   time zone
+	 * @return week containing given time
+	 */
+	public static String week(long millis, ZoneId zone) {
+		LocalDate date = date(millis, zone);
+		return String.format("W%d-%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+	}
+
+	/**
+	 * Sums points of the events by period and user.
+	 *
+	 * @param events awarded points
+	 * @param zone   time zone
+	 * @return summed points by rollup key, rollups are not managed by the
+	 *         persistence context
+	 */
+	public static Map<String, ScoreRollup> rollup(List<ScoreEvent> events, ZoneId zone) {
+		Map<String, ScoreRollup> rollups = new HashMap<>();
+		for (ScoreEvent event : events) {
+			for (String period : Arrays.asList(day(event.getAwardedAt(), zone), week(event.getAwardedAt(), zone))) {
+				ScoreRollup rollup = rollups.computeIfAbsent(ScoreRollup.key(period, event.getUsername()),
+						key -> new ScoreRollup(period, event.getUsername()));
+				rollup.setPoints(rollup.getPoints() + event.getPoints());
+			}
+		}
+		return rollups;
+	}
+
+	private static LocalDate date(long millis, ZoneId zone) {
+		return Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+	}
+}
@@ -0,0 +1,68 @@
+package service;
+
+/**
+ * Token bucket rate limiter. Bucket holds at most capacity tokens and gains
+ * refillPerSecond tokens every second, every admitted unit of work takes its
+ * cost in tokens. It allows short bursts up to capacity and limits the average
+ * rate to refillPerSecond. Time is passed by the caller, so the bucket can be
+ * tested without waiting. Bucket is not thread-safe, it is meant to be owned by
+ * one websocket session whose messages are delivered one at a time.
+ *
+ * @author Piotr Koodziejski
+ */
+public class TokenBucket {
+
+	private final double capacity;
+	private final double refillPerNano;
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * Creates full bucket.
+	 *
+	 * @param capacity        maximum number of tokens, i.e. size of a burst
+	 * @param refillPerSecond number of tokens gained every second
+	 * @param nowNanos        current time in nanoseconds, e.g. System.nanoTime()
+	 */
+	public TokenBucket(long capacity, long refillPerSecond, long nowNanos) {
+		if (capacity <= 0 || refillPerSecond <= 0)
+			throw new IllegalArgumentException("Capacity and refill rate must be greater than 0.");
+		this.capacity = capacity;
+		this.refillPerNano = refillPerSecond / 1e9;
+		this.tokens = capacity;
+		this.lastRefill = nowNanos;
+	}
+
+	/**
+	 * Takes tokens if there are enough of them.
+	 *
+	 * @param cost     number of tokens to take
+	 * @param nowNanos current time in nanoseconds
+	 * @return true if tokens have been taken, false if bucket does not have
+	 *         enough tokens, nothing is taken then
+	 */
+	public boolean tryTake(long cost, long nowNanos) {
+		refill(nowNanos);
+		if (tokens < cost)
+			return false;
+		tokens -= cost;
+		return true;
+	}
+
+	/**
+	 * @param nowNanos current time in nanoseconds
+	 * @return number of whole tokens available
+	 */
+	public long available(long nowNanos) {
+		refill(nowNanos);
+		return (long) tokens;
+	}
+
+	private void refill(long nowNanos) {
+		long elapsed = nowNanos - lastRefill;
+		if (elapsed <= 0)
+			return;
+		tokens = Math.min(capacity, tokens + elapsed * refillPerNano);
+		lastRefill = nowNanos;
+	}
+}
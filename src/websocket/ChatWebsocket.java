@@ -1,8 +1,15 @@
 package websocket;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.Lock;
 
 import javax.json.bind.Jsonb;
 import javax.json.bind.JsonbBuilder;
@@ -11,25 +18,50 @@ import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.OnClose;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.PongMessage;
 import javax.websocket.Session;
 import javax.websocket.server.ServerEndpoint;
 
+import cluster.RoomEvent;
+import cluster.RoomEvent.Type;
+import cluster.RoomRouter;
 import db.ActiveUserService;
 import db.AppDictionaryService;
+import db.PointsLedgerService;
 import db.WordService;
 import exception.GameIntegrityViolationException;
+import game.Admission;
+import game.ChatLog;
+import game.FloodControl;
+import game.FloodControl.Limiter;
+import game.Heartbeat;
+import game.Lobby;
+import game.RoomMailboxes;
+import game.RoomPlacement;
+import game.RoomSnapshots;
+import game.RoomState;
+import game.RoundRecorder;
+import game.RoundTimer;
+import game.SeatReservations;
+import game.SpectatorFeed;
+import game.StrokeLog;
 import model.ActiveUser;
 import model.ChatMessage;
 import model.ChatMessage.MsgType;
+import model.RoomSummary;
 import model.Score;
+import service.GameUtil;
+import service.Histogram;
 import service.LoginUtil;
-
+import service.Metrics;
 
 /**
  * This websocket contains main logic of an app. It authenticates user after
  * session is opened, then processes incoming messages. Class is responsible for
  * generating new words to guess and choosing next drawing user. It also
- * produces scoreboard.
+ * produces scoreboard. Session plays in the room given with "room" parameter,
+ * game logic of every room has its own endpoint and runs on the mailbox of the
+ * room, on the node owning the room.
  * 
  * @author Piotr Koodziejski
  */
@@ -40,9 +72,68 @@ public class ChatWebsocket {
 	private LoginUtil loginUtil = LoginUtil.getInstance();
 	private AppDictionaryService dictService = AppDictionaryService.getInstance();
 	private WordService wordService = WordService.getInstance();
+	private SpectatorFeed spectatorFeed = SpectatorFeed.getInstance();
+	private RoundTimer roundTimer = RoundTimer.getInstance();
+	private GameUtil gameUtil = GameUtil.getInstance();
+	private SeatReservations seatReservations = SeatReservations.getInstance();
+	private Heartbeat heartbeat = Heartbeat.getInstance();
+	private RoomMailboxes roomMailboxes = RoomMailboxes.getInstance();
+	private RoomRouter roomRouter = RoomRouter.getInstance();
+	private RoundRecorder roundRecorder = RoundRecorder.getInstance();
+	private Admission admission = Admission.getInstance();
+	private ChatLog chatLog = ChatLog.getInstance();
+	private Limiter limiter = FloodControl.getInstance().newChatLimiter();
 	private Jsonb jsonb;
 
+	private Session session;
+	/**
+	 * Room of the session, or room run by the endpoint of game logic
+	 */
+	private String roomId = DEFAULT_ROOM;
 	private String username;
+	private String resumeToken;
+	/**
+	 * Session is closed because the room has moved to another node, the player
+	 * keeps his seat there
+	 */
+	private volatile boolean isMigrating;
+	/**
+	 * Session has been counted by admission control
+	 */
+	private boolean isAdmitted;
+	/**
+	 * Player waits in the line of the full room
+	 */
+	private boolean isWaiting;
+	/**
+	 * Number of rounds played in the room, counted by game logic
+	 */
+	private long round;
+
+	/**
+	 * Room joined by players who do not ask for any room
+	 */
+	static final String DEFAULT_ROOM = "main";
+	/**
+	 * Session property containing session id under which player is stored as
+	 * active user. It differs from session id after player has resumed his seat.
+	 */
+	private static final String SEAT_ID = "seatId";
+	private static final RoundTimer.Listener ROUND_LISTENER = new RoundListener();
+	private static final Heartbeat.Listener PRESENCE_LISTENER = new PresenceListener();
+	private static final RoomSnapshots.Listener SNAPSHOT_LISTENER = new SnapshotListener();
+	private static final Lobby.Listener LOBBY_LISTENER = new LobbyListener();
+	private static Set<ChatWebsocket> endpoints = new CopyOnWriteArraySet<>();
+	private static Histogram receiveTimes = Metrics.getInstance().histogram("kalambury_chat_message_seconds",
+			"Time of handling chat messages.", Metrics.NANOS, "stage", "receive");
+	private static Histogram processTimes = Metrics.getInstance().histogram("kalambury_chat_message_seconds",
+			"Time of handling chat messages.", Metrics.NANOS, "stage", "process");
+	private static Histogram fanOutTimes = Metrics.getInstance().histogram("kalambury_chat_fanout_seconds",
+			"Time of sending room event to the players of this node.", Metrics.NANOS);
+	/**
+	 * Endpoints without session running game logic of rooms owned by this node
+	 */
+	private static Map<String, ChatWebsocket> games = new ConcurrentHashMap<>();
 
 	/**
 	 * Initial procedures when websocket session is opened.
@@ -51,46 +142,119 @@ public class ChatWebsocket {
 	 */
 	@OnOpen
 	public void onOpen(Session session) {
+		this.session = session;
+		roomId = roomOf(session);
+
+		// Reject overload before token is verified or database is touched
+		if (!admission.tryOpenSession()) {
+			reject(session, "Server is full.");
+			return;
+		}
+		isAdmitted = true;
+		boolean isPlayer = !SpectatorFeed.isSpectatorRequest(session) && requestParameter(session, "resume") == null;
+		if (isPlayer && admission.isRoomClosed(roomId, seatReservations.size(roomId))) {
+			reject(session, "Room is full.");
+			return;
+		}
+
 		jsonb = JsonbBuilder.create();
+		heartbeat.register(session);
+		heartbeat.addListener(PRESENCE_LISTENER);
 	}
 
 	/**
-	 * Proceeds incoming websocket messages. On very first message it expects JWT
-	 * token to authenticate the user. If user is not valid it closes the session.
-	 * Messages are processed based on message type (see enum ChatMessage.MsgType).
-	 * Method contaings main logic: processing messages, adding active users,
-	 * generating new word, choosing next drawing users, closing session in case of
-	 * fatal internal errors.
-	 * 
+	 * Records answer to the heartbeat ping.
+	 *
+	 * @param pong pong message
+	 * @param s    current websocket session
+	 */
+	@OnMessage
+	public void onPong(PongMessage pong, Session s) {
+		heartbeat.onPong(s);
+	}
+
+	/**
+	 * Passes incoming websocket message to the mailbox of the room.
+	 *
 	 * @param s       current websocket session
 	 * @param message incoming message
 	 */
 	@OnMessage
 	public void onMessage(Session s, String message) {
+		// Session rejected when opened
+		if (jsonb == null)
+			return;
+		long start = System.nanoTime();
+		// Limit is checked before the message is parsed or queued in the mailbox
+		switch (limiter.admit(1)) {
+		case DISCONNECT:
+			System.out.println("Chat Websocket: session " + s.getId() + " is flooding. Closing session...");
+			close(s, new CloseReason(CloseCodes.VIOLATED_POLICY, "Too many messages."));
+			return;
+		case DROP:
+			return;
+		default:
+			break;
+		}
+		roomMailboxes.execute(roomId, () -> {
+			long processStart = System.nanoTime();
+			processMessage(s, message);
+			processTimes.record(System.nanoTime() - processStart);
+		});
+		receiveTimes.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Proceeds incoming websocket messages. On very first message it expects JWT
+	 * token to authenticate the user. If user is not valid it closes the session.
+	 * Messages of authenticated users are forwarded to the owner of the room,
+	 * which processes them based on message type (see enum ChatMessage.MsgType).
+	 * Sessions opened with "role=spectator" parameter are not marked as active
+	 * users, they only watch the game. Sessions opened with "resume" parameter
+	 * take back the seat held after disconnection.
+	 *
+	 * @param s       current websocket session
+	 * @param message incoming message
+	 */
+	private void processMessage(Session s, String message) {
 		try {
+			// Spectators do not take part in the game, ignore their messages
+			// Players waiting for a seat do not play yet either
+			if (isWaiting || spectatorFeed.isChatSpectator(s))
+				return;
+
 			// Is User Active
-			if (activeUserService.isUserActive(s.getId())) {
-				// Check MsgType
-				processBasedOnMsgType(s, message);
+			if (activeUserService.isUserActive(seatId(s))) {
+				// Game logic runs on the owner of the room
+				roomRouter.toOwner(Type.PLAYER_MESSAGE, roomId, seatId(s), username, message);
 			} else {
 				// Is Token Valid
 				if (loginUtil.verifyJwt(message, dictService.getSecret(), dictService.getOwners())) {
 					// Save username as global variable
 					username = loginUtil.extractUsernameFromToken(message);
 
-					// Mark user as active
-					activeUserService.addActiveUser(username, s.getId());
+					if (SpectatorFeed.isSpectatorRequest(s)) {
+						// Spectator is not an active user, send him current scoreboard only
+						spectatorFeed.addChatSpectator(roomId, s);
+						sendText(s, produceScoreboardMessage(), "scoreboard for spectator");
+						sendChatHistory(s);
+						return;
+					}
 
-					// Broadcast scoreboard
-					broadcastScoreboard(s);
+					// Player has lost connection, give him back his seat
+					String seatId = seatReservations.claim(roomId, requestParameter(s, "resume"), username);
+					if (seatId != null) {
+						resumeSeat(s, seatId);
+						return;
+					}
 
-					if (activeUserService.doesDrawingUserExist()) {
-						// Check MsgType
-						processBasedOnMsgType(s, message);
-					} else {
-						// There is no drawing user
-						startGame(s);
+					// Room is full, wait in its line for a free seat
+					if (!admission.hasFreeSeat(roomId, seatReservations.size(roomId))) {
+						waitForSeat(s);
+						return;
 					}
+
+					joinGame(s);
 				} else {
 					System.out.println("Token invalid. Closing session...");
 					try {
@@ -113,52 +277,256 @@ public class ChatWebsocket {
 	}
 
 	/**
-	 * Method is being invoked when websocket session is closed. It removes user
-	 * from active users. In case drawing user is leaving the game it ensures that
-	 * next drawing user is chosen.
-	 * 
-	 * @param session current session
-	 * @throws GameIntegrityViolationException in case of error during word
-	 *                                         generation, setting new drawing user,
-	 *                                         setting new word to guess or
-	 *                                         obtaining data from app dictionary.
+	 * Method is being invoked when websocket session is closed. Leaving the game
+	 * is passed to the mailbox of the room, after messages received before.
+	 *
+	 * @param session     current session
+	 * @param closeReason reason of closing the session
 	 */
 	@OnClose
-	public void onClose(Session session) throws GameIntegrityViolationException {
+	public void onClose(Session session, CloseReason closeReason) {
 		System.out.println("ChatWebsocket closing session...");
+		heartbeat.unregister(session);
+		if (isAdmitted)
+			admission.releaseSession();
+		// Session rejected when opened, nothing has been done for it
+		if (jsonb == null)
+			return;
+		roomMailboxes.execute(roomId, () -> processClose(session, closeReason));
+	}
+
+	/**
+	 * Removes user from active users. When connection has been lost (or session
+	 * has been closed by heartbeat), seat of the user is held for
+	 * RESUME_WINDOW_IN_MILLIS and user is removed only if he does not come back.
+	 * 
+	 * @param session     current session
+	 * @param closeReason reason of closing the session
+	 */
+	private void processClose(Session session, CloseReason closeReason) {
+		// Spectator leaving does not change the game
+		if (spectatorFeed.isChatSpectator(session)) {
+			spectatorFeed.removeChatSpectator(session);
+			closeJsonb();
+			return;
+		}
+
+		// Player has not got any seat yet
+		if (isWaiting) {
+			admission.leaveQueue(roomId, session);
+			sendQueuePositions(roomId);
+			closeJsonb();
+			return;
+		}
+
+		if (endpoints.remove(this))
+			admission.leaveSeat(roomId);
+		String seatId = seatId(session);
+
+		// Seat has been handed to another node together with the room
+		if (isMigrating) {
+			closeJsonb();
+			return;
+		}
+
+		// Connection lost, hold the seat in case user comes back
+		boolean isConnectionLost = closeReason.getCloseCode() == CloseCodes.CLOSED_ABNORMALLY
+				|| Heartbeat.isConnectionLost(session);
+		boolean isSeatHeld = isConnectionLost
+				&& seatReservations.reserve(roomId, resumeToken, username, seatId,
+						() -> roomMailboxes.execute(roomId, () -> leaveGame(roomId, seatId)));
+		if (!isSeatHeld)
+			leaveGame(roomId, seatId);
+
+		closeJsonb();
+	}
+
+	/**
+	 * Removes user from active users and lets the owner of the room know. Must be
+	 * run on the mailbox of the room.
+	 *
+	 * @param roomId room of the user
+	 * @param seatId session id under which user is stored as active user
+	 */
+	private static void leaveGame(String roomId, String seatId) {
 		// Mark user as inactive
-		activeUserService.removeActiveUser(session.getId());
+		boolean wasDrawing = ActiveUserService.getInstance().removeActiveUser(seatId);
 
-		// If this was not the last active user
-		if (activeUserService.getActiveUsers().size() > 0) {
-			// Find drawing user. Retry few times in case of GameIntegrityViolationException
-			ActiveUser drawingUser = null;
+		RoomRouter.getInstance().toOwner(Type.PLAYER_LEFT, roomId, seatId, null, String.valueOf(wasDrawing));
 
-			int numOfRetry = dictService.getNumberOfRetries();
-			int retryFreq = dictService.getRetryFrequency();
-			for (int i = 0; i != numOfRetry; i++) {
-				try {
-					drawingUser = activeUserService.getActiveDrawingUser();
-				} catch (GameIntegrityViolationException e) {
-					try {
-						Thread.sleep(retryFreq);
-					} catch (InterruptedException e2) {
-						e2.printStackTrace();
-					}
-				}
-			}
+		// Seat is free, give it to the first player waiting for it
+		if (Admission.getInstance().admitWaiting(roomId, SeatReservations.getInstance().size(roomId)) > 0)
+			sendQueuePositions(roomId);
+	}
 
-			// In case there is no drawing user and this is not the last user, start game
-			// from random user.
-			if (drawingUser == null) {
-				System.err.println("Chat Websocket: on close: unable to get drawing user!");
-				startGame(session);
+	/**
+	 * Marks user as active and lets the owner of the room know. Must be run on
+	 * the mailbox of the room.
+	 *
+	 * @param s current websocket session
+	 * @throws GameIntegrityViolationException user does not exist or is already
+	 *                                         active
+	 */
+	private void joinGame(Session s) throws GameIntegrityViolationException {
+		isWaiting = false;
+
+		// Mark user as active
+		activeUserService.addActiveUser(roomId, username, s.getId(),
+				System.currentTimeMillis() + heartbeat.getLeaseTime());
+		if (endpoints.add(this))
+			admission.takeSeat(roomId);
+		sendResumeToken(s);
+		sendChatHistory(s);
+
+		// Owner of the room broadcasts scoreboard and starts the game if needed
+		roomRouter.toOwner(Type.PLAYER_JOINED, roomId, s.getId(), username, null);
+	}
+
+	/**
+	 * Puts player into the line of the full room, or closes his session when the
+	 * line is full too.
+	 *
+	 * @param s current websocket session
+	 */
+	private void waitForSeat(Session s) {
+		boolean isQueued = admission.enqueue(roomId, s, () -> {
+			try {
+				joinGame(s);
+			} catch (GameIntegrityViolationException e) {
+				e.printStackTrace();
+				close(s, new CloseReason(CloseCodes.UNEXPECTED_CONDITION, "Game integrity has been violated."));
 			}
+		});
+		if (!isQueued) {
+			reject(s, "Room is full.");
+			return;
+		}
+		isWaiting = true;
+		sendQueuePositions(roomId);
+	}
 
-			// Broadcast scoreboard
-			broadcastScoreboard(session);
+	/**
+	 * Tells players waiting for a seat in the room their positions in the line.
+	 * Must be run on the mailbox of the room.
+	 *
+	 * @param roomId room
+	 */
+	private static void sendQueuePositions(String roomId) {
+		ChatWebsocket game = game(roomId);
+		int position = 0;
+		for (Session s : Admission.getInstance().waitingSessions(roomId)) {
+			ChatMessage msg = new ChatMessage(MsgType.QUEUE_POSITION, String.valueOf(++position));
+			game.sendText(s, game.jsonb.toJson(msg), "queue position");
+		}
+	}
+
+	/**
+	 * Closes session which cannot be admitted now, client should try again
+	 * later.
+	 *
+	 * @param s      websocket session
+	 * @param reason reason sent to the client
+	 */
+	private static void reject(Session s, String reason) {
+		System.out.println("Chat Websocket: session rejected: " + reason);
+		close(s, new CloseReason(CloseCodes.TRY_AGAIN_LATER, reason));
+	}
+
+	private static void close(Session s, CloseReason closeReason) {
+		try {
+			s.close(closeReason);
+		} catch (IOException e) {
+			System.out.println("Cannot close Chat Websocket.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Attaches session to the seat held after disconnection. Database is not
+	 * modified, user only receives current state of the game.
+	 *
+	 * @param s      current websocket session
+	 * @param seatId session id under which user is stored as active user
+	 */
+	private void resumeSeat(Session s, String seatId) {
+		System.out.println("Chat Websocket: " + username + " has come back.");
+		s.getUserProperties().put(SEAT_ID, seatId);
+		if (endpoints.add(this))
+			admission.takeSeat(roomId);
+		sendResumeToken(s);
+		sendText(s, produceScoreboardMessage(), "scoreboard for resumed user");
+		sendChatHistory(s);
+
+		ActiveUser user = activeUserService.getActiveUserBySessionId(seatId);
+		if (user.isDrawing()) {
+			ChatMessage msg = new ChatMessage(MsgType.WORD_TO_GUESS, user.getWord());
+			sendText(s, jsonb.toJson(msg), "send word to guess");
+		} else if (activeUserService.doesDrawingUserExist(roomId)) {
+			String hint = gameUtil.produceHint(activeUserService.getActiveDrawingUser(roomId).getWord(), 0);
+			sendText(s, jsonb.toJson(new ChatMessage(MsgType.HINT, hint)), "hint");
 		}
 
+		// Resume the game if it has been paused due to inactivity
+		roomRouter.toOwner(Type.PLAYER_JOINED, roomId, seatId, username, null);
+	}
+
+	/**
+	 * Sends new resume token to the user. Token allows to take back the seat after
+	 * connection has been lost.
+	 *
+	 * @param s current websocket session
+	 */
+	private void sendResumeToken(Session s) {
+		resumeToken = seatReservations.newToken();
+		sendText(s, jsonb.toJson(new ChatMessage(MsgType.RESUME_TOKEN, resumeToken)), "resume token");
+	}
+
+	/**
+	 * Sends latest chat lines of the room in one message, so the player sees
+	 * what has been written before he joined.
+	 *
+	 * @param s current websocket session
+	 */
+	private void sendChatHistory(Session s) {
+		String history = chatLog.batch(roomId);
+		if (history != null)
+			sendText(s, jsonb.toJson(new ChatMessage(MsgType.CHAT_HISTORY, history)), "chat history");
+	}
+
+	/**
+	 * @param s websocket session
+	 * @return session id under which user of given session is stored as active
+	 *         user
+	 */
+	private static String seatId(Session s) {
+		Object seatId = s.getUserProperties().get(SEAT_ID);
+		return seatId != null ? (String) seatId : s.getId();
+	}
+
+	/**
+	 * @param s websocket session
+	 * @return room given with "room" request parameter, DEFAULT_ROOM if it is
+	 *         missing or invalid
+	 */
+	static String roomOf(Session s) {
+		String roomId = requestParameter(s, "room");
+		return RoomPlacement.isValidRoomId(roomId) ? roomId : DEFAULT_ROOM;
+	}
+
+	/**
+	 * @param s    websocket session
+	 * @param name name of request parameter
+	 * @return first value of request parameter or null if it is not present
+	 */
+	private static String requestParameter(Session s, String name) {
+		List<String> values = s.getRequestParameterMap().get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	/**
+	 * Closes Jsonb used by this websocket session.
+	 */
+	private void closeJsonb() {
 		try {
 			jsonb.close();
 		} catch (Exception e) {
@@ -167,36 +535,352 @@ public class ChatWebsocket {
 	}
 
 	/**
-	 * Broadcast scoreboard to all the users. Display users, their points and
-	 * whether they are drawing or not.
-	 * 
-	 * @param s current websocket session
+	 * Registers handlers of room events delivered to this node. Messages for
+	 * players are sent to players connected to this node, input of players is
+	 * processed by game logic.
 	 */
-	private void broadcastScoreboard(Session s) {
-		List<Score> scores = activeUserService.produceScoreboardForActiveUsers();
-		String scoresJson = jsonb.toJson(scores);
-		ChatMessage response = new ChatMessage(MsgType.SCOREBOARD, scoresJson);
-		String responseJson = jsonb.toJson(response);
-		for (Session openedSession : s.getOpenSessions()) {
+	static void registerRoomHandlers() {
+		RoomRouter roomRouter = RoomRouter.getInstance();
+		for (Type type : new Type[] { Type.PLAYERS, Type.CHAT, Type.CHAT_LINE, Type.CANVAS_CLEANED, Type.SCOREBOARD,
+				Type.ROUND_SCOREBOARD, Type.DIRECT })
+			roomRouter.setHandler(type, ChatWebsocket::onRoomEvent);
+		for (Type type : new Type[] { Type.PLAYER_MESSAGE, Type.PLAYER_JOINED, Type.PLAYER_LEFT })
+			roomRouter.setHandler(type, ChatWebsocket::onPlayerInput);
+		roomRouter.setHandler(Type.ROOM_HANDOFF, ChatWebsocket::onRoomHandOff);
+		roomRouter.setHandler(Type.SEAT_HANDOFF, ChatWebsocket::onSeatHandOff);
+		roomRouter.setMigrator(new RoomMigrator());
+		roomRouter.setHandler(Type.ROOM_SUMMARY,
+				e -> Lobby.getInstance().update(game(DEFAULT_ROOM).jsonb.fromJson(e.getPayload(), RoomSummary.class)));
+		RoomSnapshots.getInstance().addListener(SNAPSHOT_LISTENER);
+		Lobby.getInstance().addListener(LOBBY_LISTENER);
+	}
+
+	/**
+	 * Restores rooms owned by this node from their last snapshots, e.g. after the
+	 * node has crashed. Should be called when the node has joined other nodes and
+	 * stale active users have been removed.
+	 */
+	static void restoreRooms() {
+		for (String roomId : RoomSnapshots.getInstance().roomIds()) {
+			if (!RoomRouter.getInstance().isOwner(roomId))
+				continue;
+			RoomState state = RoomSnapshots.getInstance().restore(roomId);
+			if (state == null)
+				continue;
+			RoomMailboxes.getInstance().execute(roomId, () -> {
+				try {
+					game(roomId).restoreRoom(state);
+				} catch (GameIntegrityViolationException e) {
+					System.err.println("Chat Websocket: unable to restore room " + roomId);
+					e.printStackTrace();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Captures state of the room: players from database together with the word
+	 * to guess, and strokes drawn so far. Seats of players connected to this node
+	 * or held for them carry their resume tokens. Must be run on the mailbox of
+	 * the room.
+	 *
+	 * @param roomId room
+	 * @return current state of the room
+	 */
+	private static RoomState captureRoom(String roomId) {
+		return captureRoom(roomId, ActiveUserService.getInstance().getActiveUsers(roomId));
+	}
+
+	/**
+	 * @param roomId room
+	 * @param users  players of the room
+	 * @return state of the room with the given players
+	 */
+	private static RoomState captureRoom(String roomId, List<ActiveUser> users) {
+		RoomState state = new RoomState(roomId);
+		Map<String, String> tokens = SeatReservations.getInstance().tokensBySeat(roomId);
+		for (ChatWebsocket endpoint : endpoints) {
+			if (endpoint.roomId.equals(roomId) && endpoint.resumeToken != null)
+				tokens.put(seatId(endpoint.session), endpoint.resumeToken);
+		}
+		for (ActiveUser user : users) {
+			String username = user.getUser().getUsername();
+			state.getSeats().add(new RoomState.Seat(user.getChatSessionId(), username,
+					user.getUser().getPoints() + PointsLedgerService.getInstance().pendingPoints(username),
+					user.isDrawing(), tokens.get(user.getChatSessionId())));
+			if (user.isDrawing())
+				state.setWord(user.getWord());
+		}
+		state.setStrokes(StrokeLog.getInstance().strokes(roomId));
+		ChatWebsocket game = games.get(roomId);
+		state.setRound(game == null ? 0 : game.round);
+		return state;
+	}
+
+	/**
+	 * Sends message from the owner of the room to players connected to this node.
+	 * Run on the mailbox of the room, so only one message is sent to a session at
+	 * a time.
+	 *
+	 * @param event room event carrying serialized ChatMessage
+	 */
+	private static void onRoomEvent(RoomEvent event) {
+		RoomMailboxes.getInstance().execute(event.getRoomId(), () -> {
+			long start = System.nanoTime();
+			for (ChatWebsocket endpoint : endpoints) {
+				if (!endpoint.roomId.equals(event.getRoomId()))
+					continue;
+				boolean isSeat = seatId(endpoint.session).equals(event.getSeatId());
+				// Direct message goes to the seat only, other ones skip it
+				if (isSeat == (event.getType() == Type.DIRECT))
+					endpoint.sendText(endpoint.session, event.getPayload(), event.getType().name());
+			}
+			fanOutTimes.record(System.nanoTime() - start);
+
+			SpectatorFeed spectatorFeed = SpectatorFeed.getInstance();
+			if (event.getType() == Type.CHAT || event.getType() == Type.CHAT_LINE
+					|| event.getType() == Type.CANVAS_CLEANED)
+				spectatorFeed.enqueueChatMessage(event.getRoomId(), event.getPayload());
+			if (event.getType() == Type.CHAT_LINE)
+				ChatLog.getInstance().append(event.getRoomId(), event.getPayload());
+			if (event.getType() == Type.CANVAS_CLEANED) {
+				StrokeLog.getInstance().clear(event.getRoomId());
+				if (RoomRouter.getInstance().isOwner(event.getRoomId()))
+					RoomSnapshots.getInstance().recordCleanCanvas(event.getRoomId());
+			}
+			if (event.getType() == Type.ROUND_SCOREBOARD)
+				spectatorFeed.publishScoreboard(event.getRoomId(), event.getPayload());
+		});
+	}
+
+	/**
+	 * Processes input of a player on the owner of the room.
+	 *
+	 * @param event room event carrying input of the player
+	 */
+	private static void onPlayerInput(RoomEvent event) {
+		RoomMailboxes.getInstance().execute(event.getRoomId(), () -> {
 			try {
-				if (openedSession.isOpen())
-					openedSession.getBasicRemote().sendText(responseJson);
-			} catch (IOException e) {
-				System.out.println("Chat Websocket: broadcastScoreboard: sending message error.");
+				RoomRouter.getInstance().markRunning(event.getRoomId());
+				ChatWebsocket game = game(event.getRoomId());
+				if (event.getType() == Type.PLAYER_MESSAGE)
+					game.processPlayerMessage(event.getSeatId(), event.getUsername(), event.getPayload());
+				else if (event.getType() == Type.PLAYER_JOINED)
+					game.processPlayerJoined();
+				else
+					game.processPlayerLeft(Boolean.parseBoolean(event.getPayload()));
+			} catch (GameIntegrityViolationException e) {
+				System.err.println("Chat Websocket: unable to process " + event);
 				e.printStackTrace();
 			}
+		});
+	}
+
+	/**
+	 * Takes over the room from its previous owner on the mailbox of the room.
+	 *
+	 * @param event room event carrying serialized RoomState
+	 */
+	private static void onRoomHandOff(RoomEvent event) {
+		RoomMailboxes.getInstance().execute(event.getRoomId(), () -> {
+			try {
+				ChatWebsocket game = game(event.getRoomId());
+				game.takeOverRoom(game.jsonb.fromJson(event.getPayload(), RoomState.class));
+			} catch (GameIntegrityViolationException e) {
+				System.err.println("Chat Websocket: unable to take over " + event);
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Holds seats of players who are going to reconnect to this node, on the
+	 * mailbox of the room.
+	 *
+	 * @param event room event carrying serialized RoomState with seats
+	 */
+	private static void onSeatHandOff(RoomEvent event) {
+		RoomMailboxes.getInstance().execute(event.getRoomId(), () -> {
+			RoomState state = game(event.getRoomId()).jsonb.fromJson(event.getPayload(), RoomState.class);
+			SeatReservations seatReservations = SeatReservations.getInstance();
+			for (RoomState.Seat seat : state.getSeats()) {
+				String seatId = seat.getSeatId();
+				seatReservations.reserve(state.getRoomId(), seat.getResumeToken(), seat.getUsername(), seatId,
+						() -> RoomMailboxes.getInstance().execute(state.getRoomId(),
+								() -> leaveGame(state.getRoomId(), seatId)));
+			}
+		});
+	}
+
+	/**
+	 * @param roomId room
+	 * @return endpoint without session running game logic of the room
+	 */
+	private static ChatWebsocket game(String roomId) {
+		return games.computeIfAbsent(roomId, id -> {
+			ChatWebsocket endpoint = new ChatWebsocket();
+			endpoint.roomId = id;
+			endpoint.jsonb = JsonbBuilder.create();
+			return endpoint;
+		});
+	}
+
+	/**
+	 * Resumes the game if it has been paused due to inactivity, then processes
+	 * message based on its type.
+	 *
+	 * @param seatId   seat of the player who sent the message
+	 * @param username name of the player
+	 * @param message  message to be processed
+	 */
+	private void processPlayerMessage(String seatId, String username, String message) {
+		// Resume the game if it has been paused due to inactivity
+		if (roundTimer.touch(roomId, ROUND_LISTENER))
+			startGame();
+
+		// Check MsgType
+		processBasedOnMsgType(seatId, username, message);
+	}
+
+	/**
+	 * Broadcasts scoreboard with new player and starts the game when there is no
+	 * drawing user.
+	 */
+	private void processPlayerJoined() {
+		boolean wasIdle = roundTimer.touch(roomId, ROUND_LISTENER);
+
+		// Broadcast scoreboard
+		broadcastScoreboard(false);
+
+		// There is no drawing user
+		if (wasIdle || !activeUserService.doesDrawingUserExist(roomId))
+			startGame();
+	}
+
+	/**
+	 * In case drawing user has left the game it schedules choosing next drawing
+	 * user. Broadcasts scoreboard, or cancels timed events when nobody plays.
+	 *
+	 * @param wasDrawing true if user who has left was drawing
+	 */
+	private void processPlayerLeft(boolean wasDrawing) {
+		// If this was not the last active user
+		if (activeUserService.getActiveUsers(roomId).size() > 0) {
+			// Drawing user has left, choose next one in the background
+			if (wasDrawing)
+				scheduleDrawerRecovery(roomId, 1, 0);
+
+			// Broadcast scoreboard
+			broadcastScoreboard(false);
+		} else {
+			// Nobody plays, cancel timed events of the game
+			removeRoom(roomId);
+			roundRecorder.endRound(roomId, null);
 		}
+	}
+
+	/**
+	 * Forgets the room nobody plays in anymore: its timed events, chat history
+	 * and endpoint running its game logic. Rooms are created on demand, so they
+	 * must not be kept forever. Must be run on the mailbox of the room.
+	 *
+	 * @param roomId room
+	 */
+	private static void removeRoom(String roomId) {
+		RoomRouter.getInstance().unmarkRunning(roomId);
+		RoundTimer.getInstance().removeRoom(roomId);
+		ChatLog.getInstance().removeRoom(roomId);
+		games.remove(roomId);
+	}
+
+	/**
+	 * Broadcast scoreboard to all the users. Display users, their points and
+	 * whether they are drawing or not. Spectators receive scoreboard only when
+	 * round changes.
+	 *
+	 * @param isRoundChange true if new drawing user or new word has been set
+	 */
+	private void broadcastScoreboard(boolean isRoundChange) {
+		roomRouter.publish(isRoundChange ? Type.ROUND_SCOREBOARD : Type.SCOREBOARD, roomId, null, null,
+				produceScoreboardMessage());
 
 		System.out.println("Chat Websocket: scoreboard has been updated!");
 	}
 
+	/**
+	 * @return serialized ChatMessage of type SCOREBOARD for active users
+	 */
+	private String produceScoreboardMessage() {
+		List<Score> scores = activeUserService.produceScoreboardForActiveUsers(roomId);
+		String scoresJson = jsonb.toJson(scores);
+		ChatMessage response = new ChatMessage(MsgType.SCOREBOARD, scoresJson);
+		return jsonb.toJson(response);
+	}
+
+	/**
+	 * Sends message to all the playing users. Spectators are skipped, they receive
+	 * messages in batches from SpectatorFeed.
+	 *
+	 * @param messageJson serialized ChatMessage
+	 */
+	private void broadcastToPlayers(String messageJson) {
+		roomRouter.publish(Type.PLAYERS, roomId, null, null, messageJson);
+	}
+
+	/**
+	 * Sends chat message to all the playing users except one and to spectators.
+	 * Message is kept in the chat history of the room (see ChatLog).
+	 *
+	 * @param messageJson  serialized ChatMessage
+	 * @param exceptSeatId seat which does not receive the message, may be null
+	 */
+	private void broadcastChat(String messageJson, String exceptSeatId) {
+		roomRouter.publish(Type.CHAT_LINE, roomId, exceptSeatId, null, messageJson);
+	}
+
+	/**
+	 * Sends message to the player sitting on given seat, whichever node he is
+	 * connected to.
+	 *
+	 * @param seatId      session id under which player is stored as active user
+	 * @param messageJson serialized ChatMessage
+	 */
+	private void sendToSeat(String seatId, String messageJson) {
+		roomRouter.publish(Type.DIRECT, roomId, seatId, null, messageJson);
+	}
+
+	/**
+	 * Sends message to given session if it is still open and answers heartbeat.
+	 * Message is sent under the send lock of the session, so it does not collide
+	 * with pings.
+	 *
+	 * @param s           websocket session
+	 * @param messageJson serialized ChatMessage
+	 * @param context     name of the operation, printed in case of sending error
+	 */
+	private void sendText(Session s, String messageJson, String context) {
+		if (!heartbeat.isAlive(s))
+			return;
+		Lock lock = Heartbeat.sendLock(s);
+		lock.lock();
+		try {
+			s.getBasicRemote().sendText(messageJson);
+		} catch (IOException e) {
+			System.out.println("Chat Websocket: " + context + ": sending message error.");
+			e.printStackTrace();
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	/**
 	 * Process message based on its type (ChatMessage.MsgType)
 	 * 
-	 * @param s       current websocket session
-	 * @param message message to be processed
+	 * @param seatId   seat of the player who sent the message
+	 * @param username name of the player
+	 * @param message  message to be processed
 	 */
-	private void processBasedOnMsgType(Session s, String message) {
+	private void processBasedOnMsgType(String seatId, String username, String message) {
 		if (message == null) {
 			System.out.println("Chat Websocket received null message.");
 			return;
@@ -208,26 +892,25 @@ public class ChatWebsocket {
 		System.out.println("[" + msg.getMsgType() + "] Message received: " + msg.getMsgContent());
 
 		if (msg.getMsgType().equals(MsgType.MESSAGE.getValue())) {
-			processChatMessage(s, msg.getMsgContent());
+			processChatMessage(seatId, username, msg.getMsgContent());
 		}
 
 		if (msg.getMsgType().equals(MsgType.CLEAN_CANVAS.getValue())) {
 			System.out.println("Clean Canvas!");
 			// Clean canvas for everybody
-			ChatMessage response = new ChatMessage(MsgType.CLEAN_CANVAS, "");
-			String responseJson = jsonb.toJson(response);
-			for (Session openedSession : s.getOpenSessions()) {
-				try {
-					if (openedSession.isOpen())
-						openedSession.getBasicRemote().sendText(responseJson);
-				} catch (IOException e) {
-					System.out.println("Chat Websocket: clean canvas: sending message error.");
-					e.printStackTrace();
-				}
-			}
+			broadcastCleanCanvas();
 		}
 	}
 
+	/**
+	 * Cleans canvas of all the players and spectators, and forgets strokes of the
+	 * room.
+	 */
+	private void broadcastCleanCanvas() {
+		ChatMessage response = new ChatMessage(MsgType.CLEAN_CANVAS, "");
+		roomRouter.publish(Type.CANVAS_CLEANED, roomId, null, null, jsonb.toJson(response));
+	}
+
 	/**
 	 * Checks if the word has been guessed. Guessing by drawing user does not count.
 	 * Adds points to winning user in case he guessed the word. Broadcasts messages
@@ -236,97 +919,64 @@ public class ChatWebsocket {
 	 * been guessed broadcasts the message as a regular chat message without
 	 * processing.
 	 * 
-	 * @param msgSender messages sender session
-	 * @param msg       message to be processed
+	 * @param senderSeatId seat of messages sender
+	 * @param username     name of messages sender
+	 * @param msg          message to be processed
 	 * @throws GameIntegrityViolationException in case of internal inconsistency
 	 *                                         e.g. there is zero or more than one
 	 *                                         drawing user, there is more than one
 	 *                                         user with certain session id, winning
 	 *                                         user is not an active user.
 	 */
-	private void processChatMessage(Session msgSender, String msg) throws GameIntegrityViolationException {
+	private void processChatMessage(String senderSeatId, String username, String msg)
+			throws GameIntegrityViolationException {
 		// Has word been guessed?
-		if (activeUserService.hasWordBeenGuessed(msg)) {
+		if (activeUserService.hasWordBeenGuessed(roomId, msg)) {
 			// Guessed By Drawing User?
-			String drawingSessionId = activeUserService.getActiveDrawingUser().getChatSessionId();
-			String senderSessionId = msgSender.getId();
-			if (senderSessionId.equals(drawingSessionId)) {
+			String drawingSessionId = activeUserService.getActiveDrawingUser(roomId).getChatSessionId();
+			if (senderSeatId.equals(drawingSessionId)) {
 				// It does not count! Pass as regular message.
-				broadcastMessage(msgSender, msg);
+				broadcastMessage(username, msg);
 			} else {
 				// Add points to user sending the message
-				activeUserService.addPointsToTheUser(senderSessionId, 1);
+				activeUserService.addPointsToTheUser(senderSeatId, 1);
 				// Broadcast info about winner
 				ChatMessage response = null;
-				String responseJson = "";
 
 				// Send message to winning user
 				response = new ChatMessage(MsgType.YOU_GUESSED_IT, "Brawo " + username + ", zgade!");
-				responseJson = jsonb.toJson(response);
-				try {
-					msgSender.getBasicRemote().sendText(responseJson);
-				} catch (IOException e) {
-					System.out.println("Chat Websocket: info to winner: sending message error");
-					e.printStackTrace();
-				}
+				sendToSeat(senderSeatId, jsonb.toJson(response));
 
 				// Send messages to other users that the word has been guessed
 				response = new ChatMessage(MsgType.MESSAGE, "Uytkownik " + username + " odgad haso!");
-				responseJson = jsonb.toJson(response);
-				for (Session openedSession : msgSender.getOpenSessions()) {
-					if (!openedSession.equals(msgSender)) {
-						try {
-							if (openedSession.isOpen())
-								openedSession.getBasicRemote().sendText(responseJson);
-						} catch (IOException e) {
-							System.out.println("Chat Websocket: broadcast winner info: sending message error");
-							e.printStackTrace();
-						}
-					}
-				}
+				broadcastChat(jsonb.toJson(response), senderSeatId);
 
 				// Broadcast cleaning canvas
-				response = new ChatMessage(MsgType.CLEAN_CANVAS, "");
-				responseJson = jsonb.toJson(response);
-				for (Session openedSession : msgSender.getOpenSessions()) {
-					try {
-						if (openedSession.isOpen())
-							openedSession.getBasicRemote().sendText(responseJson);
-					} catch (IOException e) {
-						System.out.println("Chat Websocket: clean canvas for all: sending message error");
-						e.printStackTrace();
-					}
-				}
+				broadcastCleanCanvas();
+
+				// Archive the round with its winner
+				roundRecorder.endRound(roomId, username);
 
 				// Continue game, user who guessed the word is not drawing
-				continueGameWithWinner(msgSender);
+				continueGameWithWinner(senderSeatId);
 
 				// Broadcast scoreboard
-				broadcastScoreboard(msgSender);
+				broadcastScoreboard(false);
 			}
 		} else {
-			broadcastMessage(msgSender, msg);
+			broadcastMessage(username, msg);
 		}
 	}
 
 	/**
 	 * Broadcasts regular chat message. Adds username of a message sender.
 	 * 
-	 * @param s   current websocket session
-	 * @param msg message to be sent to other users
+	 * @param username name of messages sender
+	 * @param msg      message to be sent to other users
 	 */
-	private void broadcastMessage(Session s, String msg) {
+	private void broadcastMessage(String username, String msg) {
 		ChatMessage response = new ChatMessage(MsgType.MESSAGE, username + ": " + msg);
-		String responseJson = jsonb.toJson(response);
-		for (Session openedSession : s.getOpenSessions()) {
-			try {
-				if (openedSession.isOpen())
-					openedSession.getBasicRemote().sendText(responseJson);
-			} catch (IOException e) {
-				System.out.println("Chat Websocket: pass regular message: sending message error");
-				e.printStackTrace();
-			}
-		}
+		broadcastChat(jsonb.toJson(response), null);
 	}
 
 	/**
@@ -334,96 +984,490 @@ public class ChatWebsocket {
 	 * guess. Game is started when there was no previous drawing user i.e. it is
 	 * first user in the game or drawing user has left the game.
 	 * 
-	 * @param s current websocket session
 	 * @throws GameIntegrityViolationException in case of error during word
 	 *                                         generation, setting new drawing user
 	 *                                         or setting new word to guess.
 	 */
-	private void startGame(Session s) throws GameIntegrityViolationException {
+	private void startGame() throws GameIntegrityViolationException {
 		// Get random active user to draw
-		ActiveUser newDrawingUser = activeUserService.getRandomActiveUser();
+		ActiveUser newDrawingUser = activeUserService.getRandomActiveUser(roomId);
 
-		// Get random word
-		String newWord = wordService.getRandomWord();
+		// Get random word of the pack of the room
+		String newWord = wordService.getRandomWord(RoomPlacement.packOf(roomId));
 
 		// Set new drawing user in database. Set also new word to guess
 		activeUserService.setDrawingUserAndNewWord(newDrawingUser, newWord);
 
 		// Clean word to guess for all
 		ChatMessage response = new ChatMessage(MsgType.CLEAN_WORD_TO_GUESS, "");
-		String responseJson = jsonb.toJson(response);
-		for (Session openedSession : s.getOpenSessions()) {
-			try {
-				if (openedSession.isOpen())
-					openedSession.getBasicRemote().sendText(responseJson);
-			} catch (IOException e) {
-				System.out.println("Chat Websocket: clean word to guess: sending message error");
-				e.printStackTrace();
-			}
-		}
+		broadcastToPlayers(jsonb.toJson(response));
 
 		// Notify new drawing user and send him word to draw
 		ChatMessage msg = new ChatMessage(MsgType.WORD_TO_GUESS, newWord);
-		String msgJson = jsonb.toJson(msg);
+		sendToSeat(newDrawingUser.getChatSessionId(), jsonb.toJson(msg));
 
-		for (Session openedSession : s.getOpenSessions()) {
-			if (openedSession.getId().equals(newDrawingUser.getChatSessionId())) {
-				try {
-					if (openedSession.isOpen())
-						openedSession.getBasicRemote().sendText(msgJson);
-				} catch (IOException e) {
-					System.out.println("Chat Websocket: send word to guess: sending message error");
-					e.printStackTrace();
-				}
-			}
-		}
+		// Start time limit of the round
+		startRound(newWord);
 
 		// Broadcast scoreboard
-		broadcastScoreboard(s);
+		broadcastScoreboard(true);
 	}
 
 	/**
 	 * Continuing game means the next drawing user is the user who won last turn.
 	 * 
-	 * @param winner user who guessed previous word
+	 * @param winnerSeatId seat of user who guessed previous word
 	 */
-	private void continueGameWithWinner(Session winner) {
+	private void continueGameWithWinner(String winnerSeatId) {
 		// Get winner by his session id
-		ActiveUser newDrawingUser = activeUserService.getActiveUserBySessionId(winner.getId());
+		ActiveUser newDrawingUser = activeUserService.getActiveUserBySessionId(winnerSeatId);
 
-		// Get random word
-		String newWord = wordService.getRandomWord();
+		// Get random word of the pack of the room
+		String newWord = wordService.getRandomWord(RoomPlacement.packOf(roomId));
 
 		// Set new drawing user in database. Set also new word to guess
 		activeUserService.setDrawingUserAndNewWord(newDrawingUser, newWord);
 
 		// Clean word to guess for all
 		ChatMessage response = new ChatMessage(MsgType.CLEAN_WORD_TO_GUESS, "");
-		String responseJson = jsonb.toJson(response);
-		for (Session openedSession : winner.getOpenSessions()) {
+		broadcastToPlayers(jsonb.toJson(response));
+
+		// Notify new drawing user and send him word to draw
+		ChatMessage msg = new ChatMessage(MsgType.WORD_TO_GUESS, newWord);
+		sendToSeat(newDrawingUser.getChatSessionId(), jsonb.toJson(msg));
+
+		// Start time limit of the round
+		startRound(newWord);
+
+		// Broadcast scoreboard
+		broadcastScoreboard(true);
+	}
+
+	/**
+	 * Schedules deadline and hints of the round. Sends hint without any letters
+	 * revealed, so players know the length of the word.
+	 *
+	 * @param word new word to guess
+	 */
+	private void startRound(String word) {
+		round++;
+		roundTimer.startRound(roomId, round, word, ROUND_LISTENER);
+		roundRecorder.startRound(roomId, word);
+		broadcastHint(gameUtil.produceHint(word, 0));
+	}
+
+	/**
+	 * Broadcasts hint to all the users. Drawing user ignores it.
+	 *
+	 * @param hint word to guess with some of the letters revealed
+	 */
+	private void broadcastHint(String hint) {
+		// Hints are not kept in the chat history
+		ChatMessage response = new ChatMessage(MsgType.HINT, hint);
+		roomRouter.publish(Type.CHAT, roomId, null, null, jsonb.toJson(response));
+	}
+
+	/**
+	 * Nobody guessed the word in time. Reveals the word and starts next round with
+	 * random drawing user.
+	 */
+	private void endRoundWithoutWinner() {
+		try {
+			String word = activeUserService.getActiveDrawingUser(roomId).getWord();
+
+			ChatMessage response = new ChatMessage(MsgType.MESSAGE, "Nikt nie zgad! Haso: " + word);
+			broadcastChat(jsonb.toJson(response), null);
+
+			broadcastCleanCanvas();
+
+			roundRecorder.endRound(roomId, null);
+			startGame();
+		} catch (GameIntegrityViolationException e) {
+			System.err.println("Chat Websocket: round deadline: unable to start next round!");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Nobody has written anything for a long time. Unsets drawing user and word to
+	 * guess, the game is resumed with the next message.
+	 */
+	private void pauseGame() {
+		activeUserService.unsetDrawingStateForAllAndUnsetWords(roomId);
+		roundRecorder.endRound(roomId, null);
+
+		ChatMessage response = new ChatMessage(MsgType.CLEAN_WORD_TO_GUESS, "");
+		broadcastToPlayers(jsonb.toJson(response));
+
+		response = new ChatMessage(MsgType.MESSAGE, "Gra wstrzymana z powodu braku aktywnoci. Napisz co, aby kontynuowa.");
+		broadcastChat(jsonb.toJson(response), null);
+
+		broadcastScoreboard(true);
+	}
+
+	/**
+	 * Schedules checking if there is a drawing user. Check is performed on the
+	 * mailbox of the room.
+	 *
+	 * @param roomId        room
+	 * @param attempt       number of the attempt, starting from 1
+	 * @param delayInMillis delay of the check
+	 */
+	private static void scheduleDrawerRecovery(String roomId, int attempt, long delayInMillis) {
+		RoundTimer.getInstance().schedule(roomId,
+				() -> RoomMailboxes.getInstance().execute(roomId, () -> game(roomId).recoverDrawer(attempt)),
+				delayInMillis);
+	}
+
+	/**
+	 * Starts the game from random user if there is no drawing user. In case of
+	 * inconsistency (e.g. next drawing user is being set at the same time) check is
+	 * repeated NUM_OF_RETRY times every RETRY_FREQ_IN_MILLIS, then the game is
+	 * started anyway.
+	 *
+	 * @param attempt number of the attempt, starting from 1
+	 */
+	private void recoverDrawer(int attempt) {
+		// Room has been handed to another node, which recovers drawer itself
+		if (!roomRouter.isOwner(roomId))
+			return;
+
+		try {
 			try {
-				if (openedSession.isOpen())
-					openedSession.getBasicRemote().sendText(responseJson);
+				if (activeUserService.doesDrawingUserExist(roomId))
+					return;
+			} catch (GameIntegrityViolationException e) {
+				if (attempt < dictService.getNumberOfRetries()) {
+					scheduleDrawerRecovery(roomId, attempt + 1, dictService.getRetryFrequency());
+					return;
+				}
+			}
+
+			System.err.println("Chat Websocket: drawer recovery: unable to get drawing user!");
+			startGame();
+		} catch (GameIntegrityViolationException e) {
+			System.err.println("Chat Websocket: drawer recovery: unable to start the game!");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Restores the room from its snapshot after this node has been restarted.
+	 * Players of this node have lost their connections, so their seats are held
+	 * with their resume tokens, like after any lost connection, and they come
+	 * back to the same game. Seats removed as stale are taken again. Seats
+	 * without token (players of other nodes) are kept only if their presence is
+	 * still renewed.
+	 *
+	 * @param state state of the room from its snapshot
+	 * @throws GameIntegrityViolationException in case of internal inconsistency
+	 */
+	private void restoreRoom(RoomState state) throws GameIntegrityViolationException {
+		long leaseExpiry = System.currentTimeMillis() + heartbeat.getLeaseTime();
+		for (RoomState.Seat seat : state.getSeats()) {
+			String seatId = seat.getSeatId();
+			if (!seatReservations.reserve(roomId, seat.getResumeToken(), seat.getUsername(), seatId,
+					() -> roomMailboxes.execute(roomId, () -> leaveGame(roomId, seatId)))
+					|| activeUserService.isUserActive(seatId))
+				continue;
+			try {
+				activeUserService.addActiveUser(roomId, seat.getUsername(), seatId, leaseExpiry);
+			} catch (GameIntegrityViolationException e) {
+				// E.g. player has joined again in the meantime
+				System.out.println("Chat Websocket: seat of " + seat.getUsername() + " cannot be restored.");
+				seatReservations.claim(roomId, seat.getResumeToken(), seat.getUsername());
+			}
+		}
+		takeOverRoom(state);
+	}
+
+	/**
+	 * Continues the game handed from the previous owner of the room. Drawing user
+	 * and points are kept in database shared by the nodes, handed state restores
+	 * drawing user only if it is missing. Round of the same word is started
+	 * again, with full time limit. When the drawing user has left in the
+	 * meantime, strokes of his word are cleaned and next drawing user is chosen.
+	 *
+	 * @param state state of the room on the previous owner
+	 * @throws GameIntegrityViolationException in case of internal inconsistency
+	 */
+	private void takeOverRoom(RoomState state) throws GameIntegrityViolationException {
+		roomRouter.markRunning(state.getRoomId());
+		round = Math.max(round, state.getRound());
+		StrokeLog.getInstance().replace(state.getRoomId(), state.getStrokes());
+		roundTimer.touch(state.getRoomId(), ROUND_LISTENER);
+
+		RoomState.Seat drawer = state.drawer();
+		if (drawer != null && state.getWord() != null && activeUserService.isUserActive(drawer.getSeatId())) {
+			if (!activeUserService.doesDrawingUserExist(state.getRoomId()))
+				activeUserService.setDrawingUserAndNewWord(activeUserService.getActiveUserBySessionId(drawer.getSeatId()),
+						state.getWord());
+			roundTimer.startRound(state.getRoomId(), round, state.getWord(), ROUND_LISTENER);
+			roundRecorder.startRound(state.getRoomId(), state.getWord());
+		} else {
+			if (!state.getStrokes().isEmpty())
+				broadcastCleanCanvas();
+			if (!activeUserService.getActiveUsers(state.getRoomId()).isEmpty())
+				scheduleDrawerRecovery(state.getRoomId(), 1, 0);
+		}
+		System.out.println("Chat Websocket: took over room " + state.getRoomId() + " with " + state.getSeats().size()
+				+ " players.");
+	}
+
+	/**
+	 * Moves rooms of this node to other nodes. Runs on the mailbox of the room, so
+	 * no game logic of the room runs at the same time.
+	 */
+	private static class RoomMigrator implements RoomRouter.Migrator {
+
+		@Override
+		public CompletableFuture<Void> handOff(String roomId, String targetNodeId) {
+			CompletableFuture<Void> done = new CompletableFuture<>();
+			RoomMailboxes.getInstance().execute(roomId, () -> {
+				try {
+					handOffRoom(roomId, targetNodeId);
+					done.complete(null);
+				} catch (RuntimeException e) {
+					System.err.println("Chat Websocket: unable to hand room " + roomId + " to " + targetNodeId);
+					done.completeExceptionally(e);
+				}
+			});
+			return done;
+		}
+
+		@Override
+		public CompletableFuture<Void> reconnectClients() {
+			// Rooms with players, held seats or spectators on this node
+			Set<String> roomIds = new TreeSet<>(SeatReservations.getInstance().roomIds());
+			roomIds.addAll(SpectatorFeed.getInstance().roomIds());
+			for (ChatWebsocket endpoint : endpoints)
+				roomIds.add(endpoint.roomId);
+
+			List<CompletableFuture<Void>> moved = new ArrayList<>();
+			for (String roomId : roomIds) {
+				CompletableFuture<Void> done = new CompletableFuture<>();
+				RoomMailboxes.getInstance().execute(roomId, () -> {
+					try {
+						moveClients(roomId);
+						done.complete(null);
+					} catch (RuntimeException e) {
+						System.err.println("Chat Websocket: unable to move players of " + roomId + " to another node.");
+						done.completeExceptionally(e);
+					}
+				});
+				moved.add(done);
+			}
+			return CompletableFuture.allOf(moved.toArray(new CompletableFuture<?>[0]));
+		}
+
+		/**
+		 * Stops timed events of the room and sends its state to the new owner.
+		 * Held seats keep their expiries.
+		 *
+		 * @param roomId       room
+		 * @param targetNodeId new owner of the room
+		 */
+		private void handOffRoom(String roomId, String targetNodeId) {
+			RoundTimer.getInstance().releaseRoom(roomId);
+
+			RoomRouter.getInstance().send(targetNodeId, Type.ROOM_HANDOFF, roomId, null, null,
+					game(roomId).jsonb.toJson(captureRoom(roomId)));
+			// New owner keeps the room on its disk from now on
+			RoomSnapshots.getInstance().forget(roomId);
+		}
+
+		/**
+		 * Hands seats of players of the room connected to this node (and seats held
+		 * for them) to the owner of the room, then tells players and spectators to
+		 * reconnect there.
+		 *
+		 * @param roomId room
+		 */
+		private void moveClients(String roomId) {
+			RoomRouter roomRouter = RoomRouter.getInstance();
+			String owner = roomRouter.ownerOf(roomId);
+			if (roomRouter.nodeId().equals(owner))
+				return;
+
+			RoomState seats = new RoomState(roomId);
+			seats.getSeats().addAll(SeatReservations.getInstance().releaseAll(roomId));
+			List<ChatWebsocket> players = new ArrayList<>();
+			for (ChatWebsocket endpoint : endpoints) {
+				if (endpoint.roomId.equals(roomId))
+					players.add(endpoint);
+			}
+			for (ChatWebsocket endpoint : players) {
+				if (endpoint.resumeToken != null)
+					seats.getSeats().add(new RoomState.Seat(seatId(endpoint.session), endpoint.username, 0, false,
+							endpoint.resumeToken));
+			}
+			ChatWebsocket game = game(roomId);
+			roomRouter.send(owner, Type.SEAT_HANDOFF, roomId, null, null, game.jsonb.toJson(seats));
+
+			String reconnect = game.jsonb.toJson(new ChatMessage(MsgType.RECONNECT, roomRouter.addressOf(owner)));
+			for (ChatWebsocket endpoint : players) {
+				endpoint.sendText(endpoint.session, reconnect, "reconnect");
+				endpoint.isMigrating = true;
+				closeGoingAway(endpoint.session);
+			}
+			for (Session spectator : SpectatorFeed.getInstance().chatSpectators(roomId)) {
+				game.sendText(spectator, reconnect, "reconnect spectator");
+				closeGoingAway(spectator);
+			}
+			// Players waiting for a seat join the line on the new owner
+			for (Session waiting : Admission.getInstance().waitingSessions(roomId)) {
+				game.sendText(waiting, reconnect, "reconnect waiting player");
+				closeGoingAway(waiting);
+			}
+			System.out.println("Chat Websocket: " + seats.getSeats().size() + " players of " + roomId + " moved to "
+					+ owner + ".");
+		}
+
+		private void closeGoingAway(Session s) {
+			try {
+				s.close(new CloseReason(CloseCodes.GOING_AWAY, "Room has moved to another node."));
 			} catch (IOException e) {
-				System.out.println("Chat Websocket: clean word to guess: sending message error");
+				System.out.println("Cannot close Chat Websocket.");
 				e.printStackTrace();
 			}
 		}
+	}
 
-		// Notify new drawing user and send him word to draw
-		ChatMessage msg = new ChatMessage(MsgType.WORD_TO_GUESS, newWord);
-		String msgJson = jsonb.toJson(msg);
-		try {
-			Session newDrawing = winner.getOpenSessions().stream()
-					.filter((session) -> session.getId().equals(newDrawingUser.getChatSessionId())).findFirst().get();
-			newDrawing.getBasicRemote().sendText(msgJson);
-		} catch (NoSuchElementException e) {
-			throw new GameIntegrityViolationException("Cannot choose non-existing user for drawing!", e);
-		} catch (IOException e) {
-			throw new GameIntegrityViolationException("New drawing user was not set properly!", e);
+	/**
+	 * Takes snapshots of rooms running on this node, each on the mailbox of its
+	 * room. Rooms which have been removed or have no players are skipped.
+	 */
+	private static class SnapshotListener implements RoomSnapshots.Listener {
+
+		@Override
+		public void onSnapshotDue() {
+			RoomRouter roomRouter = RoomRouter.getInstance();
+			for (String roomId : roomRouter.runningRooms()) {
+				RoomMailboxes.getInstance().execute(roomId, () -> {
+					if (!roomRouter.isOwner(roomId) || !games.containsKey(roomId))
+						return;
+					List<ActiveUser> users = ActiveUserService.getInstance().getActiveUsers(roomId);
+					if (!users.isEmpty())
+						RoomSnapshots.getInstance().snapshot(roomId, () -> captureRoom(roomId, users));
+				});
+			}
 		}
+	}
 
-		// Broadcast scoreboard
-		broadcastScoreboard(winner);
+	/**
+	 * Publishes summaries of rooms owned by this node to all the nodes, each
+	 * produced on the mailbox of its room. Rooms which have been removed or have
+	 * no players are skipped.
+	 */
+	private static class LobbyListener implements Lobby.Listener {
+
+		@Override
+		public void onLobbyDue() {
+			RoomRouter roomRouter = RoomRouter.getInstance();
+			for (String roomId : roomRouter.runningRooms()) {
+				RoomMailboxes.getInstance().execute(roomId, () -> {
+					ChatWebsocket game = games.get(roomId);
+					if (game == null || !roomRouter.isOwner(roomId))
+						return;
+					String summary = game.produceSummary();
+					if (summary != null)
+						roomRouter.publish(Type.ROOM_SUMMARY, roomId, null, null, summary);
+				});
+			}
+		}
+	}
+
+	/**
+	 * @return serialized RoomSummary of the room, null if nobody plays in it
+	 */
+	private String produceSummary() {
+		List<ActiveUser> users = activeUserService.getActiveUsers(roomId);
+		if (users.isEmpty())
+			return null;
+		String drawer = users.stream().filter(ActiveUser::isDrawing).map(u -> u.getUser().getUsername()).findFirst()
+				.orElse(null);
+		RoomSummary summary = new RoomSummary(roomId, users.size(), drawer, round,
+				"rest/rooms/" + roomId + "/thumbnail", System.currentTimeMillis());
+		return jsonb.toJson(summary);
+	}
+
+	/**
+	 * Handles round timer events on the mailbox of the room. Rounds are started
+	 * by the owner of the room, so events are handled by its game logic. Event
+	 * may wait in the mailbox behind a correct guess starting next round, so
+	 * events of a round which is not the current one are dropped there.
+	 */
+	private static class RoundListener implements RoundTimer.Listener {
+
+		@Override
+		public void onHint(String roomId, long round, String hint) {
+			RoomMailboxes.getInstance().execute(roomId, () -> {
+				ChatWebsocket game = games.get(roomId);
+				if (game != null && game.round == round)
+					game.broadcastHint(hint);
+			});
+		}
+
+		@Override
+		public void onRoundDeadline(String roomId, long round) {
+			RoomMailboxes.getInstance().execute(roomId, () -> {
+				ChatWebsocket game = games.get(roomId);
+				if (game != null && game.round == round)
+					game.endRoundWithoutWinner();
+			});
+		}
+
+		@Override
+		public void onRoomIdle(String roomId) {
+			RoomMailboxes.getInstance().execute(roomId, () -> game(roomId).pauseGame());
+		}
+	}
+
+	/**
+	 * Renews leases of players connected to this node and players with held seats
+	 * after every heartbeat, with a single update for all the rooms. Update runs
+	 * on the heartbeat thread, so no room waits for it. Owner of each room then
+	 * removes players of the room whose leases have expired, on the mailbox of
+	 * the room. When the drawing user has been removed, next one is chosen.
+	 */
+	private static class PresenceListener implements Heartbeat.Listener {
+
+		@Override
+		public void onBeat() {
+			ActiveUserService activeUserService = ActiveUserService.getInstance();
+			long now = System.currentTimeMillis();
+
+			List<String> seatIds = new ArrayList<>(SeatReservations.getInstance().heldSeatIds());
+			for (ChatWebsocket endpoint : endpoints) {
+				if (endpoint.session.isOpen())
+					seatIds.add(seatId(endpoint.session));
+			}
+			activeUserService.renewLeases(seatIds, now + Heartbeat.getInstance().getLeaseTime());
+
+			// Leases of other nodes are renewed by them, only owner removes expired ones
+			RoomRouter roomRouter = RoomRouter.getInstance();
+			for (String roomId : roomRouter.runningRooms()) {
+				RoomMailboxes.getInstance().execute(roomId, () -> {
+					if (roomRouter.isOwner(roomId))
+						removeExpiredLeases(roomId, now);
+				});
+			}
+		}
+
+		private void removeExpiredLeases(String roomId, long now) {
+			ActiveUserService activeUserService = ActiveUserService.getInstance();
+			int removed = activeUserService.removeExpiredLeases(roomId, now);
+			if (removed == 0)
+				return;
+			System.out.println("Chat Websocket: removed " + removed + " players of " + roomId
+					+ " with expired presence.");
+
+			if (activeUserService.getActiveUsers(roomId).isEmpty()) {
+				removeRoom(roomId);
+				return;
+			}
+			scheduleDrawerRecovery(roomId, 1, 0);
+			game(roomId).broadcastScoreboard(false);
+		}
 	}
 }
@@ -1,22 +1,47 @@
 package websocket;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.Lock;
 
 import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.OnClose;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.PongMessage;
 import javax.websocket.Session;
 import javax.websocket.server.ServerEndpoint;
 
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.spi.JsonProvider;
+
 import db.AppDictionaryService;
+import cluster.RoomEvent;
+import cluster.RoomEvent.Type;
+import cluster.RoomRouter;
+import game.Admission;
+import game.DrawProbes;
+import game.FloodControl;
+import game.FloodControl.Limiter;
+import game.Heartbeat;
+import game.RoomMailboxes;
+import game.RoomSnapshots;
+import game.RoundRecorder;
+import game.SpectatorFeed;
+import game.StrokeLog;
+import service.Histogram;
 import service.LoginUtil;
+import service.Metrics;
 
 /**
- * Websocket used for passing drawn image to other users.
+ * Websocket used for passing drawn image to other users. Session draws in the
+ * room given with "room" parameter, strokes are passed to sessions of the same
+ * room only.
  * 
  * @author Maciej Szabaa
  *
@@ -24,16 +49,46 @@ import service.LoginUtil;
 @ServerEndpoint("/draw")
 public class DrawWebsocket {
 
+	/** Looked up once, Json.createReader() looks the provider up on every call. */
+	private static final JsonProvider JSON = JsonProvider.provider();
+
 	private AppDictionaryService dictService = AppDictionaryService.getInstance();
 	private LoginUtil loginUtil = LoginUtil.getInstance();
+	private SpectatorFeed spectatorFeed = SpectatorFeed.getInstance();
+	private Heartbeat heartbeat = Heartbeat.getInstance();
+	private RoomRouter roomRouter = RoomRouter.getInstance();
+	private StrokeLog strokeLog = StrokeLog.getInstance();
+	private Admission admission = Admission.getInstance();
+	private FloodControl floodControl = FloodControl.getInstance();
+	private DrawProbes drawProbes = DrawProbes.getInstance();
+	private Limiter limiter = floodControl.newDrawLimiter();
 	private Session session;
+	private String roomId;
 	private boolean isNewSession;
+	private boolean isSpectator;
+	private boolean isAdmitted;
+	private String firstDropped;
+	private String lastDropped;
+	private int droppedStrokes;
 	private static Set<DrawWebsocket> endpoints = new CopyOnWriteArraySet<>();
+	private static Histogram receiveTimes = Metrics.getInstance().histogram("kalambury_draw_message_seconds",
+			"Time of handling strokes received from drawing user.", Metrics.NANOS);
+	private static Histogram fanOutTimes = Metrics.getInstance().histogram("kalambury_draw_fanout_seconds",
+			"Time of sending stroke to the drawing boards of this node.", Metrics.NANOS);
 
 	@OnOpen
 	public void onOpen(Session session) throws IOException {
 		this.session = session;
+		roomId = ChatWebsocket.roomOf(session);
 		isNewSession = true;
+		// Reject overload before token is verified
+		if (!admission.tryOpenSession()) {
+			System.out.println("DrawWebsocket: session rejected: server is full.");
+			session.close(new CloseReason(CloseCodes.TRY_AGAIN_LATER, "Server is full."));
+			return;
+		}
+		isAdmitted = true;
+		heartbeat.register(session);
 		if (!endpoints.add(this)) {
 			System.out.println("Session already exists!");
 		}
@@ -42,34 +97,198 @@ public class DrawWebsocket {
 
 	@OnMessage
 	public void onMessage(Session s, String message) throws IOException {
+		// Session rejected when opened
+		if (!isAdmitted)
+			return;
 		// New session, expecting token in the message
 		// Allow websocket connection only if the token is valid
 		if (isNewSession) {
 			if (loginUtil.verifyJwt(message, dictService.getSecret(), dictService.getOwners())) {
 				System.out.println("DrawWebsocket: Token valid");
 				isNewSession = false;
+				// Draw what has been drawn so far, before any new stroke is sent
+				String strokes = strokeLog.strokesBatch(roomId);
+				if (strokes != null) {
+					Lock lock = Heartbeat.sendLock(s);
+					lock.lock();
+					try {
+						s.getBasicRemote().sendText(strokes);
+					} finally {
+						lock.unlock();
+					}
+				}
+				if (SpectatorFeed.isSpectatorRequest(s)) {
+					// Spectator receives batched strokes only
+					isSpectator = true;
+					endpoints.remove(this);
+					spectatorFeed.addDrawSpectator(roomId, s);
+				}
 			} else {
 				System.out.println("DrawWebsocket: Token invalid. Closing session...");
 				s.close(new CloseReason(CloseCodes.CANNOT_ACCEPT, "Invalid token."));
 			}
 			return;
 		}
+		// Spectators are not allowed to draw
+		if (isSpectator)
+			return;
+		long start = System.nanoTime();
+		try {
+			publishStroke(s, message);
+		} finally {
+			receiveTimes.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Publishes stroke of the drawing user unless it is above his limit.
+	 *
+	 * @param s       session of the drawing user
+	 * @param message stroke of DrawingMessage format
+	 * @throws IOException closing flooding session failed
+	 */
+	private void publishStroke(Session s, String message) throws IOException {
+		// Limit is checked before the stroke is parsed or published
+		switch (limiter.admit(message.length())) {
+		case DISCONNECT:
+			System.out.println("DrawWebsocket: session " + s.getId() + " is flooding. Closing session...");
+			s.close(new CloseReason(CloseCodes.VIOLATED_POLICY, "Too many strokes."));
+			return;
+		case DROP:
+			// Only strokes are merged
+			if (DrawProbes.isProbe(message) || DrawProbes.isAck(message))
+				return;
+			if (firstDropped == null)
+				firstDropped = message;
+			lastDropped = message;
+			droppedStrokes++;
+			return;
+		default:
+			break;
+		}
+		if (DrawProbes.isAck(message)) {
+			drawProbes.acknowledged(roomId, message);
+			return;
+		}
+		if (DrawProbes.isProbe(message)) {
+			String probe = drawProbes.received(message);
+			if (probe != null)
+				roomRouter.publish(Type.STROKE, roomId, s.getId(), null, probe);
+			return;
+		}
+		if (firstDropped != null) {
+			String merged = mergeStrokes(firstDropped, lastDropped);
+			if (merged != null) {
+				floodControl.countMergedStrokes(droppedStrokes);
+				roomRouter.publish(Type.STROKE, roomId, s.getId(), null, merged);
+			}
+			firstDropped = null;
+			lastDropped = null;
+			droppedStrokes = 0;
+		}
+		roomRouter.publish(Type.STROKE, roomId, s.getId(), null, message);
+	}
+
+	/**
+	 * Merges strokes dropped in a row into one straight stroke from the start of
+	 * the first one to the end of the last one, drawn with size and color of the
+	 * last one.
+	 *
+	 * @param first first dropped stroke of DrawingMessage format
+	 * @param last  last dropped stroke of DrawingMessage format
+	 * @return merged stroke, null when one of the strokes is malformed
+	 */
+	static String mergeStrokes(String first, String last) {
+		try (JsonReader firstReader = JSON.createReader(new StringReader(first));
+				JsonReader lastReader = JSON.createReader(new StringReader(last))) {
+			JsonObject f = firstReader.readObject();
+			JsonObject l = lastReader.readObject();
+			return JSON.createObjectBuilder().add("from", f.getJsonObject("from")).add("to", l.getJsonObject("to"))
+					.add("size", l.getJsonObject("size")).add("color", l.getString("color")).build().toString();
+		} catch (JsonException | ClassCastException | NullPointerException e) {
+			System.out.println("DrawWebsocket: dropping malformed strokes.");
+			return null;
+		}
+	}
+
+	/**
+	 * Registers handler of strokes delivered to this node.
+	 */
+	static void registerRoomHandlers() {
+		RoomRouter.getInstance().setHandler(Type.STROKE, DrawWebsocket::onStroke);
+	}
+
+	/**
+	 * Passes stroke to all the drawing boards of the room on this node except the
+	 * one it comes from and remembers it for players joining later. Stroke is
+	 * sent on the mailbox of the room, so the bus delivering events of all the
+	 * rooms never waits for a slow drawing board, and strokes of the room keep
+	 * their order.
+	 *
+	 * @param event room event carrying stroke, seat id is id of the sender session
+	 */
+	private static void onStroke(RoomEvent event) {
+		boolean isProbe = DrawProbes.isProbe(event.getPayload());
+		if (isProbe)
+			DrawProbes.getInstance().fanningOut(event.getRoomId(), event.getPayload());
+		RoomMailboxes.getInstance().execute(event.getRoomId(), () -> fanOut(event, isProbe));
+		// Probes are not part of the drawing
+		if (isProbe)
+			return;
+		SpectatorFeed.getInstance().enqueueStroke(event.getRoomId(), event.getPayload());
+		StrokeLog.getInstance().append(event.getRoomId(), event.getPayload());
+		if (RoomRouter.getInstance().isOwner(event.getRoomId())) {
+			RoomSnapshots.getInstance().recordStroke(event.getRoomId(), event.getPayload());
+			RoundRecorder.getInstance().record(event.getRoomId(), event.getPayload());
+		}
+	}
+
+	/**
+	 * Sends stroke to the drawing boards of the room on this node except the one
+	 * it comes from. Must be run on the mailbox of the room.
+	 *
+	 * @param event   room event carrying stroke
+	 * @param isProbe true if the stroke is a probe of DrawProbes
+	 */
+	private static void fanOut(RoomEvent event, boolean isProbe) {
+		long start = System.nanoTime();
+		Heartbeat heartbeat = Heartbeat.getInstance();
 		endpoints.forEach(endpoint -> {
-			synchronized (endpoint) {
-				try {
-					if (!endpoint.equals(this))
-						endpoint.session.getBasicRemote().sendText(message);
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+			// Skip sessions which do not answer heartbeat
+			if (!endpoint.roomId.equals(event.getRoomId()) || endpoint.session.getId().equals(event.getSeatId())
+					|| !heartbeat.isAlive(endpoint.session))
+				return;
+			Lock lock = Heartbeat.sendLock(endpoint.session);
+			lock.lock();
+			try {
+				endpoint.session.getBasicRemote()
+						.sendText(isProbe ? DrawProbes.sent(event.getPayload()) : event.getPayload());
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				lock.unlock();
 			}
 		});
+		fanOutTimes.record(System.nanoTime() - start);
+	}
+
+	@OnMessage
+	public void onPong(PongMessage pong, Session s) {
+		heartbeat.onPong(s);
 	}
 
 	@OnClose
 	public void onClose(Session session) {
 		System.out.println("DrawWebsocket: Closing session...");
 		this.isNewSession = true;
+		heartbeat.unregister(session);
 		endpoints.remove(this);
+		if (roomId != null && endpoints.stream().noneMatch(endpoint -> endpoint.roomId.equals(roomId)))
+			drawProbes.removeRoom(roomId);
+		if (isAdmitted)
+			admission.releaseSession();
+		isAdmitted = false;
+		if (isSpectator)
+			spectatorFeed.removeDrawSpectator(session);
 	}
 }
@@ -0,0 +1,51 @@
+package websocket;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import cluster.RoomRouter;
+import db.PointsLedgerService;
+import game.Leaderboard;
+import game.RoomSnapshots;
+import game.RoundRecorder;
+import game.StalePresenceCleaner;
+import game.ThumbnailRenderer;
+
+/**
+ * Warms the node up at startup (see WarmUp), then connects it to other nodes
+ * and registers handlers of room events, so events are handled even before any
+ * player connects to this node. Active users left by the previous run are
+ * removed, then rooms saved on local disk before the node was stopped are
+ * restored and the leaderboard is loaded from the database. When
+ * the application is stopped, rooms of this node are moved to other nodes,
+ * ended rounds are archived and points waiting for the ledger are written to
+ * the database.
+ *
+ * @author Piotr Koodziejski
+ */
+@WebListener
+public class RoomEventsListener implements ServletContextListener {
+
+	@Override
+	public void contextInitialized(ServletContextEvent sce) {
+		WarmUp.getInstance().run();
+		ChatWebsocket.registerRoomHandlers();
+		DrawWebsocket.registerRoomHandlers();
+		StalePresenceCleaner.run();
+		RoomRouter.getInstance().join();
+		ChatWebsocket.restoreRooms();
+		ThumbnailRenderer.getInstance().start();
+		Leaderboard.getInstance().start();
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent sce) {
+		RoomRouter roomRouter = RoomRouter.getInstance();
+		roomRouter.drain();
+		roomRouter.close();
+		RoomSnapshots.getInstance().close();
+		RoundRecorder.getInstance().close();
+		PointsLedgerService.getInstance().flush();
+	}
+}
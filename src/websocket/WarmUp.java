@@ -0,0 +1,216 @@
+package websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import cluster.RoomRouter;
+import db.ActiveUserService;
+import db.AppDictionaryService;
+import db.Database;
+import db.PasswordService;
+import db.PointsLedgerService;
+import db.UserService;
+import db.WordService;
+import exception.GameIntegrityViolationException;
+import game.Admission;
+import game.ChatLog;
+import game.DrawProbes;
+import game.FloodControl;
+import game.Heartbeat;
+import game.Leaderboard;
+import game.Lobby;
+import game.Matchmaker;
+import game.RoomMailboxes;
+import game.RoomSnapshots;
+import game.RoundRecorder;
+import game.RoundTimer;
+import game.SeatReservations;
+import game.SpectatorFeed;
+import game.StrokeLog;
+import game.ThumbnailRenderer;
+import model.ChatMessage;
+import model.ChatMessage.MsgType;
+import model.Credentials;
+import model.Score;
+import service.GameUtil;
+import service.HandlerExecutors;
+import service.LoginUtil;
+import service.Metrics;
+
+/**
+ * Prepares the node for players at deploy time, so the first players do not
+ * pay for it. Services are created on one thread before any request, the
+ * dictionary, the words and the JWT verifier are read, and synthetic messages
+ * are run through the codecs and game logic until JIT compiles them. Node is
+ * ready (see HealthRest) only when warm-up has succeeded; when it fails, e.g.
+ * dictionary cannot be read, it is retried in the background. It is a
+ * singleton and is meant to be injected as a field i.e. private WarmUp warmUp =
+ * WarmUp.getInstance();
+ *
+ * @author Piotr Koodziejski
+ */
+public class WarmUp {
+
+	/**
+	 * Number of synthetic messages, enough for JIT to compile the code handling
+	 * them with the optimizing compiler
+	 */
+	private static final int ITERATIONS = 10000;
+	private static final long RETRY_IN_MILLIS = 5000;
+	private static final String STROKE = "{\"from\":{\"x\":120.5,\"y\":88},\"to\":{\"x\":124,\"y\":91.25},"
+			+ "\"size\":{\"x\":800,\"y\":480},\"color\":\"rgba(12,34,56,1)\"}";
+
+	private volatile boolean isReady;
+	private volatile String failure;
+
+	private static volatile WarmUp instance;
+
+	private WarmUp() {
+		Metrics.getInstance().gauge("kalambury_ready", "1 when warm-up of the node has succeeded.",
+				() -> isReady ? 1 : 0);
+	}
+
+	/**
+	 * Implementation of the singleton pattern. Creates WarmUp object.
+	 *
+	 * @return instance of WarmUp
+	 */
+	public static WarmUp getInstance() {
+		if (instance == null) {
+			synchronized (WarmUp.class) {
+				if (instance == null)
+					instance = new WarmUp();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return true if warm-up has succeeded
+	 */
+	public boolean isReady() {
+		return isReady;
+	}
+
+	/**
+	 * @return reason of the last failed warm-up, null if it has not failed
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Warms the node up on the calling thread. When it fails, it is retried on a
+	 * background thread until it succeeds.
+	 */
+	public void run() {
+		if (warmUp())
+			return;
+		Thread retry = new Thread(() -> {
+			try {
+				do {
+					Thread.sleep(RETRY_IN_MILLIS);
+				} while (!warmUp());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "warm-up");
+		retry.setDaemon(true);
+		retry.start();
+	}
+
+	/**
+	 * @return true if warm-up has succeeded
+	 */
+	private boolean warmUp() {
+		long start = System.nanoTime();
+		try {
+			createServices();
+			AppDictionaryService dictService = AppDictionaryService.getInstance();
+			int values = dictService.preload();
+			int words = WordService.getInstance().preload();
+			LoginUtil.getInstance().preload(dictService.getSecret(), dictService.getOwners());
+			runSyntheticMessages(dictService.getSecret(), dictService.getOwners());
+
+			failure = null;
+			isReady = true;
+			System.out.println("WarmUp: node is ready after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+					+ " ms (" + values + " dictionary values, " + words + " words).");
+			return true;
+		} catch (Exception e) {
+			failure = e.getClass().getSimpleName() + ": " + e.getMessage();
+			System.err.println("WarmUp: failed, retrying in " + RETRY_IN_MILLIS + " ms.");
+			e.printStackTrace();
+			return false;
+		} finally {
+			Database.release();
+		}
+	}
+
+	/**
+	 * Creates services, the ones creating EntityManagerFactory and threads first.
+	 */
+	private static void createServices() {
+		if (Database.getInstance().em() == null)
+			throw new GameIntegrityViolationException("Database is not available.");
+		AppDictionaryService.getInstance();
+		UserService.getInstance();
+		PasswordService.getInstance();
+		ActiveUserService.getInstance();
+		WordService.getInstance();
+		PointsLedgerService.getInstance();
+		HandlerExecutors.getInstance();
+		RoomRouter.getInstance();
+		RoomMailboxes.getInstance();
+		RoundTimer.getInstance();
+		Heartbeat.getInstance();
+		Admission.getInstance();
+		FloodControl.getInstance();
+		SeatReservations.getInstance();
+		SpectatorFeed.getInstance();
+		StrokeLog.getInstance();
+		ChatLog.getInstance();
+		DrawProbes.getInstance();
+		Lobby.getInstance();
+		Matchmaker.getInstance();
+		RoomSnapshots.getInstance();
+		RoundRecorder.getInstance();
+		ThumbnailRenderer.getInstance();
+		Leaderboard.getInstance();
+		GameUtil.getInstance();
+	}
+
+	/**
+	 * Runs messages of the chat and draw channels through the code handling
+	 * them, without sending anything and without recording metrics.
+	 *
+	 * @param secret secret of the tokens
+	 * @param owners owners of an app
+	 */
+	private static void runSyntheticMessages(String secret, String owners) throws Exception {
+		GameUtil gameUtil = GameUtil.getInstance();
+		LoginUtil loginUtil = LoginUtil.getInstance();
+		String token = loginUtil.createJwt("warm-up", secret, 60000, owners);
+		List<Score> scores = new ArrayList<>();
+		for (int i = 0; i != 8; i++)
+			scores.add(new Score("player" + i, i == 0, i));
+
+		try (Jsonb jsonb = JsonbBuilder.create()) {
+			for (int i = 0; i != ITERATIONS; i++) {
+				String message = jsonb.toJson(new ChatMessage(MsgType.MESSAGE, "warm-up " + i));
+				jsonb.fromJson(message, ChatMessage.class);
+				jsonb.toJson(new ChatMessage(MsgType.SCOREBOARD, jsonb.toJson(scores)));
+				jsonb.fromJson("{\"username\":\"warm-up\",\"password\":\"warm-up\"}", Credentials.class);
+				DrawWebsocket.mergeStrokes(STROKE, STROKE);
+				DrawProbes.isProbe(STROKE);
+				gameUtil.compareWords("warm-up " + i, "warm-up");
+				gameUtil.produceHint("warm-up", i % 4);
+				loginUtil.extractUsernameFromToken(token);
+			}
+		}
+	}
+}
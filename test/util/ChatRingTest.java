@@ -0,0 +1,67 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import game.ChatRing;
+import game.ChatRing.Line;
+
+/**
+ *
+ * @author Maciej Szabaa
+ */
+class ChatRingTest {
+
+	@Test
+	public void emptyRing() {
+		ChatRing ring = new ChatRing(3);
+
+		assertEquals(0, ring.last());
+		assertTrue(ring.before(Long.MAX_VALUE, 10).isEmpty());
+		assertEquals("[]", ring.batch());
+	}
+
+	@Test
+	public void keepsLatestLines() {
+		ChatRing ring = new ChatRing(3);
+		for (int i = 1; i <= 5; i++)
+			ring.append("{\"n\":" + i + "}");
+
+		assertEquals(3, ring.first());
+		assertEquals(5, ring.last());
+		assertEquals("[{\"n\":3},{\"n\":4},{\"n\":5}]", ring.batch());
+	}
+
+	@Test
+	public void pagesGoBackwards() {
+		ChatRing ring = new ChatRing(10);
+		for (int i = 1; i <= 7; i++)
+			ring.append("l" + i);
+
+		List<Line> latest = ring.before(Long.MAX_VALUE, 3);
+		assertEquals(5, latest.get(0).getSeq());
+		assertEquals("l7", latest.get(2).getPayload());
+
+		List<Line> older = ring.before(latest.get(0).getSeq(), 3);
+		assertEquals(2, older.get(0).getSeq());
+		assertEquals(4, older.get(2).getSeq());
+
+		List<Line> oldest = ring.before(older.get(0).getSeq(), 3);
+		assertEquals(1, oldest.size());
+		assertEquals("l1", oldest.get(0).getPayload());
+	}
+
+	@Test
+	public void pageDoesNotReturnOverwrittenLines() {
+		ChatRing ring = new ChatRing(2);
+		for (int i = 1; i <= 5; i++)
+			ring.append("l" + i);
+
+		assertTrue(ring.before(3, 10).isEmpty());
+		assertEquals(1, ring.before(5, 10).size());
+	}
+
+}
@@ -0,0 +1,69 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import cluster.ConsistentHashRing;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class ConsistentHashRingTest {
+
+	@Test
+	public void emptyRingHasNoOwner() {
+		assertNull(new ConsistentHashRing(16).owner("room"));
+	}
+
+	@Test
+	public void ownerIsStable() {
+		ConsistentHashRing ring = new ConsistentHashRing(16);
+		ring.add("a");
+		ring.add("b");
+		ring.add("c");
+
+		assertEquals(ring.owner("room-1"), ring.owner("room-1"));
+	}
+
+	@Test
+	public void roomsAreSpreadOverNodes() {
+		ConsistentHashRing ring = new ConsistentHashRing(128);
+		ring.add("a");
+		ring.add("b");
+		ring.add("c");
+
+		Map<String, Integer> rooms = new HashMap<>();
+		for (int i = 0; i != 3000; i++)
+			rooms.merge(ring.owner("room-" + i), 1, Integer::sum);
+
+		assertEquals(3, rooms.size());
+		for (int count : rooms.values())
+			assertTrue(count > 500, "Rooms are not spread evenly: " + rooms);
+	}
+
+	@Test
+	public void onlyRoomsOfRemovedNodeMove() {
+		ConsistentHashRing ring = new ConsistentHashRing(64);
+		ring.add("a");
+		ring.add("b");
+		ring.add("c");
+		Map<String, String> before = new HashMap<>();
+		for (int i = 0; i != 1000; i++)
+			before.put("room-" + i, ring.owner("room-" + i));
+
+		ring.remove("b");
+
+		for (Map.Entry<String, String> room : before.entrySet()) {
+			if (room.getValue().equals("b"))
+				assertNotEquals("b", ring.owner(room.getKey()));
+			else
+				assertEquals(room.getValue(), ring.owner(room.getKey()));
+		}
+	}
+
+}
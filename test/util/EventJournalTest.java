@@ -0,0 +1,135 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import game.EventJournal;
+import game.EventJournal.Recovered;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class EventJournalTest {
+
+	Path dir;
+	EventJournal journal;
+
+	@BeforeEach
+	public void createJournal() throws IOException {
+		dir = Files.createTempDirectory("event-journal");
+		journal = new EventJournal(dir);
+	}
+
+	@AfterEach
+	public void deleteJournal() throws IOException {
+		journal.close();
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void emptyJournalRecoversNothing() {
+		Recovered recovered = journal.read("main");
+
+		assertNull(recovered.getSnapshot());
+		assertTrue(recovered.getRecords().isEmpty());
+	}
+
+	@Test
+	public void eventsAreReadInOrder() {
+		journal.append("main", (byte) 1, "first");
+		journal.append("main", (byte) 2, "second");
+		journal.sync();
+
+		Recovered recovered = journal.read("main");
+		assertEquals(2, recovered.getRecords().size());
+		assertEquals("first", recovered.getRecords().get(0).getPayload());
+		assertEquals(2, recovered.getRecords().get(1).getType());
+		assertEquals(2, recovered.getRecords().get(1).getSeq());
+	}
+
+	@Test
+	public void snapshotReplacesEventsItCovers() {
+		journal.append("main", (byte) 1, "covered");
+		long seq = journal.rotate("main");
+		journal.append("main", (byte) 1, "after");
+		journal.writeSnapshot("main", seq, "state");
+
+		Recovered recovered = journal.read("main");
+		assertEquals("state", recovered.getSnapshot());
+		assertEquals(1, recovered.getRecords().size());
+		assertEquals("after", recovered.getRecords().get(0).getPayload());
+	}
+
+	@Test
+	public void sequenceContinuesAfterReopening() throws IOException {
+		journal.append("main", (byte) 1, "first");
+		journal.close();
+
+		EventJournal reopened = new EventJournal(dir);
+		assertEquals(2, reopened.append("main", (byte) 1, "second"));
+		assertEquals(2, reopened.read("main").getRecords().size());
+		reopened.close();
+	}
+
+	@Test
+	public void tornFrameIsSkipped() throws IOException {
+		journal.append("main", (byte) 1, "complete");
+		journal.close();
+		// Crash in the middle of writing next frame
+		Path segment;
+		try (Stream<Path> files = Files.list(dir)) {
+			segment = files.collect(Collectors.toList()).get(0);
+		}
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 20, 1, 2 }));
+		}
+
+		EventJournal reopened = new EventJournal(dir);
+		Recovered recovered = reopened.read("main");
+		assertEquals(1, recovered.getRecords().size());
+		assertEquals("complete", recovered.getRecords().get(0).getPayload());
+		assertEquals(2, reopened.append("main", (byte) 1, "next"));
+		assertEquals(2, reopened.read("main").getRecords().size());
+		reopened.close();
+	}
+
+	@Test
+	public void removedRoomRecoversNothing() {
+		journal.append("main", (byte) 1, "first");
+		journal.writeSnapshot("main", journal.rotate("main"), "state");
+		journal.remove("main");
+
+		Recovered recovered = journal.read("main");
+		assertNull(recovered.getSnapshot());
+		assertTrue(recovered.getRecords().isEmpty());
+	}
+
+	@Test
+	public void roomIdsAreListed() {
+		journal.append("main", (byte) 1, "first");
+		journal.append("pl_2", (byte) 1, "first");
+		journal.writeSnapshot("en_1", 0, "state");
+
+		assertEquals(new TreeSet<>(Arrays.asList("en_1", "main", "pl_2")), journal.roomIds());
+		journal.remove("pl_2");
+		assertFalse(journal.roomIds().contains("pl_2"));
+	}
+}
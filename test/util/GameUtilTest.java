@@ -96,4 +96,52 @@ class GameUtilTest {
 		assertTrue(gu.compareWords(w1, w2));
 	}
 
+	/**
+	 * produceHint tests
+	 */
+	@Test
+	public void produceHintNothingRevealed() {
+		GameUtil gu = GameUtil.getInstance();
+
+		assertEquals("_ _ _ _", gu.produceHint("kura", 0));
+	}
+
+	@Test
+	public void produceHintKeepsSpaces() {
+		GameUtil gu = GameUtil.getInstance();
+
+		assertEquals("_ _   _ _", gu.produceHint(" ab cd ", 0));
+	}
+
+	@Test
+	public void produceHintNextHintContainsPrevious() {
+		GameUtil gu = GameUtil.getInstance();
+		String first = gu.produceHint("kalambury", 1);
+		String second = gu.produceHint("kalambury", 2);
+
+		assertEquals(1, first.replaceAll("[_ ]", "").length());
+		assertEquals(2, second.replaceAll("[_ ]", "").length());
+		for (int i = 0; i != first.length(); i++) {
+			if (first.charAt(i) != '_')
+				assertEquals(first.charAt(i), second.charAt(i));
+		}
+	}
+
+	@Test
+	public void produceHintNeverRevealsWholeWord() {
+		GameUtil gu = GameUtil.getInstance();
+
+		assertTrue(gu.produceHint("kot", 10).contains("_"));
+	}
+
+	@Test
+	public void produceHintNull() {
+		assertThrows(InvalidWordException.class, () -> {
+
+			GameUtil gu = GameUtil.getInstance();
+			gu.produceHint(null, 1);
+
+		});
+	}
+
 }
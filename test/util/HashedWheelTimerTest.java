@@ -0,0 +1,90 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import service.HashedWheelTimer;
+import service.HashedWheelTimer.Timeout;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class HashedWheelTimerTest {
+
+	HashedWheelTimer timer;
+
+	@BeforeEach
+	public void createTimer() {
+		timer = new HashedWheelTimer("test-timer", 5, TimeUnit.MILLISECONDS, 8, Runnable::run);
+	}
+
+	@AfterEach
+	public void stopTimer() {
+		timer.stop();
+	}
+
+	@Test
+	public void timeoutExpires() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		Timeout timeout = timer.newTimeout(latch::countDown, 20, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+		assertTrue(timeout.isExpired());
+		assertEquals(0, timer.pendingTimeouts());
+	}
+
+	@Test
+	public void timeoutLongerThanWheelExpires() throws InterruptedException {
+		// 8 buckets * 5 ms = 40 ms per round of the wheel
+		long start = System.nanoTime();
+		CountDownLatch latch = new CountDownLatch(1);
+		timer.newTimeout(latch::countDown, 100, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+	}
+
+	@Test
+	public void cancelledTimeoutDoesNotExpire() throws InterruptedException {
+		AtomicInteger counter = new AtomicInteger();
+		Timeout cancelled = timer.newTimeout(counter::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+		CountDownLatch latch = new CountDownLatch(1);
+		timer.newTimeout(latch::countDown, 60, TimeUnit.MILLISECONDS);
+
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+		assertEquals(0, counter.get());
+		assertTrue(cancelled.isCancelled());
+	}
+
+	@Test
+	public void manyTimeoutsExpire() throws InterruptedException {
+		int count = 10000;
+		CountDownLatch latch = new CountDownLatch(count);
+		for (int i = 0; i != count; i++)
+			timer.newTimeout(latch::countDown, i % 50, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void stoppedTimerRejectsTimeouts() {
+		timer.stop();
+		assertThrows(IllegalStateException.class, () -> {
+
+			timer.newTimeout(() -> {
+			}, 10, TimeUnit.MILLISECONDS);
+
+		});
+	}
+
+}
@@ -0,0 +1,56 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import service.Histogram;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class HistogramTest {
+
+	@Test
+	public void emptyHistogram() {
+		Histogram histogram = new Histogram();
+
+		assertEquals(0, histogram.count());
+		assertEquals(0, histogram.percentile(0.99));
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 10; i++)
+			histogram.record(i);
+
+		assertEquals(10, histogram.count());
+		assertEquals(55, histogram.sum());
+		assertEquals(5, histogram.percentile(0.5));
+		assertEquals(10, histogram.percentile(1));
+	}
+
+	@Test
+	public void percentilesArePreciseToSubBucket() {
+		Histogram histogram = new Histogram();
+		for (long i = 1; i <= 100000; i++)
+			histogram.record(i * 1000);
+
+		assertEquals(50000000, histogram.percentile(0.5), 50000000 / 16.0);
+		assertEquals(99000000, histogram.percentile(0.99), 99000000 / 16.0);
+		assertTrue(histogram.percentile(0.99) >= 99000000);
+	}
+
+	@Test
+	public void hugeAndNegativeValues() {
+		Histogram histogram = new Histogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(0, histogram.percentile(0.5));
+		assertEquals(Long.MAX_VALUE, histogram.percentile(1));
+	}
+
+}
@@ -0,0 +1,68 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+import service.Metrics;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class MetricsTest {
+
+	Metrics metrics = Metrics.getInstance();
+
+	@Test
+	public void counterIsRegisteredOnce() {
+		LongAdder counter = metrics.counter("test_events_total", "Events.", "room", "a");
+		counter.increment();
+		metrics.counter("test_events_total", "Events.", "room", "a").increment();
+
+		assertTrue(metrics.scrape().contains("test_events_total{room=\"a\"} 2\n"));
+		assertTrue(metrics.scrape().contains("# TYPE test_events_total counter\n"));
+	}
+
+	@Test
+	public void histogramIsExportedAsSummary() {
+		metrics.histogram("test_latency_seconds", "Latency.", Metrics.NANOS).record(2000000000L);
+
+		String text = metrics.scrape();
+		assertTrue(text.contains("# TYPE test_latency_seconds summary\n"));
+		assertTrue(text.contains("test_latency_seconds_count 1\n"));
+		assertTrue(text.contains("test_latency_seconds_sum 2\n"));
+		assertTrue(text.contains("test_latency_seconds{quantile=\"0.5\"} "));
+	}
+
+	@Test
+	public void gaugeAndLabelEscaping() {
+		metrics.gauge("test_open", "Open.", () -> 7, "name", "a\"b");
+
+		assertTrue(metrics.scrape().contains("test_open{name=\"a\\\"b\"} 7\n"));
+	}
+
+	@Test
+	public void removedSeriesIsNotExported() {
+		metrics.histogram("test_room_seconds", "Room.", Metrics.MILLIS, "room", "a").record(1);
+		metrics.histogram("test_room_seconds", "Room.", Metrics.MILLIS, "room", "b").record(1);
+		metrics.remove("test_room_seconds", "room", "a");
+
+		String text = metrics.scrape();
+		assertFalse(text.contains("test_room_seconds_count{room=\"a\"}"));
+		assertTrue(text.contains("test_room_seconds_count{room=\"b\"} 1\n"));
+	}
+
+	@Test
+	public void typeConflict() {
+		metrics.counter("test_conflict", "Conflict.");
+		assertThrows(IllegalArgumentException.class, () -> {
+
+			metrics.gauge("test_conflict", "Conflict.", () -> 1);
+
+		});
+	}
+
+}
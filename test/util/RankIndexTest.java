@@ -0,0 +1,118 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import game.RankIndex;
+import model.LeaderboardEntry;
+
+/**
+ *
+ * @author Maciej Szabaa
+ */
+class RankIndexTest {
+
+	@Test
+	public void rankCountsPlayersWithMorePoints() {
+		RankIndex index = new RankIndex();
+		index.put("a", 10);
+		index.put("b", 30);
+		index.put("c", 20);
+		index.put("d", 20);
+
+		assertEquals(1, index.entry("b").getRank());
+		assertEquals(2, index.entry("c").getRank());
+		assertEquals(2, index.entry("d").getRank());
+		assertEquals(4, index.entry("a").getRank());
+		assertNull(index.entry("e"));
+	}
+
+	@Test
+	public void pageIsOrderedByPointsThenName() {
+		RankIndex index = new RankIndex();
+		index.put("a", 10);
+		index.put("b", 30);
+		index.put("d", 20);
+		index.put("c", 20);
+
+		List<LeaderboardEntry> page = index.page(0, 10);
+		assertEquals(4, page.size());
+		assertEquals("b", page.get(0).getUsername());
+		assertEquals("c", page.get(1).getUsername());
+		assertEquals("d", page.get(2).getUsername());
+		assertEquals("a", page.get(3).getUsername());
+	}
+
+	@Test
+	public void pageStartsInTheMiddleOfBucket() {
+		RankIndex index = new RankIndex();
+		index.put("a", 5);
+		index.put("b", 5);
+		index.put("c", 5);
+		index.put("z", 1);
+
+		List<LeaderboardEntry> page = index.page(2, 2);
+		assertEquals(2, page.size());
+		assertEquals("c", page.get(0).getUsername());
+		assertEquals(1, page.get(0).getRank());
+		assertEquals("z", page.get(1).getUsername());
+		assertEquals(4, page.get(1).getRank());
+		assertTrue(index.page(4, 2).isEmpty());
+	}
+
+	@Test
+	public void addMovesPlayer() {
+		RankIndex index = new RankIndex();
+		index.put("a", 1);
+		index.put("b", 2);
+
+		index.add("a", 2);
+		index.add("new", 1);
+
+		assertEquals(1, index.entry("a").getRank());
+		assertEquals(3, index.entry("a").getPoints());
+		assertEquals(3, index.entry("new").getRank());
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	public void growsBeyondInitialSize() {
+		RankIndex index = new RankIndex();
+		index.put("low", 3);
+		index.put("high", 5000);
+		index.put("higher", 100000);
+
+		assertEquals(1, index.entry("higher").getRank());
+		assertEquals(2, index.entry("high").getRank());
+		assertEquals(3, index.entry("low").getRank());
+		assertEquals("high", index.page(1, 1).get(0).getUsername());
+	}
+
+	@Test
+	public void matchesSortedOrder() {
+		RankIndex index = new RankIndex();
+		Random random = new Random(42);
+		int[] points = new int[500];
+		for (int i = 0; i != points.length; i++) {
+			points[i] = random.nextInt(3000);
+			index.put("p" + i, points[i]);
+		}
+
+		List<LeaderboardEntry> page = index.page(0, points.length);
+		assertEquals(points.length, page.size());
+		for (int i = 1; i != page.size(); i++)
+			assertTrue(page.get(i - 1).getPoints() >= page.get(i).getPoints());
+		for (int i = 0; i != points.length; i++) {
+			int better = 0;
+			for (int p : points)
+				if (p > points[i])
+					better++;
+			assertEquals(better + 1, index.entry("p" + i).getRank());
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import game.ReplayArchive;
+
+/**
+ *
+ * @author Maciej Szabaa
+ */
+class ReplayArchiveTest {
+
+	Path dir;
+
+	@BeforeEach
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("replay-archive");
+	}
+
+	@AfterEach
+	public void deleteDir() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void recordingIsStreamedBack() throws IOException {
+		ReplayArchive archive = new ReplayArchive(dir, 1024);
+		long first = archive.append(1, bytes("first round"));
+		long second = archive.append(2, bytes("second round"));
+
+		assertEquals(0, first);
+		assertEquals(1, second);
+		assertEquals("second round", read(archive, second));
+		assertEquals(2, archive.find(second).getEndedAt());
+		archive.close();
+	}
+
+	@Test
+	public void unknownRoundIsNotFound() throws IOException {
+		ReplayArchive archive = new ReplayArchive(dir, 1024);
+		archive.append(1, bytes("round"));
+
+		assertNull(archive.find(1));
+		assertNull(archive.find(-1));
+		archive.close();
+	}
+
+	@Test
+	public void bigRecordingsStartNewSegments() throws IOException {
+		ReplayArchive archive = new ReplayArchive(dir, 16);
+		archive.append(1, bytes("0123456789"));
+		archive.append(2, bytes("abcdefghij"));
+		archive.append(3, bytes("ABCDEFGHIJKLMNOPQRSTUVWXYZ"));
+
+		assertEquals(0, archive.find(0).getSegment());
+		assertEquals(1, archive.find(1).getSegment());
+		assertEquals(2, archive.find(2).getSegment());
+		assertEquals("abcdefghij", read(archive, 1));
+		archive.close();
+	}
+
+	@Test
+	public void roundsSurviveReopening() throws IOException {
+		ReplayArchive archive = new ReplayArchive(dir, 16);
+		archive.append(1, bytes("0123456789"));
+		archive.append(2, bytes("abcdefghij"));
+		archive.close();
+
+		ReplayArchive reopened = new ReplayArchive(dir, 16);
+		assertEquals(2, reopened.size());
+		assertEquals(2, reopened.append(3, bytes("next")));
+		assertEquals("0123456789", read(reopened, 0));
+		assertEquals("next", read(reopened, 2));
+		reopened.close();
+	}
+
+	@Test
+	public void tornIndexEntryIsDropped() throws IOException {
+		ReplayArchive archive = new ReplayArchive(dir, 1024);
+		archive.append(1, bytes("complete"));
+		archive.close();
+		// Crash in the middle of writing next index entry
+		Files.write(dir.resolve("rounds.idx"), new byte[] { 0, 0, 0 }, StandardOpenOption.APPEND);
+
+		ReplayArchive reopened = new ReplayArchive(dir, 1024);
+		assertEquals(1, reopened.size());
+		assertEquals(1, reopened.append(2, bytes("next")));
+		assertEquals("next", read(reopened, 1));
+		reopened.close();
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String read(ReplayArchive archive, long roundId) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		archive.transferTo(archive.find(roundId), Channels.newChannel(out));
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
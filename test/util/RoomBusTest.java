@@ -0,0 +1,138 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import cluster.InJvmRoomBus;
+import cluster.RoomBus;
+import cluster.RoomEvent;
+import cluster.RoomEvent.Type;
+import cluster.TcpRoomBus;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class RoomBusTest {
+
+	@Test
+	public void inJvmPublishReachesAllNodes() {
+		InJvmRoomBus.Network network = new InJvmRoomBus.Network();
+		InJvmRoomBus a = new InJvmRoomBus("a", network);
+		InJvmRoomBus b = new InJvmRoomBus("b", network);
+		List<String> received = new CopyOnWriteArrayList<>();
+		a.subscribe(event -> received.add("a:" + event.getPayload()));
+		b.subscribe(event -> received.add("b:" + event.getPayload()));
+
+		a.publish(new RoomEvent(Type.CHAT, "room", "a", null, null, "hello"));
+		a.send("b", new RoomEvent(Type.PLAYER_MESSAGE, "room", "a", "seat", "user", "guess"));
+
+		assertEquals(3, received.size());
+		assertTrue(received.contains("a:hello"));
+		assertTrue(received.contains("b:hello"));
+		assertTrue(received.contains("b:guess"));
+	}
+
+	@Test
+	public void tcpSendKeepsOrderAndContent() throws IOException, InterruptedException {
+		Map<String, InetSocketAddress> addresses = new HashMap<>();
+		addresses.put("a", new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort()));
+		addresses.put("b", new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort()));
+
+		try (RoomBus a = new TcpRoomBus("a", addresses); RoomBus b = new TcpRoomBus("b", addresses)) {
+			int count = 1000;
+			List<RoomEvent> received = new CopyOnWriteArrayList<>();
+			CountDownLatch latch = new CountDownLatch(count);
+			b.subscribe(event -> {
+				received.add(event);
+				latch.countDown();
+			});
+
+			for (int i = 0; i != count; i++)
+				a.send("b", new RoomEvent(Type.STROKE, "room", "a", i % 2 == 0 ? null : "seat", null, "stroke-" + i));
+
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			for (int i = 0; i != count; i++) {
+				assertEquals("stroke-" + i, received.get(i).getPayload());
+				assertEquals(i % 2 == 0 ? null : "seat", received.get(i).getSeatId());
+				assertEquals("a", received.get(i).getOrigin());
+			}
+		}
+	}
+
+	@Test
+	public void tcpPublishReachesAllNodes() throws IOException, InterruptedException {
+		Map<String, InetSocketAddress> addresses = new HashMap<>();
+		addresses.put("a", new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort()));
+		addresses.put("b", new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort()));
+
+		try (RoomBus a = new TcpRoomBus("a", addresses); RoomBus b = new TcpRoomBus("b", addresses)) {
+			CountDownLatch latch = new CountDownLatch(2);
+			a.subscribe(event -> latch.countDown());
+			b.subscribe(event -> latch.countDown());
+
+			b.publish(new RoomEvent(Type.SCOREBOARD, "room", "b", null, null, "d"));
+
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void tcpUnreachableNodeDoesNotBlockPublish() throws IOException {
+		Map<String, InetSocketAddress> addresses = new HashMap<>();
+		addresses.put("a", new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort()));
+		// Nothing listens on the address of b
+		addresses.put("b", new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort()));
+
+		try (RoomBus a = new TcpRoomBus("a", addresses)) {
+			List<RoomEvent> received = new CopyOnWriteArrayList<>();
+			a.subscribe(received::add);
+
+			long start = System.nanoTime();
+			for (int i = 0; i != 100; i++)
+				a.publish(new RoomEvent(Type.STROKE, "room", "a", null, null, "stroke-" + i));
+
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+			assertEquals(100, received.size());
+		}
+	}
+
+	@Test
+	public void tcpCloseSendsQueuedEvents() throws IOException, InterruptedException {
+		Map<String, InetSocketAddress> addresses = new HashMap<>();
+		addresses.put("a", new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort()));
+		addresses.put("b", new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort()));
+
+		try (RoomBus b = new TcpRoomBus("b", addresses)) {
+			int count = 100;
+			CountDownLatch latch = new CountDownLatch(count);
+			b.subscribe(event -> latch.countDown());
+
+			RoomBus a = new TcpRoomBus("a", addresses);
+			for (int i = 0; i != count; i++)
+				a.send("b", new RoomEvent(Type.ROOM_HANDOFF, "room-" + i, "a", null, null, null));
+			a.close();
+
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cluster.FileRoomDirectory;
+import cluster.InMemoryRoomDirectory;
+import cluster.RoomDirectory;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class RoomDirectoryTest {
+
+	Path dir;
+
+	@BeforeEach
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("room-directory");
+	}
+
+	@AfterEach
+	public void deleteDir() throws IOException {
+		Files.list(dir).forEach(file -> file.toFile().delete());
+		Files.delete(dir);
+	}
+
+	@Test
+	public void emptyDirectoryHasNoOwner() {
+		RoomDirectory directory = new InMemoryRoomDirectory(16);
+
+		assertNull(directory.ownerOf("main"));
+		assertTrue(directory.nodes().isEmpty());
+	}
+
+	@Test
+	public void registeredNodesOwnRooms() {
+		RoomDirectory directory = new InMemoryRoomDirectory(16);
+		directory.register("a", "host-a:8080");
+		directory.register("b", "host-b:8080");
+
+		assertEquals(2, directory.nodes().size());
+		assertEquals("host-b:8080", directory.addressOf("b"));
+		for (int i = 0; i != 100; i++)
+			assertTrue(directory.nodes().containsKey(directory.ownerOf("room" + i)));
+	}
+
+	@Test
+	public void roomsOfUnregisteredNodeMove() {
+		RoomDirectory directory = new InMemoryRoomDirectory(16);
+		directory.register("a", "host-a:8080");
+		directory.register("b", "host-b:8080");
+		directory.unregister("a");
+
+		assertNull(directory.addressOf("a"));
+		for (int i = 0; i != 100; i++)
+			assertEquals("b", directory.ownerOf("room" + i));
+	}
+
+	@Test
+	public void fileDirectoryIsSharedByNodes() {
+		Path file = dir.resolve("nodes.properties");
+		RoomDirectory first = new FileRoomDirectory(file, "a", 16);
+		RoomDirectory second = new FileRoomDirectory(file, "b", 16);
+		first.register("a", "host-a:8080");
+		second.register("b", "host-b:8080");
+
+		assertEquals(2, second.nodes().size());
+		assertEquals("host-a:8080", second.addressOf("a"));
+		for (int i = 0; i != 100; i++)
+			assertEquals(second.ownerOf("room" + i), new FileRoomDirectory(file, "c", 16).ownerOf("room" + i));
+	}
+
+	@Test
+	public void fileDirectoryKeepsOtherNodesOnUnregister() {
+		Path file = dir.resolve("nodes.properties");
+		RoomDirectory first = new FileRoomDirectory(file, "a", 16);
+		first.register("a", "host-a:8080");
+		first.register("b", "host-b:8080");
+		new FileRoomDirectory(file, "b", 16).unregister("a");
+
+		RoomDirectory third = new FileRoomDirectory(file, "c", 16);
+		assertEquals(1, third.nodes().size());
+		assertEquals("b", third.ownerOf("main"));
+	}
+
+	@Test
+	public void fileDirectoryIgnoresNodesWithoutHeartbeat() throws InterruptedException {
+		Path file = dir.resolve("nodes.properties");
+		RoomDirectory first = new FileRoomDirectory(file, "a", 16, 300);
+		first.register("a", "host-a:8080");
+		// Node b never renews its heartbeat, as if it has crashed
+		first.register("b", "host-b:8080");
+		assertEquals(2, first.nodes().size());
+
+		Thread.sleep(1500);
+
+		assertEquals(1, first.nodes().size());
+		assertEquals("a", first.ownerOf("main"));
+		assertNull(new FileRoomDirectory(file, "c", 16, 300).addressOf("b"));
+	}
+}
@@ -0,0 +1,94 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import game.RoomMailboxes;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class RoomMailboxesTest {
+
+	RoomMailboxes roomMailboxes = RoomMailboxes.getInstance();
+
+	@Test
+	public void tasksOfRoomRunInOrder() throws InterruptedException {
+		int count = 10000;
+		List<Integer> done = new CopyOnWriteArrayList<>();
+		CountDownLatch latch = new CountDownLatch(count);
+		for (int i = 0; i != count; i++) {
+			int task = i;
+			roomMailboxes.execute("ordered", () -> {
+				done.add(task);
+				latch.countDown();
+			});
+		}
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i != count; i++)
+			assertEquals(i, done.get(i).intValue());
+	}
+
+	@Test
+	public void tasksOfRoomNeverRunAtTheSameTime() throws InterruptedException {
+		int count = 1000;
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger overlaps = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(4 * count);
+		for (int t = 0; t != 4; t++) {
+			new Thread(() -> {
+				for (int i = 0; i != count; i++) {
+					roomMailboxes.execute("serialized", () -> {
+						if (running.incrementAndGet() != 1)
+							overlaps.incrementAndGet();
+						running.decrementAndGet();
+						latch.countDown();
+					});
+				}
+			}).start();
+		}
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(0, overlaps.get());
+	}
+
+	@Test
+	public void failedTaskDoesNotStopRoom() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		roomMailboxes.execute("failing", () -> {
+			throw new IllegalStateException("Test failure.");
+		});
+		roomMailboxes.execute("failing", latch::countDown);
+
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void roomsRunInParallel() throws InterruptedException {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch other = new CountDownLatch(1);
+		roomMailboxes.execute("blocked", () -> {
+			try {
+				blocked.await(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		roomMailboxes.execute("other", other::countDown);
+
+		// Pool has a single thread on one core machine
+		if (Runtime.getRuntime().availableProcessors() > 1)
+			assertTrue(other.await(500, TimeUnit.MILLISECONDS));
+		blocked.countDown();
+	}
+
+}
@@ -0,0 +1,131 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import game.RoomPlacement;
+import game.RoomPlacement.Placement;
+import model.RoomSummary;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class RoomPlacementTest {
+
+	static final long NOW = 1000000;
+	static final List<String> NODES = Arrays.asList("a", "b");
+
+	RoomPlacement placement;
+	Map<String, String> owners;
+	Function<String, String> ownerOf;
+
+	@BeforeEach
+	public void createPlacement() {
+		placement = new RoomPlacement(4, 5000);
+		owners = new HashMap<>();
+		// Rooms not listed are owned by node "a"
+		ownerOf = roomId -> owners.getOrDefault(roomId, "a");
+	}
+
+	Map<String, RoomSummary> summaries(RoomSummary... rooms) {
+		Map<String, RoomSummary> summaries = new HashMap<>();
+		for (RoomSummary room : rooms)
+			summaries.put(room.getRoomId(), room);
+		return summaries;
+	}
+
+	RoomSummary room(String roomId, int players) {
+		return new RoomSummary(roomId, players, null, 0L, null, NOW);
+	}
+
+	@Test
+	public void packOfRoom() {
+		assertEquals("en", RoomPlacement.packOf("en_3"));
+		assertEquals("pl", RoomPlacement.packOf("main"));
+		assertEquals("pl", RoomPlacement.packOf("_3"));
+	}
+
+	@Test
+	public void invalidRoomIds() {
+		assertTrue(RoomPlacement.isValidRoomId("pl_1"));
+		assertFalse(RoomPlacement.isValidRoomId(null));
+		assertFalse(RoomPlacement.isValidRoomId("../main"));
+		assertFalse(RoomPlacement.isValidRoomId("Main"));
+	}
+
+	@Test
+	public void fullestRoomWithFreeSeatIsChosen() {
+		placement.refresh(summaries(room("pl_1", 1), room("pl_2", 3), room("pl_3", 4), room("en_1", 3)), ownerOf,
+				NOW);
+
+		Placement placed = placement.place("pl", NODES, ownerOf, NOW);
+		assertEquals("pl_2", placed.getRoomId());
+		assertFalse(placed.isNew());
+		// pl_2 is full now
+		assertEquals("pl_1", placement.place("pl", NODES, ownerOf, NOW).getRoomId());
+	}
+
+	@Test
+	public void leastLoadedNodeIsPreferred() {
+		owners.put("pl_1", "a");
+		owners.put("pl_2", "b");
+		owners.put("pl_3", "a");
+		placement.refresh(summaries(room("pl_1", 3), room("pl_2", 1), room("pl_3", 3)), ownerOf, NOW);
+
+		assertEquals("pl_2", placement.place("pl", NODES, ownerOf, NOW).getRoomId());
+		assertEquals(6, placement.nodeLoad("a"));
+		assertEquals(2, placement.nodeLoad("b"));
+	}
+
+	@Test
+	public void roomIsCreatedWhenThereIsNoFreeSeat() {
+		placement.refresh(summaries(room("en_1", 4)), ownerOf, NOW);
+
+		Placement placed = placement.place("en", NODES, ownerOf, NOW);
+		assertEquals("en_2", placed.getRoomId());
+		assertTrue(placed.isNew());
+		// Next players join the created room until it is full
+		for (int i = 0; i != 3; i++)
+			assertEquals("en_2", placement.place("en", NODES, ownerOf, NOW).getRoomId());
+		assertEquals("en_3", placement.place("en", NODES, ownerOf, NOW).getRoomId());
+	}
+
+	@Test
+	public void roomIsCreatedOnLeastLoadedNode() {
+		owners.put("pl_1", "a");
+		owners.put("pl_2", "a");
+		owners.put("pl_3", "b");
+		placement.refresh(summaries(room("pl_1", 4)), ownerOf, NOW);
+
+		Placement placed = placement.place("pl", NODES, ownerOf, NOW);
+		assertEquals("pl_3", placed.getRoomId());
+		assertEquals("b", placed.getNodeId());
+	}
+
+	@Test
+	public void expiredPlacementsFreeSeats() {
+		for (int i = 0; i != 4; i++)
+			placement.place("pl", NODES, ownerOf, NOW);
+		assertEquals(4, placement.roomLoad("pl_1", NOW));
+		assertEquals(0, placement.roomLoad("pl_1", NOW + 5000));
+
+		placement.refresh(summaries(), ownerOf, NOW + 5000);
+		assertEquals("pl_1", placement.place("pl", NODES, ownerOf, NOW + 5000).getRoomId());
+	}
+
+	@Test
+	public void invalidPackFallsBackToDefault() {
+		Placement placed = placement.place("../x", Collections.singletonList("a"), ownerOf, NOW);
+		assertEquals("pl_1", placed.getRoomId());
+	}
+}
@@ -0,0 +1,64 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import model.ScoreEvent;
+import model.ScoreRollup;
+import service.ScorePeriods;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class ScorePeriodsTest {
+
+	static final ZoneId UTC = ZoneOffset.UTC;
+
+	static long millis(int year, int month, int day, int hour) {
+		return ZonedDateTime.of(year, month, day, hour, 0, 0, 0, UTC).toInstant().toEpochMilli();
+	}
+
+	@Test
+	public void dayAndWeek() {
+		long time = millis(2026, 10, 19, 12);
+
+		assertEquals("D2026-10-19", ScorePeriods.day(time, UTC));
+		assertEquals("W2026-43", ScorePeriods.week(time, UTC));
+		assertEquals("D2026-10-19", ScorePeriods.of(ScorePeriods.DAY, time, UTC));
+		assertNull(ScorePeriods.of("month", time, UTC));
+	}
+
+	@Test
+	public void weekBelongsToWeekBasedYear() {
+		assertEquals("W2026-53", ScorePeriods.week(millis(2027, 1, 1, 12), UTC));
+	}
+
+	@Test
+	public void dayDependsOnZone() {
+		long time = millis(2026, 10, 19, 23);
+
+		assertEquals("D2026-10-20", ScorePeriods.day(time, ZoneId.of("Europe/Warsaw")));
+	}
+
+	@Test
+	public void rollupSumsByPeriodAndUser() {
+		Map<String, ScoreRollup> rollups = ScorePeriods.rollup(Arrays.asList(
+				new ScoreEvent("a", 1, millis(2026, 10, 19, 10)), new ScoreEvent("a", 2, millis(2026, 10, 20, 10)),
+				new ScoreEvent("b", 1, millis(2026, 10, 20, 11))), UTC);
+
+		assertEquals(1, rollups.get(ScoreRollup.key("D2026-10-19", "a")).getPoints().intValue());
+		assertEquals(2, rollups.get(ScoreRollup.key("D2026-10-20", "a")).getPoints().intValue());
+		assertEquals(3, rollups.get(ScoreRollup.key("W2026-43", "a")).getPoints().intValue());
+		assertEquals(1, rollups.get(ScoreRollup.key("W2026-43", "b")).getPoints().intValue());
+		assertEquals(5, rollups.size());
+	}
+
+}
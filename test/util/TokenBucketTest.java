@@ -0,0 +1,70 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import service.TokenBucket;
+
+/**
+ *
+ * @author Piotr Koodziejski
+ */
+class TokenBucketTest {
+
+	static final long SECOND = 1000000000L;
+
+	@Test
+	public void burstUpToCapacity() {
+		TokenBucket bucket = new TokenBucket(5, 1, 0);
+
+		for (int i = 0; i != 5; i++)
+			assertTrue(bucket.tryTake(1, 0));
+		assertFalse(bucket.tryTake(1, 0));
+	}
+
+	@Test
+	public void refillsOverTime() {
+		TokenBucket bucket = new TokenBucket(2, 2, 0);
+		assertTrue(bucket.tryTake(2, 0));
+		assertFalse(bucket.tryTake(1, SECOND / 4));
+
+		assertTrue(bucket.tryTake(1, SECOND / 2));
+		assertEquals(0, bucket.available(SECOND / 2));
+	}
+
+	@Test
+	public void neverExceedsCapacity() {
+		TokenBucket bucket = new TokenBucket(3, 10, 0);
+
+		assertEquals(3, bucket.available(100 * SECOND));
+	}
+
+	@Test
+	public void failedTakeTakesNothing() {
+		TokenBucket bucket = new TokenBucket(10, 1, 0);
+		assertTrue(bucket.tryTake(8, 0));
+
+		assertFalse(bucket.tryTake(3, 0));
+		assertTrue(bucket.tryTake(2, 0));
+	}
+
+	@Test
+	public void timeGoingBackIsIgnored() {
+		TokenBucket bucket = new TokenBucket(1, 1, SECOND);
+		assertTrue(bucket.tryTake(1, SECOND));
+
+		assertFalse(bucket.tryTake(1, 0));
+		assertTrue(bucket.tryTake(1, 2 * SECOND));
+	}
+
+	@Test
+	public void invalidRate() {
+		assertThrows(IllegalArgumentException.class, () -> {
+
+			new TokenBucket(1, 0, 0);
+
+		});
+	}
+
+}